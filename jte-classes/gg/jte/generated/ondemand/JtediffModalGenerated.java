@@ -0,0 +1,12 @@
+package gg.jte.generated.ondemand;
+@SuppressWarnings("unchecked")
+public final class JtediffModalGenerated {
+	public static final String JTE_NAME = "diffModal.jte";
+	public static final int[] JTE_LINE_INFO = {16,16,16,16,16,16,16,16,16,16,16,16};
+	public static void render(gg.jte.html.HtmlTemplateOutput jteOutput, gg.jte.html.HtmlInterceptor jteHtmlInterceptor) {
+		jteOutput.writeContent("<div id=\"diff-modal\" class=\"hidden fixed inset-0 bg-gray-600 bg-opacity-75 overflow-y-auto h-full w-full z-50\">\n    <div class=\"relative top-2 mx-auto border w-[98vw] h-[96vh] shadow-2xl rounded-lg bg-white overflow-hidden flex flex-col\">\n        <div class=\"p-4 bg-blue-800 text-white flex justify-between items-center\">\n            <h3 class=\"text-xl font-bold\">File Comparison</h3>\n            <button onclick=\"closeDiffModal()\" class=\"text-white hover:text-gray-300\">\n                <svg class=\"w-6 h-6\" fill=\"none\" stroke=\"currentColor\" viewBox=\"0 0 24 24\"><path stroke-linecap=\"round\" stroke-linejoin=\"round\" stroke-width=\"2\" d=\"M6 18L18 6M6 6l12 12\"></path></svg>\n            </button>\n        </div>\n        <div class=\"flex-grow\">\n            <iframe id=\"diff-iframe\" class=\"w-full h-full border-none\" src=\"about:blank\"></iframe>\n        </div>\n        <div class=\"p-4 bg-gray-50 border-t flex justify-end\">\n            <button onclick=\"closeDiffModal()\" class=\"px-6 py-2 bg-blue-600 text-white rounded hover:bg-blue-700 font-bold transition-colors\">Close</button>\n        </div>\n    </div>\n</div>\n");
+	}
+	public static void renderMap(gg.jte.html.HtmlTemplateOutput jteOutput, gg.jte.html.HtmlInterceptor jteHtmlInterceptor, java.util.Map<String, Object> params) {
+		render(jteOutput, jteHtmlInterceptor);
+	}
+}
@@ -0,0 +1,95 @@
+package gg.jte.generated.ondemand;
+import one.dastec.jcompare.model.DiffNode;
+import java.util.List;
+@SuppressWarnings("unchecked")
+public final class JtediffNodeGenerated {
+	public static final String JTE_NAME = "diffNode.jte";
+	public static final int[] JTE_LINE_INFO = {0,0,1,2,2,2,2,6,6,6,6,6,7,7,7,7,8,8,8,8,8,8,8,8,8,9,9,9,9,9,9,9,9,9,10,10,10,10,10,10,10,10,10,11,11,11,11,11,11,11,11,11,13,13,13,13,13,13,13,13,13,14,14,14,15,15,15,16,16,17,17,17,18,18,20,20,21,21,23,23,24,24,25,25,27,27,29,29,29,2,3,4,4,4,4};
+	public static void render(gg.jte.html.HtmlTemplateOutput jteOutput, gg.jte.html.HtmlInterceptor jteHtmlInterceptor, String leftPath, String rightPath, DiffNode node) {
+		jteOutput.writeContent("\n<li class=\"status-");
+		jteOutput.setContext("li", "class");
+		jteOutput.writeUserContent(node.getStatus().name().toLowerCase());
+		jteOutput.setContext("li", null);
+		jteOutput.writeContent(" flex flex-col\">\n    <div class=\"flex items-center space-x-2 ");
+		jteOutput.setContext("div", "class");
+		jteOutput.writeUserContent(node.isDirectory() ? "" : "cursor-pointer hover:bg-blue-50");
+		jteOutput.setContext("div", null);
+		jteOutput.writeContent("\"\n        ");
+		var __jte_html_attribute_0 = leftPath;
+		if (gg.jte.runtime.TemplateUtils.isAttributeRendered(__jte_html_attribute_0)) {
+			jteOutput.writeContent(" data-left=\"");
+			jteOutput.setContext("div", "data-left");
+			jteOutput.writeUserContent(__jte_html_attribute_0);
+			jteOutput.setContext("div", null);
+			jteOutput.writeContent("\"");
+		}
+		jteOutput.writeContent("\n        ");
+		var __jte_html_attribute_1 = rightPath;
+		if (gg.jte.runtime.TemplateUtils.isAttributeRendered(__jte_html_attribute_1)) {
+			jteOutput.writeContent(" data-right=\"");
+			jteOutput.setContext("div", "data-right");
+			jteOutput.writeUserContent(__jte_html_attribute_1);
+			jteOutput.setContext("div", null);
+			jteOutput.writeContent("\"");
+		}
+		jteOutput.writeContent("\n        ");
+		var __jte_html_attribute_2 = node.getRelativePath();
+		if (gg.jte.runtime.TemplateUtils.isAttributeRendered(__jte_html_attribute_2)) {
+			jteOutput.writeContent(" data-rel=\"");
+			jteOutput.setContext("div", "data-rel");
+			jteOutput.writeUserContent(__jte_html_attribute_2);
+			jteOutput.setContext("div", null);
+			jteOutput.writeContent("\"");
+		}
+		jteOutput.writeContent("\n        ");
+		var __jte_html_attribute_3 = node.getSourcePath();
+		if (gg.jte.runtime.TemplateUtils.isAttributeRendered(__jte_html_attribute_3)) {
+			jteOutput.writeContent(" data-source=\"");
+			jteOutput.setContext("div", "data-source");
+			jteOutput.writeUserContent(__jte_html_attribute_3);
+			jteOutput.setContext("div", null);
+			jteOutput.writeContent("\"");
+		}
+		jteOutput.writeContent("\n         ondblclick=\"if(this.dataset.rel) openFileDiff(this.dataset.left, this.dataset.right, this.dataset.rel, this.dataset.source)\">\n        <span");
+		var __jte_html_attribute_4 = node.isDirectory() ? "folder" : "file";
+		if (gg.jte.runtime.TemplateUtils.isAttributeRendered(__jte_html_attribute_4)) {
+			jteOutput.writeContent(" class=\"");
+			jteOutput.setContext("span", "class");
+			jteOutput.writeUserContent(__jte_html_attribute_4);
+			jteOutput.setContext("span", null);
+			jteOutput.writeContent("\"");
+		}
+		jteOutput.writeContent("></span>\n        <span class=\"text-sm font-medium\">");
+		jteOutput.setContext("span", null);
+		jteOutput.writeUserContent(node.getName());
+		jteOutput.writeContent("</span>\n        <span class=\"text-xs uppercase px-2 py-0.5 rounded bg-gray-100\">");
+		jteOutput.setContext("span", null);
+		jteOutput.writeUserContent(node.getStatus().name().replace("_", "-"));
+		jteOutput.writeContent("</span>\n        ");
+		if ((node.getStatus() == DiffNode.DiffStatus.MOVED || node.getStatus() == DiffNode.DiffStatus.MOVED_MODIFIED) && node.getSourcePath() != null) {
+			jteOutput.writeContent("\n            <span class=\"text-[10px] text-gray-400 font-normal\">from ");
+			jteOutput.setContext("span", null);
+			jteOutput.writeUserContent(node.getSourcePath());
+			jteOutput.writeContent("</span>\n        ");
+		}
+		jteOutput.writeContent("\n    </div>\n    ");
+		List<DiffNode> children = node.getChildren();
+		jteOutput.writeContent("\n    ");
+		if (!children.isEmpty()) {
+			jteOutput.writeContent("\n        <ul class=\"ml-6 border-l border-gray-200 pl-4 mt-1 space-y-1\">\n            ");
+			for (DiffNode child : children) {
+				jteOutput.writeContent("\n                ");
+				gg.jte.generated.ondemand.JtediffNodeGenerated.render(jteOutput, jteHtmlInterceptor, leftPath, rightPath, child);
+				jteOutput.writeContent("\n            ");
+			}
+			jteOutput.writeContent("\n        </ul>\n    ");
+		}
+		jteOutput.writeContent("\n</li>\n");
+	}
+	public static void renderMap(gg.jte.html.HtmlTemplateOutput jteOutput, gg.jte.html.HtmlInterceptor jteHtmlInterceptor, java.util.Map<String, Object> params) {
+		String leftPath = (String)params.get("leftPath");
+		String rightPath = (String)params.get("rightPath");
+		DiffNode node = (DiffNode)params.get("node");
+		render(jteOutput, jteHtmlInterceptor, leftPath, rightPath, node);
+	}
+}
@@ -0,0 +1,18 @@
+package gg.jte.generated.ondemand;
+@SuppressWarnings("unchecked")
+public final class JtedirectorySelectorGenerated {
+	public static final String JTE_NAME = "directorySelector.jte";
+	public static final int[] JTE_LINE_INFO = {13,13,13,13,13,13,13,35,59,74,90,115,150,150,150,150,150,150};
+	public static void render(gg.jte.html.HtmlTemplateOutput jteOutput, gg.jte.html.HtmlInterceptor jteHtmlInterceptor) {
+		jteOutput.writeContent("<div id=\"directory-modal\" class=\"hidden fixed inset-0 bg-gray-600 bg-opacity-50 overflow-y-auto h-full w-full z-50\">\n    <div class=\"relative top-20 mx-auto p-5 border w-1/2 shadow-lg rounded-md bg-white\">\n        <div class=\"mt-3\">\n            <h3 class=\"text-lg leading-6 font-medium text-gray-900\" id=\"modal-title\">Select Directory</h3>\n            <div class=\"mt-2 px-7 py-3\">\n                <div class=\"flex items-center space-x-2 mb-4\">\n                    <button onclick=\"goUp()\" class=\"p-2 bg-gray-200 rounded hover:bg-gray-300\">\n                        <svg class=\"w-5 h-5\" fill=\"none\" stroke=\"currentColor\" viewBox=\"0 0 24 24\"><path stroke-linecap=\"round\" stroke-linejoin=\"round\" stroke-width=\"2\" d=\"M12 19V5\"></path><path d=\"M5 10l7-7m0 0l7 7m-7-7v18\"></path></svg>\n                    </button>\n                    <input type=\"text\" id=\"current-path-display\" class=\"flex-grow p-2 border rounded bg-gray-100\" readonly>\n                    <input type=\"text\" id=\"directory-filter\" class=\"w-40 p-2 border rounded\" placeholder=\"Filter...\">\n                </div>\n                <div id=\"directory-list\" class=\"max-h-60 overflow-y-auto border rounded p-2\">\n                    ");
+		jteOutput.writeContent("\n                </div>\n            </div>\n            <div class=\"items-center px-4 py-3 flex justify-end space-x-3\">\n                <button id=\"cancel-btn\" class=\"px-4 py-2 bg-gray-300 text-black rounded hover:bg-gray-400\">Cancel</button>\n                <button id=\"select-btn\" class=\"px-4 py-2 bg-blue-500 text-white rounded hover:bg-blue-600\">Select</button>\n            </div>\n        </div>\n    </div>\n</div>\n\n<script>\n    let currentPath = \"\";\n    let targetInputId = \"\";\n\n    function openDirectorySelector(inputId) {\n        targetInputId = inputId;\n        currentPath = document.getElementById(inputId).value || \"\";\n        document.getElementById('directory-modal').classList.remove('hidden');\n        loadDirectories(currentPath);\n    }\n\n    ");
+		jteOutput.writeContent("\n    let nextCursor = null;\n    let loadingPage = false;\n    let listingRequest = 0;\n\n    async function loadDirectories(path) {\n        document.getElementById('directory-filter').value = '';\n        document.getElementById('directory-list').innerHTML = '';\n        nextCursor = null;\n        if (typeof showLoading === 'function') showLoading();\n        try {\n            await loadPage(path, ++listingRequest);\n        } finally {\n            if (typeof hideLoading === 'function') hideLoading();\n        }\n    }\n\n    async function loadPage(path, request) {\n        loadingPage = true;\n        try {\n            let url = '/api/ls?path=' + encodeURIComponent(path) + '&prefix=' + encodeURIComponent(document.getElementById('directory-filter').value);\n            if (nextCursor) url += '&cursor=' + encodeURIComponent(nextCursor);\n            const response = await fetch(url);\n            const listing = await response.json();\n            ");
+		jteOutput.writeContent("\n            if (request !== listingRequest) return;\n\n            if (!path) currentPath = listing.path;\n            document.getElementById('current-path-display').value = listing.path;\n\n            const listContainer = document.getElementById('directory-list');\n            listing.items.forEach(dir => {\n                const div = document.createElement('div');\n                div.className = \"flex items-center p-2 hover:bg-blue-50 cursor-pointer rounded\";\n                div.onclick = () => {\n                    currentPath = dir.path;\n                    if (dir.isDirectory) {\n                        loadDirectories(currentPath);\n                    } else {\n                        ");
+		jteOutput.writeContent("\n                        listContainer.querySelectorAll('.bg-blue-100').forEach(item => item.classList.remove('bg-blue-100'));\n                        div.classList.add('bg-blue-100');\n                        document.getElementById('current-path-display').value = currentPath;\n                    }\n                };\n                const name = document.createElement('span');\n                name.textContent = dir.name;\n                div.innerHTML = dir.isDirectory ? '<span class=\"mr-2\">📁</span>' : '<span class=\"mr-2\">📄</span>';\n                div.appendChild(name);\n                listContainer.appendChild(div);\n            });\n            nextCursor = listing.nextCursor;\n        } finally {\n            loadingPage = false;\n        }\n        ");
+		jteOutput.writeContent("\n        if (request === listingRequest) fillDirectoryList(path, request);\n    }\n\n    function fillDirectoryList(path, request) {\n        const list = document.getElementById('directory-list');\n        if (nextCursor && !loadingPage && list.scrollTop + list.clientHeight >= list.scrollHeight - 100) {\n            loadPage(path, request);\n        }\n    }\n\n    document.getElementById('directory-list').addEventListener('scroll', () => fillDirectoryList(currentPath, listingRequest));\n\n    let filterTimer = null;\n    document.getElementById('directory-filter').addEventListener('input', () => {\n        clearTimeout(filterTimer);\n        filterTimer = setTimeout(() => {\n            document.getElementById('directory-list').innerHTML = '';\n            nextCursor = null;\n            loadPage(currentPath, ++listingRequest);\n        }, 200);\n    });\n\n    function goUp() {\n        if (!currentPath) return;\n        ");
+		jteOutput.writeContent("\n        const separator = currentPath.includes('\\\\') ? '\\\\' : '/';\n        const parts = currentPath.split(separator);\n        \n        // Remove trailing empty part if path ends with slash\n        if (parts.length > 0 && parts[parts.length - 1] === \"\") {\n            parts.pop();\n        }\n        \n        if (parts.length > 1) {\n            parts.pop();\n            currentPath = parts.join(separator);\n            // If we're on Unix and it's empty, it should be /\n            if (currentPath === \"\" && separator === '/') currentPath = \"/\";\n            // On Windows, if we have \"C:\", we should keep it as \"C:\\\" or \"C:\"\n            if (currentPath.endsWith(\":\") && separator === '\\\\') currentPath += \"\\\\\";\n        } else {\n            // Root reached\n            currentPath = separator === '\\\\' ? currentPath : \"/\";\n        }\n        loadDirectories(currentPath);\n    }\n\n    document.getElementById('cancel-btn').onclick = () => {\n        document.getElementById('directory-modal').classList.add('hidden');\n    };\n\n    document.getElementById('select-btn').onclick = () => {\n        document.getElementById(targetInputId).value = currentPath;\n        if (typeof onDirectorySelected === 'function') {\n            onDirectorySelected(targetInputId, currentPath);\n        }\n        document.getElementById('directory-modal').classList.add('hidden');\n    };\n</script>\n");
+	}
+	public static void renderMap(gg.jte.html.HtmlTemplateOutput jteOutput, gg.jte.html.HtmlInterceptor jteHtmlInterceptor, java.util.Map<String, Object> params) {
+		render(jteOutput, jteHtmlInterceptor);
+	}
+}
@@ -0,0 +1,190 @@
+package gg.jte.generated.ondemand;
+import one.dastec.jcompare.model.StructureChange;
+import one.dastec.jcompare.model.StructureDiff;
+import one.dastec.jcompare.service.BinaryDelta;
+import one.dastec.jcompare.service.HunkIndex;
+import java.util.List;
+@SuppressWarnings("unchecked")
+public final class JtefileDiffGenerated {
+	public static final String JTE_NAME = "fileDiff.jte";
+	public static final int[] JTE_LINE_INFO = {0,0,1,2,3,4,5,5,5,5,11,11,29,45,45,45,46,46,46,51,51,51,55,55,55,59,59,59,63,63,63,69,69,70,70,70,70,70,72,72,72,73,73,73,74,74,74,75,75,75,76,76,76,77,77,77,78,78,80,80,84,84,85,85,85,85,86,86,86,87,87,87,88,88,88,89,89,90,90,90,90,90,90,90,91,91,93,93,97,97,99,99,102,102,102,102,102,102,103,103,103,103,103,103,106,106,106,107,107,107,108,108,108,109,109,109,109,109,109,117,117,119,119,119,120,120,120,121,121,121,123,123,126,126,127,127,127,128,128,131,131,134,134,134,136,136,136,148,148,150,150,152,153,154,154,154,155,155,155,155,155,155,155,155,155,155,155,155,155,161,161,161,189,190,319,333,378,378,381,381,381,5,6,7,8,9,10,10,10,10};
+	public static void render(gg.jte.html.HtmlTemplateOutput jteOutput, gg.jte.html.HtmlInterceptor jteHtmlInterceptor, String leftPath, String rightPath, String relativePath, String fileName, HunkIndex hunkIndex, StructureDiff structureDiff) {
+		BinaryDelta binary = hunkIndex.fileDiff().binary();
+		jteOutput.writeContent("\n\n<!DOCTYPE html>\n<html lang=\"en\">\n<head>\n    <meta charset=\"UTF-8\">\n    <title>JCompare - File Difference</title>\n    <script src=\"https://cdn.tailwindcss.com\"></script>\n    <link rel=\"stylesheet\" href=\"https://cdnjs.cloudflare.com/ajax/libs/prism/1.29.0/themes/prism.min.css\">\n    <script src=\"https://cdnjs.cloudflare.com/ajax/libs/prism/1.29.0/prism.min.js\"></script>\n    <script src=\"https://cdnjs.cloudflare.com/ajax/libs/prism/1.29.0/plugins/autoloader/prism-autoloader.min.js\"></script>\n    <style>\n        .line-added { background-color: #d1fae5; }\n        .line-removed { background-color: #fee2e2; }\n        .line-modified { background-color: #fef3c7; }\n        .inline-removed { background-color: #fca5a5; border-radius: 2px; }\n        .inline-added { background-color: #86efac; border-radius: 2px; }\n        .line-number { color: #9ca3af; text-align: right; width: 3rem; padding-right: 1rem; user-select: none; }\n        ");
+		jteOutput.writeContent("\n        pre { margin: 0 !important; padding: 0 !important; line-height: 1.1 !important; border-radius: 0 !important; background: transparent !important; }\n        code { display: block; white-space: pre; font-family: ui-monospace, SFMono-Regular, Menlo, Monaco, Consolas, \"Liberation Mono\", \"Courier New\", monospace !important; font-size: 0.875rem !important; line-height: 1.1 !important; padding: 0 !important; }\n        .diff-row { position: absolute; left: 0; right: 0; height: 18px; display: grid; grid-template-columns: 3.5rem 1fr 3.5rem 1fr; }\n        .diff-row > div { overflow: hidden; }\n        .diff-row .line-number { padding-top: 2px; font-size: 0.75rem; border-right: 1px solid #f3f4f6; }\n        .diff-row .left-code { border-right: 1px solid #e5e7eb; }\n        .diff-row code { padding: 2px 0.5rem !important; }\n        .diff-fold { background-color: #eff6ff; color: #2563eb; font-size: 0.75rem; cursor: pointer; display: block; text-align: center; padding-top: 1px; }\n        .diff-fold:hover { background-color: #dbeafe; }\n    </style>\n</head>\n<body class=\"bg-gray-100 min-h-screen font-sans text-gray-900\">\n    <div class=\"max-w-full mx-auto p-2\">\n        <header class=\"mb-4 border-b border-gray-300 pb-2 flex justify-between items-center\">\n            <div>\n                <h1 class=\"text-2xl font-bold text-blue-800\">File Diff: ");
+		jteOutput.setContext("h1", null);
+		jteOutput.writeUserContent(fileName);
+		jteOutput.writeContent("</h1>\n                <p class=\"text-sm text-gray-600\">");
+		jteOutput.setContext("p", null);
+		jteOutput.writeUserContent(relativePath);
+		jteOutput.writeContent("</p>\n            </div>\n            <div class=\"flex space-x-6 text-sm\">\n                <div class=\"flex flex-col items-center\">\n                    <span class=\"text-gray-500 font-semibold uppercase text-xs\">Added</span>\n                    <span class=\"text-green-600 font-bold\">");
+		jteOutput.setContext("span", null);
+		jteOutput.writeUserContent(hunkIndex.fileDiff().added());
+		jteOutput.writeContent("</span>\n                </div>\n                <div class=\"flex flex-col items-center\">\n                    <span class=\"text-gray-500 font-semibold uppercase text-xs\">Removed</span>\n                    <span class=\"text-red-600 font-bold\">");
+		jteOutput.setContext("span", null);
+		jteOutput.writeUserContent(hunkIndex.fileDiff().removed());
+		jteOutput.writeContent("</span>\n                </div>\n                <div class=\"flex flex-col items-center\">\n                    <span class=\"text-gray-500 font-semibold uppercase text-xs\">Modified</span>\n                    <span class=\"text-amber-600 font-bold\">");
+		jteOutput.setContext("span", null);
+		jteOutput.writeUserContent(hunkIndex.fileDiff().modified());
+		jteOutput.writeContent("</span>\n                </div>\n                <div class=\"flex flex-col items-center\">\n                    <span class=\"text-gray-500 font-semibold uppercase text-xs\">Difference</span>\n                    <span class=\"text-blue-600 font-bold\">");
+		jteOutput.setContext("span", null);
+		jteOutput.writeUserContent(String.format("%.1f%%", hunkIndex.fileDiff().percentage()));
+		jteOutput.writeContent("</span>\n                </div>\n            </div>\n            <button onclick=\"parent.closeDiffModal()\" class=\"bg-gray-200 hover:bg-gray-300 text-gray-800 px-4 py-2 rounded transition-colors\">Close</button>\n        </header>\n\n        ");
+		if (structureDiff != null && !structureDiff.changes().isEmpty()) {
+			jteOutput.writeContent("\n            <details class=\"mb-4 bg-white shadow-md rounded-lg border border-gray-200 text-sm\"");
+			var __jte_html_attribute_0 = !structureDiff.isEquivalent();
+			if (__jte_html_attribute_0) {
+			jteOutput.writeContent(" open");
+			}
+			jteOutput.writeContent(">\n                <summary class=\"p-2 cursor-pointer font-semibold text-gray-700\">\n                    Structure (");
+			jteOutput.setContext("summary", null);
+			jteOutput.writeUserContent(structureDiff.format());
+			jteOutput.writeContent("):\n                    <span class=\"text-green-600\">");
+			jteOutput.setContext("span", null);
+			jteOutput.writeUserContent(structureDiff.count(StructureChange.ChangeType.ADDED));
+			jteOutput.writeContent(" added</span>,\n                    <span class=\"text-red-600\">");
+			jteOutput.setContext("span", null);
+			jteOutput.writeUserContent(structureDiff.count(StructureChange.ChangeType.REMOVED));
+			jteOutput.writeContent(" removed</span>,\n                    <span class=\"text-amber-600\">");
+			jteOutput.setContext("span", null);
+			jteOutput.writeUserContent(structureDiff.count(StructureChange.ChangeType.CHANGED));
+			jteOutput.writeContent(" changed</span>,\n                    <span class=\"text-purple-600\">");
+			jteOutput.setContext("span", null);
+			jteOutput.writeUserContent(structureDiff.count(StructureChange.ChangeType.REORDERED));
+			jteOutput.writeContent(" reordered</span>,\n                    <span class=\"text-gray-500\">");
+			jteOutput.setContext("span", null);
+			jteOutput.writeUserContent(structureDiff.unchanged());
+			jteOutput.writeContent(" unchanged</span>\n                    ");
+			if (structureDiff.isEquivalent()) {
+				jteOutput.writeContent("\n                        <span class=\"ml-2 text-xs uppercase px-2 py-0.5 rounded bg-gray-100\">equivalent</span>\n                    ");
+			}
+			jteOutput.writeContent("\n                </summary>\n                <div class=\"max-h-60 overflow-y-auto border-t border-gray-200\">\n                    <table class=\"w-full text-xs\">\n                        ");
+			for (StructureChange change : structureDiff.changes()) {
+				jteOutput.writeContent("\n                            <tr class=\"line-");
+				jteOutput.setContext("tr", "class");
+				jteOutput.writeUserContent(change.type() == StructureChange.ChangeType.REORDERED ? "identical" : change.type().name().toLowerCase());
+				jteOutput.setContext("tr", null);
+				jteOutput.writeContent("\">\n                                <td class=\"px-2 py-0.5 whitespace-nowrap font-semibold\">");
+				jteOutput.setContext("td", null);
+				jteOutput.writeUserContent(change.type().name());
+				jteOutput.writeContent("</td>\n                                <td class=\"px-2 py-0.5 whitespace-nowrap text-gray-500\">");
+				jteOutput.setContext("td", null);
+				jteOutput.writeUserContent(change.kind());
+				jteOutput.writeContent("</td>\n                                <td class=\"px-2 py-0.5 font-mono\">");
+				jteOutput.setContext("td", null);
+				jteOutput.writeUserContent(change.path());
+				jteOutput.writeContent("</td>\n                                ");
+				if (!"java".equals(structureDiff.format())) {
+					jteOutput.writeContent("\n                                    <td class=\"px-2 py-0.5 font-mono text-gray-600\">");
+					jteOutput.setContext("td", null);
+					jteOutput.writeUserContent(change.left() != null ? change.left() : "");
+					jteOutput.setContext("td", null);
+					jteOutput.writeUserContent(change.type() == StructureChange.ChangeType.CHANGED ? " → " : "");
+					jteOutput.setContext("td", null);
+					jteOutput.writeUserContent(change.right() != null ? change.right() : "");
+					jteOutput.writeContent("</td>\n                                ");
+				}
+				jteOutput.writeContent("\n                            </tr>\n                        ");
+			}
+			jteOutput.writeContent("\n                    </table>\n                </div>\n            </details>\n        ");
+		}
+		jteOutput.writeContent("\n\n        ");
+		if (binary != null) {
+			jteOutput.writeContent("\n        <main class=\"bg-white shadow-md rounded-lg overflow-hidden border border-gray-200\">\n            <div class=\"grid grid-cols-2 bg-gray-50 border-b border-gray-200 font-semibold text-sm\">\n                <div class=\"p-2 border-r border-gray-200\">Left: ");
+			jteOutput.setContext("div", null);
+			jteOutput.writeUserContent(leftPath);
+			jteOutput.writeContent(" <span class=\"font-normal text-gray-500\">(");
+			jteOutput.setContext("span", null);
+			jteOutput.writeUserContent(binary.leftSize());
+			jteOutput.writeContent(" bytes)</span></div>\n                <div class=\"p-2\">Right: ");
+			jteOutput.setContext("div", null);
+			jteOutput.writeUserContent(rightPath);
+			jteOutput.writeContent(" <span class=\"font-normal text-gray-500\">(");
+			jteOutput.setContext("span", null);
+			jteOutput.writeUserContent(binary.rightSize());
+			jteOutput.writeContent(" bytes)</span></div>\n            </div>\n            <div class=\"p-3 text-sm border-b border-gray-200\">\n                Binary files: <span class=\"font-semibold text-amber-600\">");
+			jteOutput.setContext("span", null);
+			jteOutput.writeUserContent(binary.bytesChanged());
+			jteOutput.writeContent(" bytes changed</span>\n                in ");
+			jteOutput.setContext("div", null);
+			jteOutput.writeUserContent(binary.rangeCount());
+			jteOutput.writeContent(" range(s);\n                <span class=\"font-semibold text-green-600\">");
+			jteOutput.setContext("span", null);
+			jteOutput.writeUserContent(String.format("%.1f%%", binary.reusedPercentage()));
+			jteOutput.writeContent("</span>\n                of ");
+			jteOutput.setContext("div", null);
+			jteOutput.writeUserContent(binary.blockCount());
+			jteOutput.writeContent(" blocks of ");
+			jteOutput.setContext("div", null);
+			jteOutput.writeUserContent(binary.blockSize());
+			jteOutput.writeContent(" bytes reused.\n            </div>\n            <div class=\"overflow-auto\" style=\"max-height: calc(100vh - 14rem);\">\n                <table class=\"w-full text-xs font-mono\">\n                    <thead class=\"bg-gray-50 text-gray-500 uppercase sticky top-0\">\n                        <tr><th class=\"px-3 py-1 text-left\">From</th><th class=\"px-3 py-1 text-left\">To</th><th class=\"px-3 py-1 text-right\">Length</th></tr>\n                    </thead>\n                    <tbody>\n                        ");
+			for (BinaryDelta.Range range : binary.ranges()) {
+				jteOutput.writeContent("\n                            <tr class=\"line-modified border-b border-white\">\n                                <td class=\"px-3 py-0.5\">");
+				jteOutput.setContext("td", null);
+				jteOutput.writeUserContent(String.format("0x%08X", range.from()));
+				jteOutput.writeContent("</td>\n                                <td class=\"px-3 py-0.5\">");
+				jteOutput.setContext("td", null);
+				jteOutput.writeUserContent(String.format("0x%08X", range.to()));
+				jteOutput.writeContent("</td>\n                                <td class=\"px-3 py-0.5 text-right\">");
+				jteOutput.setContext("td", null);
+				jteOutput.writeUserContent(range.length());
+				jteOutput.writeContent("</td>\n                            </tr>\n                        ");
+			}
+			jteOutput.writeContent("\n                    </tbody>\n                </table>\n                ");
+			if (binary.rangeCount() > binary.ranges().size()) {
+				jteOutput.writeContent("\n                    <p class=\"p-2 text-xs text-gray-500\">… and ");
+				jteOutput.setContext("p", null);
+				jteOutput.writeUserContent(binary.rangeCount() - binary.ranges().size());
+				jteOutput.writeContent(" more ranges</p>\n                ");
+			}
+			jteOutput.writeContent("\n            </div>\n        </main>\n        ");
+		} else {
+			jteOutput.writeContent("\n        <main class=\"bg-white shadow-md rounded-lg overflow-hidden border border-gray-200\">\n            <div class=\"grid grid-cols-2 bg-gray-50 border-b border-gray-200 font-semibold text-sm\">\n                <div class=\"p-2 border-r border-gray-200\">Left: ");
+			jteOutput.setContext("div", null);
+			jteOutput.writeUserContent(leftPath);
+			jteOutput.writeContent("</div>\n                <div class=\"p-2 flex justify-between items-center\">\n                    <span>Right: ");
+			jteOutput.setContext("span", null);
+			jteOutput.writeUserContent(rightPath);
+			jteOutput.writeContent("</span>\n                    <span class=\"space-x-1 font-normal text-xs\">\n                        <span id=\"changePosition\" class=\"text-gray-500 mr-2\"></span>\n                        <button onclick=\"gotoChange(-1)\" title=\"Previous change (p)\" class=\"bg-gray-200 hover:bg-gray-300 px-2 py-0.5 rounded\">&uarr; Prev</button>\n                        <button onclick=\"gotoChange(1)\" title=\"Next change (n)\" class=\"bg-gray-200 hover:bg-gray-300 px-2 py-0.5 rounded\">&darr; Next</button>\n                    </span>\n                </div>\n            </div>\n            <div id=\"viewport\" class=\"overflow-auto\" style=\"height: calc(100vh - 11rem);\">\n                <div id=\"spacer\" class=\"relative\"></div>\n            </div>\n        </main>\n        ");
+		}
+		jteOutput.writeContent("\n    </div>\n    ");
+		if (binary == null) {
+			jteOutput.writeContent("\n    <script>\n        ");
+			jteOutput.writeContent("\n        ");
+			jteOutput.writeContent("\n        const DIFF_ID = \"");
+			jteOutput.setContext("script", null);
+			jteOutput.writeUserContent(hunkIndex.id());
+			jteOutput.writeContent("\";\n        const HUNKS = [");
+			for (HunkIndex.Hunk hunk : hunkIndex.hunks()) {
+				jteOutput.writeContent("[");
+				jteOutput.setContext("script", null);
+				jteOutput.writeUserContent(hunk.from());
+				jteOutput.writeContent(", ");
+				jteOutput.setContext("script", null);
+				jteOutput.writeUserContent(hunk.to());
+				jteOutput.writeContent(", ");
+				jteOutput.setContext("script", null);
+				jteOutput.writeUserContent(hunk.changed());
+				jteOutput.writeContent("],");
+			}
+			jteOutput.writeContent("];\n        const ROW_HEIGHT = 18;\n        const PAGE_SIZE = 200;\n        const CONTEXT = 3;\n        const OVERSCAN = 20;\n\n        const fileName = \"");
+			jteOutput.setContext("script", null);
+			jteOutput.writeUserContent(fileName);
+			jteOutput.writeContent("\";\n        let lang = \"java\";\n        if (fileName.endsWith(\".xml\")) lang = \"xml\";\n        if (fileName.endsWith(\".json\")) lang = \"json\";\n        if (fileName.endsWith(\".yaml\") || fileName.endsWith(\".yml\")) lang = \"yaml\";\n        if (fileName.endsWith(\".properties\")) lang = \"properties\";\n\n        const pages = new Map();\n        const inlineDiffs = new Map();\n        const requestedInline = new Set();\n        const expandedFolds = new Set();\n        let segments = [];\n        let displayRows = 0;\n        let currentChange = -1;\n\n        document.addEventListener('DOMContentLoaded', () => {\n            buildSegments();\n            const viewport = document.getElementById('viewport');\n            viewport.addEventListener('scroll', () => window.requestAnimationFrame(render));\n            window.addEventListener('resize', render);\n            document.addEventListener('keydown', event => {\n                if (event.target.tagName === 'INPUT') return;\n                if (event.key === 'n') gotoChange(1);\n                if (event.key === 'p') gotoChange(-1);\n            });\n            render();\n        });\n\n        ");
+			jteOutput.writeContent("\n        ");
+			jteOutput.writeContent("\n        function buildSegments() {\n            segments = [];\n            let row = 0;\n            const push = (type, from, to) => {\n                if (to <= from) return;\n                segments.push({type: type, from: from, to: to, row: row});\n                row += type === 'fold' ? 1 : to - from;\n            };\n            HUNKS.forEach(([from, to, changed], index) => {\n                const keepBefore = index > 0 ? CONTEXT : 0;\n                const keepAfter = index < HUNKS.length - 1 ? CONTEXT : 0;\n                if (changed || expandedFolds.has(from) || to - from <= keepBefore + keepAfter + 1) {\n                    push('lines', from, to);\n                } else {\n                    push('lines', from, from + keepBefore);\n                    push('fold', from + keepBefore, to - keepAfter);\n                    push('lines', to - keepAfter, to);\n                }\n            });\n            displayRows = row;\n            document.getElementById('spacer').style.height = (displayRows * ROW_HEIGHT) + 'px';\n        }\n\n        function segmentAt(row) {\n            let low = 0;\n            let high = segments.length - 1;\n            while (low < high) {\n                const mid = (low + high + 1) >>> 1;\n                if (segments[mid].row <= row) low = mid; else high = mid - 1;\n            }\n            return segments[low];\n        }\n\n        function lineToRow(line) {\n            for (const segment of segments) {\n                if (line < segment.to) {\n                    return segment.type === 'fold' ? segment.row : segment.row + Math.max(0, line - segment.from);\n                }\n            }\n            return displayRows - 1;\n        }\n\n        function render() {\n            const viewport = document.getElementById('viewport');\n            const spacer = document.getElementById('spacer');\n            if (displayRows === 0) {\n                spacer.innerHTML = '<div class=\"p-4 text-sm text-gray-500\">No content</div>';\n                return;\n            }\n            const first = Math.max(0, Math.floor(viewport.scrollTop / ROW_HEIGHT) - OVERSCAN);\n            const last = Math.min(displayRows, Math.ceil((viewport.scrollTop + viewport.clientHeight) / ROW_HEIGHT) + OVERSCAN);\n            const fragment = document.createDocumentFragment();\n            const modified = [];\n            for (let row = first; row < last; row++) {\n                const segment = segmentAt(row);\n                if (segment.type === 'fold') {\n                    fragment.appendChild(foldRow(segment, row));\n                    continue;\n                }\n                const line = segment.from + row - segment.row;\n                const data = lineData(line);\n                fragment.appendChild(lineRow(line, data, row));\n                if (data && data.status === 'MODIFIED') modified.push(line);\n            }\n            spacer.replaceChildren(fragment);\n            requestInlineDiffs(modified);\n        }\n\n        function foldRow(segment, row) {\n            const element = document.createElement('div');\n            element.className = 'diff-row';\n            element.style.top = (row * ROW_HEIGHT) + 'px';\n            const label = document.createElement('span');\n            label.className = 'diff-fold';\n            label.style.gridColumn = '1 / span 4';\n            label.textContent = '\\u22EF ' + (segment.to - segment.from) + ' identical lines (' + (segment.from + 1) + '\\u2013' + segment.to + ') \\u22EF';\n            label.onclick = () => {\n                const hunk = HUNKS.find(([from, to]) => from <= segment.from && segment.from < to);\n                expandedFolds.add(hunk[0]);\n                buildSegments();\n                render();\n            };\n            element.appendChild(label);\n            return element;\n        }\n\n        function lineRow(line, data, row) {\n            const element = document.createElement('div');\n            element.className = 'diff-row line-' + (data ? data.status.toLowerCase() : 'identical');\n            element.style.top = (row * ROW_HEIGHT) + 'px';\n            element.dataset.line = line;\n            const present = side => data && data[side] !== null;\n            element.appendChild(numberCell(present('left') ? line + 1 : ''));\n            element.appendChild(codeCell('l-' + line, data ? data.left : '', 'left-code', present('left')));\n            element.appendChild(numberCell(present('right') ? line + 1 : ''));\n            element.appendChild(codeCell('r-' + line, data ? data.right : '', 'right-code', present('right')));\n            const lineDiff = inlineDiffs.get(line);\n            if (lineDiff) {\n                applySegments(element.querySelector('#l-' + line + ' code'), lineDiff.left, 'inline-removed');\n                applySegments(element.querySelector('#r-' + line + ' code'), lineDiff.right, 'inline-added');\n            }\n            return element;\n        }\n\n        function numberCell(text) {\n            const cell = document.createElement('div');\n            cell.className = 'line-number';\n            cell.textContent = text;\n            return cell;\n        }\n\n        function codeCell(id, text, className, present) {\n            const cell = document.createElement('div');\n            cell.id = id;\n            cell.className = className + (present ? '' : ' bg-gray-50');\n            if (present) {\n                cell.title = text;\n                const pre = document.createElement('pre');\n                const code = document.createElement('code');\n                code.className = 'language-' + lang;\n                code.textContent = text;\n                pre.appendChild(code);\n                cell.appendChild(pre);\n                Prism.highlightElement(code);\n            }\n            return cell;\n        }\n\n        ");
+			jteOutput.writeContent("\n        function lineData(line) {\n            const page = Math.floor(line / PAGE_SIZE);\n            const rows = pages.get(page);\n            if (Array.isArray(rows)) return rows[line - page * PAGE_SIZE];\n            if (!rows) {\n                pages.set(page, fetch('/api/diff/' + DIFF_ID + '/lines?from=' + (page * PAGE_SIZE) + '&to=' + ((page + 1) * PAGE_SIZE))\n                    .then(response => response.ok ? response.json() : Promise.reject(response.status))\n                    .then(loaded => { pages.set(page, loaded); render(); })\n                    .catch(() => pages.delete(page)));\n            }\n            return null;\n        }\n\n        ");
+			jteOutput.writeContent("\n        function requestInlineDiffs(lines) {\n            let from = -1;\n            let to = -1;\n            lines.filter(line => !requestedInline.has(line)).forEach(line => {\n                requestedInline.add(line);\n                if (line === to) {\n                    to++;\n                } else {\n                    if (from >= 0) loadInlineDiff(from, to);\n                    from = line;\n                    to = line + 1;\n                }\n            });\n            if (from >= 0) loadInlineDiff(from, to);\n        }\n\n        function gotoChange(direction) {\n            const changes = HUNKS.filter(hunk => hunk[2]);\n            if (changes.length === 0) return;\n            currentChange = Math.min(changes.length - 1, Math.max(0, currentChange + direction));\n            const viewport = document.getElementById('viewport');\n            viewport.scrollTop = Math.max(0, (lineToRow(changes[currentChange][0]) - CONTEXT) * ROW_HEIGHT);\n            document.getElementById('changePosition').textContent = 'Change ' + (currentChange + 1) + ' of ' + changes.length;\n        }\n\n        async function loadInlineDiff(from, to) {\n            const response = await fetch('/api/inline-diff' + window.location.search + '&from=' + from + '&to=' + to);\n            if (!response.ok) return;\n            const lineDiffs = await response.json();\n            lineDiffs.forEach(lineDiff => inlineDiffs.set(lineDiff.line, lineDiff));\n            render();\n        }\n\n        function applySegments(code, segments, changedClass) {\n            if (!code) return;\n            code.innerHTML = segments.map(segment => segment.changed\n                ? '<span class=\"' + changedClass + '\">' + escapeHtml(segment.text) + '</span>'\n                : escapeHtml(segment.text)).join('');\n        }\n\n        function escapeHtml(text) {\n            return text.replace(/&/g, '&amp;').replace(/</g, '&lt;').replace(/>/g, '&gt;').replace(/\"/g, '&quot;');\n        }\n    </script>\n    ");
+		}
+		jteOutput.writeContent("\n</body>\n</html>\n");
+	}
+	public static void renderMap(gg.jte.html.HtmlTemplateOutput jteOutput, gg.jte.html.HtmlInterceptor jteHtmlInterceptor, java.util.Map<String, Object> params) {
+		String leftPath = (String)params.get("leftPath");
+		String rightPath = (String)params.get("rightPath");
+		String relativePath = (String)params.get("relativePath");
+		String fileName = (String)params.get("fileName");
+		HunkIndex hunkIndex = (HunkIndex)params.get("hunkIndex");
+		StructureDiff structureDiff = (StructureDiff)params.get("structureDiff");
+		render(jteOutput, jteHtmlInterceptor, leftPath, rightPath, relativePath, fileName, hunkIndex, structureDiff);
+	}
+}
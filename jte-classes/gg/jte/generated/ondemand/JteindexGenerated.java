@@ -0,0 +1,384 @@
+package gg.jte.generated.ondemand;
+import one.dastec.jcompare.model.CompareOptions;
+import one.dastec.jcompare.model.DiffNode;
+import one.dastec.jcompare.service.CompareService;
+import one.dastec.jcompare.service.ResultIndex;
+import java.util.List;
+@SuppressWarnings("unchecked")
+public final class JteindexGenerated {
+	public static final String JTE_NAME = "index.jte";
+	public static final int[] JTE_LINE_INFO = {0,0,1,2,3,4,5,5,5,5,69,69,69,69,69,69,69,69,69,69,77,77,77,77,77,77,77,77,77,89,89,89,89,89,93,93,93,93,93,102,102,102,102,102,106,106,106,106,106,110,110,110,110,110,114,114,114,114,114,118,118,118,118,118,122,122,122,122,122,131,131,131,131,131,131,131,131,131,132,132,132,132,132,136,136,136,136,136,139,139,139,139,139,139,139,139,139,150,150,154,154,155,155,155,155,155,155,155,155,156,156,157,157,162,162,165,165,167,167,167,170,170,172,172,173,173,173,173,173,173,173,173,173,173,173,173,173,175,175,175,175,175,175,175,175,175,177,177,177,177,177,177,177,177,177,180,180,180,180,180,180,180,180,180,181,181,181,181,181,181,181,181,181,185,185,186,186,186,186,186,186,187,187,188,188,188,189,189,192,192,195,195,205,205,205,205,205,206,206,206,206,206,207,207,207,207,207,208,208,208,208,208,209,209,209,209,209,210,210,210,210,210,211,211,211,211,211,220,220,220,220,220,221,221,221,221,221,222,222,222,222,222,223,223,223,223,223,224,224,224,224,224,225,225,225,225,225,236,236,237,237,238,238,238,238,239,239,239,239,239,239,239,239,239,240,240,240,240,240,240,240,240,240,241,241,241,241,241,241,241,241,241,242,242,242,242,242,242,242,242,242,244,244,244,246,246,248,248,250,250,252,252,254,254,256,256,258,258,260,260,262,262,262,262,263,263,263,264,264,265,265,265,266,266,268,268,268,269,269,269,270,270,270,271,271,271,273,273,276,276,279,279,282,282,285,285,293,293,294,294,319,330,353,387,392,402,410,415,426,426,426,5,6,7,8,9,10,11,12,13,14,14,14,14};
+	public static void render(gg.jte.html.HtmlTemplateOutput jteOutput, gg.jte.html.HtmlInterceptor jteHtmlInterceptor, String leftPath, String rightPath, String viewType, CompareOptions compareOptions, DiffNode diffResult, List<CompareService.DiffEntry> tableResult, String resultId, ResultIndex.Query resultQuery, int matchingRows, CompareOptions appliedOptions) {
+		jteOutput.writeContent("\n<!DOCTYPE html>\n<html lang=\"en\">\n<head>\n    <meta charset=\"UTF-8\">\n    <title>JCompare - Directory Comparison</title>\n    <script src=\"https://cdn.tailwindcss.com\"></script>\n    <style>\n        .status-added { color: #059669; }\n        .status-removed { color: #dc2626; }\n        .status-modified { color: #d97706; }\n        .status-identical { color: #374151; }\n        .status-moved, .status-moved_modified { color: #7c3aed; }\n        .folder::before { content: \"📁 \"; }\n        .file::before { content: \"📄 \"; }\n        .file-java::before { content: \"☕ \"; }\n        .file-xml::before { content: \"📜 \"; }\n        .file-json::before { content: \"{} \"; }\n        .file-yaml::before { content: \"🔑 \"; }\n        .file-properties::before { content: \"⚙️ \"; }\n        .spinner {\n            border: 4px solid rgba(0, 0, 0, 0.1);\n            width: 36px;\n            height: 36px;\n            border-radius: 50%;\n            border-left-color: #09f;\n            animation: spin 1s linear infinite;\n        }\n        @keyframes spin {\n            0% { transform: rotate(0deg); }\n            100% { transform: rotate(360deg); }\n        }\n    </style>\n</head>\n<body class=\"bg-gray-100 min-h-screen font-sans text-gray-900\">\n    <div id=\"loading-overlay\" class=\"hidden fixed inset-0 bg-gray-600 bg-opacity-50 flex items-center justify-center z-[100]\">\n        <div class=\"bg-white p-6 rounded-lg shadow-xl flex flex-col items-center\">\n            <div class=\"spinner mb-4\"></div>\n            <p class=\"text-gray-700 font-semibold\">Please wait...</p>\n        </div>\n    </div>\n\n    <div class=\"max-w-full mx-auto p-4 md:p-6\">\n        <header class=\"mb-6 border-b border-gray-300 pb-4\">\n            <h1 class=\"text-3xl font-bold text-blue-800\">JCompare</h1>\n            <p class=\"text-gray-600\">Compare Java applications (Maven/Ant) effortlessly.</p>\n        </header>\n        \n        <main class=\"bg-white shadow-md rounded-lg p-8\">\n            <form method=\"get\" action=\"/\" class=\"space-y-6\">\n                <div class=\"grid grid-cols-1 md:grid-cols-2 gap-6\">\n                    <div class=\"space-y-2\">\n                        <label for=\"leftPath\" class=\"block text-sm font-semibold text-gray-700\">Left Directory</label>\n                        <div class=\"flex\">\n                            <input type=\"text\" id=\"leftPath\" name=\"leftPath\"");
+		var __jte_html_attribute_0 = leftPath;
+		if (gg.jte.runtime.TemplateUtils.isAttributeRendered(__jte_html_attribute_0)) {
+			jteOutput.writeContent(" value=\"");
+			jteOutput.setContext("input", "value");
+			jteOutput.writeUserContent(__jte_html_attribute_0);
+			jteOutput.setContext("input", null);
+			jteOutput.writeContent("\"");
+		}
+		jteOutput.writeContent(" class=\"flex-grow p-2 border border-gray-300 rounded-l focus:outline-none bg-gray-50\" readonly>\n                            <button type=\"button\" onclick=\"openDirectorySelector('leftPath')\" class=\"bg-gray-200 hover:bg-gray-300 text-gray-800 px-4 py-2 border-t border-r border-b border-gray-300 transition-colors\">Select...</button>\n                            <button type=\"button\" onclick=\"downloadManifest('leftPath')\" title=\"Save a snapshot (.jcm) of this directory that can be compared later\" class=\"bg-gray-200 hover:bg-gray-300 text-gray-800 px-4 py-2 rounded-r border-t border-r border-b border-gray-300 transition-colors\">Snapshot</button>\n                        </div>\n                    </div>\n                    <div class=\"space-y-2\">\n                        <label for=\"rightPath\" class=\"block text-sm font-semibold text-gray-700\">Right Directory</label>\n                        <div class=\"flex\">\n                            <input type=\"text\" id=\"rightPath\" name=\"rightPath\"");
+		var __jte_html_attribute_1 = rightPath;
+		if (gg.jte.runtime.TemplateUtils.isAttributeRendered(__jte_html_attribute_1)) {
+			jteOutput.writeContent(" value=\"");
+			jteOutput.setContext("input", "value");
+			jteOutput.writeUserContent(__jte_html_attribute_1);
+			jteOutput.setContext("input", null);
+			jteOutput.writeContent("\"");
+		}
+		jteOutput.writeContent(" class=\"flex-grow p-2 border border-gray-300 rounded-l focus:outline-none bg-gray-50\" readonly>\n                            <button type=\"button\" onclick=\"openDirectorySelector('rightPath')\" class=\"bg-gray-200 hover:bg-gray-300 text-gray-800 px-4 py-2 border-t border-r border-b border-gray-300 transition-colors\">Select...</button>\n                            <button type=\"button\" onclick=\"downloadManifest('rightPath')\" title=\"Save a snapshot (.jcm) of this directory that can be compared later\" class=\"bg-gray-200 hover:bg-gray-300 text-gray-800 px-4 py-2 rounded-r border-t border-r border-b border-gray-300 transition-colors\">Snapshot</button>\n                        </div>\n                    </div>\n                </div>\n                \n                <div class=\"flex flex-col sm:flex-row items-center justify-between border-t border-gray-200 pt-6 space-y-4 sm:space-y-0\">\n                    <div class=\"flex items-center space-x-6\">\n                        <span class=\"text-sm font-semibold text-gray-700\">View Style:</span>\n                        <div class=\"flex items-center space-x-4\">\n                            <label class=\"inline-flex items-center cursor-pointer\">\n                                <input type=\"radio\" name=\"viewType\" value=\"tree\"");
+		var __jte_html_attribute_2 = "tree".equals(viewType);
+		if (__jte_html_attribute_2) {
+		jteOutput.writeContent(" checked");
+		}
+		jteOutput.writeContent(" class=\"form-radio text-blue-600 h-4 w-4\">\n                                <span class=\"ml-2 text-sm text-gray-700\">Tree View</span>\n                            </label>\n                            <label class=\"inline-flex items-center cursor-pointer\">\n                                <input type=\"radio\" name=\"viewType\" value=\"table\"");
+		var __jte_html_attribute_3 = "table".equals(viewType);
+		if (__jte_html_attribute_3) {
+		jteOutput.writeContent(" checked");
+		}
+		jteOutput.writeContent(" class=\"form-radio text-blue-600 h-4 w-4\">\n                                <span class=\"ml-2 text-sm text-gray-700\">Table View</span>\n                            </label>\n                        </div>\n                    </div>\n                    <div class=\"flex items-center space-x-6\">\n                        <span class=\"text-sm font-semibold text-gray-700\">Ignore:</span>\n                        <div class=\"flex items-center space-x-4\">\n                            <label class=\"inline-flex items-center cursor-pointer\">\n                                <input type=\"checkbox\" name=\"ignoreEol\" value=\"true\"");
+		var __jte_html_attribute_4 = compareOptions.ignoreEol();
+		if (__jte_html_attribute_4) {
+		jteOutput.writeContent(" checked");
+		}
+		jteOutput.writeContent(" class=\"compare-option form-checkbox text-blue-600 h-4 w-4\">\n                                <span class=\"ml-2 text-sm text-gray-700\">Line Endings</span>\n                            </label>\n                            <label class=\"inline-flex items-center cursor-pointer\">\n                                <input type=\"checkbox\" name=\"ignoreWhitespace\" value=\"true\"");
+		var __jte_html_attribute_5 = compareOptions.ignoreWhitespace();
+		if (__jte_html_attribute_5) {
+		jteOutput.writeContent(" checked");
+		}
+		jteOutput.writeContent(" class=\"compare-option form-checkbox text-blue-600 h-4 w-4\">\n                                <span class=\"ml-2 text-sm text-gray-700\">Whitespace</span>\n                            </label>\n                            <label class=\"inline-flex items-center cursor-pointer\">\n                                <input type=\"checkbox\" name=\"ignoreBlankLines\" value=\"true\"");
+		var __jte_html_attribute_6 = compareOptions.ignoreBlankLines();
+		if (__jte_html_attribute_6) {
+		jteOutput.writeContent(" checked");
+		}
+		jteOutput.writeContent(" class=\"compare-option form-checkbox text-blue-600 h-4 w-4\">\n                                <span class=\"ml-2 text-sm text-gray-700\">Blank Lines</span>\n                            </label>\n                            <label class=\"inline-flex items-center cursor-pointer\">\n                                <input type=\"checkbox\" name=\"ignoreComments\" value=\"true\"");
+		var __jte_html_attribute_7 = compareOptions.ignoreComments();
+		if (__jte_html_attribute_7) {
+		jteOutput.writeContent(" checked");
+		}
+		jteOutput.writeContent(" class=\"compare-option form-checkbox text-blue-600 h-4 w-4\">\n                                <span class=\"ml-2 text-sm text-gray-700\">Comments (Java/XML)</span>\n                            </label>\n                            <label class=\"inline-flex items-center cursor-pointer\" title=\"Compare Java files member by member; members that only moved count as unchanged\">\n                                <input type=\"checkbox\" name=\"semanticJava\" value=\"true\"");
+		var __jte_html_attribute_8 = compareOptions.semanticJava();
+		if (__jte_html_attribute_8) {
+		jteOutput.writeContent(" checked");
+		}
+		jteOutput.writeContent(" class=\"compare-option form-checkbox text-blue-600 h-4 w-4\">\n                                <span class=\"ml-2 text-sm text-gray-700\">Member Order (Java)</span>\n                            </label>\n                            <label class=\"inline-flex items-center cursor-pointer\" title=\"Compare XML, JSON, YAML and properties files as key/value trees\">\n                                <input type=\"checkbox\" name=\"semanticConfig\" value=\"true\"");
+		var __jte_html_attribute_9 = compareOptions.semanticConfig();
+		if (__jte_html_attribute_9) {
+		jteOutput.writeContent(" checked");
+		}
+		jteOutput.writeContent(" class=\"compare-option form-checkbox text-blue-600 h-4 w-4\">\n                                <span class=\"ml-2 text-sm text-gray-700\">Key Order &amp; Format (Config)</span>\n                            </label>\n                        </div>\n                    </div>\n                    <div class=\"flex items-center space-x-6\">\n                        <span class=\"text-sm font-semibold text-gray-700\">Skip Files:</span>\n                        <div class=\"flex items-center space-x-4\">\n                            <label class=\"inline-flex items-center cursor-pointer\" title=\"Patterns from the application's .jcompare-ignore (or the built-in defaults)\">\n                                <input type=\"hidden\" id=\"globalIgnoreFile\" name=\"globalIgnoreFile\"");
+		var __jte_html_attribute_10 = String.valueOf(compareOptions.ignoreProfile().globalFile());
+		if (gg.jte.runtime.TemplateUtils.isAttributeRendered(__jte_html_attribute_10)) {
+			jteOutput.writeContent(" value=\"");
+			jteOutput.setContext("input", "value");
+			jteOutput.writeUserContent(__jte_html_attribute_10);
+			jteOutput.setContext("input", null);
+			jteOutput.writeContent("\"");
+		}
+		jteOutput.writeContent(" class=\"ignore-profile\">\n                                <input type=\"checkbox\"");
+		var __jte_html_attribute_11 = compareOptions.ignoreProfile().globalFile();
+		if (__jte_html_attribute_11) {
+		jteOutput.writeContent(" checked");
+		}
+		jteOutput.writeContent(" onchange=\"document.getElementById('globalIgnoreFile').value = this.checked\" class=\"form-checkbox text-blue-600 h-4 w-4\">\n                                <span class=\"ml-2 text-sm text-gray-700\">Global Ignore File</span>\n                            </label>\n                            <label class=\"inline-flex items-center cursor-pointer\" title=\"Apply .gitignore and .jcompare-ignore files found inside the compared directories, like git does\">\n                                <input type=\"checkbox\" name=\"repositoryIgnoreFiles\" value=\"true\"");
+		var __jte_html_attribute_12 = compareOptions.ignoreProfile().repositoryFiles();
+		if (__jte_html_attribute_12) {
+		jteOutput.writeContent(" checked");
+		}
+		jteOutput.writeContent(" class=\"compare-option form-checkbox text-blue-600 h-4 w-4\">\n                                <span class=\"ml-2 text-sm text-gray-700\">.gitignore Files</span>\n                            </label>\n                            <input type=\"text\" name=\"ignorePatterns\"");
+		var __jte_html_attribute_13 = compareOptions.ignoreProfile().patterns();
+		if (gg.jte.runtime.TemplateUtils.isAttributeRendered(__jte_html_attribute_13)) {
+			jteOutput.writeContent(" value=\"");
+			jteOutput.setContext("input", "value");
+			jteOutput.writeUserContent(__jte_html_attribute_13);
+			jteOutput.setContext("input", null);
+			jteOutput.writeContent("\"");
+		}
+		jteOutput.writeContent(" placeholder=\"More patterns, e.g. *.log, generated/\" class=\"ignore-profile w-72 p-1 text-sm border border-gray-300 rounded\">\n                        </div>\n                    </div>\n                    <div class=\"flex flex-wrap items-center gap-4\">\n                        <button type=\"submit\" class=\"w-full sm:w-auto bg-blue-600 hover:bg-blue-700 text-white font-bold py-2 px-8 rounded shadow-sm transition-all\">Compare Now</button>\n                        <button type=\"button\" onclick=\"quickEstimate(this.form)\" title=\"Walk both trees without reading them and content-check a random sample of files; takes seconds even for very large trees\" class=\"w-full sm:w-auto bg-gray-200 hover:bg-gray-300 text-gray-800 font-bold py-2 px-6 rounded shadow-sm transition-all\">Quick Estimate</button>\n                        <span id=\"estimate\" class=\"text-sm text-gray-700\"></span>\n                    </div>\n                </div>\n            </form>\n\n            ");
+		if (diffResult != null) {
+			jteOutput.writeContent("\n                <div class=\"mt-12 border-t border-gray-200 pt-8\">\n                    <div class=\"flex justify-between items-center mb-6\">\n                        <h2 class=\"text-2xl font-bold text-gray-800\">Comparison Results</h2>\n                        ");
+			if (resultId != null) {
+				jteOutput.writeContent("\n                            <a href=\"/results/");
+				jteOutput.setContext("a", "href");
+				jteOutput.writeUserContent(resultId);
+				jteOutput.setContext("a", null);
+				jteOutput.writeContent("?viewType=");
+				jteOutput.setContext("a", "href");
+				jteOutput.writeUserContent(viewType);
+				jteOutput.setContext("a", null);
+				jteOutput.writeContent("\" title=\"Link to this result; it opens without comparing again\" class=\"ml-auto mr-4 text-sm text-blue-600 hover:underline\">Share Link</a>\n                        ");
+			}
+			jteOutput.writeContent("\n                        ");
+			if ("table".equals(viewType) && tableResult != null) {
+				jteOutput.writeContent("\n                            <button onclick=\"exportToExcel()\" class=\"bg-green-600 hover:bg-green-700 text-white font-bold py-2 px-4 rounded shadow-sm transition-all flex items-center space-x-2\">\n                                <svg class=\"w-5 h-5\" fill=\"currentColor\" viewBox=\"0 0 20 20\"><path fill-rule=\"evenodd\" d=\"M3 17a1 1 0 011-1h12a1 1 0 110 2H4a1 1 0 01-1-1zm3.293-7.707a1 1 0 011.414 0L9 10.586V3a1 1 0 112 0v7.586l1.293-1.293a1 1 0 111.414 1.414l-3 3a1 1 0 01-1.414 0l-3-3a1 1 0 010-1.414z\" clip-rule=\"evenodd\"></path></svg>\n                                <span>Export to Excel</span>\n                            </button>\n                        ");
+			}
+			jteOutput.writeContent("\n                    </div>\n                    \n                    ");
+			if (appliedOptions != null) {
+				jteOutput.writeContent("\n                        <div id=\"appliedOptions\" class=\"mb-4 p-3 bg-amber-50 border border-amber-300 rounded text-sm text-amber-800\">\n                            A snapshot is compared with the options it was captured with, ");
+				jteOutput.setContext("div", null);
+				jteOutput.writeUserContent(appliedOptions.describeContent());
+				jteOutput.writeContent(",\n                            and without structure-aware comparison. The content options selected above were not applied.\n                        </div>\n                    ");
+			}
+			jteOutput.writeContent("\n\n                    ");
+			if ("table".equals(viewType) && tableResult != null && resultId != null) {
+				jteOutput.writeContent("\n                        <form id=\"resultFilter\" action=\"/results/");
+				jteOutput.setContext("form", "action");
+				jteOutput.writeUserContent(resultId);
+				jteOutput.setContext("form", null);
+				jteOutput.writeContent("\"");
+				var __jte_html_attribute_14 = resultId;
+				if (gg.jte.runtime.TemplateUtils.isAttributeRendered(__jte_html_attribute_14)) {
+					jteOutput.writeContent(" data-result-id=\"");
+					jteOutput.setContext("form", "data-result-id");
+					jteOutput.writeUserContent(__jte_html_attribute_14);
+					jteOutput.setContext("form", null);
+					jteOutput.writeContent("\"");
+				}
+				jteOutput.writeContent(" method=\"get\" onsubmit=\"showLoading()\" class=\"flex flex-wrap items-center gap-3 mb-4 text-sm\">\n                            <input type=\"hidden\" name=\"viewType\" value=\"table\">\n                            <input type=\"text\" name=\"search\"");
+				var __jte_html_attribute_15 = resultQuery.path();
+				if (gg.jte.runtime.TemplateUtils.isAttributeRendered(__jte_html_attribute_15)) {
+					jteOutput.writeContent(" value=\"");
+					jteOutput.setContext("input", "value");
+					jteOutput.writeUserContent(__jte_html_attribute_15);
+					jteOutput.setContext("input", null);
+					jteOutput.writeContent("\"");
+				}
+				jteOutput.writeContent(" placeholder=\"Path contains, or a glob like src/**/*.java\" class=\"w-80 p-1 border border-gray-300 rounded\">\n                            <label class=\"text-gray-600\">Min Diff %\n                                <input type=\"number\" name=\"minPercentage\"");
+				var __jte_html_attribute_16 = resultQuery.minPercentage() == null ? "" : String.valueOf(resultQuery.minPercentage());
+				if (gg.jte.runtime.TemplateUtils.isAttributeRendered(__jte_html_attribute_16)) {
+					jteOutput.writeContent(" value=\"");
+					jteOutput.setContext("input", "value");
+					jteOutput.writeUserContent(__jte_html_attribute_16);
+					jteOutput.setContext("input", null);
+					jteOutput.writeContent("\"");
+				}
+				jteOutput.writeContent(" min=\"0\" max=\"100\" step=\"any\" class=\"w-20 ml-1 p-1 border border-gray-300 rounded\">\n                            </label>\n                            <label class=\"text-gray-600\">Changed Lines\n                                <input type=\"number\" name=\"minLines\"");
+				var __jte_html_attribute_17 = resultQuery.minLines() == null ? "" : String.valueOf(resultQuery.minLines());
+				if (gg.jte.runtime.TemplateUtils.isAttributeRendered(__jte_html_attribute_17)) {
+					jteOutput.writeContent(" value=\"");
+					jteOutput.setContext("input", "value");
+					jteOutput.writeUserContent(__jte_html_attribute_17);
+					jteOutput.setContext("input", null);
+					jteOutput.writeContent("\"");
+				}
+				jteOutput.writeContent(" min=\"0\" placeholder=\"min\" class=\"w-20 ml-1 p-1 border border-gray-300 rounded\">\n                                <input type=\"number\" name=\"maxLines\"");
+				var __jte_html_attribute_18 = resultQuery.maxLines() == null ? "" : String.valueOf(resultQuery.maxLines());
+				if (gg.jte.runtime.TemplateUtils.isAttributeRendered(__jte_html_attribute_18)) {
+					jteOutput.writeContent(" value=\"");
+					jteOutput.setContext("input", "value");
+					jteOutput.writeUserContent(__jte_html_attribute_18);
+					jteOutput.setContext("input", null);
+					jteOutput.writeContent("\"");
+				}
+				jteOutput.writeContent(" min=\"0\" placeholder=\"max\" class=\"w-20 p-1 border border-gray-300 rounded\">\n                            </label>\n                            <button type=\"submit\" class=\"bg-blue-600 hover:bg-blue-700 text-white py-1 px-4 rounded shadow-sm\">Filter</button>\n                            <span class=\"text-gray-500\">\n                                ");
+				if (matchingRows > tableResult.size()) {
+					jteOutput.writeContent("\n                                    Showing the first ");
+					jteOutput.setContext("span", null);
+					jteOutput.writeUserContent(tableResult.size());
+					jteOutput.writeContent(" of ");
+					jteOutput.setContext("span", null);
+					jteOutput.writeUserContent(matchingRows);
+					jteOutput.writeContent(" matching rows; narrow the filter or export them all.\n                                ");
+				} else {
+					jteOutput.writeContent("\n                                    ");
+					jteOutput.setContext("span", null);
+					jteOutput.writeUserContent(matchingRows);
+					jteOutput.writeContent(" matching rows\n                                ");
+				}
+				jteOutput.writeContent("\n                            </span>\n                        </form>\n                    ");
+			}
+			jteOutput.writeContent("\n\n                    <div class=\"bg-white border border-gray-200 rounded overflow-hidden\">\n                        ");
+			if ("table".equals(viewType) && tableResult != null) {
+				jteOutput.writeContent("\n                            <table class=\"min-w-full divide-y divide-gray-200\">\n                                <thead class=\"bg-gray-50\">\n                                    <tr>\n                                        <th class=\"px-6 py-3 text-left text-xs font-medium text-gray-500 uppercase tracking-wider\">Path</th>\n                                        <th class=\"px-6 py-3 text-left text-xs font-medium text-gray-500 uppercase tracking-wider\">\n                                            <div class=\"flex items-center space-x-2\">\n                                                <span>Type</span>\n                                                <select id=\"typeFilter\" name=\"type\" form=\"resultFilter\" onchange=\"applyFilters()\" class=\"ml-1 bg-gray-50 border border-gray-300 text-gray-900 text-[10px] rounded focus:ring-blue-500 focus:border-blue-500 block p-0.5 outline-none font-normal lowercase\">\n                                                    <option value=\"all\">All</option>\n                                                    <option value=\"directory\"");
+				var __jte_html_attribute_19 = resultQuery.types().contains("directory");
+				if (__jte_html_attribute_19) {
+				jteOutput.writeContent(" selected");
+				}
+				jteOutput.writeContent(">Directory</option>\n                                                    <option value=\"java\"");
+				var __jte_html_attribute_20 = resultQuery.types().contains("java");
+				if (__jte_html_attribute_20) {
+				jteOutput.writeContent(" selected");
+				}
+				jteOutput.writeContent(">Java</option>\n                                                    <option value=\"xml\"");
+				var __jte_html_attribute_21 = resultQuery.types().contains("xml");
+				if (__jte_html_attribute_21) {
+				jteOutput.writeContent(" selected");
+				}
+				jteOutput.writeContent(">XML</option>\n                                                    <option value=\"json\"");
+				var __jte_html_attribute_22 = resultQuery.types().contains("json");
+				if (__jte_html_attribute_22) {
+				jteOutput.writeContent(" selected");
+				}
+				jteOutput.writeContent(">JSON</option>\n                                                    <option value=\"yaml\"");
+				var __jte_html_attribute_23 = resultQuery.types().contains("yaml");
+				if (__jte_html_attribute_23) {
+				jteOutput.writeContent(" selected");
+				}
+				jteOutput.writeContent(">YAML</option>\n                                                    <option value=\"props\"");
+				var __jte_html_attribute_24 = resultQuery.types().contains("props");
+				if (__jte_html_attribute_24) {
+				jteOutput.writeContent(" selected");
+				}
+				jteOutput.writeContent(">Props</option>\n                                                    <option value=\"file\"");
+				var __jte_html_attribute_25 = resultQuery.types().contains("file");
+				if (__jte_html_attribute_25) {
+				jteOutput.writeContent(" selected");
+				}
+				jteOutput.writeContent(">File</option>\n                                                </select>\n                                            </div>\n                                        </th>\n                                        <th class=\"px-6 py-3 text-left text-xs font-medium text-gray-500 uppercase tracking-wider\">\n                                            <div class=\"flex items-center space-x-2\">\n                                                <span>Status</span>\n                                                <select id=\"statusFilter\" name=\"status\" form=\"resultFilter\" onchange=\"applyFilters()\" class=\"ml-1 bg-gray-50 border border-gray-300 text-gray-900 text-[10px] rounded focus:ring-blue-500 focus:border-blue-500 block p-0.5 outline-none font-normal lowercase\">\n                                                    <option value=\"all\">All</option>\n                                                    <option value=\"added\"");
+				var __jte_html_attribute_26 = resultQuery.statuses().contains(DiffNode.DiffStatus.ADDED);
+				if (__jte_html_attribute_26) {
+				jteOutput.writeContent(" selected");
+				}
+				jteOutput.writeContent(">Added</option>\n                                                    <option value=\"removed\"");
+				var __jte_html_attribute_27 = resultQuery.statuses().contains(DiffNode.DiffStatus.REMOVED);
+				if (__jte_html_attribute_27) {
+				jteOutput.writeContent(" selected");
+				}
+				jteOutput.writeContent(">Removed</option>\n                                                    <option value=\"modified\"");
+				var __jte_html_attribute_28 = resultQuery.statuses().contains(DiffNode.DiffStatus.MODIFIED);
+				if (__jte_html_attribute_28) {
+				jteOutput.writeContent(" selected");
+				}
+				jteOutput.writeContent(">Modified</option>\n                                                    <option value=\"moved\"");
+				var __jte_html_attribute_29 = resultQuery.statuses().contains(DiffNode.DiffStatus.MOVED);
+				if (__jte_html_attribute_29) {
+				jteOutput.writeContent(" selected");
+				}
+				jteOutput.writeContent(">Moved</option>\n                                                    <option value=\"moved_modified\"");
+				var __jte_html_attribute_30 = resultQuery.statuses().contains(DiffNode.DiffStatus.MOVED_MODIFIED);
+				if (__jte_html_attribute_30) {
+				jteOutput.writeContent(" selected");
+				}
+				jteOutput.writeContent(">Moved Mod</option>\n                                                    <option value=\"identical\"");
+				var __jte_html_attribute_31 = resultQuery.statuses().contains(DiffNode.DiffStatus.IDENTICAL);
+				if (__jte_html_attribute_31) {
+				jteOutput.writeContent(" selected");
+				}
+				jteOutput.writeContent(">Identical</option>\n                                                </select>\n                                            </div>\n                                        </th>\n                                        <th class=\"px-6 py-3 text-left text-xs font-medium text-gray-500 uppercase tracking-wider\">Diff %</th>\n                                        <th class=\"px-6 py-3 text-left text-xs font-medium text-gray-500 uppercase tracking-wider\">Added</th>\n                                        <th class=\"px-6 py-3 text-left text-xs font-medium text-gray-500 uppercase tracking-wider\">Mod</th>\n                                        <th class=\"px-6 py-3 text-left text-xs font-medium text-gray-500 uppercase tracking-wider\">Del</th>\n                                    </tr>\n                                </thead>\n                                <tbody class=\"bg-white divide-y divide-gray-200\">\n                                    ");
+				for (CompareService.DiffEntry entry : tableResult) {
+					jteOutput.writeContent("\n                                        ");
+					String type = ResultIndex.type(entry);
+					jteOutput.writeContent("\n                                        <tr class=\"table-row ");
+					jteOutput.setContext("tr", "class");
+					jteOutput.writeUserContent(entry.isDirectory() ? "" : "cursor-pointer hover:bg-blue-50");
+					jteOutput.setContext("tr", null);
+					jteOutput.writeContent("\" \n                                           ");
+					var __jte_html_attribute_32 = leftPath;
+					if (gg.jte.runtime.TemplateUtils.isAttributeRendered(__jte_html_attribute_32)) {
+						jteOutput.writeContent(" data-left=\"");
+						jteOutput.setContext("tr", "data-left");
+						jteOutput.writeUserContent(__jte_html_attribute_32);
+						jteOutput.setContext("tr", null);
+						jteOutput.writeContent("\"");
+					}
+					jteOutput.writeContent("\n                                           ");
+					var __jte_html_attribute_33 = rightPath;
+					if (gg.jte.runtime.TemplateUtils.isAttributeRendered(__jte_html_attribute_33)) {
+						jteOutput.writeContent(" data-right=\"");
+						jteOutput.setContext("tr", "data-right");
+						jteOutput.writeUserContent(__jte_html_attribute_33);
+						jteOutput.setContext("tr", null);
+						jteOutput.writeContent("\"");
+					}
+					jteOutput.writeContent("\n                                           ");
+					var __jte_html_attribute_34 = entry.relativePath();
+					if (gg.jte.runtime.TemplateUtils.isAttributeRendered(__jte_html_attribute_34)) {
+						jteOutput.writeContent(" data-rel=\"");
+						jteOutput.setContext("tr", "data-rel");
+						jteOutput.writeUserContent(__jte_html_attribute_34);
+						jteOutput.setContext("tr", null);
+						jteOutput.writeContent("\"");
+					}
+					jteOutput.writeContent("\n                                           ");
+					var __jte_html_attribute_35 = entry.sourcePath();
+					if (gg.jte.runtime.TemplateUtils.isAttributeRendered(__jte_html_attribute_35)) {
+						jteOutput.writeContent(" data-source=\"");
+						jteOutput.setContext("tr", "data-source");
+						jteOutput.writeUserContent(__jte_html_attribute_35);
+						jteOutput.setContext("tr", null);
+						jteOutput.writeContent("\"");
+					}
+					jteOutput.writeContent("\n                                            ondblclick=\"if(this.dataset.rel) openFileDiff(this.dataset.left, this.dataset.right, this.dataset.rel, this.dataset.source)\">\n                                            <td class=\"px-6 py-4 whitespace-nowrap text-sm text-gray-900\">");
+					jteOutput.setContext("td", null);
+					jteOutput.writeUserContent(entry.path());
+					jteOutput.writeContent("</td>\n                                            <td class=\"px-6 py-4 whitespace-nowrap text-sm text-gray-500\">\n                                                ");
+					if ("directory".equals(type)) {
+						jteOutput.writeContent("\n                                                    <span class=\"folder\"></span> Directory\n                                                ");
+					} else if ("java".equals(type)) {
+						jteOutput.writeContent("\n                                                    <span class=\"file-java\"></span> Java\n                                                ");
+					} else if ("xml".equals(type)) {
+						jteOutput.writeContent("\n                                                    <span class=\"file-xml\"></span> XML\n                                                ");
+					} else if ("json".equals(type)) {
+						jteOutput.writeContent("\n                                                    <span class=\"file-json\"></span> JSON\n                                                ");
+					} else if ("yaml".equals(type)) {
+						jteOutput.writeContent("\n                                                    <span class=\"file-yaml\"></span> YAML\n                                                ");
+					} else if ("props".equals(type)) {
+						jteOutput.writeContent("\n                                                    <span class=\"file-properties\"></span> Props\n                                                ");
+					} else {
+						jteOutput.writeContent("\n                                                    <span class=\"file\"></span> File\n                                                ");
+					}
+					jteOutput.writeContent("\n                                            </td>\n                                            <td class=\"px-6 py-4 whitespace-nowrap text-sm font-medium status-");
+					jteOutput.setContext("td", "class");
+					jteOutput.writeUserContent(entry.status().name().toLowerCase());
+					jteOutput.setContext("td", null);
+					jteOutput.writeContent("\">\n                                                ");
+					jteOutput.setContext("td", null);
+					jteOutput.writeUserContent(entry.status().name().replace("_", "-"));
+					jteOutput.writeContent("\n                                                ");
+					if ((entry.status() == DiffNode.DiffStatus.MOVED || entry.status() == DiffNode.DiffStatus.MOVED_MODIFIED) && entry.sourcePath() != null) {
+						jteOutput.writeContent("\n                                                    <div class=\"text-[10px] text-gray-400 font-normal\">from ");
+						jteOutput.setContext("div", null);
+						jteOutput.writeUserContent(entry.sourcePath());
+						jteOutput.writeContent("</div>\n                                                ");
+					}
+					jteOutput.writeContent("\n                                            </td>\n                                            <td class=\"px-6 py-4 whitespace-nowrap text-sm text-gray-500\">");
+					jteOutput.setContext("td", null);
+					jteOutput.writeUserContent(entry.isDirectory() ? "-" : String.valueOf(String.format("%.1f%%", entry.percentage())));
+					jteOutput.writeContent("</td>\n                                            <td class=\"px-6 py-4 whitespace-nowrap text-sm text-green-600 font-semibold\">");
+					jteOutput.setContext("td", null);
+					jteOutput.writeUserContent(entry.isDirectory() || entry.status() == DiffNode.DiffStatus.MOVED ? "-" : String.valueOf(entry.added()));
+					jteOutput.writeContent("</td>\n                                            <td class=\"px-6 py-4 whitespace-nowrap text-sm text-amber-600 font-semibold\">");
+					jteOutput.setContext("td", null);
+					jteOutput.writeUserContent(entry.isDirectory() || entry.status() == DiffNode.DiffStatus.MOVED ? "-" : String.valueOf(entry.modified()));
+					jteOutput.writeContent("</td>\n                                            <td class=\"px-6 py-4 whitespace-nowrap text-sm text-red-600 font-semibold\">");
+					jteOutput.setContext("td", null);
+					jteOutput.writeUserContent(entry.isDirectory() || entry.status() == DiffNode.DiffStatus.MOVED ? "-" : String.valueOf(entry.removed()));
+					jteOutput.writeContent("</td>\n                                        </tr>\n                                    ");
+				}
+				jteOutput.writeContent("\n                                </tbody>\n                            </table>\n                        ");
+			} else {
+				jteOutput.writeContent("\n                            <div class=\"p-6 overflow-x-auto\">\n                                <ul class=\"space-y-1\">\n                                    ");
+				gg.jte.generated.ondemand.JtediffNodeGenerated.render(jteOutput, jteHtmlInterceptor, leftPath, rightPath, diffResult);
+				jteOutput.writeContent("\n                                </ul>\n                            </div>\n                        ");
+			}
+			jteOutput.writeContent("\n                    </div>\n                </div>\n            ");
+		}
+		jteOutput.writeContent("\n        </main>\n        \n        <footer class=\"mt-8 text-center text-gray-500 text-xs\">\n            &copy; 2026 JCompare - Built with Spring Boot 4.0.2 & JTE\n        </footer>\n    </div>\n\n    ");
+		gg.jte.generated.ondemand.JtedirectorySelectorGenerated.render(jteOutput, jteHtmlInterceptor);
+		jteOutput.writeContent("\n    ");
+		gg.jte.generated.ondemand.JtediffModalGenerated.render(jteOutput, jteHtmlInterceptor);
+		jteOutput.writeContent("\n    <script>\n        function showLoading() {\n            document.getElementById('loading-overlay').classList.remove('hidden');\n        }\n\n        function hideLoading() {\n            document.getElementById('loading-overlay').classList.add('hidden');\n        }\n\n        function openFileDiff(leftPath, rightPath, relativePath, sourcePath) {\n            console.log(\"openFileDiff called\", {leftPath, rightPath, relativePath, sourcePath});\n            const modal = document.getElementById('diff-modal');\n            const iframe = document.getElementById('diff-iframe');\n            if (!modal || !iframe) {\n                console.error(\"Modal or Iframe not found\");\n                return;\n            }\n            let url = \"/diff?leftPath=\" + encodeURIComponent(leftPath) + \"&rightPath=\" + encodeURIComponent(rightPath) + \"&relativePath=\" + encodeURIComponent(relativePath);\n            if (sourcePath) {\n                url += \"&sourcePath=\" + encodeURIComponent(sourcePath);\n            }\n            url += compareOptionsQuery();\n            console.log(\"Loading URL:\", url);\n            showLoading();\n            ");
+		jteOutput.writeContent("\n            iframe.onload = function() {\n                hideLoading();\n            };\n            iframe.onerror = function() {\n                hideLoading();\n            };\n            iframe.src = url;\n            modal.classList.remove('hidden');\n        }\n\n        ");
+		jteOutput.writeContent("\n        function compareOptionsQuery() {\n            let query = \"\";\n            document.querySelectorAll('.compare-option').forEach(option => {\n                if (option.checked) {\n                    query += \"&\" + option.name + \"=true\";\n                }\n            });\n            document.querySelectorAll('.ignore-profile').forEach(input => {\n                if (input.value) {\n                    query += \"&\" + input.name + \"=\" + encodeURIComponent(input.value);\n                }\n            });\n            return query;\n        }\n\n        function closeDiffModal() {\n            const modal = document.getElementById('diff-modal');\n            const iframe = document.getElementById('diff-iframe');\n            iframe.src = 'about:blank';\n            modal.classList.add('hidden');\n        }\n\n        ");
+		jteOutput.writeContent("\n        function downloadManifest(inputId) {\n            const path = document.getElementById(inputId).value;\n            if (!path || path.endsWith('.jcm')) return;\n            window.location.href = \"/manifest?path=\" + encodeURIComponent(path) + \"&lineHashes=true\" + compareOptionsQuery();\n        }\n\n        async function quickEstimate(form) {\n            const output = document.getElementById('estimate');\n            const query = new URLSearchParams(new FormData(form));\n            query.delete('viewType');\n            output.textContent = 'Estimating...';\n            const response = await fetch('/api/estimate?' + query.toString());\n            if (!response.ok) {\n                output.textContent = response.status === 429 ? 'Too many comparisons are running; try again shortly.' : 'Could not estimate these paths.';\n                return;\n            }\n            const estimate = await response.json();\n            const modified = estimate.modified;\n            const exact = modified.lower === modified.upper;\n            const range = exact ? '' : ' (' + Math.round(estimate.confidence * 100) + '% interval ' + modified.lower + '–' + modified.upper + ')';\n            output.textContent = (exact ? '' : '≈ ') + modified.estimate + ' of ' + estimate.common + ' common files modified' + range\n                + ', ' + estimate.added + ' added, ' + estimate.removed + ' removed; ' + estimate.sampled + ' files checked in '\n                + (estimate.elapsedMillis / 1000).toFixed(1) + ' s. Compare Now for exact results.';\n        }\n\n        function exportToExcel() {\n            const filter = document.getElementById('resultFilter');\n            const query = new URLSearchParams(new FormData(filter));\n            query.delete('viewType');\n            query.set('resultId', filter.dataset.resultId);\n            window.location.href = \"/export?\" + query.toString();\n        }\n\n        ");
+		jteOutput.writeContent("\n        document.addEventListener('DOMContentLoaded', () => {\n            const leftInput = document.getElementById('leftPath');\n            const rightInput = document.getElementById('rightPath');\n\n            ");
+		jteOutput.writeContent("\n            if (!leftInput.value) {\n                const savedLeft = localStorage.getItem('jcompare_leftPath');\n                if (savedLeft) leftInput.value = savedLeft;\n            }\n            if (!rightInput.value) {\n                const savedRight = localStorage.getItem('jcompare_rightPath');\n                if (savedRight) rightInput.value = savedRight;\n            }\n\n            ");
+		jteOutput.writeContent("\n            document.querySelector('form').addEventListener('submit', () => {\n                showLoading();\n                localStorage.setItem('jcompare_leftPath', leftInput.value);\n                localStorage.setItem('jcompare_rightPath', rightInput.value);\n            });\n        });\n\n        ");
+		jteOutput.writeContent("\n        function onDirectorySelected(inputId, path) {\n            localStorage.setItem('jcompare_' + inputId, path);\n        }\n\n        ");
+		jteOutput.writeContent("\n        function applyFilters() {\n            const filter = document.getElementById('resultFilter');\n            if (filter) {\n                showLoading();\n                filter.submit();\n            }\n        }\n    </script>\n</body>\n</html>\n");
+	}
+	public static void renderMap(gg.jte.html.HtmlTemplateOutput jteOutput, gg.jte.html.HtmlInterceptor jteHtmlInterceptor, java.util.Map<String, Object> params) {
+		String leftPath = (String)params.get("leftPath");
+		String rightPath = (String)params.get("rightPath");
+		String viewType = (String)params.get("viewType");
+		CompareOptions compareOptions = (CompareOptions)params.get("compareOptions");
+		DiffNode diffResult = (DiffNode)params.get("diffResult");
+		List<CompareService.DiffEntry> tableResult = (List<CompareService.DiffEntry>)params.get("tableResult");
+		String resultId = (String)params.getOrDefault("resultId", null);
+		ResultIndex.Query resultQuery = (ResultIndex.Query)params.getOrDefault("resultQuery", ResultIndex.Query.ALL);
+		int matchingRows = (int)params.getOrDefault("matchingRows", 0);
+		CompareOptions appliedOptions = (CompareOptions)params.getOrDefault("appliedOptions", null);
+		render(jteOutput, jteHtmlInterceptor, leftPath, rightPath, viewType, compareOptions, diffResult, tableResult, resultId, resultQuery, matchingRows, appliedOptions);
+	}
+}
@@ -1,24 +1,108 @@
 package one.dastec.jcompare.controller;
 
+import one.dastec.jcompare.model.CompareOptions;
+import one.dastec.jcompare.model.DiffEstimate;
 import one.dastec.jcompare.model.DiffNode;
+import one.dastec.jcompare.model.IgnoreProfile;
 import one.dastec.jcompare.service.CompareService;
+import one.dastec.jcompare.service.DirectoryListingService;
+import one.dastec.jcompare.service.HunkIndex;
+import one.dastec.jcompare.service.IntraLineDiffer;
+import one.dastec.jcompare.service.ResultIndex;
+import one.dastec.jcompare.service.ResultStore;
+import one.dastec.jcompare.service.TreeManifest;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.RequestParam;
 
 import java.io.IOException;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 
 @Controller
 public class CompareController {
 
+    private static final int MAX_INLINE_LINES = 1000;
+    private static final int MAX_PAGE_LINES = 1000;
+    private static final int MAX_LS_LIMIT = 1000;
+    private static final int MAX_TABLE_ROWS = 2000;
+    private static final int MAX_ESTIMATE_SAMPLE = 10_000;
+    private static final int MAX_ESTIMATE_SECONDS = 60;
+
     private final CompareService compareService;
+    private final DirectoryListingService directoryListingService;
+    private final ResultStore resultStore;
 
-    public CompareController(CompareService compareService) {
+    public CompareController(CompareService compareService, DirectoryListingService directoryListingService, ResultStore resultStore) {
         this.compareService = compareService;
+        this.directoryListingService = directoryListingService;
+        this.resultStore = resultStore;
+    }
+
+    /**
+     * Comparison options shared by every endpoint that compares content; unchecked boxes are simply absent.
+     * The global ignore file is on by default, so the UI sends {@code globalIgnoreFile=false} explicitly.
+     */
+    @ModelAttribute("compareOptions")
+    public CompareOptions compareOptions(
+            @RequestParam(required = false, defaultValue = "false") boolean ignoreEol,
+            @RequestParam(required = false, defaultValue = "false") boolean ignoreWhitespace,
+            @RequestParam(required = false, defaultValue = "false") boolean ignoreBlankLines,
+            @RequestParam(required = false, defaultValue = "false") boolean ignoreComments,
+            @RequestParam(required = false, defaultValue = "false") boolean semanticJava,
+            @RequestParam(required = false, defaultValue = "false") boolean semanticConfig,
+            @RequestParam(required = false, defaultValue = "true") boolean globalIgnoreFile,
+            @RequestParam(required = false, defaultValue = "false") boolean repositoryIgnoreFiles,
+            @RequestParam(required = false, defaultValue = "") String ignorePatterns) {
+        return new CompareOptions(ignoreEol, ignoreWhitespace, ignoreBlankLines, ignoreComments, semanticJava, semanticConfig,
+                new IgnoreProfile(globalIgnoreFile, repositoryIgnoreFiles, ignorePatterns));
+    }
+
+    /**
+     * Filter of the rows of a result, shared by the table view, the export and {@code /api/results/{id}/entries}.
+     * Multi-valued parameters may be repeated or comma-separated; "all" is the same as leaving them out.
+     */
+    @ModelAttribute("resultQuery")
+    public ResultIndex.Query resultQuery(
+            @RequestParam(required = false) String search,
+            @RequestParam(required = false) List<String> status,
+            @RequestParam(required = false) List<String> type,
+            @RequestParam(required = false) List<String> ext,
+            @RequestParam(required = false) Double minPercentage,
+            @RequestParam(required = false) Integer minLines,
+            @RequestParam(required = false) Integer maxLines) {
+        Set<DiffNode.DiffStatus> statuses = EnumSet.noneOf(DiffNode.DiffStatus.class);
+        for (String value : values(status)) {
+            try {
+                statuses.add(DiffNode.DiffStatus.valueOf(value.toUpperCase(Locale.ROOT).replace('-', '_')));
+            } catch (IllegalArgumentException e) {
+                throw new org.springframework.web.server.ResponseStatusException(org.springframework.http.HttpStatus.BAD_REQUEST, "Unknown status " + value);
+            }
+        }
+        return new ResultIndex.Query(search, statuses, values(type), values(ext), minPercentage, minLines, maxLines);
+    }
+
+    private static Set<String> values(List<String> parameters) {
+        Set<String> values = new HashSet<>();
+        if (parameters != null) {
+            for (String parameter : parameters) {
+                for (String value : parameter.split(",")) {
+                    if (!value.isBlank() && !"all".equalsIgnoreCase(value.trim())) {
+                        values.add(value.trim().toLowerCase(Locale.ROOT));
+                    }
+                }
+            }
+        }
+        return values;
     }
 
     @GetMapping("/")
@@ -26,6 +110,7 @@ public class CompareController {
             @RequestParam(required = false) String leftPath,
             @RequestParam(required = false) String rightPath,
             @RequestParam(required = false, defaultValue = "tree") String viewType,
+            @ModelAttribute(name = "compareOptions", binding = false) CompareOptions options,
             Model model) throws IOException {
 
         model.addAttribute("leftPath", leftPath != null ? leftPath : "");
@@ -35,12 +120,18 @@ public class CompareController {
         if (leftPath != null && !leftPath.isEmpty() && rightPath != null && !rightPath.isEmpty()) {
             Path left = Paths.get(leftPath);
             Path right = Paths.get(rightPath);
-            DiffNode diffResult = compareService.compareDirectories(left, right);
+            CompareOptions appliedOptions = effectiveOptions(left, right, options);
+            if (!appliedOptions.equals(options)) {
+                model.addAttribute("appliedOptions", appliedOptions);
+            }
+            DiffNode diffResult = compareService.compareDirectories(left, right, options);
             model.addAttribute("diffResult", diffResult);
+            String resultId = resultStore.save(diffResult, leftPath, rightPath, appliedOptions);
+            model.addAttribute("resultId", resultId);
             
             if ("table".equals(viewType)) {
-                List<CompareService.DiffEntry> tableResult = compareService.flatten(diffResult);
-                model.addAttribute("tableResult", tableResult);
+                ResultIndex resultIndex = resultStore.index(resultId, key -> compareService.flatten(diffResult));
+                addTableRows(model, resultIndex.query(ResultIndex.Query.ALL, 0, MAX_TABLE_ROWS));
             }
         } else {
             model.addAttribute("diffResult", null);
@@ -49,30 +140,113 @@ public class CompareController {
         return "index";
     }
 
-    @GetMapping("/api/ls")
+    /**
+     * @return the options the comparison actually runs with, which differ from {@code options} when a snapshot is
+     * compared; snapshots captured with different options are rejected with 400
+     */
+    private CompareOptions effectiveOptions(Path left, Path right, CompareOptions options) throws IOException {
+        try {
+            return compareService.effectiveOptions(left, right, options);
+        } catch (IllegalArgumentException e) {
+            throw new org.springframework.web.server.ResponseStatusException(org.springframework.http.HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    /**
+     * Shows a result saved by an earlier comparison, with the paths and options it was made with, without
+     * comparing again.
+     */
+    @GetMapping("/results/{id}")
+    public String storedResult(
+            @org.springframework.web.bind.annotation.PathVariable String id,
+            @RequestParam(required = false, defaultValue = "tree") String viewType,
+            @ModelAttribute(name = "resultQuery", binding = false) ResultIndex.Query query,
+            Model model) throws IOException {
+        ResultStore.StoredResult result = openResult(id);
+        // The table is filled from the index; only the tree view needs the whole tree
+        DiffNode diffResult = "table".equals(viewType) ? result.subtree("", 0) : result.tree();
+        model.addAttribute("leftPath", result.metadata().leftPath());
+        model.addAttribute("rightPath", result.metadata().rightPath());
+        model.addAttribute("viewType", viewType);
+        model.addAttribute("compareOptions", result.metadata().options());
+        model.addAttribute("diffResult", diffResult);
+        model.addAttribute("resultId", id);
+        if ("table".equals(viewType)) {
+            addTableRows(model, resultIndex(id).query(query, 0, MAX_TABLE_ROWS));
+        }
+        return "index";
+    }
+
+    /**
+     * The table view renders at most {@value #MAX_TABLE_ROWS} rows; {@code matchingRows} tells how many matched.
+     */
+    private static void addTableRows(Model model, ResultIndex.Page page) {
+        model.addAttribute("tableResult", page.entries());
+        model.addAttribute("matchingRows", page.total());
+    }
+
+    /**
+     * One page of the rows of a saved result that match the filter parameters ({@link #resultQuery}).
+     */
+    @GetMapping("/api/results/{id}/entries")
     @org.springframework.web.bind.annotation.ResponseBody
-    public List<FileItem> ls(@RequestParam(required = false, defaultValue = "") String path) throws IOException {
-        Path root = path.isEmpty() ? Paths.get(System.getProperty("user.home")) : Paths.get(path);
-        if (!java.nio.file.Files.exists(root) || !java.nio.file.Files.isDirectory(root)) {
-            return List.of();
+    public ResultIndex.Page resultEntries(
+            @org.springframework.web.bind.annotation.PathVariable String id,
+            @ModelAttribute(name = "resultQuery", binding = false) ResultIndex.Query query,
+            @RequestParam(required = false, defaultValue = "0") int offset,
+            @RequestParam(required = false, defaultValue = "500") int limit) throws IOException {
+        return resultIndex(id).query(query, Math.max(0, offset), Math.clamp(limit, 1, MAX_TABLE_ROWS));
+    }
+
+    private ResultIndex resultIndex(String id) throws IOException {
+        openResult(id);
+        return resultStore.index(id, key -> compareService.flatten(resultStore.open(key).tree()));
+    }
+
+    /**
+     * Direct children of one node of a saved result, for clients that expand a large result one directory at a time.
+     */
+    @GetMapping("/api/results/{id}/children")
+    @org.springframework.web.bind.annotation.ResponseBody
+    public List<ResultStore.Entry> resultChildren(
+            @org.springframework.web.bind.annotation.PathVariable String id,
+            @RequestParam(required = false, defaultValue = "") String path) throws IOException {
+        List<ResultStore.Entry> children = openResult(id).children(path);
+        if (children == null) {
+            throw new org.springframework.web.server.ResponseStatusException(org.springframework.http.HttpStatus.NOT_FOUND, "No node " + path + " in result " + id);
         }
-        
-        // Use CompareService to determine if a path is ignored
-        try (var stream = java.nio.file.Files.list(root)) {
-            return stream
-                    .filter(java.nio.file.Files::isDirectory)
-                    .filter(p -> !isIgnored(p))
-                    .map(p -> new FileItem(p.getFileName().toString(), p.toAbsolutePath().toString(), true))
-                    .sorted(java.util.Comparator.comparing(FileItem::name))
-                    .toList();
+        return children;
+    }
+
+    private ResultStore.StoredResult openResult(String id) throws IOException {
+        try {
+            return resultStore.open(id);
+        } catch (NoSuchFileException e) {
+            throw new org.springframework.web.server.ResponseStatusException(org.springframework.http.HttpStatus.NOT_FOUND, "Unknown or expired result " + id);
         }
     }
 
-    private boolean isIgnored(Path path) {
-        // Reflection-like hack to use the service's private method or just expose it
-        // Better yet, just call a method on compareService.
-        // For now, I'll update CompareService to have a public isIgnored.
-        return compareService.isIgnored(path);
+    /**
+     * Pages through the subdirectories and manifest files of {@code path} (the user's home directory by default).
+     * Pass the returned {@code nextCursor} back as {@code cursor} to fetch the following page.
+     */
+    @GetMapping("/api/ls")
+    @org.springframework.web.bind.annotation.ResponseBody
+    public DirectoryListing ls(
+            @RequestParam(required = false, defaultValue = "") String path,
+            @RequestParam(required = false, defaultValue = "") String prefix,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false, defaultValue = "200") int limit) throws IOException {
+        Path root = path.isEmpty() ? Paths.get(System.getProperty("user.home")) : Paths.get(path);
+        if (!java.nio.file.Files.isDirectory(root)) {
+            return new DirectoryListing(root.toAbsolutePath().toString(), List.of(), null);
+        }
+
+        DirectoryListingService.Page page = directoryListingService.list(root, prefix, cursor, Math.clamp(limit, 1, MAX_LS_LIMIT));
+        List<FileItem> items = page.entries().stream()
+                .map(entry -> new FileItem(entry.path().getFileName().toString(), entry.path().toAbsolutePath().toString(), entry.directory()))
+                .toList();
+        return new DirectoryListing(root.toAbsolutePath().toString(), items, page.nextCursor());
     }
 
     @GetMapping("/diff")
@@ -81,41 +255,145 @@ public class CompareController {
             @RequestParam String rightPath,
             @RequestParam String relativePath,
             @RequestParam(required = false) String sourcePath,
+            @ModelAttribute(name = "compareOptions", binding = false) CompareOptions options,
             Model model) throws IOException {
-        Path left;
-        if (sourcePath != null && !sourcePath.isEmpty()) {
-            left = Paths.get(leftPath).resolve(sourcePath);
-        } else {
-            left = Paths.get(leftPath).resolve(relativePath);
-        }
-        Path right = Paths.get(rightPath).resolve(relativePath);
-        
-        CompareService.FileDiff fileDiff = compareService.compareFiles(
-                java.nio.file.Files.exists(left) ? left : null,
-                java.nio.file.Files.exists(right) ? right : null
-        );
-        
+        Path left = resolveLeft(leftPath, relativePath, sourcePath);
+        Path right = compareService.locate(Paths.get(rightPath), relativePath);
+
+        Path existingLeft = java.nio.file.Files.exists(left) ? left : null;
+        Path existingRight = java.nio.file.Files.exists(right) ? right : null;
+        // Only the hunk layout is rendered; the viewer pages the line text in through /api/diff/{id}/lines
+        HunkIndex hunkIndex = compareService.hunkIndex(existingLeft, existingRight, options);
+
         model.addAttribute("leftPath", leftPath);
         model.addAttribute("rightPath", rightPath);
         model.addAttribute("relativePath", relativePath);
-        model.addAttribute("fileDiff", fileDiff);
+        model.addAttribute("hunkIndex", hunkIndex);
+        model.addAttribute("structureDiff", compareService.compareStructure(existingLeft, existingRight, options));
         model.addAttribute("fileName", Paths.get(relativePath).getFileName().toString());
         
         return "fileDiff";
     }
 
-    @GetMapping("/export")
-    public void export(
+    /**
+     * One page of rows of a diff previously indexed by {@link #fileDiff}; the virtualized viewer requests
+     * only the pages that scroll into view.
+     */
+    @GetMapping("/api/diff/{id}/lines")
+    @org.springframework.web.bind.annotation.ResponseBody
+    public List<HunkIndex.LineRow> diffLines(
+            @org.springframework.web.bind.annotation.PathVariable String id,
+            @RequestParam int from,
+            @RequestParam int to) {
+        HunkIndex hunkIndex = compareService.findHunkIndex(id);
+        if (hunkIndex == null) {
+            throw new org.springframework.web.server.ResponseStatusException(org.springframework.http.HttpStatus.NOT_FOUND, "Unknown or expired diff " + id);
+        }
+        return hunkIndex.lines(from, Math.min(to, from + MAX_PAGE_LINES));
+    }
+
+    private Path resolveLeft(String leftPath, String relativePath, String sourcePath) throws IOException {
+        if (sourcePath != null && !sourcePath.isEmpty()) {
+            return compareService.locate(Paths.get(leftPath), sourcePath);
+        }
+        return compareService.locate(Paths.get(leftPath), relativePath);
+    }
+
+    /**
+     * Intra-line (word/character) differences for the modified lines of one hunk, fetched by the diff
+     * view when the hunk scrolls into view.
+     */
+    @GetMapping("/api/inline-diff")
+    @org.springframework.web.bind.annotation.ResponseBody
+    public List<IntraLineDiffer.LineDiff> inlineDiff(
             @RequestParam String leftPath,
             @RequestParam String rightPath,
-            @RequestParam(required = false, defaultValue = "all") String typeFilter,
-            @RequestParam(required = false, defaultValue = "all") String statusFilter,
+            @RequestParam String relativePath,
+            @RequestParam(required = false) String sourcePath,
+            @RequestParam int from,
+            @RequestParam int to,
+            @ModelAttribute(name = "compareOptions", binding = false) CompareOptions options) throws IOException {
+        Path left = resolveLeft(leftPath, relativePath, sourcePath);
+        Path right = compareService.locate(Paths.get(rightPath), relativePath);
+        return compareService.inlineDiffs(left, right, options, from, Math.min(to, from + MAX_INLINE_LINES));
+    }
+
+    /**
+     * Downloads a manifest (snapshot) of a directory tree that can later be selected as either side of a comparison.
+     */
+    @GetMapping("/manifest")
+    public void manifest(
+            @RequestParam String path,
+            @RequestParam(required = false, defaultValue = "false") boolean lineHashes,
+            @ModelAttribute(name = "compareOptions", binding = false) CompareOptions options,
             jakarta.servlet.http.HttpServletResponse response) throws IOException {
+        Path root = Paths.get(path);
+        if (!java.nio.file.Files.isDirectory(root)) {
+            response.sendError(jakarta.servlet.http.HttpServletResponse.SC_BAD_REQUEST, "Not a directory: " + path);
+            return;
+        }
+        response.setContentType("application/octet-stream");
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + root.getFileName() + TreeManifest.EXTENSION + "\"");
+        compareService.writeManifest(root, response.getOutputStream(), options, lineHashes);
+    }
 
+    /**
+     * Estimates how many files differ between two directories from their metadata and a random sample of their
+     * content, in about {@code seconds} at most plus the time to walk both trees. The default sample of 384 files
+     * bounds the estimated modified share within about 5 percentage points at 95% confidence.
+     */
+    @GetMapping("/api/estimate")
+    @org.springframework.web.bind.annotation.ResponseBody
+    public DiffEstimate estimate(
+            @RequestParam String leftPath,
+            @RequestParam String rightPath,
+            @RequestParam(required = false, defaultValue = "384") int sampleSize,
+            @RequestParam(required = false, defaultValue = "5") int seconds,
+            @ModelAttribute(name = "compareOptions", binding = false) CompareOptions options) throws IOException {
         Path left = Paths.get(leftPath);
         Path right = Paths.get(rightPath);
-        DiffNode diffResult = compareService.compareDirectories(left, right);
-        List<CompareService.DiffEntry> tableResult = compareService.flatten(diffResult);
+        if (!java.nio.file.Files.isDirectory(left) || !java.nio.file.Files.isDirectory(right)) {
+            throw new org.springframework.web.server.ResponseStatusException(org.springframework.http.HttpStatus.BAD_REQUEST,
+                    "Estimates compare two directories");
+        }
+        return compareService.estimateDirectories(left, right, options, Math.clamp(sampleSize, 1, MAX_ESTIMATE_SAMPLE),
+                Duration.ofSeconds(Math.clamp(seconds, 1, MAX_ESTIMATE_SECONDS)));
+    }
+
+    /**
+     * Exports the rows matching the filter parameters ({@link #resultQuery}) as CSV, from a saved result if
+     * {@code resultId} is given and otherwise by comparing the two paths. {@code typeFilter} and {@code statusFilter}
+     * are older single-value forms of {@code type} and {@code status}.
+     */
+    @GetMapping("/export")
+    public void export(
+            @RequestParam(required = false) String resultId,
+            @RequestParam(required = false) String leftPath,
+            @RequestParam(required = false) String rightPath,
+            @RequestParam(required = false, defaultValue = "all") String typeFilter,
+            @RequestParam(required = false, defaultValue = "all") String statusFilter,
+            @ModelAttribute(name = "compareOptions", binding = false) CompareOptions options,
+            @ModelAttribute(name = "resultQuery", binding = false) ResultIndex.Query query,
+            jakarta.servlet.http.HttpServletResponse response) throws IOException {
+
+        ResultIndex resultIndex;
+        if (resultId != null && !resultId.isEmpty()) {
+            resultIndex = resultIndex(resultId);
+        } else if (leftPath != null && rightPath != null) {
+            effectiveOptions(Paths.get(leftPath), Paths.get(rightPath), options);
+            DiffNode diffResult = compareService.compareDirectories(Paths.get(leftPath), Paths.get(rightPath), options);
+            resultIndex = ResultIndex.of(compareService.flatten(diffResult));
+        } else {
+            response.sendError(jakarta.servlet.http.HttpServletResponse.SC_BAD_REQUEST, "Either resultId or leftPath and rightPath are required");
+            return;
+        }
+        if (!"all".equals(typeFilter)) {
+            query = query.withTypes(Set.of(typeFilter));
+        }
+        if (!"all".equals(statusFilter)) {
+            query = query.withStatuses(resultQuery(null, List.of(statusFilter), null, null, null, null, null).statuses());
+        }
+        List<CompareService.DiffEntry> tableResult = resultIndex.query(query);
 
         response.setContentType("text/csv");
         response.setHeader("Content-Disposition", "attachment; filename=\"jcompare_export.csv\"");
@@ -125,15 +403,6 @@ public class CompareController {
             writer.println("Destination Path,Source Path,Type,Status,Diff %,Added,Modified,Deleted");
 
             for (CompareService.DiffEntry entry : tableResult) {
-                // Apply filters if they were provided (to match UI view)
-                if (!"all".equals(typeFilter)) {
-                    String type = entry.isDirectory() ? "directory" : (entry.path().endsWith(".java") ? "java" : (entry.path().endsWith(".xml") ? "xml" : (entry.path().endsWith(".json") ? "json" : (entry.path().endsWith(".yaml") || entry.path().endsWith(".yml") ? "yaml" : (entry.path().endsWith(".properties") ? "props" : "file")))));
-                    if (!typeFilter.equals(type)) continue;
-                }
-                if (!"all".equals(statusFilter)) {
-                    if (!statusFilter.equals(entry.status().name().toLowerCase())) continue;
-                }
-
                 String destination = entry.path();
                 String source = entry.sourcePath() != null ? entry.sourcePath() : "";
                 String type = entry.isDirectory() ? "Directory" : "File";
@@ -157,4 +426,6 @@ public class CompareController {
     }
 
     public record FileItem(String name, String path, boolean isDirectory) {}
+
+    public record DirectoryListing(String path, List<FileItem> items, String nextCursor) {}
 }
@@ -0,0 +1,133 @@
+package one.dastec.jcompare.controller;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control for the requests that compare files or trees ({@code /} with both paths, {@code /diff},
+ * {@code /export}, {@code /manifest}, {@code /api/estimate}). At most {@code max-concurrent} of them run at once; up to {@code max-queued}
+ * more wait, in arrival order, for at most {@code queue-timeout}. Requests beyond the queue, or that time out in
+ * it, get 429 Too Many Requests with a Retry-After header instead of piling up on the server. Browsing results,
+ * paging diffs and listing directories are never held back.
+ */
+@Component
+public final class ComparisonAdmission implements HandlerInterceptor, WebMvcConfigurer {
+
+    private static final String ADMITTED = ComparisonAdmission.class.getName() + ".admitted";
+
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final Duration queueTimeout;
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Timer waitTimer;
+    private final Counter rejected;
+
+    @Autowired
+    public ComparisonAdmission(@Value("${jcompare.admission.max-concurrent:8}") int maxConcurrent,
+                               @Value("${jcompare.admission.max-queued:32}") int maxQueued,
+                               @Value("${jcompare.admission.queue-timeout:30s}") Duration queueTimeout,
+                               ObjectProvider<MeterRegistry> meterRegistry) {
+        this(maxConcurrent, maxQueued, queueTimeout, meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+    }
+
+    public ComparisonAdmission(int maxConcurrent, int maxQueued, Duration queueTimeout, MeterRegistry meterRegistry) {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.maxQueued = Math.max(0, maxQueued);
+        this.queueTimeout = queueTimeout;
+        this.permits = new Semaphore(this.maxConcurrent, true);
+        int limit = this.maxConcurrent;
+        Gauge.builder("jcompare.admission.active", permits, semaphore -> limit - semaphore.availablePermits()).register(meterRegistry);
+        Gauge.builder("jcompare.admission.queued", queued, AtomicInteger::get).register(meterRegistry);
+        this.waitTimer = Timer.builder("jcompare.admission.wait").register(meterRegistry);
+        this.rejected = Counter.builder("jcompare.admission.rejected").register(meterRegistry);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(this).addPathPatterns("/", "/diff", "/export", "/manifest", "/api/estimate");
+    }
+
+    /**
+     * @return the number of comparisons running now
+     */
+    public int active() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    /**
+     * @return the number of comparisons waiting to run
+     */
+    public int queued() {
+        return queued.get();
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        if ("/".equals(request.getServletPath()) && (isEmpty(request.getParameter("leftPath")) || isEmpty(request.getParameter("rightPath")))) {
+            return true; // Only the form
+        }
+        if (!admit()) {
+            rejected.increment();
+            response.setHeader("Retry-After", String.valueOf(Math.max(1, queueTimeout.toSeconds())));
+            response.sendError(429, "Too many comparisons are running; try again shortly");
+            return false;
+        }
+        request.setAttribute(ADMITTED, Boolean.TRUE);
+        return true;
+    }
+
+    private boolean admit() {
+        long start = System.nanoTime();
+        try {
+            // Timed tryAcquire honours the semaphore's fairness: nobody overtakes the requests already queued
+            if (permits.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+                return true;
+            }
+            if (queued.incrementAndGet() > maxQueued) {
+                queued.decrementAndGet();
+                return false;
+            }
+            try {
+                return permits.tryAcquire(queueTimeout.toNanos(), TimeUnit.NANOSECONDS);
+            } finally {
+                queued.decrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (request.getAttribute(ADMITTED) != null) {
+            request.removeAttribute(ADMITTED);
+            permits.release();
+        }
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+}
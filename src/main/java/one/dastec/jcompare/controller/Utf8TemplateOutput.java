@@ -0,0 +1,97 @@
+package one.dastec.jcompare.controller;
+
+import gg.jte.TemplateOutput;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Template output that encodes straight into a fixed UTF-8 buffer and hands it to the response stream whenever it is
+ * full; the container still decides when to send, as with its writer. Static template parts that were pre-encoded by
+ * the jte compiler ({@code binaryStaticContent}) are copied as bytes. Through a {@link java.io.Writer}, as jte's
+ * {@code PrintWriterOutput} does, each of them is decoded to a string and encoded again.
+ */
+final class Utf8TemplateOutput implements TemplateOutput {
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int count;
+
+    Utf8TemplateOutput(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[bufferSize];
+    }
+
+    @Override
+    public void writeContent(String value) {
+        writeContent(value, 0, value.length());
+    }
+
+    @Override
+    public void writeContent(String value, int beginIndex, int endIndex) {
+        byte[] bytes = buffer;
+        for (int i = beginIndex; i < endIndex; i++) {
+            if (count > bytes.length - 4) {
+                drain();
+            }
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes[count++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[count++] = (byte) (0xC0 | c >> 6);
+                bytes[count++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                int codePoint = Character.isHighSurrogate(c) && i + 1 < endIndex && Character.isLowSurrogate(value.charAt(i + 1))
+                        ? Character.toCodePoint(c, value.charAt(++i)) : -1;
+                if (codePoint < 0) {
+                    bytes[count++] = '?';
+                } else {
+                    bytes[count++] = (byte) (0xF0 | codePoint >> 18);
+                    bytes[count++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                    bytes[count++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                    bytes[count++] = (byte) (0x80 | codePoint & 0x3F);
+                }
+            } else {
+                bytes[count++] = (byte) (0xE0 | c >> 12);
+                bytes[count++] = (byte) (0x80 | c >> 6 & 0x3F);
+                bytes[count++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+    }
+
+    @Override
+    public void writeBinaryContent(byte[] value) {
+        if (value.length > buffer.length - count) {
+            drain();
+        }
+        if (value.length >= buffer.length) {
+            write(value, value.length);
+            return;
+        }
+        System.arraycopy(value, 0, buffer, count, value.length);
+        count += value.length;
+    }
+
+    /**
+     * Hands over what is left; call once the template has rendered.
+     */
+    void finish() {
+        if (count > 0) {
+            drain();
+        }
+    }
+
+    private void drain() {
+        write(buffer, count);
+        count = 0;
+    }
+
+    private void write(byte[] bytes, int length) {
+        try {
+            out.write(bytes, 0, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package one.dastec.jcompare.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Content comparison options selected for a single comparison.
+ * Any enabled ignore option makes the comparison run over normalized content instead of raw bytes.
+ * {@code semanticJava} additionally compares Java files member by member when their content differs, and
+ * {@code semanticConfig} compares XML, JSON, YAML and properties files as canonical key/value trees.
+ * The {@link IgnoreProfile} selects which files are left out of the tree walk; it does not affect content comparison.
+ */
+public record CompareOptions(boolean ignoreEol, boolean ignoreWhitespace, boolean ignoreBlankLines, boolean ignoreComments,
+                             boolean semanticJava, boolean semanticConfig, IgnoreProfile ignoreProfile) {
+
+    public static final CompareOptions DEFAULT = new CompareOptions(false, false, false, false, false, false);
+
+    public CompareOptions {
+        ignoreProfile = ignoreProfile == null ? IgnoreProfile.DEFAULT : ignoreProfile;
+    }
+
+    public CompareOptions(boolean ignoreEol, boolean ignoreWhitespace, boolean ignoreBlankLines, boolean ignoreComments,
+                          boolean semanticJava, boolean semanticConfig) {
+        this(ignoreEol, ignoreWhitespace, ignoreBlankLines, ignoreComments, semanticJava, semanticConfig, IgnoreProfile.DEFAULT);
+    }
+
+    /**
+     * @return true when file content must be compared byte for byte before any structure-aware check
+     */
+    public boolean isExact() {
+        return !ignoreEol && !ignoreWhitespace && !ignoreBlankLines && !ignoreComments;
+    }
+
+    /**
+     * @return the normalizing options in words, e.g. "ignoring whitespace, comments" or "exact content"
+     */
+    public String describeContent() {
+        List<String> ignored = new ArrayList<>();
+        if (ignoreEol) {
+            ignored.add("line endings");
+        }
+        if (ignoreWhitespace) {
+            ignored.add("whitespace");
+        }
+        if (ignoreBlankLines) {
+            ignored.add("blank lines");
+        }
+        if (ignoreComments) {
+            ignored.add("comments");
+        }
+        return ignored.isEmpty() ? "exact content" : "ignoring " + String.join(", ", ignored);
+    }
+
+    /**
+     * Compact representation of the content options, used as part of content cache keys.
+     */
+    public String cacheKey() {
+        return (ignoreEol ? "E" : "e") + (ignoreWhitespace ? "W" : "w") + (ignoreBlankLines ? "B" : "b") + (ignoreComments ? "C" : "c")
+                + (semanticJava ? "J" : "j") + (semanticConfig ? "K" : "k");
+    }
+}
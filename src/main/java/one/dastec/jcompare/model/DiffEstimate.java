@@ -0,0 +1,35 @@
+package one.dastec.jcompare.model;
+
+/**
+ * Quick estimate of how two trees differ, from a full metadata walk and a content check of a random sample of
+ * the files present on both sides. Added and removed counts are exact; the number of modified files is estimated.
+ *
+ * @param directories     directories visited on either side
+ * @param added           files only on the right
+ * @param removed         files only on the left
+ * @param common          files on both sides
+ * @param sizeChanged     common files whose sizes differ
+ * @param sampled         common files whose content was checked
+ * @param sampledModified sampled files that turned out to be modified
+ * @param modified        estimated number of modified files among the common ones
+ * @param confidence      confidence level of the {@code modified} range, e.g. 0.95
+ * @param elapsedMillis   time the estimate took
+ */
+public record DiffEstimate(long directories, long added, long removed, long common, long sizeChanged, int sampled,
+                           int sampledModified, Range modified, double confidence, long elapsedMillis) {
+
+    /**
+     * @param estimate point estimate
+     * @param lower    lower bound of the confidence interval
+     * @param upper    upper bound of the confidence interval
+     */
+    public record Range(long estimate, long lower, long upper) {
+    }
+
+    /**
+     * @return true when every common file was checked, so {@code modified} is a count rather than an estimate
+     */
+    public boolean isExact() {
+        return modified.lower() == modified.upper();
+    }
+}
@@ -1,24 +1,209 @@
 package one.dastec.jcompare.model;
 
-import lombok.Builder;
-import lombok.Data;
-import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * View of one node of a {@link DiffTree}. Views are created on demand and hold no data of their own; two views
+ * are equal when they refer to the same node of the same tree.
+ */
+public final class DiffNode {
 
-@Data
-@Builder
-public class DiffNode {
-    private String name;
-    private boolean isDirectory;
-    private DiffStatus status; // ADDED, REMOVED, MODIFIED, IDENTICAL
-    private int added;
-    private int removed;
-    private int modified;
-    private double percentage;
-    private String relativePath;
-    private String sourcePath;
-    @Builder.Default
-    private List<DiffNode> children = new ArrayList<>();
+    private final DiffTree tree;
+    private final int index;
+
+    DiffNode(DiffTree tree, int index) {
+        this.tree = tree;
+        this.index = index;
+    }
+
+    public DiffTree tree() {
+        return tree;
+    }
+
+    public int index() {
+        return index;
+    }
+
+    public String getName() {
+        return tree.name(index);
+    }
+
+    public boolean isDirectory() {
+        return tree.isDirectory(index);
+    }
+
+    public void setDirectory(boolean directory) {
+        tree.setDirectory(index, directory);
+    }
+
+    public DiffStatus getStatus() {
+        return tree.status(index);
+    }
+
+    public void setStatus(DiffStatus status) {
+        tree.setStatus(index, status);
+    }
+
+    public int getAdded() {
+        return tree.added(index);
+    }
+
+    public void setAdded(int added) {
+        tree.setAdded(index, added);
+    }
+
+    public int getRemoved() {
+        return tree.removed(index);
+    }
+
+    public void setRemoved(int removed) {
+        tree.setRemoved(index, removed);
+    }
+
+    public int getModified() {
+        return tree.modified(index);
+    }
+
+    public void setModified(int modified) {
+        tree.setModified(index, modified);
+    }
+
+    public double getPercentage() {
+        return tree.percentage(index);
+    }
+
+    public void setPercentage(double percentage) {
+        tree.setPercentage(index, percentage);
+    }
+
+    public String getRelativePath() {
+        return tree.relativePath(index);
+    }
+
+    public String getSourcePath() {
+        return tree.sourcePath(index);
+    }
+
+    public void setSourcePath(String sourcePath) {
+        tree.setSourcePath(index, sourcePath);
+    }
+
+    /**
+     * @return views of the current children, in order; a snapshot that is not affected by later changes
+     */
+    public List<DiffNode> getChildren() {
+        int child = tree.firstChild(index);
+        if (child < 0) {
+            return Collections.emptyList();
+        }
+        List<DiffNode> children = new ArrayList<>();
+        for (; child >= 0; child = tree.nextSibling(child)) {
+            children.add(new DiffNode(tree, child));
+        }
+        return Collections.unmodifiableList(children);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof DiffNode other && other.tree == tree && other.index == index;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(tree) * 31 + index;
+    }
+
+    @Override
+    public String toString() {
+        return "DiffNode(name=" + getName() + ", status=" + getStatus() + ", relativePath=" + getRelativePath() + ")";
+    }
+
+    public static DiffNodeBuilder builder() {
+        return new DiffNodeBuilder();
+    }
+
+    /**
+     * Builds a single node, with copies of the given children, as the root of a new tree. Meant for small,
+     * hand-made trees; comparisons add their nodes to a {@link DiffTree} directly.
+     */
+    public static final class DiffNodeBuilder {
+        private String name;
+        private boolean isDirectory;
+        private DiffStatus status;
+        private int added;
+        private int removed;
+        private int modified;
+        private double percentage;
+        private String relativePath;
+        private String sourcePath;
+        private List<DiffNode> children = List.of();
+
+        private DiffNodeBuilder() {
+        }
+
+        public DiffNodeBuilder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        public DiffNodeBuilder isDirectory(boolean isDirectory) {
+            this.isDirectory = isDirectory;
+            return this;
+        }
+
+        public DiffNodeBuilder status(DiffStatus status) {
+            this.status = status;
+            return this;
+        }
+
+        public DiffNodeBuilder added(int added) {
+            this.added = added;
+            return this;
+        }
+
+        public DiffNodeBuilder removed(int removed) {
+            this.removed = removed;
+            return this;
+        }
+
+        public DiffNodeBuilder modified(int modified) {
+            this.modified = modified;
+            return this;
+        }
+
+        public DiffNodeBuilder percentage(double percentage) {
+            this.percentage = percentage;
+            return this;
+        }
+
+        public DiffNodeBuilder relativePath(String relativePath) {
+            this.relativePath = relativePath;
+            return this;
+        }
+
+        public DiffNodeBuilder sourcePath(String sourcePath) {
+            this.sourcePath = sourcePath;
+            return this;
+        }
+
+        public DiffNodeBuilder children(List<DiffNode> children) {
+            this.children = children;
+            return this;
+        }
+
+        public DiffNode build() {
+            DiffTree tree = new DiffTree(name, isDirectory, relativePath);
+            tree.setStatus(0, status != null ? status : DiffStatus.IDENTICAL);
+            tree.setStatistics(0, added, removed, modified, percentage);
+            tree.setSourcePath(0, sourcePath);
+            for (DiffNode child : children) {
+                tree.copy(child, 0);
+            }
+            return tree.root();
+        }
+    }
 
     public enum DiffStatus {
         ADDED, REMOVED, MODIFIED, IDENTICAL, MOVED, MOVED_MODIFIED
@@ -0,0 +1,289 @@
+package one.dastec.jcompare.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Arena holding a whole comparison result. Nodes are int indexes into parallel primitive arrays; names (and the
+ * rare move source paths) are interned into one string table, and relative paths are rebuilt from the parent chain
+ * when asked for, so a node costs a few dozen bytes regardless of its depth. Node 0 is the root.
+ * {@link DiffNode} is a thin view of one index. Not thread-safe; a tree is built by one thread and only read after.
+ */
+public final class DiffTree {
+
+    private static final DiffNode.DiffStatus[] STATUSES = DiffNode.DiffStatus.values();
+    private static final byte DIRECTORY = 1;
+    private static final int NONE = -1;
+
+    private final String rootPath;
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> stringIds = new HashMap<>();
+
+    private int size;
+    private int[] parent = new int[16];
+    private int[] firstChild = new int[16];
+    private int[] lastChild = new int[16];
+    private int[] previousSibling = new int[16];
+    private int[] nextSibling = new int[16];
+    private int[] name = new int[16];
+    private int[] sourcePath = new int[16];
+    private byte[] flags = new byte[16];
+    private byte[] status = new byte[16];
+    private int[] added = new int[16];
+    private int[] removed = new int[16];
+    private int[] modified = new int[16];
+    private double[] percentage = new double[16];
+
+    /**
+     * @param rootPath relative path reported for the root, normally ""; paths below it are built from the names
+     */
+    public DiffTree(String rootName, boolean directory, String rootPath) {
+        this.rootPath = rootPath;
+        add(NONE, rootName, directory);
+    }
+
+    public DiffTree(String rootName, boolean directory) {
+        this(rootName, directory, "");
+    }
+
+    /**
+     * Appends a new last child to {@code parentNode}, initially IDENTICAL with empty statistics.
+     *
+     * @return the index of the new node
+     */
+    public int add(int parentNode, String nodeName, boolean directory) {
+        if (size == parent.length) {
+            grow();
+        }
+        int node = size++;
+        parent[node] = parentNode;
+        firstChild[node] = NONE;
+        lastChild[node] = NONE;
+        previousSibling[node] = NONE;
+        nextSibling[node] = NONE;
+        name[node] = intern(nodeName);
+        sourcePath[node] = NONE;
+        flags[node] = directory ? DIRECTORY : 0;
+        status[node] = (byte) DiffNode.DiffStatus.IDENTICAL.ordinal();
+        if (parentNode != NONE) {
+            link(parentNode, node);
+        }
+        return node;
+    }
+
+    private void link(int parentNode, int node) {
+        int last = lastChild[parentNode];
+        if (last == NONE) {
+            firstChild[parentNode] = node;
+        } else {
+            nextSibling[last] = node;
+            previousSibling[node] = last;
+        }
+        lastChild[parentNode] = node;
+    }
+
+    /**
+     * Unlinks a node (and its subtree) from its parent. The node keeps its data and its path, so it can still be
+     * referred to, e.g. as the source of a move.
+     */
+    public void detach(int node) {
+        int parentNode = parent[node];
+        if (parentNode == NONE) {
+            return;
+        }
+        int previous = previousSibling[node];
+        int next = nextSibling[node];
+        if (previous == NONE) {
+            if (firstChild[parentNode] != node) {
+                return; // Already detached
+            }
+            firstChild[parentNode] = next;
+        } else {
+            nextSibling[previous] = next;
+        }
+        if (next == NONE) {
+            lastChild[parentNode] = previous;
+        } else {
+            previousSibling[next] = previous;
+        }
+        previousSibling[node] = NONE;
+        nextSibling[node] = NONE;
+    }
+
+    private int intern(String value) {
+        if (value == null) {
+            return NONE;
+        }
+        Integer id = stringIds.get(value);
+        if (id == null) {
+            id = strings.size();
+            strings.add(value);
+            stringIds.put(value, id);
+        }
+        return id;
+    }
+
+    private void grow() {
+        int capacity = parent.length + (parent.length >> 1);
+        parent = Arrays.copyOf(parent, capacity);
+        firstChild = Arrays.copyOf(firstChild, capacity);
+        lastChild = Arrays.copyOf(lastChild, capacity);
+        previousSibling = Arrays.copyOf(previousSibling, capacity);
+        nextSibling = Arrays.copyOf(nextSibling, capacity);
+        name = Arrays.copyOf(name, capacity);
+        sourcePath = Arrays.copyOf(sourcePath, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        status = Arrays.copyOf(status, capacity);
+        added = Arrays.copyOf(added, capacity);
+        removed = Arrays.copyOf(removed, capacity);
+        modified = Arrays.copyOf(modified, capacity);
+        percentage = Arrays.copyOf(percentage, capacity);
+    }
+
+    public DiffNode root() {
+        return new DiffNode(this, 0);
+    }
+
+    public DiffNode node(int node) {
+        return new DiffNode(this, node);
+    }
+
+    /**
+     * @return the number of nodes ever added, including detached ones
+     */
+    public int size() {
+        return size;
+    }
+
+    public int parent(int node) {
+        return parent[node];
+    }
+
+    /**
+     * @return the first child of a node, or -1
+     */
+    public int firstChild(int node) {
+        return firstChild[node];
+    }
+
+    /**
+     * @return the next sibling of a node, or -1
+     */
+    public int nextSibling(int node) {
+        return nextSibling[node];
+    }
+
+    public String name(int node) {
+        return strings.get(name[node]);
+    }
+
+    public boolean isDirectory(int node) {
+        return (flags[node] & DIRECTORY) != 0;
+    }
+
+    public void setDirectory(int node, boolean directory) {
+        flags[node] = (byte) (directory ? flags[node] | DIRECTORY : flags[node] & ~DIRECTORY);
+    }
+
+    public DiffNode.DiffStatus status(int node) {
+        return STATUSES[status[node]];
+    }
+
+    public void setStatus(int node, DiffNode.DiffStatus nodeStatus) {
+        status[node] = (byte) nodeStatus.ordinal();
+    }
+
+    public int added(int node) {
+        return added[node];
+    }
+
+    public int removed(int node) {
+        return removed[node];
+    }
+
+    public int modified(int node) {
+        return modified[node];
+    }
+
+    public double percentage(int node) {
+        return percentage[node];
+    }
+
+    public void setStatistics(int node, int nodeAdded, int nodeRemoved, int nodeModified, double nodePercentage) {
+        added[node] = nodeAdded;
+        removed[node] = nodeRemoved;
+        modified[node] = nodeModified;
+        percentage[node] = nodePercentage;
+    }
+
+    void setAdded(int node, int value) {
+        added[node] = value;
+    }
+
+    void setRemoved(int node, int value) {
+        removed[node] = value;
+    }
+
+    void setModified(int node, int value) {
+        modified[node] = value;
+    }
+
+    void setPercentage(int node, double value) {
+        percentage[node] = value;
+    }
+
+    /**
+     * @return the '/'-separated path of a node below the compared roots, rebuilt from the names of its ancestors
+     */
+    public String relativePath(int node) {
+        if (node == 0) {
+            return rootPath;
+        }
+        int depth = 0;
+        for (int current = node; current > 0; current = parent[current]) {
+            depth++;
+        }
+        int[] chain = new int[depth];
+        for (int current = node, i = depth - 1; current > 0; current = parent[current], i--) {
+            chain[i] = current;
+        }
+        StringBuilder path = new StringBuilder(rootPath == null ? "" : rootPath);
+        for (int current : chain) {
+            if (!path.isEmpty()) {
+                path.append('/');
+            }
+            path.append(strings.get(name[current]));
+        }
+        return path.toString();
+    }
+
+    /**
+     * @return the path a moved file came from, or null
+     */
+    public String sourcePath(int node) {
+        return sourcePath[node] == NONE ? null : strings.get(sourcePath[node]);
+    }
+
+    public void setSourcePath(int node, String path) {
+        sourcePath[node] = intern(path);
+    }
+
+    /**
+     * Copies {@code source} and its subtree below {@code parentNode} of this tree.
+     *
+     * @return the index of the copy
+     */
+    public int copy(DiffNode source, int parentNode) {
+        int node = add(parentNode, source.getName(), source.isDirectory());
+        setStatus(node, source.getStatus() != null ? source.getStatus() : DiffNode.DiffStatus.IDENTICAL);
+        setStatistics(node, source.getAdded(), source.getRemoved(), source.getModified(), source.getPercentage());
+        setSourcePath(node, source.getSourcePath());
+        for (DiffNode child : source.getChildren()) {
+            copy(child, node);
+        }
+        return node;
+    }
+}
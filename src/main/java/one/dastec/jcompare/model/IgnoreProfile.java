@@ -0,0 +1,18 @@
+package one.dastec.jcompare.model;
+
+/**
+ * Which ignore rules apply to a single comparison.
+ *
+ * @param globalFile      the application-wide {@code .jcompare-ignore} (or the built-in defaults)
+ * @param repositoryFiles {@code .gitignore} and {@code .jcompare-ignore} files found inside the compared roots,
+ *                        applied hierarchically like git does
+ * @param patterns        ad-hoc gitignore-style patterns, separated by commas or new lines
+ */
+public record IgnoreProfile(boolean globalFile, boolean repositoryFiles, String patterns) {
+
+    public static final IgnoreProfile DEFAULT = new IgnoreProfile(true, false, "");
+
+    public IgnoreProfile {
+        patterns = patterns == null ? "" : patterns.trim();
+    }
+}
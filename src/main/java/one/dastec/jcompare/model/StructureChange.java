@@ -0,0 +1,17 @@
+package one.dastec.jcompare.model;
+
+/**
+ * A single change found by a structure-aware comparison, e.g. a Java member or a configuration key.
+ *
+ * @param path  qualified element path such as {@code Outer.Inner#method(int)} or {@code spring.datasource.url}
+ * @param kind  element kind (method, field, class, key, ...)
+ * @param type  what happened to the element
+ * @param left  short description of the left element, or null if absent
+ * @param right short description of the right element, or null if absent
+ */
+public record StructureChange(String path, String kind, ChangeType type, String left, String right) {
+
+    public enum ChangeType {
+        ADDED, REMOVED, CHANGED, REORDERED
+    }
+}
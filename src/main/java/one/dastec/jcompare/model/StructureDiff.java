@@ -0,0 +1,24 @@
+package one.dastec.jcompare.model;
+
+import java.util.List;
+
+/**
+ * Result of a structure-aware comparison of two files.
+ *
+ * @param format    parsed format, e.g. "java"
+ * @param changes   element level changes: added and changed elements in right-hand order, then removed and reordered ones
+ * @param unchanged number of elements present and identical on both sides
+ */
+public record StructureDiff(String format, List<StructureChange> changes, int unchanged) {
+
+    /**
+     * @return true when the files only differ by reordering, which structure-aware modes treat as identical
+     */
+    public boolean isEquivalent() {
+        return changes.stream().allMatch(change -> change.type() == StructureChange.ChangeType.REORDERED);
+    }
+
+    public long count(StructureChange.ChangeType type) {
+        return changes.stream().filter(change -> change.type() == type).count();
+    }
+}
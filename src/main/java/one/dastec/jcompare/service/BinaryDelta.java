@@ -0,0 +1,313 @@
+package one.dastec.jcompare.service;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Difference of two binary files, computed like rsync: the left file is cut into fixed-size blocks with a weak
+ * rolling checksum and a strong 64-bit hash each ({@link #signatures}), then the right file is streamed through a
+ * one-block window that rolls byte by byte and jumps a whole block whenever it lines up with a left block
+ * ({@link #compute}). Bytes of the right file not covered by a reused block are reported as changed ranges.
+ * Memory is bounded by the signature table (at most {@value #MAX_BLOCKS} blocks) plus one block of window.
+ *
+ * @param bytesChanged  bytes of the right file not found in any left block
+ * @param blocksReused  distinct left blocks found in the right file
+ * @param ranges        the first {@value #MAX_RANGES} changed ranges of the right file
+ * @param rangeCount    total number of changed ranges
+ */
+public record BinaryDelta(long leftSize, long rightSize, int blockSize, int blockCount, int blocksReused,
+                          long bytesChanged, List<Range> ranges, long rangeCount) {
+
+    static final int MAX_BLOCKS = 1 << 20;
+    static final int MAX_RANGES = 500;
+    private static final int MIN_BLOCK_SIZE = 512;
+    private static final int SNIFF_LENGTH = 8192;
+
+    /**
+     * Changed bytes {@code [from, to)} of the right file.
+     */
+    public record Range(long from, long to) {
+        public long length() {
+            return to - from;
+        }
+    }
+
+    /**
+     * @return the share of left blocks that reappear in the right file
+     */
+    public double reusedPercentage() {
+        return blockCount == 0 ? 0 : (double) blocksReused / blockCount * 100;
+    }
+
+    /**
+     * @return changed right bytes plus dropped left bytes, relative to both sizes
+     */
+    public double differencePercentage() {
+        long total = leftSize + rightSize;
+        long reusedBytes = Math.min(leftSize, (long) blocksReused * blockSize);
+        return total == 0 ? 0 : (double) (bytesChanged + leftSize - reusedBytes) / total * 100;
+    }
+
+    /**
+     * Files with a NUL byte in their first 8 KB are treated as binary; missing files are not.
+     */
+    public static boolean isBinary(Path file) throws IOException {
+        if (file == null || !Files.isRegularFile(file)) {
+            return false;
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] head = in.readNBytes(SNIFF_LENGTH);
+            for (byte b : head) {
+                if (b == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Block signatures of the left file.
+     */
+    static final class Signatures {
+        private final long size;
+        private final int blockSize;
+        private final int lastBlockSize;
+        private final int[] weak;
+        private final long[] strong;
+        private final int[] heads;
+        private final int[] next;
+
+        private Signatures(long size, int blockSize, int blockCount, int lastBlockSize) {
+            this.size = size;
+            this.blockSize = blockSize;
+            this.lastBlockSize = lastBlockSize;
+            this.weak = new int[blockCount];
+            this.strong = new long[blockCount];
+            this.heads = new int[Integer.highestOneBit(Math.max(1, blockCount)) * 2];
+            this.next = new int[blockCount];
+            Arrays.fill(heads, -1);
+        }
+
+        private void add(int block) {
+            int slot = slot(weak[block]);
+            next[block] = heads[slot];
+            heads[slot] = block;
+        }
+
+        private int slot(int weakSum) {
+            return (weakSum * 0x9E3779B9) >>> 1 & (heads.length - 1);
+        }
+
+        private int blockLength(int block) {
+            return block == weak.length - 1 ? lastBlockSize : blockSize;
+        }
+
+        /**
+         * @param start index of the window's first byte in {@code ring}; the window wraps around its end
+         * @return a block of the given length matching the window, or -1
+         */
+        private int find(int weakSum, byte[] ring, int start, int length) {
+            if (weak.length == 0) {
+                return -1;
+            }
+            boolean hashed = false;
+            long strongHash = 0;
+            for (int block = heads[slot(weakSum)]; block >= 0; block = next[block]) {
+                if (weak[block] != weakSum || blockLength(block) != length) {
+                    continue;
+                }
+                if (!hashed) {
+                    strongHash = strong(ring, start, length);
+                    hashed = true;
+                }
+                if (strong[block] == strongHash) {
+                    return block;
+                }
+            }
+            return -1;
+        }
+    }
+
+    static Signatures signatures(Path left) throws IOException {
+        if (left == null || !Files.isRegularFile(left)) {
+            return new Signatures(0, MIN_BLOCK_SIZE, 0, 0);
+        }
+        long size = Files.size(left);
+        int blockSize = blockSize(size);
+        int blockCount = (int) ((size + blockSize - 1) / blockSize);
+        int lastBlockSize = blockCount == 0 ? 0 : (int) (size - (long) (blockCount - 1) * blockSize);
+        Signatures signatures = new Signatures(size, blockSize, blockCount, lastBlockSize);
+        byte[] block = new byte[blockSize];
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(left), 64 * 1024)) {
+            for (int i = 0; i < blockCount; i++) {
+                int length = in.readNBytes(block, 0, signatures.blockLength(i));
+                signatures.weak[i] = weak(block, 0, length);
+                signatures.strong[i] = strong(block, 0, length);
+                signatures.add(i);
+            }
+        }
+        return signatures;
+    }
+
+    /**
+     * Square root of the size, as rsync does, but large enough to keep the table within {@link #MAX_BLOCKS}.
+     */
+    private static int blockSize(long size) {
+        long blockSize = Math.max(MIN_BLOCK_SIZE, (long) Math.sqrt((double) size));
+        blockSize = Math.max(blockSize, (size + MAX_BLOCKS - 1) / MAX_BLOCKS);
+        return (int) Math.min(blockSize, Integer.MAX_VALUE / 2);
+    }
+
+    static BinaryDelta compute(Signatures signatures, Path right) throws IOException {
+        int blockSize = signatures.blockSize;
+        int blockCount = signatures.weak.length;
+        if (right == null || !Files.isRegularFile(right)) {
+            return new BinaryDelta(signatures.size, 0, blockSize, blockCount, 0, 0, List.of(), 0);
+        }
+        long rightSize = Files.size(right);
+        BitSet reused = new BitSet(blockCount);
+        RangeCollector changed = new RangeCollector();
+
+        // The window is a ring of one block; start is the index of its first byte
+        byte[] window = new byte[blockSize];
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(right), 64 * 1024)) {
+            long position = 0;
+            int length = in.readNBytes(window, 0, blockSize);
+            int start = 0;
+            int a = 0;
+            int b = 0;
+            boolean fresh = true;
+            while (length == blockSize) {
+                if (fresh) {
+                    a = sumA(window, 0, length);
+                    b = sumB(window, 0, length);
+                    fresh = false;
+                }
+                int block = signatures.find(a & 0xFFFF | b << 16, window, start, blockSize);
+                if (block >= 0) {
+                    reused.set(block);
+                    changed.close(position);
+                    position += blockSize;
+                    length = in.readNBytes(window, 0, blockSize);
+                    start = 0;
+                    fresh = true;
+                    continue;
+                }
+                int incoming = in.read();
+                if (incoming < 0) {
+                    window = linear(window, start);
+                    start = 0;
+                    break;
+                }
+                changed.open(position);
+                int outgoing = window[start] & 0xFF;
+                window[start] = (byte) incoming;
+                start = (start + 1) % blockSize;
+                a = a - outgoing + incoming;
+                b = b - blockSize * outgoing + a;
+                position++;
+            }
+            // Fewer than a block's worth of bytes are left, or the last full window did not match. Only the end
+            // of the tail can still match, and only the left file's last block.
+            int skip = Math.max(0, length - signatures.lastBlockSize);
+            if (skip > 0) {
+                changed.open(position);
+                position += skip;
+            }
+            int remaining = length - skip;
+            int block = remaining > 0 ? signatures.find(weak(window, skip, remaining), window, skip, remaining) : -1;
+            if (block >= 0) {
+                reused.set(block);
+                changed.close(position);
+            } else {
+                if (remaining > 0) {
+                    changed.open(position);
+                }
+                changed.close(position + remaining);
+            }
+        }
+        return new BinaryDelta(signatures.size, rightSize, blockSize, blockCount, reused.cardinality(),
+                changed.bytes, List.copyOf(changed.ranges), changed.count);
+    }
+
+    /**
+     * Changed ranges as they are found; only the first {@link #MAX_RANGES} are kept, all are counted.
+     */
+    private static final class RangeCollector {
+        private final List<Range> ranges = new ArrayList<>();
+        private long openedAt = -1;
+        private long bytes;
+        private long count;
+
+        private void open(long position) {
+            if (openedAt < 0) {
+                openedAt = position;
+            }
+        }
+
+        private void close(long position) {
+            if (openedAt < 0) {
+                return;
+            }
+            if (ranges.size() < MAX_RANGES) {
+                ranges.add(new Range(openedAt, position));
+            }
+            bytes += position - openedAt;
+            count++;
+            openedAt = -1;
+        }
+    }
+
+    private static byte[] linear(byte[] ring, int start) {
+        if (start == 0) {
+            return ring;
+        }
+        byte[] linear = new byte[ring.length];
+        System.arraycopy(ring, start, linear, 0, ring.length - start);
+        System.arraycopy(ring, 0, linear, ring.length - start, start);
+        return linear;
+    }
+
+    private static int sumA(byte[] data, int offset, int length) {
+        int a = 0;
+        for (int i = 0; i < length; i++) {
+            a += data[offset + i] & 0xFF;
+        }
+        return a;
+    }
+
+    private static int sumB(byte[] data, int offset, int length) {
+        int b = 0;
+        for (int i = 0; i < length; i++) {
+            b += (length - i) * (data[offset + i] & 0xFF);
+        }
+        return b;
+    }
+
+    /**
+     * rsync's weak checksum: two 16-bit sums that can be rolled forward one byte at a time.
+     */
+    private static int weak(byte[] data, int offset, int length) {
+        return sumA(data, offset, length) & 0xFFFF | sumB(data, offset, length) << 16;
+    }
+
+    /**
+     * 64-bit FNV-1a, checked only when the weak checksum matches. Reads {@code length} bytes from {@code offset},
+     * wrapping around the end of {@code data}.
+     */
+    private static long strong(byte[] data, int offset, int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0, j = offset; i < length; i++, j = j + 1 == data.length ? 0 : j + 1) {
+            hash = (hash ^ (data[j] & 0xFF)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,90 @@
+package one.dastec.jcompare.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Small thread-safe LRU cache. Values are computed outside the lock, so two threads
+ * may occasionally compute the same entry; the first one stored wins. Values that hold
+ * resources can be released through a removal listener, which is called for evicted,
+ * replaced, removed and cleared values, and for computed values that lost the race.
+ */
+public class BoundedCache<K, V> {
+
+    private final Map<K, V> entries;
+    private final Consumer<V> onRemoval;
+
+    public BoundedCache(int maxEntries) {
+        this(maxEntries, value -> {
+        });
+    }
+
+    public BoundedCache(int maxEntries, Consumer<V> onRemoval) {
+        this.onRemoval = onRemoval;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() > maxEntries) {
+                    onRemoval.accept(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public synchronized V get(K key) {
+        return entries.get(key);
+    }
+
+    public synchronized void put(K key, V value) {
+        V previous = entries.put(key, value);
+        if (previous != null && previous != value) {
+            onRemoval.accept(previous);
+        }
+    }
+
+    public synchronized void remove(K key) {
+        V previous = entries.remove(key);
+        if (previous != null) {
+            onRemoval.accept(previous);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        List<V> values = new ArrayList<>(entries.values());
+        entries.clear();
+        values.forEach(onRemoval);
+    }
+
+    public V computeIfAbsent(K key, Loader<K, V> loader) throws IOException {
+        V value = get(key);
+        if (value == null) {
+            value = loader.load(key);
+            if (value != null) {
+                V existing;
+                synchronized (this) {
+                    existing = entries.putIfAbsent(key, value);
+                }
+                if (existing != null) {
+                    onRemoval.accept(value);
+                    value = existing;
+                }
+            }
+        }
+        return value;
+    }
+
+    @FunctionalInterface
+    public interface Loader<K, V> {
+        V load(K key) throws IOException;
+    }
+}
@@ -1,27 +1,115 @@
 package one.dastec.jcompare.service;
 
+import one.dastec.jcompare.model.CompareOptions;
+import one.dastec.jcompare.model.DiffEstimate;
 import one.dastec.jcompare.model.DiffNode;
+import one.dastec.jcompare.model.DiffTree;
+import one.dastec.jcompare.model.StructureDiff;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 @Service
-public class CompareService {
+public final class CompareService implements Closeable {
+
+    /**
+     * Threads used to verify candidate moves; the reads they do are still limited per device by the {@link IoScheduler}.
+     */
+    private static final int VERIFY_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    /**
+     * Directory depth down to which finished subtrees are checkpointed; deeper ones are only saved as part of these.
+     */
+    private static final int CHECKPOINT_DEPTH = 2;
+    /**
+     * Shared by all comparisons, so concurrent move detections and estimates queue for the same threads instead of
+     * each starting a pool of their own.
+     */
+    private static final ExecutorService VERIFY_EXECUTOR = Executors.newFixedThreadPool(VERIFY_THREADS,
+            Thread.ofPlatform().name("jcompare-verify-", 0).daemon().factory());
+    /**
+     * The first statement of a Java file if it is a package declaration, possibly annotated (package-info.java).
+     */
+    private static final Pattern PACKAGE_DECLARATION = Pattern.compile("(?:@[\\w.]+(?:\\([^)]*\\))?\\s*)*package\\s+([\\w$.\\s]+)");
+    /**
+     * Characters of the first statement read before a file is taken to have no package declaration.
+     */
+    private static final int MAX_HEADER_CHARS = 64 * 1024;
 
     private final List<PathMatcher> ignoreMatchers;
+    private final IoScheduler ioScheduler;
+    private final ContentHasher contentHasher;
+    private final StructureComparator structureComparator;
+    private final IgnoreProfiles ignoreProfiles;
+    private final ManifestComparator manifestComparator;
+    private final ResultStore resultStore;
+    private final GitBlobStore gitBlobs;
+    private final BoundedCache<String, long[]> lineHashes = new BoundedCache<>(20_000);
+    private final BoundedCache<String, HunkIndex> hunkIndexes = new BoundedCache<>(16);
+    private final BoundedCache<String, IntraLineDiffer.LineDiff> inlineDiffs = new BoundedCache<>(50_000);
+    private final BoundedCache<String, BinaryDelta> binaryDeltas = new BoundedCache<>(1_000);
+    /**
+     * Open repositories keep their pack files open; they are retired when evicted and when the service is closed,
+     * and close once no comparison uses them any more.
+     */
+    private final BoundedCache<Path, GitRepository> gitRepositories = new BoundedCache<>(16, CompareService::retire);
 
     public CompareService() {
-        this.ignoreMatchers = loadIgnoreMatchers();
+        this(new IoScheduler());
+    }
+
+    public CompareService(IoScheduler ioScheduler) {
+        this(ioScheduler, null);
+    }
+
+    /**
+     * All file reads go through {@code ioScheduler}: tree walks and move detection as background reads,
+     * the file diff view as interactive reads. Directory comparisons checkpoint finished subtrees into
+     * {@code resultStore}, if given, and resume from them after an interruption.
+     */
+    public CompareService(IoScheduler ioScheduler, ResultStore resultStore) {
+        this(ioScheduler, resultStore, new GitBlobStore());
+    }
+
+    /**
+     * @param gitBlobs where files of git revisions ({@code <repository>@<revision>}) are extracted to when their
+     *                 content has to be read
+     */
+    @Autowired
+    public CompareService(IoScheduler ioScheduler, ResultStore resultStore, GitBlobStore gitBlobs) {
+        this.resultStore = resultStore;
+        this.gitBlobs = gitBlobs;
+        List<PathMatcher> matchers = loadIgnoreMatchers();
+        this.ignoreMatchers = matchers;
+        this.ioScheduler = ioScheduler;
+        this.contentHasher = new ContentHasher(ioScheduler);
+        this.structureComparator = new StructureComparator(contentHasher);
+        this.ignoreProfiles = new IgnoreProfiles(contentHasher, path -> isIgnored(matchers, path));
+        this.manifestComparator = new ManifestComparator(contentHasher, this::lineHashes);
     }
 
-    private List<PathMatcher> loadIgnoreMatchers() {
+    private static List<PathMatcher> loadIgnoreMatchers() {
         List<PathMatcher> matchers = new ArrayList<>();
         Path ignoreFile = Path.of(".jcompare-ignore");
         if (Files.exists(ignoreFile)) {
@@ -62,86 +150,401 @@ public class CompareService {
     }
 
     public boolean isIgnored(Path path) {
-        return ignoreMatchers.stream().anyMatch(matcher -> matcher.matches(path) || matcher.matches(path.getFileName()));
+        return isIgnored(ignoreMatchers, path);
+    }
+
+    private static boolean isIgnored(List<PathMatcher> matchers, Path path) {
+        return matchers.stream().anyMatch(matcher -> matcher.matches(path) || matcher.matches(path.getFileName()));
+    }
+
+    /**
+     * @return the options a comparison of {@code left} and {@code right} runs with: {@code options}, unless either
+     * side is a {@link TreeManifest}, whose content is compared with the options it was captured with and without
+     * structure-aware comparison (the ignore profile still applies)
+     * @throws IllegalArgumentException if both sides are manifests captured with different options
+     */
+    public CompareOptions effectiveOptions(Path left, Path right, CompareOptions options) throws IOException {
+        CompareOptions captureOptions = ManifestComparator.captureOptions(left, right);
+        if (captureOptions == null) {
+            return options;
+        }
+        return new CompareOptions(captureOptions.ignoreEol(), captureOptions.ignoreWhitespace(), captureOptions.ignoreBlankLines(),
+                captureOptions.ignoreComments(), false, false, options.ignoreProfile());
     }
 
     public DiffNode compareDirectories(Path left, Path right) throws IOException {
+        return compareDirectories(left, right, CompareOptions.DEFAULT);
+    }
+
+    /**
+     * Either side may also be a {@link TreeManifest} ({@code .jcm}) captured earlier with {@link #writeManifest};
+     * such comparisons use the content hashes recorded in the manifest and skip move detection, and compare content
+     * with {@link #effectiveOptions} rather than {@code options}.
+     * Both sides may also be revisions of local git repositories, written {@code <repository>@<revision>} (e.g.
+     * {@code /work/project@main} and {@code /work/project@HEAD~3}); those are compared from the object database
+     * without a checkout.
+     */
+    public DiffNode compareDirectories(Path left, Path right, CompareOptions options) throws IOException {
+        if (TreeManifest.isManifest(left) || TreeManifest.isManifest(right)) {
+            return manifestComparator.compare(left, right, ignoreProfiles.root(options.ignoreProfile()));
+        }
         String rootName = right != null ? right.getFileName().toString() : (left != null ? left.getFileName().toString() : "root");
-        DiffNode root = compare(rootName, left, right, "");
-        detectMoves(root, left, right);
-        return root;
+        DiffTree tree = new DiffTree(rootName, true);
+        GitRepository.Revision leftRevision = gitRevision(left);
+        GitRepository.Revision rightRevision = null;
+        try {
+            rightRevision = gitRevision(right);
+            if (leftRevision != null || rightRevision != null) {
+                if (leftRevision == null || rightRevision == null) {
+                    throw new NoSuchFileException(String.valueOf(leftRevision == null ? left : right), null,
+                            "A git revision can only be compared with another revision");
+                }
+                compareRevisions(tree, leftRevision, rightRevision, options);
+                return tree.root();
+            }
+        } finally {
+            release(leftRevision);
+            release(rightRevision);
+        }
+        try (ResultStore.Checkpoint checkpoint = resultStore != null ? resultStore.checkpoint(left, right, options) : ResultStore.Checkpoint.NONE) {
+            try {
+                compare(tree, 0, left, right, "", options, ignoreProfiles.root(options.ignoreProfile()), checkpoint, null);
+                detectMoves(tree, left::resolve, right::resolve, options);
+            } finally {
+                // Finished or failed (an I/O error, an aborted request): only a crash leaves something to resume
+                checkpoint.complete();
+            }
+        }
+        return tree.root();
     }
 
-    private void detectMoves(DiffNode root, Path leftBase, Path rightBase) throws IOException {
-        List<DiffNode> addedFiles = new ArrayList<>();
-        List<DiffNode> removedFiles = new ArrayList<>();
-        collectAddedAndRemovedFiles(root, addedFiles, removedFiles);
+    /**
+     * @return the revision {@code path} names if it is {@code <repository>@<revision>} and does not exist as such,
+     * otherwise null; its repository is held open until {@link #release released}
+     */
+    private GitRepository.Revision gitRevision(Path path) throws IOException {
+        if (path == null) {
+            return null;
+        }
+        String spec = path.toString();
+        int at = spec.lastIndexOf('@');
+        if (at <= 0 || at == spec.length() - 1 || Files.exists(path)) {
+            return null;
+        }
+        Path directory = Path.of(spec.substring(0, at)).toAbsolutePath().normalize();
+        if (!Files.isDirectory(directory) || !GitRepository.isRepository(directory)) {
+            return null;
+        }
+        while (true) {
+            GitRepository repository = gitRepositories.computeIfAbsent(directory, key -> GitRepository.open(key, gitBlobs));
+            // Fails only if it was evicted and closed since the lookup, which also took it out of the cache
+            if (repository.acquire()) {
+                try {
+                    return repository.revision(spec.substring(at + 1));
+                } catch (IOException | RuntimeException e) {
+                    release(repository);
+                    throw e;
+                }
+            }
+        }
+    }
 
-        Set<DiffNode> toRemoveFromTree = new HashSet<>();
+    private static void release(GitRepository.Revision revision) {
+        if (revision != null) {
+            release(revision.repository());
+        }
+    }
 
-        for (DiffNode added : addedFiles) {
-            for (DiffNode removed : removedFiles) {
-                if (added.getStatus() == DiffNode.DiffStatus.ADDED && removed.getStatus() == DiffNode.DiffStatus.REMOVED) {
-                    if (added.getName().equals(removed.getName())) {
-                        Path leftFile = leftBase.resolve(removed.getRelativePath());
-                        Path rightFile = rightBase.resolve(added.getRelativePath());
+    private static void release(GitRepository repository) {
+        try {
+            repository.release();
+        } catch (IOException e) {
+            // Only read from; nothing is lost
+        }
+    }
 
-                        // If it's a Java file, verify the package name matches the expected package for both sides
-                        if (added.getName().endsWith(".java")) {
-                            String leftPackage = extractPackageName(leftFile);
-                            String rightPackage = extractPackageName(rightFile);
+    private static void retire(GitRepository repository) {
+        try {
+            repository.retire();
+        } catch (IOException e) {
+            // Only read from; nothing is lost
+        }
+    }
 
-                            // They must have the same package name in the source code
-                            if (leftPackage == null || !leftPackage.equals(rightPackage)) {
-                                continue;
-                            }
-                        }
+    /**
+     * Closes the cached git repositories, each once the comparisons using it have finished.
+     */
+    @Override
+    public void close() {
+        gitRepositories.clear();
+    }
 
-                        if (Files.mismatch(leftFile, rightFile) == -1) {
-                            added.setStatus(DiffNode.DiffStatus.MOVED);
-                        } else {
-                            added.setStatus(DiffNode.DiffStatus.MOVED_MODIFIED);
-                            FileDiff fileDiff = compareFiles(leftFile, rightFile);
-                            added.setAdded(fileDiff.added());
-                            added.setRemoved(fileDiff.removed());
-                            added.setModified(fileDiff.modified());
-                            added.setPercentage(fileDiff.percentage());
-                        }
-                        added.setSourcePath(removed.getRelativePath());
-                        toRemoveFromTree.add(removed);
-                        break; // Move to next added file once matched
+    private void compareRevisions(DiffTree tree, GitRepository.Revision left, GitRepository.Revision right, CompareOptions options)
+            throws IOException {
+        GitComparator.ContentComparison content = new GitComparator.ContentComparison() {
+            @Override
+            public boolean needsContent(String name) {
+                return !options.isExact() || structureComparator.isEnabled(name, options);
+            }
+
+            @Override
+            public boolean isEquivalent(Path leftFile, Path rightFile) throws IOException {
+                return CompareService.this.isEquivalent(leftFile, rightFile, options);
+            }
+
+            @Override
+            public FileDiff lineStats(Path leftFile, Path rightFile) throws IOException {
+                return CompareService.this.lineStats(leftFile, rightFile, options, IoScheduler.Priority.BACKGROUND);
+            }
+        };
+        new GitComparator(content, left.repository(), right.repository()).compare(tree, left, right, ignoreProfiles.root(options.ignoreProfile()));
+        detectMoves(tree, left::locate, right::locate, options);
+    }
+
+    /**
+     * @return the file at {@code relativePath} below {@code base}; below a git revision the file is extracted from
+     * the repository first, and if the revision has no such file a path that does not exist is returned
+     */
+    public Path locate(Path base, String relativePath) throws IOException {
+        GitRepository.Revision revision = gitRevision(base);
+        try {
+            Path file = revision != null ? revision.locate(relativePath) : null;
+            return file != null ? file : base.resolve(relativePath);
+        } finally {
+            release(revision);
+        }
+    }
+
+    /**
+     * Estimates the differences between two directories in a fraction of the time {@link #compareDirectories} takes:
+     * the structure is compared in full from metadata, but the content of at most {@code sampleSize} same-size files
+     * (and as many different-size ones when the options normalize content) is checked, for at most {@code budget}.
+     * Run {@link #compareDirectories} afterwards for the exact result.
+     */
+    public DiffEstimate estimateDirectories(Path left, Path right, CompareOptions options, int sampleSize, Duration budget) throws IOException {
+        QuickEstimator estimator = new QuickEstimator((leftFile, rightFile) -> isEquivalent(leftFile, rightFile, options), VERIFY_EXECUTOR,
+                ignoreProfiles.root(options.ignoreProfile()), options, sampleSize, Objects.hash(left, right));
+        return estimator.estimate(left, right, budget);
+    }
+
+    /**
+     * Checks whether two files have the same content. With non-exact options both files are
+     * streamed once through the normalizer into a (cached) hash instead of being compared byte for byte.
+     */
+    private boolean contentEquals(Path left, Path right, CompareOptions options) throws IOException {
+        if (options.isExact()) {
+            // Admitted by the left file's device only; taking a second slot while holding one could deadlock
+            return ioScheduler.read(left, IoScheduler.Priority.BACKGROUND, () -> Files.mismatch(left, right)) == -1;
+        }
+        return contentHasher.hash(left, options).equals(contentHasher.hash(right, options));
+    }
+
+    /**
+     * Content equality, extended by the structure-aware comparison when it is enabled for the file type:
+     * Java files whose members only moved around and reformatted or reordered configuration files are
+     * considered identical.
+     */
+    private boolean isEquivalent(Path left, Path right, CompareOptions options) throws IOException {
+        if (contentEquals(left, right, options)) {
+            return true;
+        }
+        if (!structureComparator.isEnabled(right.getFileName().toString(), options)) {
+            return false;
+        }
+        return structureComparator.isEquivalent(left, right);
+    }
+
+    /**
+     * @return member level differences when {@code options} enable the structure-aware comparator for the file type,
+     * otherwise null without parsing either file
+     */
+    public StructureDiff compareStructure(Path left, Path right, CompareOptions options) throws IOException {
+        Path named = right != null ? right : left;
+        if (named == null || !structureComparator.isEnabled(named.getFileName().toString(), options)) {
+            return null;
+        }
+        return structureComparator.compare(left, right);
+    }
+
+    /**
+     * Captures a manifest of a live tree: names, sizes, modification times and content hashes (normalized with the
+     * ignore options of {@code options}), plus the hash of every line of text files if {@code lineHashes} is set.
+     * Files excluded by the ignore profile are left out.
+     */
+    public void writeManifest(Path root, java.io.OutputStream out, CompareOptions options, boolean lineHashes) throws IOException {
+        CompareOptions contentOptions = new CompareOptions(options.ignoreEol(), options.ignoreWhitespace(),
+                options.ignoreBlankLines(), options.ignoreComments(), false, false);
+        try (TreeManifest.Writer writer = new TreeManifest.Writer(contentOptions, lineHashes)) {
+            capture(root, root.getFileName().toString(), "", writer, contentOptions, ignoreProfiles.root(options.ignoreProfile()));
+            writer.writeTo(out);
+        }
+    }
+
+    private void capture(Path directory, String name, String relativePath, TreeManifest.Writer writer, CompareOptions options,
+                         IgnoreProfiles.Scope ignoreScope) throws IOException {
+        writer.startDirectory(name, Files.getLastModifiedTime(directory).toMillis());
+        IgnoreProfiles.Scope childScope = ignoreScope.descend(relativePath, directory, null);
+        Set<String> names = new TreeSet<>();
+        try (Stream<Path> list = Files.list(directory)) {
+            list.map(p -> p.getFileName().toString()).forEach(names::add);
+        }
+        for (String childName : names) {
+            Path child = directory.resolve(childName);
+            String childRelPath = relativePath.isEmpty() ? childName : relativePath + "/" + childName;
+            boolean childIsDir = Files.isDirectory(child);
+            if (childScope.isIgnored(childRelPath, child, null, childIsDir)) {
+                continue;
+            }
+            if (childIsDir) {
+                capture(child, childName, childRelPath, writer, options, childScope);
+            } else {
+                java.nio.file.attribute.BasicFileAttributes attributes = Files.readAttributes(child, java.nio.file.attribute.BasicFileAttributes.class);
+                long[] lines = writer.withLineHashes() && !BinaryDelta.isBinary(child)
+                        ? lineHashes(child, options, IoScheduler.Priority.BACKGROUND) : null;
+                writer.addFile(childName, attributes.size(), attributes.lastModifiedTime().toMillis(),
+                        contentHasher.hash(child, options), lines);
+            }
+        }
+        writer.endDirectory();
+    }
+
+    /**
+     * Pairs ADDED with REMOVED files of the same name into moves. Pairing goes through a name index and is done
+     * sequentially in tree order, so it is deterministic; the file reads it needs (package names of Java files)
+     * and the verification of the pairs (content equality and line statistics) run as parallel batches on a
+     * bounded pool, and their results are applied in pair order. {@code leftFiles} and {@code rightFiles} give
+     * the file at a relative path of either side.
+     */
+    private void detectMoves(DiffTree tree, IoFunction<String, Path> leftFiles, IoFunction<String, Path> rightFiles,
+                             CompareOptions options) throws IOException {
+        List<DiffNode> addedFiles = new ArrayList<>();
+        List<DiffNode> removedFiles = new ArrayList<>();
+        collectAddedAndRemovedFiles(tree, 0, addedFiles, removedFiles);
+        if (addedFiles.isEmpty() || removedFiles.isEmpty()) {
+            return;
+        }
+
+        Map<String, List<DiffNode>> removedByName = new HashMap<>();
+        for (DiffNode removed : removedFiles) {
+            removedByName.computeIfAbsent(removed.getName(), name -> new ArrayList<>()).add(removed);
+        }
+        List<DiffNode> candidates = addedFiles.stream().filter(added -> removedByName.containsKey(added.getName())).toList();
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        // Package names of every Java file that takes part in a candidate pair, read in parallel
+        Set<Path> javaFiles = new LinkedHashSet<>();
+        for (DiffNode added : candidates) {
+            if (added.getName().endsWith(".java")) {
+                javaFiles.add(rightFiles.apply(added.getRelativePath()));
+                for (DiffNode removed : removedByName.get(added.getName())) {
+                    javaFiles.add(leftFiles.apply(removed.getRelativePath()));
+                }
+            }
+        }
+        List<Path> javaFileList = new ArrayList<>(javaFiles);
+        List<String> packageList = inParallel(javaFileList, this::extractPackageName);
+        Map<Path, String> packages = new HashMap<>();
+        for (int i = 0; i < javaFileList.size(); i++) {
+            packages.put(javaFileList.get(i), packageList.get(i));
+        }
+
+        record Move(DiffNode added, DiffNode removed, Path leftFile, Path rightFile) {}
+        List<Move> moves = new ArrayList<>();
+        Set<DiffNode> paired = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (DiffNode added : candidates) {
+            Path rightFile = rightFiles.apply(added.getRelativePath());
+            for (DiffNode removed : removedByName.get(added.getName())) {
+                if (paired.contains(removed)) {
+                    continue;
+                }
+                Path leftFile = leftFiles.apply(removed.getRelativePath());
+                // A Java file must declare the same package on both sides
+                if (added.getName().endsWith(".java")) {
+                    String leftPackage = packages.get(leftFile);
+                    if (leftPackage == null || !leftPackage.equals(packages.get(rightFile))) {
+                        continue;
                     }
                 }
+                moves.add(new Move(added, removed, leftFile, rightFile));
+                paired.add(removed);
+                break;
             }
         }
 
-        for (DiffNode node : toRemoveFromTree) {
-            removeNodeFromTree(root, node);
+        // Equivalent pairs need no statistics; the others get theirs from the cached line hashes
+        List<FileDiff> results = inParallel(moves, move -> isEquivalent(move.leftFile(), move.rightFile(), options)
+                ? null : lineStats(move.leftFile(), move.rightFile(), options, IoScheduler.Priority.BACKGROUND));
+        for (int i = 0; i < moves.size(); i++) {
+            DiffNode added = moves.get(i).added();
+            FileDiff fileDiff = results.get(i);
+            if (fileDiff == null) {
+                added.setStatus(DiffNode.DiffStatus.MOVED);
+            } else {
+                added.setStatus(DiffNode.DiffStatus.MOVED_MODIFIED);
+                added.setAdded(fileDiff.added());
+                added.setRemoved(fileDiff.removed());
+                added.setModified(fileDiff.modified());
+                added.setPercentage(fileDiff.percentage());
+            }
+            added.setSourcePath(moves.get(i).removed().getRelativePath());
+        }
+
+        for (DiffNode removed : paired) {
+            tree.detach(removed.index());
         }
     }
 
-    private boolean removeNodeFromTree(DiffNode parent, DiffNode toRemove) {
-        if (parent.getChildren().remove(toRemove)) {
-            return true;
+    @FunctionalInterface
+    private interface IoFunction<T, R> {
+        R apply(T item) throws IOException;
+    }
+
+    /**
+     * Applies {@code function} to every item on the shared pool of {@link #VERIFY_THREADS} threads.
+     *
+     * @return the results in item order, independent of scheduling
+     */
+    private static <T, R> List<R> inParallel(List<T> items, IoFunction<T, R> function) throws IOException {
+        if (items.size() < 2) {
+            List<R> results = new ArrayList<>(items.size());
+            for (T item : items) {
+                results.add(function.apply(item));
+            }
+            return results;
         }
-        for (DiffNode child : parent.getChildren()) {
-            if (removeNodeFromTree(child, toRemove)) {
-                return true;
+        List<Callable<R>> tasks = items.stream().<Callable<R>>map(item -> () -> function.apply(item)).toList();
+        try {
+            List<R> results = new ArrayList<>(items.size());
+            for (Future<R> future : VERIFY_EXECUTOR.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new java.io.InterruptedIOException("Interrupted while detecting moves");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
             }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
         }
-        return false;
     }
 
-    private void collectAddedAndRemovedFiles(DiffNode node, List<DiffNode> added, List<DiffNode> removed) {
-        if (!node.isDirectory()) {
-            if (node.getStatus() == DiffNode.DiffStatus.ADDED) {
-                added.add(node);
-            } else if (node.getStatus() == DiffNode.DiffStatus.REMOVED) {
-                removed.add(node);
+    private void collectAddedAndRemovedFiles(DiffTree tree, int node, List<DiffNode> added, List<DiffNode> removed) {
+        if (!tree.isDirectory(node)) {
+            if (tree.status(node) == DiffNode.DiffStatus.ADDED) {
+                added.add(tree.node(node));
+            } else if (tree.status(node) == DiffNode.DiffStatus.REMOVED) {
+                removed.add(tree.node(node));
             }
         }
-        for (DiffNode child : node.getChildren()) {
-            collectAddedAndRemovedFiles(child, added, removed);
+        for (int child = tree.firstChild(node); child >= 0; child = tree.nextSibling(child)) {
+            collectAddedAndRemovedFiles(tree, child, added, removed);
         }
     }
 
@@ -170,9 +573,18 @@ public class CompareService {
 
     public record DiffEntry(String path, boolean isDirectory, DiffNode.DiffStatus status, String relativePath, int added, int removed, int modified, double percentage, String sourcePath) {}
 
-    public record FileDiff(List<FileDiffLine> lines, int added, int removed, int modified, double percentage) {}
+    /**
+     * @param binary block-level delta if either file is binary; the lines are then empty and the percentage is
+     *               the share of changed bytes
+     */
+    public record FileDiff(List<FileDiffLine> lines, int added, int removed, int modified, double percentage, BinaryDelta binary) {
 
-    private List<String> readAllLines(Path path) throws IOException {
+        public FileDiff(List<FileDiffLine> lines, int added, int removed, int modified, double percentage) {
+            this(lines, added, removed, modified, percentage, null);
+        }
+    }
+
+    private static List<String> readAllLines(Path path) throws IOException {
         if (path == null || !Files.exists(path)) {
             return Collections.emptyList();
         }
@@ -188,55 +600,113 @@ public class CompareService {
         }
     }
 
+    private List<String> readAllLines(Path path, IoScheduler.Priority priority) throws IOException {
+        if (path == null || !Files.exists(path)) {
+            return Collections.emptyList();
+        }
+        return ioScheduler.read(path, priority, () -> readAllLines(path));
+    }
+
+    /**
+     * Reads a Java file only up to the end of its first statement, skipping comments, and returns the package it
+     * declares, or "" if that statement is an import or type declaration (the default package). Decoded as
+     * ISO-8859-1, which never fails and leaves the ASCII of package names intact.
+     */
     private String extractPackageName(Path path) {
         if (path == null || !path.toString().endsWith(".java")) {
             return null;
         }
         try {
-            List<String> lines = readAllLines(path);
-            for (String line : lines) {
-                line = line.trim();
-                if (line.startsWith("package ") && line.endsWith(";")) {
-                    return line.substring(8, line.length() - 1).trim();
+            return ioScheduler.read(path, IoScheduler.Priority.BACKGROUND, () -> {
+                try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.ISO_8859_1)) {
+                    return packageName(reader);
                 }
-            }
+            });
         } catch (IOException e) {
             // Ignore
         }
         return "";
     }
 
+    /**
+     * Collects the first statement of a Java source up to its {@code ;} or {@code {}, with comments replaced by a
+     * space, so that licence headers and Javadoc never count as code.
+     */
+    static String packageName(Reader reader) throws IOException {
+        StringBuilder statement = new StringBuilder();
+        int c = reader.read();
+        while (c != -1 && c != ';' && c != '{' && statement.length() < MAX_HEADER_CHARS) {
+            if (c == '/') {
+                int next = reader.read();
+                if (next == '/') {
+                    do {
+                        c = reader.read();
+                    } while (c != -1 && c != '\n');
+                    statement.append(' ');
+                    continue;
+                }
+                if (next == '*') {
+                    int previous = 0;
+                    for (c = reader.read(); c != -1 && !(previous == '*' && c == '/'); c = reader.read()) {
+                        previous = c;
+                    }
+                    statement.append(' ');
+                    c = reader.read();
+                    continue;
+                }
+                statement.append('/');
+                c = next;
+                continue;
+            }
+            statement.append((char) c);
+            c = reader.read();
+        }
+        if (c != ';') {
+            return "";
+        }
+        Matcher matcher = PACKAGE_DECLARATION.matcher(statement.toString().strip());
+        return matcher.matches() ? matcher.group(1).replaceAll("\\s", "") : "";
+    }
+
     public FileDiff compareFiles(Path left, Path right) throws IOException {
-        List<String> leftLines = readAllLines(left);
-        List<String> rightLines = readAllLines(right);
+        return compareFiles(left, right, CompareOptions.DEFAULT);
+    }
+
+    public FileDiff compareFiles(Path left, Path right, CompareOptions options) throws IOException {
+        return compareFiles(left, right, options, IoScheduler.Priority.INTERACTIVE);
+    }
+
+    /**
+     * Line statuses are decided on interned line ids: each side's lines are hashed once (and cached per content
+     * hash), so no line strings are compared here.
+     */
+    private FileDiff compareFiles(Path left, Path right, CompareOptions options, IoScheduler.Priority priority) throws IOException {
+        if (isBinary(left, priority) || isBinary(right, priority)) {
+            return binaryDiff(left, right, priority);
+        }
+        Lines leftLines = readLines(left, options, priority);
+        Lines rightLines = readLines(right, options, priority);
+        LineInterner interner = new LineInterner();
+        int[] leftIds = interner.intern(leftLines.hashes());
+        int[] rightIds = interner.intern(rightLines.hashes());
 
         List<FileDiffLine> diffLines = new ArrayList<>();
-        int maxSize = Math.max(leftLines.size(), rightLines.size());
+        int maxSize = Math.max(leftIds.length, rightIds.length);
 
         int added = 0;
         int removed = 0;
         int modified = 0;
-        int identical = 0;
 
         for (int i = 0; i < maxSize; i++) {
-            String leftLine = i < leftLines.size() ? leftLines.get(i) : null;
-            String rightLine = i < rightLines.size() ? rightLines.get(i) : null;
-
-            LineStatus status;
-            if (leftLine == null) {
-                status = LineStatus.ADDED;
-                added++;
-            } else if (rightLine == null) {
-                status = LineStatus.REMOVED;
-                removed++;
-            } else if (!leftLine.equals(rightLine)) {
-                status = LineStatus.MODIFIED;
-                modified++;
-            } else {
-                status = LineStatus.IDENTICAL;
-                identical++;
+            String leftLine = i < leftIds.length ? leftLines.text().get(i) : null;
+            String rightLine = i < rightIds.length ? rightLines.text().get(i) : null;
+            LineStatus status = lineStatus(leftIds, rightIds, i);
+            switch (status) {
+                case ADDED -> added++;
+                case REMOVED -> removed++;
+                case MODIFIED -> modified++;
+                case IDENTICAL -> { }
             }
-
             diffLines.add(new FileDiffLine(leftLine, rightLine, status));
         }
 
@@ -245,15 +715,284 @@ public class CompareService {
         return new FileDiff(diffLines, added, removed, modified, percentage);
     }
 
+    /**
+     * The statistics of {@link #compareFiles} without the lines, computed from the cached line hashes alone.
+     * Used for the tree, where only the counts are shown.
+     */
+    private FileDiff lineStats(Path left, Path right, CompareOptions options, IoScheduler.Priority priority) throws IOException {
+        if (isBinary(left, priority) || isBinary(right, priority)) {
+            return binaryDiff(left, right, priority);
+        }
+        LineInterner interner = new LineInterner();
+        int[] leftIds = interner.intern(lineHashes(left, options, priority));
+        int[] rightIds = interner.intern(lineHashes(right, options, priority));
+        int maxSize = Math.max(leftIds.length, rightIds.length);
+        int added = 0;
+        int removed = 0;
+        int modified = 0;
+        for (int i = 0; i < maxSize; i++) {
+            switch (lineStatus(leftIds, rightIds, i)) {
+                case ADDED -> added++;
+                case REMOVED -> removed++;
+                case MODIFIED -> modified++;
+                case IDENTICAL -> { }
+            }
+        }
+        double percentage = maxSize == 0 ? 0 : (double) (added + removed + modified) / maxSize * 100;
+        return new FileDiff(List.of(), added, removed, modified, percentage);
+    }
+
+    private boolean isBinary(Path file, IoScheduler.Priority priority) throws IOException {
+        return file != null && Files.isRegularFile(file) && ioScheduler.read(file, priority, () -> BinaryDelta.isBinary(file));
+    }
+
+    /**
+     * Binary files have no lines; they are compared block by block ({@link BinaryDelta}), cached per pair of
+     * content hashes. The left file's signatures and the scan of the right file are separate reads, so neither
+     * holds a device slot while waiting for the other.
+     */
+    private FileDiff binaryDiff(Path left, Path right, IoScheduler.Priority priority) throws IOException {
+        String key = contentHash(left, priority) + ":" + contentHash(right, priority);
+        BinaryDelta delta = binaryDeltas.computeIfAbsent(key, k -> {
+            BinaryDelta.Signatures signatures = left != null && Files.exists(left)
+                    ? ioScheduler.read(left, priority, () -> BinaryDelta.signatures(left)) : BinaryDelta.signatures(null);
+            return right != null && Files.exists(right)
+                    ? ioScheduler.read(right, priority, () -> BinaryDelta.compute(signatures, right)) : BinaryDelta.compute(signatures, null);
+        });
+        return new FileDiff(List.of(), 0, 0, 0, delta.differencePercentage(), delta);
+    }
+
+    private String contentHash(Path file, IoScheduler.Priority priority) throws IOException {
+        return file != null && Files.exists(file) ? contentHasher.hash(file, CompareOptions.DEFAULT, priority) : "-";
+    }
+
+    private static LineStatus lineStatus(int[] leftIds, int[] rightIds, int line) {
+        if (line >= leftIds.length) {
+            return LineStatus.ADDED;
+        }
+        if (line >= rightIds.length) {
+            return LineStatus.REMOVED;
+        }
+        return leftIds[line] == rightIds[line] ? LineStatus.IDENTICAL : LineStatus.MODIFIED;
+    }
+
+    /**
+     * Displayed text of a file's retained lines together with the hashes of their comparison keys.
+     */
+    private record Lines(List<String> text, long[] hashes) {}
+
+    private static final Lines NO_LINES = new Lines(List.of(), new long[0]);
+
+    private Lines readLines(Path file, CompareOptions options, IoScheduler.Priority priority) throws IOException {
+        if (file == null || !Files.exists(file)) {
+            return NO_LINES;
+        }
+        List<String> text = readAllLines(file, priority);
+        List<String> keys = text;
+        if (!options.isExact()) {
+            keys = new ArrayList<>();
+            text = normalizeLines(text, keys, options, NormalizingOutputStream.CommentStyle.forFileName(file.getFileName().toString()));
+        }
+        String cacheKey = lineHashKey(file, options, priority);
+        long[] hashes = lineHashes.get(cacheKey);
+        if (hashes == null) {
+            hashes = TreeManifest.lineHashes(keys);
+            lineHashes.put(cacheKey, hashes);
+        }
+        return new Lines(text, hashes);
+    }
+
+    /**
+     * @return the 64-bit hashes ({@link TreeManifest#lineHash}) of a file's comparison keys, cached per content
+     * hash and options, so moved copies and reopened files are not hashed again
+     */
+    long[] lineHashes(Path file, CompareOptions options) throws IOException {
+        return lineHashes(file, options, IoScheduler.Priority.BACKGROUND);
+    }
+
+    private long[] lineHashes(Path file, CompareOptions options, IoScheduler.Priority priority) throws IOException {
+        if (file == null || !Files.exists(file)) {
+            return NO_LINES.hashes();
+        }
+        return lineHashes.computeIfAbsent(lineHashKey(file, options, priority),
+                key -> TreeManifest.lineHashes(lineKeys(file, options, priority)));
+    }
+
+    private String lineHashKey(Path file, CompareOptions options, IoScheduler.Priority priority) throws IOException {
+        return contentHasher.hash(file, options, priority) + ":" + options.cacheKey();
+    }
+
+    /**
+     * @return the comparison keys of a file's lines: the lines themselves, or their normalized form
+     */
+    private List<String> lineKeys(Path file, CompareOptions options, IoScheduler.Priority priority) throws IOException {
+        List<String> lines = readAllLines(file, priority);
+        if (options.isExact()) {
+            return lines;
+        }
+        List<String> keys = new ArrayList<>();
+        normalizeLines(lines, keys, options, NormalizingOutputStream.CommentStyle.forFileName(file.getFileName().toString()));
+        return keys;
+    }
+
+    /**
+     * Runs the lines through a single normalizer so that state such as open block comments carries over
+     * between lines. Lines removed by the options (blank or comment-only) are dropped from both lists.
+     *
+     * @return the original text of the retained lines; their normalized form is added to {@code keys}
+     */
+    private List<String> normalizeLines(List<String> lines, List<String> keys, CompareOptions options,
+                                        NormalizingOutputStream.CommentStyle commentStyle) throws IOException {
+        List<String> retained = new ArrayList<>();
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        NormalizingOutputStream normalizer = new NormalizingOutputStream(sink, options, commentStyle);
+        for (String line : lines) {
+            normalizer.write(line.getBytes(StandardCharsets.UTF_8));
+            normalizer.write('\n');
+            normalizer.flush();
+            if (sink.size() > 0) {
+                String key = sink.toString(StandardCharsets.UTF_8);
+                keys.add(key.endsWith("\n") ? key.substring(0, key.length() - 1) : key);
+                retained.add(line);
+                sink.reset();
+            }
+        }
+        return retained;
+    }
+
+    /**
+     * Computes the diff of a file pair once and indexes it into hunks for the paged viewer. The index is cached
+     * under an id derived from both content hashes and the options, so reopening the same pair is free.
+     */
+    public HunkIndex hunkIndex(Path left, Path right, CompareOptions options) throws IOException {
+        String id = pairId(left, right, options);
+        return hunkIndexes.computeIfAbsent(id, key -> HunkIndex.build(key, compareFiles(left, right, options)));
+    }
+
+    /**
+     * @return a previously computed hunk index, or null if it is unknown or has been evicted
+     */
+    public HunkIndex findHunkIndex(String id) {
+        return hunkIndexes.get(id);
+    }
+
+    private String pairId(Path left, Path right, CompareOptions options) throws IOException {
+        String leftHash = contentHash(left, IoScheduler.Priority.INTERACTIVE);
+        String rightHash = contentHash(right, IoScheduler.Priority.INTERACTIVE);
+        Path named = right != null ? right : left;
+        String key = leftHash + ":" + rightHash + ":" + options.cacheKey() + ":" + (named != null ? named.getFileName() : "");
+        byte[] digest = ContentHasher.newDigest().digest(key.getBytes(StandardCharsets.UTF_8));
+        return java.util.HexFormat.of().formatHex(digest, 0, 16);
+    }
+
+    /**
+     * Word/character level diffs for the MODIFIED lines in {@code [from, to)} of a file pair. Meant to be
+     * requested lazily for the hunks a user actually looks at; results are cached per hunk index and line.
+     */
+    public List<IntraLineDiffer.LineDiff> inlineDiffs(Path left, Path right, CompareOptions options, int from, int to) throws IOException {
+        if (left == null || right == null || !Files.exists(left) || !Files.exists(right)) {
+            return List.of();
+        }
+        HunkIndex index = hunkIndex(left, right, options);
+
+        List<IntraLineDiffer.LineDiff> result = new ArrayList<>();
+        for (HunkIndex.LineRow row : index.lines(from, to)) {
+            if (row.status() == LineStatus.MODIFIED) {
+                result.add(inlineDiffs.computeIfAbsent(index.id() + ":" + row.line(), key -> IntraLineDiffer.diff(row.line(), row.left(), row.right())));
+            }
+        }
+        return result;
+    }
+
     public record FileDiffLine(String left, String right, LineStatus status) {}
 
     public enum LineStatus {
         ADDED, REMOVED, MODIFIED, IDENTICAL
     }
 
-    private DiffNode compare(String name, Path left, Path right, String relativePath) throws IOException {
+    /**
+     * Identifies the state of the files and directories a checkpointed subtree was compared from: the name, size and
+     * modification time of every path in it on both sides, in tree order, with nested checkpointed subtrees folded
+     * in by their own fingerprint. Built while comparing; before a recorded subtree is resumed from, its paths are
+     * stat'ed again ({@link #subtreeFingerprint}), so a file edited in place anywhere below drops the record.
+     */
+    static final class SubtreeFingerprint {
+        private final java.security.MessageDigest digest = ContentHasher.newDigest();
+
+        void enter(String name, Path left, Path right) {
+            StringBuilder state = new StringBuilder("(").append(name);
+            for (Path path : new Path[] {left, right}) {
+                java.nio.file.attribute.BasicFileAttributes attributes = null;
+                if (path != null) {
+                    try {
+                        attributes = Files.readAttributes(path, java.nio.file.attribute.BasicFileAttributes.class);
+                    } catch (IOException e) {
+                        // Missing, or a dangling link
+                    }
+                }
+                state.append('\0').append(attributes == null ? "-" : attributes.size() + ":" + attributes.lastModifiedTime().toMillis());
+            }
+            digest.update(state.append('\n').toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        void leave() {
+            digest.update((byte) ')');
+        }
+
+        void child(String name, long fingerprint) {
+            digest.update(("[" + name + "\0" + fingerprint + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        long value() {
+            return java.nio.ByteBuffer.wrap(digest.digest()).getLong();
+        }
+    }
+
+    private static boolean isCheckpointed(String relativePath, boolean directory) {
+        return directory && relativePath.split("/").length <= CHECKPOINT_DEPTH;
+    }
+
+    /**
+     * @return the {@link SubtreeFingerprint} the paths of {@code subtree}, compared from {@code left} and
+     * {@code right}, have now
+     */
+    static long subtreeFingerprint(DiffNode subtree, Path left, Path right, String relativePath) {
+        SubtreeFingerprint fingerprint = new SubtreeFingerprint();
+        fingerprint.enter(subtree.getName(), left, right);
+        addChildren(fingerprint, subtree, left, right, relativePath);
+        fingerprint.leave();
+        return fingerprint.value();
+    }
+
+    private static void addChildren(SubtreeFingerprint fingerprint, DiffNode node, Path left, Path right, String relativePath) {
+        for (DiffNode child : node.getChildren()) {
+            String name = child.getName();
+            String childRelPath = relativePath.isEmpty() ? name : relativePath + "/" + name;
+            Path childLeft = left != null ? left.resolve(name) : null;
+            Path childRight = right != null ? right.resolve(name) : null;
+            if (isCheckpointed(childRelPath, child.isDirectory())) {
+                fingerprint.child(name, subtreeFingerprint(child, childLeft, childRight, childRelPath));
+            } else {
+                fingerprint.enter(name, childLeft, childRight);
+                addChildren(fingerprint, child, childLeft, childRight, childRelPath);
+                fingerprint.leave();
+            }
+        }
+    }
+
+    /**
+     * Compares one pair of paths into the already added {@code node} of {@code tree}, adding its children.
+     * Directories down to {@link #CHECKPOINT_DEPTH} are recorded in {@code checkpoint} once finished, and taken
+     * from it instead of walked if an earlier, interrupted run already finished them and nothing in them has changed
+     * since. The paths compared below are added to {@code fingerprint}, that of the enclosing checkpointed
+     * directory, if any.
+     */
+    private void compare(DiffTree tree, int node, Path left, Path right, String relativePath, CompareOptions options,
+                         IgnoreProfiles.Scope ignoreScope, ResultStore.Checkpoint checkpoint,
+                         SubtreeFingerprint fingerprint) throws IOException {
         boolean isDir = (left != null && Files.isDirectory(left)) || (right != null && Files.isDirectory(right));
-        
+        tree.setDirectory(node, isDir);
+
         DiffNode.DiffStatus status;
         if (left == null) {
             status = DiffNode.DiffStatus.ADDED;
@@ -261,27 +1000,23 @@ public class CompareService {
             status = DiffNode.DiffStatus.REMOVED;
         } else if (isDir) {
             status = DiffNode.DiffStatus.IDENTICAL; // Will be updated if children differ
-        } else if (Files.mismatch(left, right) == -1) {
+        } else if (isEquivalent(left, right, options)) {
             status = DiffNode.DiffStatus.IDENTICAL;
         } else {
             status = DiffNode.DiffStatus.MODIFIED;
         }
 
-        List<DiffNode> children = new ArrayList<>();
         if (isDir) {
+            IgnoreProfiles.Scope childScope = ignoreScope.descend(relativePath, left, right);
             Set<String> allNames = new TreeSet<>();
             if (left != null && Files.exists(left)) {
                 try (Stream<Path> list = Files.list(left)) {
-                    list.filter(p -> !isIgnored(p))
-                        .map(p -> p.getFileName().toString())
-                        .forEach(allNames::add);
+                    list.map(p -> p.getFileName().toString()).forEach(allNames::add);
                 }
             }
             if (right != null && Files.exists(right)) {
                 try (Stream<Path> list = Files.list(right)) {
-                    list.filter(p -> !isIgnored(p))
-                        .map(p -> p.getFileName().toString())
-                        .forEach(allNames::add);
+                    list.map(p -> p.getFileName().toString()).forEach(allNames::add);
                 }
             }
 
@@ -291,38 +1026,56 @@ public class CompareService {
                 
                 if (childLeft != null && !Files.exists(childLeft)) childLeft = null;
                 if (childRight != null && !Files.exists(childRight)) childRight = null;
+                if (childLeft == null && childRight == null) continue;
 
                 String childRelPath = relativePath.isEmpty() ? childName : relativePath + "/" + childName;
-                DiffNode childNode = compare(childName, childLeft, childRight, childRelPath);
-                children.add(childNode);
-                
-                if (childNode.getStatus() != DiffNode.DiffStatus.IDENTICAL) {
+                boolean childIsDir = Files.isDirectory(childRight != null ? childRight : childLeft);
+                if (childScope.isIgnored(childRelPath, childLeft, childRight, childIsDir)) {
+                    continue;
+                }
+                int child;
+                if (checkpoint != ResultStore.Checkpoint.NONE && isCheckpointed(childRelPath, childIsDir)) {
+                    Path restoredLeft = childLeft;
+                    Path restoredRight = childRight;
+                    long[] current = new long[1];
+                    DiffNode restored = checkpoint.restore(childRelPath,
+                            subtree -> current[0] = subtreeFingerprint(subtree, restoredLeft, restoredRight, childRelPath));
+                    if (restored != null) {
+                        child = tree.copy(restored, node);
+                    } else {
+                        SubtreeFingerprint childFingerprint = new SubtreeFingerprint();
+                        childFingerprint.enter(childName, childLeft, childRight);
+                        child = tree.add(node, childName, childIsDir);
+                        compare(tree, child, childLeft, childRight, childRelPath, options, childScope, checkpoint, childFingerprint);
+                        childFingerprint.leave();
+                        current[0] = childFingerprint.value();
+                        checkpoint.record(childRelPath, current[0], tree, child);
+                    }
+                    if (fingerprint != null) {
+                        fingerprint.child(childName, current[0]);
+                    }
+                } else {
+                    if (fingerprint != null) {
+                        fingerprint.enter(childName, childLeft, childRight);
+                    }
+                    child = tree.add(node, childName, childIsDir);
+                    compare(tree, child, childLeft, childRight, childRelPath, options, childScope, checkpoint, fingerprint);
+                    if (fingerprint != null) {
+                        fingerprint.leave();
+                    }
+                }
+
+                if (tree.status(child) != DiffNode.DiffStatus.IDENTICAL) {
                     status = DiffNode.DiffStatus.MODIFIED;
                 }
             }
         } else {
             // It's a file, calculate stats if modified
             if (status == DiffNode.DiffStatus.MODIFIED || status == DiffNode.DiffStatus.ADDED || status == DiffNode.DiffStatus.REMOVED) {
-                FileDiff fileDiff = compareFiles(left, right);
-                return DiffNode.builder()
-                        .name(name)
-                        .isDirectory(false)
-                        .status(status)
-                        .added(fileDiff.added())
-                        .removed(fileDiff.removed())
-                        .modified(fileDiff.modified())
-                        .percentage(fileDiff.percentage())
-                        .relativePath(relativePath)
-                        .build();
+                FileDiff fileDiff = lineStats(left, right, options, IoScheduler.Priority.BACKGROUND);
+                tree.setStatistics(node, fileDiff.added(), fileDiff.removed(), fileDiff.modified(), fileDiff.percentage());
             }
         }
-
-        return DiffNode.builder()
-                .name(name)
-                .isDirectory(isDir)
-                .status(status)
-                .children(children)
-                .relativePath(relativePath)
-                .build();
+        tree.setStatus(node, status);
     }
 }
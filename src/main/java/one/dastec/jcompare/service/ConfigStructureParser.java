@@ -0,0 +1,279 @@
+package one.dastec.jcompare.service;
+
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.events.AliasEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.core.ObjectReadContext;
+import tools.jackson.core.json.JsonFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Streams configuration files (XML, JSON, YAML, properties) into flat {@code path = value} entries,
+ * e.g. {@code spring.datasource.url = jdbc:...} or {@code project.dependencies.dependency[1].artifactId = x}.
+ * XML, JSON and YAML use pull/event parsers, so only the current nesting path is held in memory.
+ * Sibling XML elements with the same name and array/sequence items are indexed; everything else is keyed by name,
+ * which makes the entry set independent of key order and formatting.
+ */
+public final class ConfigStructureParser {
+
+    public enum Format {
+        XML, JSON, YAML, PROPERTIES;
+
+        /**
+         * @return the format for a file name, or null if it is not a supported configuration format
+         */
+        public static Format forFileName(String fileName) {
+            if (fileName == null) {
+                return null;
+            }
+            String name = fileName.toLowerCase();
+            if (name.endsWith(".xml") || name.endsWith(".xsd") || name.endsWith(".wsdl")) {
+                return XML;
+            }
+            if (name.endsWith(".json")) {
+                return JSON;
+            }
+            if (name.endsWith(".yaml") || name.endsWith(".yml")) {
+                return YAML;
+            }
+            if (name.endsWith(".properties")) {
+                return PROPERTIES;
+            }
+            return null;
+        }
+    }
+
+    @FunctionalInterface
+    public interface EntrySink {
+        void accept(String path, String value);
+    }
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private ConfigStructureParser() {
+    }
+
+    /**
+     * Parses the file and reports every leaf entry to the sink.
+     *
+     * @throws IOException if the file cannot be read or is not well-formed
+     */
+    public static void parse(Path path, Format format, EntrySink sink) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path), 64 * 1024)) {
+            switch (format) {
+                case XML -> parseXml(in, sink);
+                case JSON -> parseJson(in, sink);
+                case YAML -> parseYaml(in, sink);
+                case PROPERTIES -> parseProperties(in, sink);
+            }
+        } catch (XMLStreamException | JacksonException | YAMLException e) {
+            throw new IOException("Cannot parse " + path + " as " + format + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static XMLInputFactory createXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    private static void parseXml(InputStream in, EntrySink sink) throws XMLStreamException {
+        XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+        Deque<XmlFrame> stack = new ArrayDeque<>();
+        try {
+            while (reader.hasNext()) {
+                int event = reader.next();
+                switch (event) {
+                    case XMLStreamConstants.START_ELEMENT -> {
+                        String name = qualifiedName(reader.getPrefix(), reader.getLocalName());
+                        XmlFrame parent = stack.peek();
+                        String path;
+                        if (parent == null) {
+                            path = name;
+                        } else {
+                            parent.hasChildren = true;
+                            int index = parent.childCounts.merge(name, 1, Integer::sum) - 1;
+                            path = parent.path + "." + (index == 0 ? name : name + "[" + index + "]");
+                        }
+                        XmlFrame frame = new XmlFrame(path);
+                        for (int i = 0; i < reader.getAttributeCount(); i++) {
+                            frame.hasChildren = true;
+                            sink.accept(path + "@" + qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+                                    reader.getAttributeValue(i));
+                        }
+                        stack.push(frame);
+                    }
+                    case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA -> {
+                        XmlFrame frame = stack.peek();
+                        if (frame != null && !reader.isWhiteSpace()) {
+                            frame.text.append(reader.getText());
+                        }
+                    }
+                    case XMLStreamConstants.END_ELEMENT -> {
+                        XmlFrame frame = stack.pop();
+                        String text = frame.text.toString().trim();
+                        if (!text.isEmpty() || !frame.hasChildren) {
+                            sink.accept(frame.path, text);
+                        }
+                    }
+                    default -> {
+                        // Comments, processing instructions and the prolog do not affect the structure
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static String qualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    private static void parseJson(InputStream in, EntrySink sink) {
+        Deque<ContainerFrame> stack = new ArrayDeque<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(ObjectReadContext.empty(), in)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                ContainerFrame top = stack.peek();
+                switch (token) {
+                    case PROPERTY_NAME -> top.key = parser.currentName();
+                    case START_OBJECT, START_ARRAY -> {
+                        stack.push(new ContainerFrame(childPath(top, ""), token == JsonToken.START_OBJECT));
+                    }
+                    case END_OBJECT, END_ARRAY -> endContainer(stack, sink);
+                    case VALUE_NULL -> value(top, "", "null", sink);
+                    default -> value(top, "", parser.getString(), sink);
+                }
+            }
+        }
+    }
+
+    private static void parseYaml(InputStream in, EntrySink sink) {
+        LoaderOptions loaderOptions = new LoaderOptions();
+        loaderOptions.setCodePointLimit(Integer.MAX_VALUE);
+        Deque<ContainerFrame> stack = new ArrayDeque<>();
+        Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+        int document = -1;
+        for (Event event : new Yaml(loaderOptions).parse(reader)) {
+            ContainerFrame top = stack.peek();
+            String root = document <= 0 ? "" : "[" + document + "]";
+            switch (event.getEventId()) {
+                case DocumentStart -> document++;
+                case MappingStart, SequenceStart -> {
+                    if (top != null && top.mapping && top.key == null) {
+                        // Complex (non-scalar) mapping key
+                        top.key = "?";
+                    }
+                    stack.push(new ContainerFrame(childPath(top, root), event.getEventId() == Event.ID.MappingStart));
+                }
+                case MappingEnd, SequenceEnd -> endContainer(stack, sink);
+                case Scalar -> {
+                    String scalar = ((ScalarEvent) event).getValue();
+                    if (top != null && top.mapping && top.key == null) {
+                        top.key = scalar;
+                    } else {
+                        value(top, root, scalar, sink);
+                    }
+                }
+                case Alias -> value(top, root, "*" + ((AliasEvent) event).getAnchor(), sink);
+                default -> {
+                    // Stream and document end markers carry no content
+                }
+            }
+        }
+    }
+
+    private static void parseProperties(InputStream in, EntrySink sink) throws IOException {
+        Properties properties = new Properties();
+        properties.load(in);
+        for (String name : properties.stringPropertyNames()) {
+            sink.accept(name, properties.getProperty(name));
+        }
+    }
+
+    private static String childPath(ContainerFrame parent, String root) {
+        if (parent == null) {
+            return root;
+        }
+        if (parent.mapping) {
+            return parent.path.isEmpty() ? parent.key : parent.path + "." + parent.key;
+        }
+        return parent.path + "[" + parent.index + "]";
+    }
+
+    private static void value(ContainerFrame top, String root, String value, EntrySink sink) {
+        sink.accept(childPath(top, root), value);
+        advance(top);
+    }
+
+    private static void endContainer(Deque<ContainerFrame> stack, EntrySink sink) {
+        ContainerFrame frame = stack.pop();
+        if (frame.empty) {
+            sink.accept(frame.path, frame.mapping ? "{}" : "[]");
+        }
+        advance(stack.peek());
+    }
+
+    private static void advance(ContainerFrame frame) {
+        if (frame == null) {
+            return;
+        }
+        frame.empty = false;
+        if (frame.mapping) {
+            frame.key = null;
+        } else {
+            frame.index++;
+        }
+    }
+
+    private static final class XmlFrame {
+        private final String path;
+        private final Map<String, Integer> childCounts = new HashMap<>();
+        private final StringBuilder text = new StringBuilder();
+        private boolean hasChildren;
+
+        private XmlFrame(String path) {
+            this.path = path;
+        }
+    }
+
+    private static final class ContainerFrame {
+        private final String path;
+        private final boolean mapping;
+        private String key;
+        private int index;
+        private boolean empty = true;
+
+        private ContainerFrame(String path, boolean mapping) {
+            this.path = path;
+            this.mapping = mapping;
+        }
+    }
+}
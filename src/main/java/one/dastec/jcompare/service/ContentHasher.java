@@ -0,0 +1,80 @@
+package one.dastec.jcompare.service;
+
+import one.dastec.jcompare.model.CompareOptions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Computes (optionally normalized) SHA-256 content hashes in a single streaming pass per file.
+ * Hashes are cached by path, size, modification time and comparison options. Reads go through the
+ * {@link IoScheduler}, as background reads unless the caller says otherwise.
+ */
+public class ContentHasher {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final IoScheduler ioScheduler;
+    private final BoundedCache<HashKey, String> cache = new BoundedCache<>(100_000);
+
+    public ContentHasher() {
+        this(new IoScheduler());
+    }
+
+    public ContentHasher(IoScheduler ioScheduler) {
+        this.ioScheduler = ioScheduler;
+    }
+
+    IoScheduler ioScheduler() {
+        return ioScheduler;
+    }
+
+    public String hash(Path path, CompareOptions options) throws IOException {
+        return hash(path, options, IoScheduler.Priority.BACKGROUND);
+    }
+
+    public String hash(Path path, CompareOptions options, IoScheduler.Priority priority) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        HashKey key = new HashKey(path.toAbsolutePath().normalize().toString(), attributes.size(),
+                attributes.lastModifiedTime().toMillis(), options.cacheKey());
+        return cache.computeIfAbsent(key, k -> ioScheduler.read(path, priority, () -> digest(path, options)));
+    }
+
+    private String digest(Path path, CompareOptions options) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream in = Files.newInputStream(path)) {
+            OutputStream digestStream = new DigestOutputStream(OutputStream.nullOutputStream(), digest);
+            if (options.isExact()) {
+                in.transferTo(digestStream);
+            } else {
+                NormalizingOutputStream normalizer = new NormalizingOutputStream(digestStream, options,
+                        NormalizingOutputStream.CommentStyle.forFileName(path.getFileName().toString()));
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    normalizer.write(buffer, 0, read);
+                }
+                normalizer.finish();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private record HashKey(String path, long size, long lastModified, String options) {}
+}
@@ -0,0 +1,132 @@
+package one.dastec.jcompare.service;
+
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Paged listing of the subdirectories (and {@link TreeManifest} files, which can stand in for a directory)
+ * of a directory for the directory selector.
+ * A listing reads only the entry names (one {@link DirectoryStream} pass, no per-entry stat), drops ignored
+ * names and sorts them; the result is cached until the directory's modification time changes.
+ * Whether an entry is a directory is resolved lazily, page by page, and remembered in the cached listing,
+ * so opening a directory with 100k entries costs one readdir plus one stat per displayed row.
+ */
+@Service
+public class DirectoryListingService {
+
+    /**
+     * Upper bound on entries examined per request. A page may come back short (with a cursor) when a large
+     * directory holds mostly files, which keeps every request fast on slow or network-mounted file systems.
+     */
+    static final int MAX_SCANNED_PER_PAGE = 2_000;
+
+    private static final byte UNKNOWN = 0;
+    private static final byte DIRECTORY = 1;
+    private static final byte OTHER = 2;
+
+    private final CompareService compareService;
+    private final BoundedCache<Path, Listing> listings = new BoundedCache<>(64);
+
+    public DirectoryListingService(CompareService compareService) {
+        this.compareService = compareService;
+    }
+
+    public record Entry(Path path, boolean directory) {}
+
+    /**
+     * @param entries    subdirectories and manifests on this page, in name order
+     * @param nextCursor cursor for the following page, or null if the listing is complete
+     */
+    public record Page(List<Entry> entries, String nextCursor) {}
+
+    /**
+     * Lists one page of subdirectories and manifests.
+     *
+     * @param prefix case-insensitive name prefix filter, may be empty
+     * @param cursor name of the last entry examined by the previous page, or null for the first page
+     */
+    public Page list(Path directory, String prefix, String cursor, int limit) throws IOException {
+        Listing listing = listing(directory);
+        String[] names = listing.names;
+        int start = 0;
+        if (cursor != null && !cursor.isEmpty()) {
+            int position = Arrays.binarySearch(names, cursor);
+            start = position >= 0 ? position + 1 : -position - 1;
+        }
+        String lowerPrefix = prefix == null ? "" : prefix.toLowerCase(Locale.ROOT);
+
+        List<Entry> entries = new ArrayList<>(Math.min(limit, 256));
+        int scanned = 0;
+        int i = start;
+        for (; i < names.length && entries.size() < limit && scanned < MAX_SCANNED_PER_PAGE; i++) {
+            if (!lowerPrefix.isEmpty() && !names[i].toLowerCase(Locale.ROOT).startsWith(lowerPrefix)) {
+                continue;
+            }
+            scanned++;
+            Path child = directory.resolve(names[i]);
+            if (listing.isDirectory(i, child)) {
+                entries.add(new Entry(child, true));
+            } else if (names[i].endsWith(TreeManifest.EXTENSION)) {
+                entries.add(new Entry(child, false));
+            }
+        }
+        return new Page(entries, i < names.length ? names[i - 1] : null);
+    }
+
+    private Listing listing(Path directory) throws IOException {
+        FileTime modified = Files.getLastModifiedTime(directory);
+        Listing cached = listings.get(directory);
+        if (cached != null && cached.modified.equals(modified)) {
+            return cached;
+        }
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path entry : stream) {
+                if (!compareService.isIgnored(entry)) {
+                    names.add(entry.getFileName().toString());
+                }
+            }
+        }
+        String[] sorted = names.toArray(String[]::new);
+        Arrays.sort(sorted);
+        Listing listing = new Listing(modified, sorted);
+        listings.put(directory, listing);
+        return listing;
+    }
+
+    private static final class Listing {
+        private final FileTime modified;
+        private final String[] names;
+        // Racy but benign: concurrent pages may both stat an entry and store the same answer
+        private final byte[] types;
+
+        private Listing(FileTime modified, String[] names) {
+            this.modified = modified;
+            this.names = names;
+            this.types = new byte[names.length];
+        }
+
+        private boolean isDirectory(int index, Path path) {
+            if (types[index] == UNKNOWN) {
+                boolean directory;
+                try {
+                    directory = Files.readAttributes(path, BasicFileAttributes.class).isDirectory();
+                } catch (IOException e) {
+                    directory = false;
+                }
+                types[index] = directory ? DIRECTORY : OTHER;
+            }
+            return types[index] == DIRECTORY;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package one.dastec.jcompare.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Files extracted from git revisions, so that the blobs a comparison has to read can be read like any other file.
+ * Blobs are content-addressed ({@code <id[0:2]>/<id[2:]>/<name>}) and shared between repositories. The directory is
+ * private to the user running the server: it is created owner-only, and one that is owned by someone else or is a
+ * link is refused, so nobody else can plant content under a predictable name. The store is kept below
+ * {@code max-size} by removing the least recently used blobs, except those handed out in the last
+ * {@value #IN_USE_MINUTES} minutes, which a comparison or the diff view may still be reading; the store can exceed its
+ * size by those. Recency is tracked in memory, so file modification times, which content hashes are cached by, stay
+ * as they were written.
+ */
+@Service
+public class GitBlobStore {
+
+    static final long DEFAULT_MAX_SIZE = DataSize.ofGigabytes(1).toBytes();
+    static final int IN_USE_MINUTES = 10;
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rwx------");
+    private static final String INCOMING = "incoming";
+
+    @FunctionalInterface
+    interface Writer {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * When a blob was last handed out: {@code order} ranks uses, {@code time} is the wall clock time.
+     */
+    private record Use(long order, long time) {
+    }
+
+    private final Path directory;
+    private final long maxSize;
+    private final Duration inUse;
+    private final AtomicLong size = new AtomicLong(-1);
+    private final AtomicLong uses = new AtomicLong();
+    private final Map<Path, Use> lastUses = new ConcurrentHashMap<>();
+    private volatile boolean prepared;
+
+    public GitBlobStore() {
+        this("", DataSize.ofBytes(DEFAULT_MAX_SIZE));
+    }
+
+    /**
+     * @param directory where blobs are extracted to; empty for {@code jcompare-git-blobs-<user>} in the temp directory
+     * @param maxSize   size the extracted blobs are pruned back to
+     */
+    @Autowired
+    public GitBlobStore(@Value("${jcompare.git.blobs-dir:}") String directory,
+                        @Value("${jcompare.git.blobs-max-size:1GB}") DataSize maxSize) {
+        this(directory == null || directory.isBlank()
+                ? Path.of(System.getProperty("java.io.tmpdir"), "jcompare-git-blobs-" + System.getProperty("user.name"))
+                : Path.of(directory), maxSize.toBytes());
+    }
+
+    public GitBlobStore(Path directory, long maxSize) {
+        this(directory, maxSize, Duration.ofMinutes(IN_USE_MINUTES));
+    }
+
+    /**
+     * @param inUse how long after being handed out a blob is kept from pruning
+     */
+    GitBlobStore(Path directory, long maxSize, Duration inUse) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.inUse = inUse;
+    }
+
+    public Path directory() {
+        return directory;
+    }
+
+    /**
+     * @return the file of blob {@code id} named {@code name}, written by {@code writer} unless an earlier call already
+     * extracted it
+     */
+    Path file(String id, String name, Writer writer) throws IOException {
+        prepare();
+        Path file = directory.resolve(id.substring(0, 2)).resolve(id.substring(2)).resolve(name);
+        // Checked and marked under the lock that pruning holds, so it cannot be removed in between
+        synchronized (this) {
+            BasicFileAttributes existing = attributes(file);
+            if (existing != null && existing.isRegularFile()) {
+                use(file);
+                return file;
+            }
+        }
+        // Written aside and moved in whole, so a blob is never seen half written
+        Path temporary = Files.createTempFile(directory.resolve(INCOMING), "blob", ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                writer.writeTo(out);
+            }
+            long written = Files.size(temporary);
+            synchronized (this) {
+                Files.createDirectories(file.getParent());
+                try {
+                    Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+                use(file);
+                if (size.addAndGet(written) > maxSize) {
+                    prune(file);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        return file;
+    }
+
+    private void use(Path file) {
+        lastUses.put(file, new Use(uses.incrementAndGet(), System.currentTimeMillis()));
+    }
+
+    /**
+     * Creates the directory owner-only, or checks that an existing one belongs to this user and closes it to others.
+     */
+    private synchronized void prepare() throws IOException {
+        if (prepared) {
+            return;
+        }
+        boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+        if (attributes(directory) == null) {
+            Files.createDirectories(directory.getParent());
+            try {
+                if (posix) {
+                    Files.createDirectory(directory, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+                } else {
+                    Files.createDirectory(directory);
+                }
+            } catch (FileAlreadyExistsException e) {
+                // Created concurrently; checked below like any existing directory
+            }
+        }
+        BasicFileAttributes attributes = attributes(directory);
+        if (attributes == null || !attributes.isDirectory()) {
+            throw new IOException("Not a directory (or a link): " + directory);
+        }
+        if (posix) {
+            UserPrincipal owner = Files.getOwner(directory, LinkOption.NOFOLLOW_LINKS);
+            UserPrincipal user = FileSystems.getDefault().getUserPrincipalLookupService().lookupPrincipalByName(System.getProperty("user.name"));
+            if (!owner.equals(user)) {
+                throw new IOException(directory + " belongs to " + owner.getName() + ", not " + user.getName()
+                        + "; set jcompare.git.blobs-dir to a directory of your own");
+            }
+            Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(directory, LinkOption.NOFOLLOW_LINKS);
+            Files.setPosixFilePermissions(directory, OWNER_ONLY);
+            if (permissions.contains(PosixFilePermission.GROUP_WRITE) || permissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+                // Others could have written to it until now; nothing in it can be trusted
+                for (Path file : files()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        Files.createDirectories(directory.resolve(INCOMING));
+        size.set(sizeOf(files()));
+        prepared = true;
+    }
+
+    /**
+     * Removes the least recently used blobs until the store is below three quarters of its maximum size, so that
+     * not every extraction has to prune. {@code written}, about to be handed out, and blobs handed out within
+     * {@code inUse} are kept. Those left over from an earlier run have not been handed out by this one and go first,
+     * oldest first.
+     */
+    private synchronized void prune(Path written) throws IOException {
+        List<Path> files = files();
+        long total = sizeOf(files);
+        long inUseSince = System.currentTimeMillis() - inUse.toMillis();
+        Use unused = new Use(0, 0);
+        List<Path> candidates = new ArrayList<>();
+        for (Path file : files) {
+            if (!file.equals(written) && lastUses.getOrDefault(file, unused).time() <= inUseSince) {
+                candidates.add(file);
+            }
+        }
+        candidates.sort(Comparator.<Path>comparingLong(file -> lastUses.getOrDefault(file, unused).order())
+                .thenComparingLong(GitBlobStore::lastModified));
+        for (Path file : candidates) {
+            if (total <= maxSize / 4 * 3) {
+                break;
+            }
+            BasicFileAttributes attributes = attributes(file);
+            if (attributes != null && Files.deleteIfExists(file)) {
+                total -= attributes.size();
+                lastUses.remove(file);
+            }
+        }
+        size.set(total);
+    }
+
+    private List<Path> files() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(directory)) {
+            walk.filter(file -> !file.startsWith(directory.resolve(INCOMING)) && Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS))
+                    .forEach(files::add);
+        }
+        return files;
+    }
+
+    private static long sizeOf(List<Path> files) {
+        long total = 0;
+        for (Path file : files) {
+            BasicFileAttributes attributes = attributes(file);
+            total += attributes != null ? attributes.size() : 0;
+        }
+        return total;
+    }
+
+    private static long lastModified(Path file) {
+        BasicFileAttributes attributes = attributes(file);
+        return attributes != null ? attributes.lastModifiedTime().toMillis() : 0;
+    }
+
+    private static BasicFileAttributes attributes(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
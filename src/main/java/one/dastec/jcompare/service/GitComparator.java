@@ -0,0 +1,142 @@
+package one.dastec.jcompare.service;
+
+import one.dastec.jcompare.model.DiffNode;
+import one.dastec.jcompare.model.DiffTree;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Compares two revisions of local git repositories by their tree objects, producing the same tree as comparing two
+ * checkouts of them. Subtrees with the same tree id are identical without looking further (their entries are only
+ * listed), and files with the same blob id are identical without being read. Only blobs whose ids differ are
+ * extracted, for line statistics and, when the options normalize content, for the equivalence check. Children are
+ * in name order, as in a directory walk, not in git's tree order. Repository ignore files are not applied: what a
+ * revision holds is tracked by definition.
+ */
+class GitComparator {
+
+    interface ContentComparison {
+        /**
+         * @return whether two files of this name with different content can still be equivalent, so they have to be
+         * read; for exact options without a structure-aware comparator different blob ids are enough
+         */
+        boolean needsContent(String name);
+
+        boolean isEquivalent(Path left, Path right) throws IOException;
+
+        CompareService.FileDiff lineStats(Path left, Path right) throws IOException;
+    }
+
+    private final ContentComparison content;
+    private final GitRepository leftRepository;
+    private final GitRepository rightRepository;
+
+    GitComparator(ContentComparison content, GitRepository leftRepository, GitRepository rightRepository) {
+        this.content = content;
+        this.leftRepository = leftRepository;
+        this.rightRepository = rightRepository;
+    }
+
+    void compare(DiffTree tree, GitRepository.Revision left, GitRepository.Revision right, IgnoreProfiles.Scope ignoreScope)
+            throws IOException {
+        compare(tree, 0, left.root(), right.root(), "", ignoreScope);
+    }
+
+    private void compare(DiffTree tree, int node, GitRepository.TreeEntry left, GitRepository.TreeEntry right, String relativePath,
+                         IgnoreProfiles.Scope ignoreScope) throws IOException {
+        boolean isDir = (left != null && left.isDirectory()) || (right != null && right.isDirectory());
+        tree.setDirectory(node, isDir);
+
+        DiffNode.DiffStatus status;
+        if (left == null) {
+            status = DiffNode.DiffStatus.ADDED;
+        } else if (right == null) {
+            status = DiffNode.DiffStatus.REMOVED;
+        } else if (isDir || left.id().equals(right.id())) {
+            status = DiffNode.DiffStatus.IDENTICAL;
+        } else if (content.needsContent(right.name())
+                && content.isEquivalent(leftRepository.materialize(left), rightRepository.materialize(right))) {
+            status = DiffNode.DiffStatus.IDENTICAL;
+        } else {
+            status = DiffNode.DiffStatus.MODIFIED;
+        }
+
+        if (isDir) {
+            String leftTree = left != null && left.isDirectory() ? left.id() : null;
+            String rightTree = right != null && right.isDirectory() ? right.id() : null;
+            if (leftTree != null && leftTree.equals(rightTree)) {
+                addIdentical(tree, node, leftTree, relativePath, ignoreScope);
+            } else {
+                IgnoreProfiles.Scope childScope = ignoreScope.descend(relativePath, null, null);
+                Map<String, GitRepository.TreeEntry> leftEntries = entries(leftRepository, leftTree);
+                Map<String, GitRepository.TreeEntry> rightEntries = entries(rightRepository, rightTree);
+                TreeSet<String> allNames = new TreeSet<>(leftEntries.keySet());
+                allNames.addAll(rightEntries.keySet());
+
+                for (String childName : allNames) {
+                    GitRepository.TreeEntry childLeft = leftEntries.get(childName);
+                    GitRepository.TreeEntry childRight = rightEntries.get(childName);
+                    String childRelPath = relativePath.isEmpty() ? childName : relativePath + "/" + childName;
+                    boolean childIsDir = (childRight != null ? childRight : childLeft).isDirectory();
+                    if (isIgnored(childScope, childRelPath, childLeft != null, childRight != null, childIsDir)) {
+                        continue;
+                    }
+                    int child = tree.add(node, childName, childIsDir);
+                    compare(tree, child, childLeft, childRight, childRelPath, childScope);
+                    if (tree.status(child) != DiffNode.DiffStatus.IDENTICAL) {
+                        status = DiffNode.DiffStatus.MODIFIED;
+                    }
+                }
+            }
+        } else if (status != DiffNode.DiffStatus.IDENTICAL) {
+            CompareService.FileDiff fileDiff = content.lineStats(left != null ? leftRepository.materialize(left) : null,
+                    right != null ? rightRepository.materialize(right) : null);
+            tree.setStatistics(node, fileDiff.added(), fileDiff.removed(), fileDiff.modified(), fileDiff.percentage());
+        }
+        tree.setStatus(node, status);
+    }
+
+    /**
+     * Lists an unchanged subtree as identical, reading tree objects only.
+     */
+    private void addIdentical(DiffTree tree, int node, String treeId, String relativePath, IgnoreProfiles.Scope ignoreScope)
+            throws IOException {
+        IgnoreProfiles.Scope childScope = ignoreScope.descend(relativePath, null, null);
+        for (GitRepository.TreeEntry entry : entries(leftRepository, treeId).values()) {
+            String childRelPath = relativePath.isEmpty() ? entry.name() : relativePath + "/" + entry.name();
+            if (isIgnored(childScope, childRelPath, true, true, entry.isDirectory())) {
+                continue;
+            }
+            int child = tree.add(node, entry.name(), entry.isDirectory());
+            tree.setStatus(child, DiffNode.DiffStatus.IDENTICAL);
+            if (entry.isDirectory()) {
+                addIdentical(tree, child, entry.id(), childRelPath, childScope);
+            }
+        }
+    }
+
+    /**
+     * The global ignore patterns match against paths, so they are given the paths the entries would have in the
+     * work trees.
+     */
+    private boolean isIgnored(IgnoreProfiles.Scope scope, String relativePath, boolean onLeft, boolean onRight, boolean directory) {
+        return scope.isIgnored(relativePath, onLeft ? leftRepository.workTree().resolve(relativePath) : null,
+                onRight ? rightRepository.workTree().resolve(relativePath) : null, directory);
+    }
+
+    private static Map<String, GitRepository.TreeEntry> entries(GitRepository repository, String treeId) throws IOException {
+        Map<String, GitRepository.TreeEntry> entries = new TreeMap<>();
+        if (treeId != null) {
+            List<GitRepository.TreeEntry> list = repository.tree(treeId);
+            for (GitRepository.TreeEntry entry : list) {
+                entries.put(entry.name(), entry);
+            }
+        }
+        return entries;
+    }
+}
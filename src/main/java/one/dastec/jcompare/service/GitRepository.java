@@ -0,0 +1,957 @@
+package one.dastec.jcompare.service;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Read-only access to the object database of a local git repository, without a checkout and without running git.
+ * Loose objects are inflated from {@code objects/xx/...}; packed objects are located through the version 2 pack
+ * indexes, which are memory-mapped, and rebuilt from their OFS_DELTA and REF_DELTA chains. Revisions are resolved
+ * from loose refs and {@code packed-refs}, with {@code ~n} and {@code ^n} suffixes. Parsed trees and delta bases
+ * are cached. Only SHA-1 repositories are supported. Pack files stay open until the packs are replaced by a repack or
+ * the repository is closed. A repository shared between requests is held with {@link #acquire()} and
+ * {@link #release()}, and {@link #retire() retired} rather than closed, so that it closes once the last user is done.
+ */
+final class GitRepository implements Closeable {
+
+    private static final int COMMIT = 1;
+    private static final int TREE = 2;
+    private static final int BLOB = 3;
+    private static final int TAG = 4;
+    private static final int OFS_DELTA = 6;
+    private static final int REF_DELTA = 7;
+    private static final String[] TYPE_NAMES = {null, "commit", "tree", "blob", "tag"};
+    static final int DIRECTORY_MODE = 0040000;
+    static final int GITLINK_MODE = 0160000;
+    private static final int ID_LENGTH = 20;
+    private static final Pattern FULL_ID = Pattern.compile("[0-9a-f]{40}");
+    private static final Pattern ABBREVIATED_ID = Pattern.compile("[0-9a-f]{4,39}");
+    private static final HexFormat HEX = HexFormat.of();
+    /**
+     * Delta bases larger than this are rebuilt when needed again rather than kept.
+     */
+    private static final int MAX_CACHED_BASE = 1 << 20;
+
+    record GitObject(int type, byte[] data) {
+    }
+
+    /**
+     * One entry of a tree object.
+     *
+     * @param id hex object id of the blob, tree or (for a submodule) commit
+     */
+    record TreeEntry(String name, int mode, String id) {
+        boolean isDirectory() {
+            return mode == DIRECTORY_MODE;
+        }
+
+        boolean isGitlink() {
+            return mode == GITLINK_MODE;
+        }
+    }
+
+    /**
+     * A tree of this repository, as named by a revision.
+     */
+    record Revision(GitRepository repository, String tree) {
+        TreeEntry root() {
+            return new TreeEntry("", DIRECTORY_MODE, tree);
+        }
+
+        /**
+         * @return the file at {@code relativePath} extracted by {@link #materialize}, or null if there is none
+         */
+        Path locate(String relativePath) throws IOException {
+            TreeEntry entry = repository.entry(tree, relativePath);
+            return entry == null || entry.isDirectory() ? null : repository.materialize(entry);
+        }
+    }
+
+    private final Path workTree;
+    private final Path gitDirectory;
+    private final Path commonDirectory;
+    private final Path objects;
+    private final GitBlobStore blobs;
+    private final BoundedCache<String, List<TreeEntry>> trees = new BoundedCache<>(20_000);
+    private final BoundedCache<String, GitObject> deltaBases = new BoundedCache<>(256);
+    private volatile List<Pack> packs = List.of();
+    private volatile boolean closed;
+    private int users;
+    private boolean retired;
+
+    private GitRepository(Path workTree, Path gitDirectory, GitBlobStore blobs) throws IOException {
+        this.workTree = workTree;
+        this.gitDirectory = gitDirectory;
+        Path commonDir = gitDirectory.resolve("commondir");
+        this.commonDirectory = Files.isRegularFile(commonDir)
+                ? gitDirectory.resolve(Files.readString(commonDir).trim()).normalize() : gitDirectory;
+        this.objects = commonDirectory.resolve("objects");
+        this.blobs = blobs;
+        scanPacks();
+    }
+
+    /**
+     * @param blobs where blobs are extracted to when a file needs to be read ({@link #materialize}); blobs are
+     *              content-addressed, so it can be shared between repositories
+     * @return the repository in {@code directory} (a work tree or a bare repository), or null if it is none
+     */
+    static GitRepository open(Path directory, GitBlobStore blobs) throws IOException {
+        Path gitDirectory = gitDirectory(directory);
+        return gitDirectory != null ? new GitRepository(directory, gitDirectory, blobs) : null;
+    }
+
+    static boolean isRepository(Path directory) throws IOException {
+        return gitDirectory(directory) != null;
+    }
+
+    private static Path gitDirectory(Path directory) throws IOException {
+        Path dotGit = directory.resolve(".git");
+        if (Files.isDirectory(dotGit)) {
+            return dotGit;
+        }
+        if (Files.isRegularFile(dotGit)) {
+            // Linked work trees and submodules: "gitdir: <path>"
+            String content = Files.readString(dotGit).trim();
+            if (content.startsWith("gitdir:")) {
+                return directory.resolve(content.substring("gitdir:".length()).trim()).normalize();
+            }
+        }
+        if (Files.isRegularFile(directory.resolve("HEAD")) && Files.isDirectory(directory.resolve("objects"))) {
+            return directory;
+        }
+        return null;
+    }
+
+    /**
+     * @return the work tree, or the repository itself if it is bare
+     */
+    Path workTree() {
+        return workTree;
+    }
+
+    /**
+     * @param revision an object id (possibly abbreviated), a ref such as {@code HEAD}, {@code main},
+     *                 {@code v1.0} or {@code origin/main}, followed by any number of {@code ~n} and {@code ^n}
+     */
+    Revision revision(String revision) throws IOException {
+        return new Revision(this, treeOf(resolve(revision), revision));
+    }
+
+    private String resolve(String revision) throws IOException {
+        int suffix = indexOfAny(revision, '~', '^');
+        String name = suffix < 0 ? revision : revision.substring(0, suffix);
+        String id = resolveName(name);
+        if (id == null) {
+            throw new NoSuchFileException(revision, null, "Unknown revision in " + workTree);
+        }
+        int i = suffix < 0 ? revision.length() : suffix;
+        while (i < revision.length()) {
+            char operator = revision.charAt(i++);
+            int start = i;
+            while (i < revision.length() && Character.isDigit(revision.charAt(i))) {
+                i++;
+            }
+            if (operator != '~' && operator != '^') {
+                throw new NoSuchFileException(revision, null, "Unsupported revision syntax");
+            }
+            int n = start == i ? 1 : Integer.parseInt(revision.substring(start, i));
+            if (operator == '~') {
+                for (int step = 0; step < n; step++) {
+                    id = parent(id, 1, revision);
+                }
+            } else {
+                id = n == 0 ? peel(id, COMMIT, revision) : parent(id, n, revision);
+            }
+        }
+        return id;
+    }
+
+    private static int indexOfAny(String value, char first, char second) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) == first || value.charAt(i) == second) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Full ids first, then refs in git's order of precedence, then abbreviated ids.
+     */
+    private String resolveName(String name) throws IOException {
+        if (FULL_ID.matcher(name).matches()) {
+            return name;
+        }
+        if (!name.isEmpty() && !name.contains("..") && !name.startsWith("/")) {
+            for (String candidate : List.of(name, "refs/" + name, "refs/tags/" + name, "refs/heads/" + name,
+                    "refs/remotes/" + name, "refs/remotes/" + name + "/HEAD")) {
+                String id = ref(candidate, 0);
+                if (id != null) {
+                    return id;
+                }
+            }
+        }
+        return ABBREVIATED_ID.matcher(name).matches() ? expand(name) : null;
+    }
+
+    private String ref(String name, int depth) throws IOException {
+        if (depth > 5) {
+            throw new IOException("Symbolic ref loop at " + name + " in " + workTree);
+        }
+        for (Path directory : name.startsWith("refs/") ? List.of(gitDirectory, commonDirectory) : List.of(gitDirectory)) {
+            Path file = directory.resolve(name);
+            if (Files.isRegularFile(file)) {
+                String content = Files.readString(file).trim();
+                if (content.startsWith("ref:")) {
+                    return ref(content.substring(4).trim(), depth + 1);
+                }
+                return FULL_ID.matcher(content).matches() ? content : null;
+            }
+        }
+        Path packedRefs = commonDirectory.resolve("packed-refs");
+        if (name.startsWith("refs/") && Files.isRegularFile(packedRefs)) {
+            for (String line : Files.readAllLines(packedRefs)) {
+                if (line.length() > 41 && line.charAt(40) == ' ' && line.substring(41).equals(name)) {
+                    return line.substring(0, 40);
+                }
+            }
+        }
+        return null;
+    }
+
+    private String expand(String prefix) throws IOException {
+        Set<String> matches = new TreeSet<>();
+        Path looseDirectory = objects.resolve(prefix.substring(0, 2));
+        if (Files.isDirectory(looseDirectory)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(looseDirectory, prefix.substring(2) + "*")) {
+                for (Path file : files) {
+                    matches.add(prefix.substring(0, 2) + file.getFileName());
+                }
+            }
+        }
+        for (Pack pack : packs) {
+            pack.collect(prefix, matches);
+        }
+        if (matches.size() > 1) {
+            throw new IOException("Ambiguous object id " + prefix + " in " + workTree);
+        }
+        return matches.isEmpty() ? null : matches.iterator().next();
+    }
+
+    private String parent(String id, int n, String revision) throws IOException {
+        String commit = peel(id, COMMIT, revision);
+        int found = 0;
+        for (String line : header(read(commit).data())) {
+            if (line.startsWith("parent ") && ++found == n) {
+                return line.substring("parent ".length());
+            }
+        }
+        throw new NoSuchFileException(revision, null, "Commit " + commit + " has no parent " + n);
+    }
+
+    private String treeOf(String id, String revision) throws IOException {
+        return peel(id, TREE, revision);
+    }
+
+    /**
+     * Follows tags and commits down to an object of the given type.
+     */
+    private String peel(String id, int type, String revision) throws IOException {
+        for (int depth = 0; depth < 16; depth++) {
+            GitObject object = read(id);
+            if (object.type() == type) {
+                return id;
+            }
+            String next = null;
+            if (object.type() == TAG) {
+                next = headerValue(object.data(), "object ");
+            } else if (object.type() == COMMIT && type == TREE) {
+                next = headerValue(object.data(), "tree ");
+            }
+            if (next == null) {
+                break;
+            }
+            id = next;
+        }
+        throw new NoSuchFileException(revision, null, "Not a " + TYPE_NAMES[type] + " in " + workTree);
+    }
+
+    private static List<String> header(byte[] data) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] == '\n') {
+                if (i == start) {
+                    break; // End of the header, the message follows
+                }
+                lines.add(new String(data, start, i - start, StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+        }
+        return lines;
+    }
+
+    private static String headerValue(byte[] data, String key) {
+        for (String line : header(data)) {
+            if (line.startsWith(key)) {
+                return line.substring(key.length());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the entries of a tree in the order stored (git's order, not necessarily name order)
+     */
+    List<TreeEntry> tree(String id) throws IOException {
+        return trees.computeIfAbsent(id, key -> {
+            GitObject object = read(key);
+            if (object.type() != TREE) {
+                throw new IOException("Not a tree: " + key);
+            }
+            return parseTree(object.data());
+        });
+    }
+
+    private static List<TreeEntry> parseTree(byte[] data) throws IOException {
+        List<TreeEntry> entries = new ArrayList<>();
+        int i = 0;
+        while (i < data.length) {
+            int mode = 0;
+            while (i < data.length && data[i] != ' ') {
+                mode = mode * 8 + (data[i++] - '0');
+            }
+            int nameStart = ++i;
+            while (i < data.length && data[i] != 0) {
+                i++;
+            }
+            if (i + 1 + ID_LENGTH > data.length) {
+                throw new IOException("Corrupt tree object");
+            }
+            String name = new String(data, nameStart, i - nameStart, StandardCharsets.UTF_8);
+            String id = HEX.formatHex(data, i + 1, i + 1 + ID_LENGTH);
+            entries.add(new TreeEntry(name, mode, id));
+            i += 1 + ID_LENGTH;
+        }
+        return entries;
+    }
+
+    /**
+     * @return the entry at {@code relativePath} ('/'-separated) below the tree {@code tree}, or null
+     */
+    TreeEntry entry(String tree, String relativePath) throws IOException {
+        TreeEntry entry = new TreeEntry("", DIRECTORY_MODE, tree);
+        for (String name : relativePath.split("/")) {
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!entry.isDirectory()) {
+                return null;
+            }
+            TreeEntry child = null;
+            for (TreeEntry candidate : tree(entry.id())) {
+                if (candidate.name().equals(name)) {
+                    child = candidate;
+                    break;
+                }
+            }
+            if (child == null) {
+                return null;
+            }
+            entry = child;
+        }
+        return entry;
+    }
+
+    /**
+     * Extracts a blob to the {@link GitBlobStore}, unless an earlier call already did, so that it can be read like
+     * any other file. The name is kept because comment styles and structure-aware comparison go by the file
+     * extension. A submodule is written as the line {@code git diff} shows for it.
+     */
+    Path materialize(TreeEntry entry) throws IOException {
+        String name = entry.name().isEmpty() || entry.name().equals(".") || entry.name().equals("..") ? "blob" : entry.name();
+        return blobs.file(entry.id(), name, out -> {
+            if (entry.isGitlink()) {
+                out.write(("Subproject commit " + entry.id() + "\n").getBytes(StandardCharsets.UTF_8));
+            } else {
+                writeBlob(entry.id(), out);
+            }
+        });
+    }
+
+    GitObject read(String id) throws IOException {
+        return access(id, Pack::read, GitRepository::readLoose);
+    }
+
+    /**
+     * Writes the content of a blob to {@code out}. Whole objects are inflated straight through, so a large file in
+     * history never has to fit in memory; only deltified ones are rebuilt in memory, and git only deltifies files
+     * below {@code core.bigFileThreshold} (512 MB by default).
+     */
+    void writeBlob(String id, OutputStream out) throws IOException {
+        access(id, (pack, offset) -> {
+            pack.writeBlob(offset, id, out);
+            return null;
+        }, loose -> {
+            writeLooseBlob(loose, id, out);
+            return null;
+        });
+    }
+
+    @FunctionalInterface
+    private interface PackAccess<T> {
+        T apply(Pack pack, long offset) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface LooseAccess<T> {
+        T apply(Path file) throws IOException;
+    }
+
+    /**
+     * Finds an object in the packs or as a loose object and hands it to the matching accessor.
+     */
+    private <T> T access(String id, PackAccess<T> packed, LooseAccess<T> loose) throws IOException {
+        byte[] binaryId = HEX.parseHex(id);
+        for (int attempt = 0; ; attempt++) {
+            try {
+                for (Pack pack : packs) {
+                    long offset = pack.find(binaryId);
+                    if (offset >= 0) {
+                        return packed.apply(pack, offset);
+                    }
+                }
+            } catch (ClosedChannelException e) {
+                // A rescan by another thread closed a pack that a repack had replaced
+                if (closed || attempt > 0) {
+                    throw e;
+                }
+                continue;
+            }
+            Path file = objects.resolve(id.substring(0, 2)).resolve(id.substring(2));
+            if (Files.isRegularFile(file)) {
+                return loose.apply(file);
+            }
+            // Repacked or fetched since the packs were last listed
+            if (attempt > 0 || !scanPacks()) {
+                throw new NoSuchFileException(id, null, "Missing object in " + gitDirectory);
+            }
+        }
+    }
+
+    /**
+     * Inflates the header of a loose object, {@code "<type> <size>\0"}, from {@code in}.
+     *
+     * @return the type and size
+     */
+    private static long[] looseHeader(InputStream in, Path file) throws IOException {
+        StringBuilder header = new StringBuilder();
+        for (int c = in.read(); c != 0; c = in.read()) {
+            if (c < 0 || header.length() > 32) {
+                throw new ZipException("Corrupt loose object " + file);
+            }
+            header.append((char) c);
+        }
+        int space = header.indexOf(" ");
+        int type = space < 0 ? -1 : Arrays.asList(TYPE_NAMES).indexOf(header.substring(0, space));
+        if (type < 1) {
+            throw new ZipException("Unknown object type in " + file);
+        }
+        try {
+            return new long[] {type, Long.parseLong(header.substring(space + 1))};
+        } catch (NumberFormatException e) {
+            throw new ZipException("Corrupt loose object " + file);
+        }
+    }
+
+    private static void writeLooseBlob(Path file, String id, OutputStream out) throws IOException {
+        try (InputStream in = new InflaterInputStream(Files.newInputStream(file))) {
+            long[] header = looseHeader(in, file);
+            if (header[0] != BLOB) {
+                throw new IOException("Not a blob: " + id);
+            }
+            if (in.transferTo(out) != header[1]) {
+                throw new ZipException("Object shorter than its header says in " + file);
+            }
+        }
+    }
+
+    private static GitObject readLoose(Path file) throws IOException {
+        byte[] compressed = Files.readAllBytes(file);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            // The header is "<type> <size>\0"; inflate just enough of it to learn the size
+            byte[] header = new byte[32];
+            int headerLength = inflater.inflate(header);
+            int space = -1;
+            int end = -1;
+            for (int i = 0; i < headerLength && end < 0; i++) {
+                if (header[i] == ' ' && space < 0) {
+                    space = i;
+                } else if (header[i] == 0) {
+                    end = i;
+                }
+            }
+            if (space < 0 || end < 0) {
+                throw new ZipException("Corrupt loose object " + file);
+            }
+            String typeName = new String(header, 0, space, StandardCharsets.US_ASCII);
+            int type = Arrays.asList(TYPE_NAMES).indexOf(typeName);
+            int size = Integer.parseInt(new String(header, space + 1, end - space - 1, StandardCharsets.US_ASCII));
+            if (type < 1) {
+                throw new ZipException("Unknown object type " + typeName + " in " + file);
+            }
+            byte[] data = new byte[size];
+            int copied = Math.min(size, headerLength - end - 1);
+            System.arraycopy(header, end + 1, data, 0, copied);
+            inflateFully(inflater, data, copied);
+            return new GitObject(type, data);
+        } catch (DataFormatException | NumberFormatException e) {
+            throw new ZipException("Corrupt loose object " + file + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void inflateFully(Inflater inflater, byte[] data, int offset) throws DataFormatException, ZipException {
+        while (offset < data.length) {
+            int inflated = inflater.inflate(data, offset, data.length - offset);
+            if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                throw new ZipException("Object shorter than its header says");
+            }
+            offset += inflated;
+        }
+    }
+
+    /**
+     * Picks up packs added since the last scan, and closes the ones that a repack has removed since.
+     *
+     * @return true if any were added
+     */
+    private synchronized boolean scanPacks() throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        Path packDirectory = objects.resolve("pack");
+        List<Pack> current = new ArrayList<>();
+        List<Pack> removed = new ArrayList<>(packs);
+        boolean added = false;
+        if (Files.isDirectory(packDirectory)) {
+            try (DirectoryStream<Path> indexes = Files.newDirectoryStream(packDirectory, "*.idx")) {
+                for (Path index : indexes) {
+                    Pack known = removed.stream().filter(pack -> pack.index.equals(index)).findFirst().orElse(null);
+                    if (known != null) {
+                        removed.remove(known);
+                        current.add(known);
+                        continue;
+                    }
+                    Path packFile = index.resolveSibling(index.getFileName().toString().replaceFirst("\\.idx$", ".pack"));
+                    if (Files.isRegularFile(packFile)) {
+                        current.add(new Pack(index, packFile));
+                        added = true;
+                    }
+                }
+            }
+        }
+        packs = List.copyOf(current);
+        for (Pack pack : removed) {
+            pack.channel.close();
+        }
+        return added;
+    }
+
+    /**
+     * Starts a use of this repository; {@link #release()} ends it.
+     *
+     * @return false if it has been closed, and cannot be used
+     */
+    synchronized boolean acquire() {
+        if (closed) {
+            return false;
+        }
+        users++;
+        return true;
+    }
+
+    /**
+     * Ends a use started by {@link #acquire()}, closing the repository if it was retired meanwhile.
+     */
+    synchronized void release() throws IOException {
+        if (--users == 0 && retired) {
+            close();
+        }
+    }
+
+    /**
+     * Closes the repository now if nobody uses it, otherwise once the last user releases it.
+     */
+    synchronized void retire() throws IOException {
+        retired = true;
+        if (users == 0) {
+            close();
+        }
+    }
+
+    /**
+     * Closes the pack files. Reading objects fails afterwards; files already extracted stay readable.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        for (Pack pack : packs) {
+            pack.channel.close();
+        }
+        packs = List.of();
+    }
+
+    /**
+     * A pack file and its version 2 index: a 256-entry fan-out table over the first id byte, the sorted ids, their
+     * CRCs, 31-bit offsets and, for packs over 2 GB, a table of 64-bit offsets.
+     */
+    private final class Pack {
+        private final Path index;
+        private final Path packFile;
+        private final MappedByteBuffer table;
+        private final FileChannel channel;
+        private final int count;
+        private final int idsStart;
+        private final int offsetsStart;
+        private final int largeOffsetsStart;
+
+        Pack(Path index, Path packFile) throws IOException {
+            this.index = index;
+            this.packFile = packFile;
+            try (FileChannel indexChannel = FileChannel.open(index, StandardOpenOption.READ)) {
+                this.table = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size());
+            }
+            if (table.getInt(0) != 0xff744f63 || table.getInt(4) != 2) {
+                throw new IOException("Unsupported pack index " + index + "; only version 2 is read");
+            }
+            this.count = table.getInt(8 + 255 * 4);
+            this.idsStart = 8 + 256 * 4;
+            this.offsetsStart = idsStart + count * (ID_LENGTH + 4);
+            this.largeOffsetsStart = offsetsStart + count * 4;
+            this.channel = FileChannel.open(packFile, StandardOpenOption.READ);
+        }
+
+        private int fanout(int firstByte) {
+            return firstByte < 0 ? 0 : table.getInt(8 + firstByte * 4);
+        }
+
+        private int compare(int position, byte[] id, int length) {
+            int base = idsStart + position * ID_LENGTH;
+            for (int i = 0; i < length; i++) {
+                int difference = (table.get(base + i) & 0xff) - (id[i] & 0xff);
+                if (difference != 0) {
+                    return difference;
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @return the pack offset of the object, or -1 if this pack does not hold it
+         */
+        long find(byte[] id) {
+            int first = id[0] & 0xff;
+            int low = fanout(first - 1);
+            int high = fanout(first) - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int comparison = compare(middle, id, ID_LENGTH);
+                if (comparison < 0) {
+                    low = middle + 1;
+                } else if (comparison > 0) {
+                    high = middle - 1;
+                } else {
+                    int offset = table.getInt(offsetsStart + middle * 4);
+                    return offset >= 0 ? offset : table.getLong(largeOffsetsStart + (offset & 0x7fffffff) * 8);
+                }
+            }
+            return -1;
+        }
+
+        void collect(String prefix, Set<String> matches) {
+            byte[] bytes = HEX.parseHex(prefix.length() % 2 == 0 ? prefix : prefix + "0");
+            int first = bytes[0] & 0xff;
+            for (int i = fanout(first - 1); i < fanout(first); i++) {
+                // Compare whole bytes, then the odd nibble
+                if (compare(i, bytes, prefix.length() / 2) == 0) {
+                    byte[] id = new byte[ID_LENGTH];
+                    table.get(idsStart + i * ID_LENGTH, id);
+                    String hex = HEX.formatHex(id);
+                    if (hex.startsWith(prefix)) {
+                        matches.add(hex);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Reads the header of the entry at the position of {@code in}: the type and, as a varint, the inflated size.
+         *
+         * @return the type and size
+         */
+        private static long[] header(PackInput in) throws IOException {
+            int c = in.read();
+            int type = c >> 4 & 7;
+            long size = c & 0x0f;
+            for (int shift = 4; (c & 0x80) != 0; shift += 7) {
+                c = in.read();
+                size |= (long) (c & 0x7f) << shift;
+            }
+            return new long[] {type, size};
+        }
+
+        GitObject read(long offset) throws IOException {
+            PackInput in = new PackInput(channel, offset);
+            long[] header = header(in);
+            int type = (int) header[0];
+            long size = header[1];
+            switch (type) {
+                case COMMIT, TREE, BLOB, TAG -> {
+                    return new GitObject(type, inflate(in, size));
+                }
+                case OFS_DELTA -> {
+                    int c = in.read();
+                    long distance = c & 0x7f;
+                    while ((c & 0x80) != 0) {
+                        c = in.read();
+                        distance = (distance + 1) << 7 | (c & 0x7f);
+                    }
+                    byte[] delta = inflate(in, size);
+                    GitObject base = base(offset - distance);
+                    return new GitObject(base.type(), applyDelta(base.data(), delta));
+                }
+                case REF_DELTA -> {
+                    byte[] baseId = new byte[ID_LENGTH];
+                    in.readFully(baseId);
+                    byte[] delta = inflate(in, size);
+                    GitObject base = GitRepository.this.read(HEX.formatHex(baseId));
+                    return new GitObject(base.type(), applyDelta(base.data(), delta));
+                }
+                default -> throw new IOException("Unknown object type " + type + " at " + offset + " in " + packFile);
+            }
+        }
+
+        /**
+         * Writes the blob at {@code offset} to {@code out}, inflating a whole one in chunks.
+         */
+        void writeBlob(long offset, String id, OutputStream out) throws IOException {
+            PackInput in = new PackInput(channel, offset);
+            long[] header = header(in);
+            if (header[0] == OFS_DELTA || header[0] == REF_DELTA) {
+                GitObject blob = read(offset);
+                if (blob.type() != BLOB) {
+                    throw new IOException("Not a blob: " + id);
+                }
+                out.write(blob.data());
+                return;
+            }
+            if (header[0] != BLOB) {
+                throw new IOException("Not a blob: " + id);
+            }
+            byte[] chunk = new byte[64 * 1024];
+            Inflater inflater = new Inflater();
+            try {
+                long remaining = header[1];
+                while (remaining > 0) {
+                    if (inflater.needsInput()) {
+                        in.feed(inflater);
+                    }
+                    int n = inflater.inflate(chunk, 0, (int) Math.min(chunk.length, remaining));
+                    if (n == 0 && (inflater.finished() || inflater.needsDictionary())) {
+                        throw new ZipException("Object shorter than its header says in " + packFile);
+                    }
+                    out.write(chunk, 0, n);
+                    remaining -= n;
+                }
+            } catch (DataFormatException e) {
+                throw new ZipException("Corrupt object in " + packFile + ": " + e.getMessage());
+            } finally {
+                inflater.end();
+            }
+        }
+
+        private GitObject base(long offset) throws IOException {
+            String key = packFile + ":" + offset;
+            GitObject base = deltaBases.get(key);
+            if (base == null) {
+                base = read(offset);
+                if (base.data().length <= MAX_CACHED_BASE) {
+                    deltaBases.put(key, base);
+                }
+            }
+            return base;
+        }
+
+        private byte[] inflate(PackInput in, long size) throws IOException {
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IOException("Object too large at " + in.position + " in " + packFile);
+            }
+            byte[] data = new byte[(int) size];
+            Inflater inflater = new Inflater();
+            try {
+                int inflated = 0;
+                while (inflated < data.length) {
+                    if (inflater.needsInput()) {
+                        in.feed(inflater);
+                    }
+                    int n = inflater.inflate(data, inflated, data.length - inflated);
+                    if (n == 0 && (inflater.finished() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    inflated += n;
+                }
+                if (inflated != data.length) {
+                    throw new ZipException("Object shorter than its header says in " + packFile);
+                }
+                return data;
+            } catch (DataFormatException e) {
+                throw new ZipException("Corrupt object in " + packFile + ": " + e.getMessage());
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+
+    /**
+     * Reads a pack from a position with positional reads, so several threads can use one channel.
+     */
+    private static final class PackInput extends InputStream {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(8192).flip();
+        private long position;
+
+        PackInput(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        private boolean fill() throws IOException {
+            buffer.clear();
+            int n = channel.read(buffer, position);
+            buffer.flip();
+            if (n <= 0) {
+                return false;
+            }
+            position += n;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!buffer.hasRemaining() && !fill()) {
+                throw new EOFException("Unexpected end of pack");
+            }
+            return buffer.get() & 0xff;
+        }
+
+        void readFully(byte[] bytes) throws IOException {
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte) read();
+            }
+        }
+
+        /**
+         * Hands the buffered bytes to the inflater, reading more first if none are left.
+         */
+        void feed(Inflater inflater) throws IOException {
+            if (!buffer.hasRemaining() && !fill()) {
+                throw new EOFException("Unexpected end of pack");
+            }
+            inflater.setInput(buffer.array(), buffer.position(), buffer.remaining());
+            // The inflater holds on to the array; what it leaves unused is never needed again
+            buffer.position(buffer.limit());
+        }
+    }
+
+    /**
+     * Rebuilds an object from its base and a git delta: the two sizes as varints, then copy instructions
+     * (offset and length into the base) and insert instructions (literal bytes).
+     */
+    static byte[] applyDelta(byte[] base, byte[] delta) throws IOException {
+        try {
+            int[] cursor = {0};
+            long baseSize = deltaVarint(delta, cursor);
+            long resultSize = deltaVarint(delta, cursor);
+            if (baseSize != base.length || resultSize > Integer.MAX_VALUE - 8) {
+                throw new ZipException("Delta does not fit its base");
+            }
+            byte[] result = new byte[(int) resultSize];
+            int out = 0;
+            int i = cursor[0];
+            while (i < delta.length) {
+                int instruction = delta[i++] & 0xff;
+                if ((instruction & 0x80) != 0) {
+                    long offset = 0;
+                    int length = 0;
+                    for (int bit = 0; bit < 4; bit++) {
+                        if ((instruction & 1 << bit) != 0) {
+                            offset |= (long) (delta[i++] & 0xff) << bit * 8;
+                        }
+                    }
+                    for (int bit = 0; bit < 3; bit++) {
+                        if ((instruction & 0x10 << bit) != 0) {
+                            length |= (delta[i++] & 0xff) << bit * 8;
+                        }
+                    }
+                    if (length == 0) {
+                        length = 0x10000;
+                    }
+                    System.arraycopy(base, Math.toIntExact(offset), result, out, length);
+                    out += length;
+                } else if (instruction != 0) {
+                    System.arraycopy(delta, i, result, out, instruction);
+                    i += instruction;
+                    out += instruction;
+                } else {
+                    throw new ZipException("Reserved delta instruction");
+                }
+            }
+            if (out != result.length) {
+                throw new ZipException("Delta result shorter than announced");
+            }
+            return result;
+        } catch (IndexOutOfBoundsException | ArithmeticException e) {
+            throw new ZipException("Corrupt delta: " + e.getMessage());
+        }
+    }
+
+    private static long deltaVarint(byte[] delta, int[] cursor) {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = delta[cursor[0]++] & 0xff;
+            value |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
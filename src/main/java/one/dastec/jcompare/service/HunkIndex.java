@@ -0,0 +1,56 @@
+package one.dastec.jcompare.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Server-side index of a computed file diff. The diff is split into alternating runs ("hunks") of identical
+ * and changed lines, so the viewer only needs the hunk list to lay out the document and can fetch the text
+ * of the line ranges it actually displays.
+ *
+ * @param id       stable identifier derived from the content hashes and options of the compared pair
+ * @param fileDiff the full positional diff
+ * @param hunks    consecutive line ranges covering the whole diff
+ */
+public record HunkIndex(String id, CompareService.FileDiff fileDiff, List<Hunk> hunks) {
+
+    /**
+     * Line range {@code [from, to)} whose lines are either all identical or all changed.
+     */
+    public record Hunk(int from, int to, boolean changed) {}
+
+    public record LineRow(int line, String left, String right, CompareService.LineStatus status) {}
+
+    public static HunkIndex build(String id, CompareService.FileDiff fileDiff) {
+        List<Hunk> hunks = new ArrayList<>();
+        List<CompareService.FileDiffLine> lines = fileDiff.lines();
+        int start = 0;
+        for (int i = 1; i <= lines.size(); i++) {
+            boolean changed = lines.get(start).status() != CompareService.LineStatus.IDENTICAL;
+            if (i == lines.size() || (lines.get(i).status() != CompareService.LineStatus.IDENTICAL) != changed) {
+                hunks.add(new Hunk(start, i, changed));
+                start = i;
+            }
+        }
+        return new HunkIndex(id, fileDiff, hunks);
+    }
+
+    public int lineCount() {
+        return fileDiff.lines().size();
+    }
+
+    /**
+     * @return the rows in {@code [from, to)}, clipped to the document
+     */
+    public List<LineRow> lines(int from, int to) {
+        List<CompareService.FileDiffLine> lines = fileDiff.lines();
+        int start = Math.max(0, from);
+        int end = Math.min(to, lines.size());
+        List<LineRow> rows = new ArrayList<>(Math.max(0, end - start));
+        for (int i = start; i < end; i++) {
+            CompareService.FileDiffLine line = lines.get(i);
+            rows.add(new LineRow(i, line.left(), line.right(), line.status()));
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,159 @@
+package one.dastec.jcompare.service;
+
+import one.dastec.jcompare.model.CompareOptions;
+import one.dastec.jcompare.model.IgnoreProfile;
+
+import java.io.IOException;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Resolves the ignore rules of a comparison from its {@link IgnoreProfile}. Ignore files are compiled once per
+ * content hash and ad-hoc patterns once per pattern text, so switching profiles or re-running a comparison does
+ * not recompile anything. Nested {@code .gitignore}/{@code .jcompare-ignore} files are picked up one directory
+ * at a time as the tree walk descends ({@link Scope#descend}).
+ */
+public class IgnoreProfiles {
+
+    static final List<String> IGNORE_FILE_NAMES = List.of(".gitignore", ".jcompare-ignore");
+
+    private final ContentHasher contentHasher;
+    private final Predicate<Path> globalIgnores;
+    private final BoundedCache<String, IgnoreRules> compiled = new BoundedCache<>(10_000);
+
+    public IgnoreProfiles(ContentHasher contentHasher, Predicate<Path> globalIgnores) {
+        this.contentHasher = contentHasher;
+        this.globalIgnores = globalIgnores;
+    }
+
+    /**
+     * @return the scope above the compared roots; descend into the roots to pick up their ignore files
+     */
+    public Scope root(IgnoreProfile profile) throws IOException {
+        IgnoreRules adHoc = null;
+        if (!profile.patterns().isEmpty()) {
+            adHoc = compiled.computeIfAbsent("patterns:" + sha256(profile.patterns()), k -> IgnoreRules.compile(profile.patterns(), true));
+        }
+        return new Scope(profile, adHoc, null, "", List.of(), List.of());
+    }
+
+    private List<IgnoreRules> rulesIn(Path directory) throws IOException {
+        if (directory == null) {
+            return List.of();
+        }
+        List<IgnoreRules> rules = new ArrayList<>(IGNORE_FILE_NAMES.size());
+        for (String name : IGNORE_FILE_NAMES) {
+            Path file = directory.resolve(name);
+            if (Files.isRegularFile(file)) {
+                String contentHash = contentHasher.hash(file, CompareOptions.DEFAULT);
+                IgnoreRules fileRules = compiled.computeIfAbsent("file:" + contentHash, k -> IgnoreRules.compile(readString(file), false));
+                if (!fileRules.isEmpty()) {
+                    rules.add(fileRules);
+                }
+            }
+        }
+        return rules;
+    }
+
+    private static String readString(Path path) throws IOException {
+        try {
+            return Files.readString(path, StandardCharsets.UTF_8);
+        } catch (MalformedInputException e) {
+            return Files.readString(path, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /**
+     * Pattern lists are keyed by their SHA-256, so long lists do not become long cache keys.
+     */
+    private static String sha256(String text) {
+        return HexFormat.of().formatHex(ContentHasher.newDigest().digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Ignore rules in effect for one directory of the walk: the rules of every ignore file between the compared
+     * roots and this directory, on both sides. A name is left out if either side ignores it, so a pattern added
+     * on one side hides the matching files on both.
+     */
+    public final class Scope {
+        private final IgnoreProfile profile;
+        private final IgnoreRules adHoc;
+        private final Scope parent;
+        private final String base;
+        private final List<IgnoreRules> left;
+        private final List<IgnoreRules> right;
+
+        private Scope(IgnoreProfile profile, IgnoreRules adHoc, Scope parent, String base, List<IgnoreRules> left, List<IgnoreRules> right) {
+            this.profile = profile;
+            this.adHoc = adHoc;
+            this.parent = parent;
+            this.base = base;
+            this.left = left;
+            this.right = right;
+        }
+
+        /**
+         * @return the scope for the children of the given directory, including its own ignore files if the profile
+         * uses them
+         */
+        public Scope descend(String relativePath, Path leftDirectory, Path rightDirectory) throws IOException {
+            if (!profile.repositoryFiles()) {
+                return this;
+            }
+            List<IgnoreRules> leftRules = rulesIn(leftDirectory);
+            List<IgnoreRules> rightRules = rulesIn(rightDirectory);
+            if (leftRules.isEmpty() && rightRules.isEmpty()) {
+                return this;
+            }
+            return new Scope(profile, adHoc, this, relativePath, leftRules, rightRules);
+        }
+
+        /**
+         * Ad-hoc patterns take precedence over ignore files, deeper ignore files over shallower ones, and any
+         * of them over the global file.
+         *
+         * @param relativePath '/'-separated path relative to the compared roots
+         */
+        public boolean isIgnored(String relativePath, Path leftPath, Path rightPath, boolean directory) {
+            if (adHoc != null) {
+                Boolean ignored = adHoc.match(relativePath, directory);
+                if (ignored != null) {
+                    return ignored;
+                }
+            }
+            Boolean leftIgnored = match(relativePath, directory, true);
+            Boolean rightIgnored = match(relativePath, directory, false);
+            if (Boolean.TRUE.equals(leftIgnored) || Boolean.TRUE.equals(rightIgnored)) {
+                return true;
+            }
+            if (leftIgnored != null || rightIgnored != null) {
+                return false;
+            }
+            return profile.globalFile()
+                    && ((leftPath != null && globalIgnores.test(leftPath)) || (rightPath != null && globalIgnores.test(rightPath)));
+        }
+
+        private Boolean match(String relativePath, boolean directory, boolean leftSide) {
+            for (Scope scope = this; scope != null; scope = scope.parent) {
+                List<IgnoreRules> rules = leftSide ? scope.left : scope.right;
+                if (rules.isEmpty()) {
+                    continue;
+                }
+                String path = scope.base.isEmpty() ? relativePath : relativePath.substring(scope.base.length() + 1);
+                for (int i = rules.size() - 1; i >= 0; i--) {
+                    Boolean ignored = rules.get(i).match(path, directory);
+                    if (ignored != null) {
+                        return ignored;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+}
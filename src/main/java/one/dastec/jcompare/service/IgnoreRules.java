@@ -0,0 +1,116 @@
+package one.dastec.jcompare.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled gitignore-style rules of one ignore file (or one set of ad-hoc patterns).
+ * Supports {@code #} comments, {@code !} negation, trailing {@code /} for directories only, {@code *}, {@code ?},
+ * character classes and {@code **}. Patterns containing a slash are anchored to the directory of the rules;
+ * all others match a name at any depth below it. As in git, the last matching rule wins.
+ */
+public final class IgnoreRules {
+
+    private record Rule(Pattern pattern, boolean negated, boolean directoryOnly) {}
+
+    private final List<Rule> rules;
+
+    private IgnoreRules(List<Rule> rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * @param text rules separated by new lines (and, for ad-hoc patterns, commas)
+     */
+    public static IgnoreRules compile(String text, boolean commaSeparated) {
+        List<Rule> rules = new ArrayList<>();
+        for (String line : text.split(commaSeparated ? "[\\r\\n,]+" : "\\r?\\n")) {
+            String pattern = commaSeparated ? line.trim() : line.stripTrailing();
+            if (pattern.isEmpty() || pattern.startsWith("#")) {
+                continue;
+            }
+            boolean negated = pattern.startsWith("!");
+            if (negated || pattern.startsWith("\\#") || pattern.startsWith("\\!")) {
+                pattern = pattern.substring(1);
+            }
+            boolean directoryOnly = pattern.endsWith("/");
+            if (directoryOnly) {
+                pattern = pattern.substring(0, pattern.length() - 1);
+            }
+            if (pattern.isEmpty()) {
+                continue;
+            }
+            boolean anchored = pattern.contains("/");
+            if (pattern.startsWith("/")) {
+                pattern = pattern.substring(1);
+            }
+            rules.add(new Rule(Pattern.compile((anchored ? "" : "(?:.*/)?") + toRegex(pattern)), negated, directoryOnly));
+        }
+        return new IgnoreRules(rules);
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * @param relativePath '/'-separated path relative to the directory these rules belong to
+     * @return TRUE if ignored, FALSE if explicitly re-included by a negated rule, or null if no rule matches
+     */
+    public Boolean match(String relativePath, boolean directory) {
+        for (int i = rules.size() - 1; i >= 0; i--) {
+            Rule rule = rules.get(i);
+            if ((!rule.directoryOnly || directory) && rule.pattern.matcher(relativePath).matches()) {
+                return !rule.negated;
+            }
+        }
+        return null;
+    }
+
+    static String toRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int n = glob.length();
+        for (int i = 0; i < n; i++) {
+            char c = glob.charAt(i);
+            switch (c) {
+                case '*' -> {
+                    if (i + 1 < n && glob.charAt(i + 1) == '*') {
+                        if (i + 2 < n && glob.charAt(i + 2) == '/') {
+                            regex.append("(?:.*/)?");
+                            i += 2;
+                        } else {
+                            regex.append(".*");
+                            i++;
+                        }
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                }
+                case '?' -> regex.append("[^/]");
+                case '[' -> {
+                    int close = glob.indexOf(']', i + 2);
+                    if (close < 0) {
+                        regex.append("\\[");
+                    } else {
+                        String set = glob.substring(i + 1, close).replace("\\", "\\\\").replace("[", "\\[");
+                        regex.append('[').append(set.startsWith("!") ? "^" + set.substring(1) : set).append(']');
+                        i = close;
+                    }
+                }
+                case '\\' -> {
+                    if (i + 1 < n) {
+                        regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+                    }
+                }
+                default -> {
+                    if (".$^{}()|+".indexOf(c) >= 0) {
+                        regex.append('\\');
+                    }
+                    regex.append(c);
+                }
+            }
+        }
+        return regex.toString();
+    }
+}
@@ -0,0 +1,152 @@
+package one.dastec.jcompare.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Word and character level diff of a single modified line pair. Lines are split into word, whitespace and
+ * punctuation tokens; the common prefix and suffix are trimmed and the remaining middle is aligned with an LCS.
+ * When a single token differs on each side the change is narrowed down to characters.
+ */
+public final class IntraLineDiffer {
+
+    /**
+     * LCS tables larger than this fall back to marking the whole differing middle as changed.
+     */
+    private static final int MAX_LCS_CELLS = 250_000;
+
+    public record Segment(String text, boolean changed) {}
+
+    public record LineDiff(int line, List<Segment> left, List<Segment> right) {}
+
+    private IntraLineDiffer() {
+    }
+
+    public static LineDiff diff(int line, String left, String right) {
+        List<String> leftTokens = tokenize(left);
+        List<String> rightTokens = tokenize(right);
+
+        int prefix = 0;
+        while (prefix < leftTokens.size() && prefix < rightTokens.size() && leftTokens.get(prefix).equals(rightTokens.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < leftTokens.size() - prefix && suffix < rightTokens.size() - prefix
+                && leftTokens.get(leftTokens.size() - 1 - suffix).equals(rightTokens.get(rightTokens.size() - 1 - suffix))) {
+            suffix++;
+        }
+
+        List<String> leftMiddle = leftTokens.subList(prefix, leftTokens.size() - suffix);
+        List<String> rightMiddle = rightTokens.subList(prefix, rightTokens.size() - suffix);
+        String commonPrefix = String.join("", leftTokens.subList(0, prefix));
+        String commonSuffix = String.join("", leftTokens.subList(leftTokens.size() - suffix, leftTokens.size()));
+
+        SegmentBuilder leftSegments = new SegmentBuilder();
+        SegmentBuilder rightSegments = new SegmentBuilder();
+        leftSegments.add(commonPrefix, false);
+        rightSegments.add(commonPrefix, false);
+
+        if (leftMiddle.size() == 1 && rightMiddle.size() == 1) {
+            characterDiff(leftMiddle.get(0), rightMiddle.get(0), leftSegments, rightSegments);
+        } else if ((long) (leftMiddle.size() + 1) * (rightMiddle.size() + 1) > MAX_LCS_CELLS) {
+            leftSegments.add(String.join("", leftMiddle), true);
+            rightSegments.add(String.join("", rightMiddle), true);
+        } else {
+            lcsDiff(leftMiddle, rightMiddle, leftSegments, rightSegments);
+        }
+
+        leftSegments.add(commonSuffix, false);
+        rightSegments.add(commonSuffix, false);
+        return new LineDiff(line, leftSegments.segments, rightSegments.segments);
+    }
+
+    private static void characterDiff(String left, String right, SegmentBuilder leftSegments, SegmentBuilder rightSegments) {
+        int prefix = 0;
+        while (prefix < left.length() && prefix < right.length() && left.charAt(prefix) == right.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < left.length() - prefix && suffix < right.length() - prefix
+                && left.charAt(left.length() - 1 - suffix) == right.charAt(right.length() - 1 - suffix)) {
+            suffix++;
+        }
+        leftSegments.add(left.substring(0, prefix), false);
+        leftSegments.add(left.substring(prefix, left.length() - suffix), true);
+        leftSegments.add(left.substring(left.length() - suffix), false);
+        rightSegments.add(right.substring(0, prefix), false);
+        rightSegments.add(right.substring(prefix, right.length() - suffix), true);
+        rightSegments.add(right.substring(right.length() - suffix), false);
+    }
+
+    private static void lcsDiff(List<String> left, List<String> right, SegmentBuilder leftSegments, SegmentBuilder rightSegments) {
+        int n = left.size();
+        int m = right.size();
+        int width = m + 1;
+        int[] lengths = new int[(n + 1) * width];
+        for (int i = n - 1; i >= 0; i--) {
+            for (int j = m - 1; j >= 0; j--) {
+                lengths[i * width + j] = left.get(i).equals(right.get(j))
+                        ? lengths[(i + 1) * width + j + 1] + 1
+                        : Math.max(lengths[(i + 1) * width + j], lengths[i * width + j + 1]);
+            }
+        }
+        int i = 0;
+        int j = 0;
+        while (i < n && j < m) {
+            if (left.get(i).equals(right.get(j))) {
+                leftSegments.add(left.get(i++), false);
+                rightSegments.add(right.get(j++), false);
+            } else if (lengths[(i + 1) * width + j] >= lengths[i * width + j + 1]) {
+                leftSegments.add(left.get(i++), true);
+            } else {
+                rightSegments.add(right.get(j++), true);
+            }
+        }
+        while (i < n) {
+            leftSegments.add(left.get(i++), true);
+        }
+        while (j < m) {
+            rightSegments.add(right.get(j++), true);
+        }
+    }
+
+    static List<String> tokenize(String line) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < line.length()) {
+            char c = line.charAt(i);
+            int j = i + 1;
+            if (Character.isLetterOrDigit(c) || c == '_') {
+                while (j < line.length() && (Character.isLetterOrDigit(line.charAt(j)) || line.charAt(j) == '_')) {
+                    j++;
+                }
+            } else if (Character.isWhitespace(c)) {
+                while (j < line.length() && Character.isWhitespace(line.charAt(j))) {
+                    j++;
+                }
+            }
+            tokens.add(line.substring(i, j));
+            i = j;
+        }
+        return tokens;
+    }
+
+    /**
+     * Collects segments, merging neighbours with the same changed flag.
+     */
+    private static final class SegmentBuilder {
+        private final List<Segment> segments = new ArrayList<>();
+
+        void add(String text, boolean changed) {
+            if (text.isEmpty()) {
+                return;
+            }
+            if (!segments.isEmpty() && segments.get(segments.size() - 1).changed() == changed) {
+                Segment last = segments.remove(segments.size() - 1);
+                segments.add(new Segment(last.text() + text, changed));
+            } else {
+                segments.add(new Segment(text, changed));
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package one.dastec.jcompare.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared admission control for file reads. Each storage device (file store) admits a limited number of
+ * concurrent reads; further reads wait in a per-device queue. Interactive reads (the file diff view) are always
+ * admitted before background reads (tree scans), and within a priority the queue is served like an elevator:
+ * the next read is the waiting one with the smallest path at or after the last one served, so concurrent scans
+ * of the same disk are batched into path (and therefore mostly on-disk) order instead of seeking back and forth.
+ * Queue depth, in-flight reads and wait times are published as Micrometer metrics.
+ */
+@Service
+public class IoScheduler {
+
+    public enum Priority {
+        INTERACTIVE, BACKGROUND
+    }
+
+    @FunctionalInterface
+    public interface IoTask<T> {
+        T run() throws IOException;
+    }
+
+    private final int permitsPerDevice;
+    private final MeterRegistry meterRegistry;
+    /**
+     * Stands for the device of directories whose file store cannot be looked up.
+     */
+    private static final Object UNKNOWN_DEVICE = new Object();
+
+    private final Map<Object, Device> devices = new ConcurrentHashMap<>();
+    private final BoundedCache<Path, Device> deviceByDirectory = new BoundedCache<>(10_000);
+
+    /**
+     * Scheduler with the default limit and a private meter registry, for use outside the Spring context.
+     */
+    public IoScheduler() {
+        this(4, new SimpleMeterRegistry());
+    }
+
+    @Autowired
+    public IoScheduler(@Value("${jcompare.io.permits-per-device:4}") int permitsPerDevice, ObjectProvider<MeterRegistry> meterRegistry) {
+        this(permitsPerDevice, meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+    }
+
+    public IoScheduler(int permitsPerDevice, MeterRegistry meterRegistry) {
+        this.permitsPerDevice = Math.max(1, permitsPerDevice);
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Runs a read of {@code path} once its device admits it.
+     */
+    public <T> T read(Path path, Priority priority, IoTask<T> task) throws IOException {
+        Device device = device(path);
+        device.acquire(path.toString(), priority);
+        try {
+            return task.run();
+        } finally {
+            device.release();
+        }
+    }
+
+    /**
+     * Devices are resolved per parent directory; looking up the file store of every file would cost more than
+     * the reads being scheduled.
+     */
+    private Device device(Path path) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        if (directory == null) {
+            return devices.computeIfAbsent(UNKNOWN_DEVICE, key -> new Device("unknown"));
+        }
+        Device device = deviceByDirectory.get(directory);
+        if (device == null) {
+            FileStore store = fileStore(directory);
+            Object identity = deviceIdentity(directory, store);
+            device = devices.computeIfAbsent(identity, key -> new Device(store == null ? "unknown"
+                    : key instanceof Long dev ? store + " dev " + dev : store.toString()));
+            deviceByDirectory.put(directory, device);
+        }
+        return device;
+    }
+
+    private static FileStore fileStore(Path directory) {
+        try {
+            return Files.getFileStore(directory);
+        } catch (IOException e) {
+            // Missing or inaccessible directory; its reads fail on their own, so any shared queue will do
+            return null;
+        }
+    }
+
+    /**
+     * File store names are not unique (every tmpfs is "tmpfs", every overlay "overlay"), so devices are told apart
+     * by their {@code unix:dev} number where the file system has one, and otherwise by the {@link FileStore}, whose
+     * equality compares the mount.
+     */
+    static Object deviceIdentity(Path directory) {
+        return deviceIdentity(directory, fileStore(directory));
+    }
+
+    private static Object deviceIdentity(Path directory, FileStore store) {
+        if (store == null) {
+            return UNKNOWN_DEVICE;
+        }
+        if (store.supportsFileAttributeView("unix")) {
+            try {
+                if (Files.getAttribute(directory, "unix:dev") instanceof Long dev) {
+                    return dev;
+                }
+            } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+                // Fall back to the file store
+            }
+        }
+        return store;
+    }
+
+    int queueDepth(Path path) throws IOException {
+        return device(path).queued();
+    }
+
+    private static final class Waiter {
+        private final String path;
+        private final long sequence;
+        private boolean granted;
+
+        private Waiter(String path, long sequence) {
+            this.path = path;
+            this.sequence = sequence;
+        }
+    }
+
+    private static final Comparator<Waiter> PATH_ORDER = Comparator.<Waiter, String>comparing(waiter -> waiter.path)
+            .thenComparingLong(waiter -> waiter.sequence);
+
+    private final class Device {
+        private final Map<Priority, TreeSet<Waiter>> waiting = new EnumMap<>(Priority.class);
+        private final Map<Priority, Timer> waitTimers = new EnumMap<>(Priority.class);
+        private int available = permitsPerDevice;
+        private int queued;
+        private long sequence;
+        private String lastPath = "";
+
+        /**
+         * @param tag names the device in metrics; unique per device, so their meters stay apart
+         */
+        private Device(String tag) {
+            for (Priority priority : Priority.values()) {
+                waiting.put(priority, new TreeSet<>(PATH_ORDER));
+                waitTimers.put(priority, Timer.builder("jcompare.io.wait")
+                        .description("Time reads waited for a device slot")
+                        .tag("device", tag)
+                        .tag("priority", priority.name().toLowerCase())
+                        .register(meterRegistry));
+            }
+            Gauge.builder("jcompare.io.queue.depth", this, Device::queued)
+                    .description("Reads waiting for a device slot")
+                    .tag("device", tag)
+                    .register(meterRegistry);
+            Gauge.builder("jcompare.io.in.flight", this, device -> permitsPerDevice - device.available())
+                    .description("Reads currently running on the device")
+                    .tag("device", tag)
+                    .register(meterRegistry);
+        }
+
+        private synchronized int queued() {
+            return queued;
+        }
+
+        private synchronized int available() {
+            return available;
+        }
+
+        private synchronized void acquire(String path, Priority priority) throws InterruptedIOException {
+            if (available > 0 && queued == 0) {
+                available--;
+                waitTimers.get(priority).record(0, TimeUnit.NANOSECONDS);
+                return;
+            }
+            Waiter waiter = new Waiter(path, sequence++);
+            waiting.get(priority).add(waiter);
+            queued++;
+            long start = System.nanoTime();
+            try {
+                while (!waiter.granted) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                if (waiter.granted) {
+                    releaseLocked();
+                } else {
+                    waiting.get(priority).remove(waiter);
+                    queued--;
+                }
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to read " + path);
+            } finally {
+                waitTimers.get(priority).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private synchronized void release() {
+            releaseLocked();
+        }
+
+        /**
+         * Hands the slot straight to the next waiter, so a waiting reader can never be overtaken by a newcomer.
+         */
+        private void releaseLocked() {
+            Waiter next = null;
+            for (Priority priority : Priority.values()) {
+                TreeSet<Waiter> queue = waiting.get(priority);
+                if (!queue.isEmpty()) {
+                    next = queue.ceiling(new Waiter(lastPath, Long.MIN_VALUE));
+                    if (next == null) {
+                        next = queue.first();
+                    }
+                    queue.remove(next);
+                    break;
+                }
+            }
+            if (next == null) {
+                available++;
+                return;
+            }
+            queued--;
+            lastPath = next.path;
+            next.granted = true;
+            notifyAll();
+        }
+    }
+}
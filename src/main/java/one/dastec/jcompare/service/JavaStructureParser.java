@@ -0,0 +1,451 @@
+package one.dastec.jcompare.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lightweight, error-tolerant Java source parser that only recovers the outline of a compilation unit:
+ * package, imports, types and their members (fields, methods, constructors, initializers, enum constants).
+ * Member bodies are reduced to a 64-bit token hash, so comments and formatting do not affect the result.
+ * Parsing is a single pass over the tokens, which keeps it linear even for huge generated classes.
+ */
+public final class JavaStructureParser {
+
+    private static final Set<String> TYPE_KEYWORDS = Set.of("class", "interface", "enum", "record");
+    private static final Set<String> MODIFIERS = Set.of("public", "protected", "private", "static", "final", "abstract",
+            "synchronized", "native", "transient", "volatile", "strictfp", "default", "sealed", "non-sealed");
+
+    /**
+     * One outline element.
+     *
+     * @param path       unique path, e.g. {@code Outer.Inner#run(String,int)}
+     * @param kind       package, import, class, interface, enum, record, annotation, field, method, constructor,
+     *                   initializer or constant
+     * @param signature  human readable declaration header
+     * @param headerHash hash of the declaration tokens (modifiers, annotations, types)
+     * @param bodyHash   hash of the body tokens, 0 when there is no body
+     */
+    public record Member(String path, String kind, String signature, long headerHash, long bodyHash) {}
+
+    private final List<String> tokens;
+    private final List<Member> members = new ArrayList<>();
+    private final Map<String, Integer> pathCounts = new HashMap<>();
+    private int pos;
+
+    private JavaStructureParser(List<String> tokens) {
+        this.tokens = tokens;
+    }
+
+    public static List<Member> parse(String source) {
+        JavaStructureParser parser = new JavaStructureParser(tokenize(source));
+        parser.parseBody("", false);
+        return parser.members;
+    }
+
+    /**
+     * Parses declarations until the closing brace of the current body (or end of input).
+     */
+    private void parseBody(String owner, boolean enumBody) {
+        if (enumBody) {
+            parseEnumConstants(owner);
+        }
+        while (pos < tokens.size()) {
+            String token = tokens.get(pos);
+            if (token.equals("}")) {
+                pos++;
+                if (owner.isEmpty()) {
+                    // Stray closing brace at file level, keep going
+                    continue;
+                }
+                return;
+            }
+            if (token.equals(";")) {
+                pos++;
+                continue;
+            }
+            parseDeclaration(owner);
+        }
+    }
+
+    private void parseEnumConstants(String owner) {
+        while (pos < tokens.size()) {
+            String token = tokens.get(pos);
+            if (token.equals(";")) {
+                pos++;
+                return;
+            }
+            if (token.equals("}")) {
+                return;
+            }
+            if (token.equals(",")) {
+                pos++;
+                continue;
+            }
+            int start = pos;
+            String name = null;
+            while (pos < tokens.size()) {
+                String current = tokens.get(pos);
+                if (current.equals(",") || current.equals(";") || current.equals("}")) {
+                    break;
+                }
+                if (current.equals("@")) {
+                    skipAnnotation();
+                    continue;
+                }
+                if (current.equals("(") || current.equals("{")) {
+                    skipBalanced();
+                    continue;
+                }
+                if (name == null && isIdentifier(current)) {
+                    name = current;
+                }
+                pos++;
+            }
+            if (name == null) {
+                // Defensive: never loop without consuming input
+                pos = Math.max(pos, start + 1);
+                continue;
+            }
+            addMember(owner + "#" + name, "constant", name, hash(start, pos), 0);
+        }
+    }
+
+    private void parseDeclaration(String owner) {
+        int start = pos;
+        int paren = -1;
+        boolean assignment = false;
+        String typeKeyword = null;
+        int typeNameIndex = -1;
+
+        while (pos < tokens.size()) {
+            String token = tokens.get(pos);
+            if (token.equals("@") && pos + 1 < tokens.size() && !tokens.get(pos + 1).equals("interface")) {
+                skipAnnotation();
+                continue;
+            }
+            if (token.equals("}")) {
+                // Unbalanced input: let the enclosing body consume it
+                if (pos > start) {
+                    addMember(owner + "#?" + start, "unknown", signature(start, pos), hash(start, pos), 0);
+                }
+                return;
+            }
+            if (token.equals(";")) {
+                pos++;
+                addSimpleDeclaration(owner, start, pos - 1, paren, assignment);
+                return;
+            }
+            if (token.equals("=") && paren < 0) {
+                assignment = true;
+            } else if (!assignment && typeKeyword == null && TYPE_KEYWORDS.contains(token)
+                    && (pos == start || !tokens.get(pos - 1).equals("."))) {
+                typeKeyword = pos > start && tokens.get(pos - 1).equals("@") ? "annotation" : token;
+                typeNameIndex = pos + 1;
+            } else if (token.equals("(")) {
+                if (paren < 0 && !assignment && typeKeyword == null) {
+                    paren = pos;
+                }
+                skipBalanced();
+                continue;
+            } else if (token.equals("<") && typeKeyword == null && paren < 0 && !assignment) {
+                skipGenerics();
+                continue;
+            } else if (token.equals("{")) {
+                if (assignment) {
+                    skipBalanced();
+                    continue;
+                }
+                if (typeKeyword != null && typeNameIndex < tokens.size()) {
+                    String name = tokens.get(typeNameIndex);
+                    String path = owner.isEmpty() ? name : owner + "." + name;
+                    addMember(path, typeKeyword, signature(start, pos), hash(start, pos), 0);
+                    pos++;
+                    parseBody(path, typeKeyword.equals("enum"));
+                    return;
+                }
+                int bodyStart = pos;
+                skipBalanced();
+                long bodyHash = hash(bodyStart, pos);
+                if (paren >= 0) {
+                    addMethod(owner, start, paren, bodyStart, bodyHash);
+                } else {
+                    // Static or instance initializer; its position is its only identity
+                    addMember(owner + "#{init}", "initializer", signature(start, bodyStart) + "{...}", hash(start, bodyStart), bodyHash);
+                }
+                return;
+            }
+            pos++;
+        }
+        if (pos > start) {
+            addMember(owner + "#?" + start, "unknown", signature(start, pos), hash(start, pos), 0);
+        }
+    }
+
+    private void addSimpleDeclaration(String owner, int start, int end, int paren, boolean assignment) {
+        if (start == end) {
+            return;
+        }
+        String first = tokens.get(start);
+        if (owner.isEmpty() && first.equals("package")) {
+            addMember("package", "package", signature(start, end), hash(start, end), 0);
+            return;
+        }
+        if (owner.isEmpty() && first.equals("import")) {
+            String imported = join(start + 1, end);
+            addMember("import " + imported, "import", "import " + imported, hash(start, end), 0);
+            return;
+        }
+        if (paren >= 0 && !assignment) {
+            // Abstract, interface or native method, or annotation member
+            addMethod(owner, start, paren, end, 0);
+            return;
+        }
+        // Field declaration; may declare several variables ("int a, b = 2;")
+        int nameEnd = end;
+        for (int i = start; i < end; i++) {
+            if (tokens.get(i).equals("=")) {
+                nameEnd = i;
+                break;
+            }
+        }
+        String name = "?";
+        for (int i = nameEnd - 1; i >= start; i--) {
+            if (isIdentifier(tokens.get(i))) {
+                name = tokens.get(i);
+                break;
+            }
+        }
+        addMember(owner + "#" + name, "field", signature(start, end), hash(start, nameEnd), hash(nameEnd, end));
+    }
+
+    private void addMethod(String owner, int start, int paren, int bodyStart, long bodyHash) {
+        String name = paren > start ? tokens.get(paren - 1) : "?";
+        int close = matching(paren);
+        StringBuilder parameters = new StringBuilder();
+        for (String type : parameterTypes(paren + 1, close)) {
+            if (!parameters.isEmpty()) {
+                parameters.append(',');
+            }
+            parameters.append(type);
+        }
+        boolean constructor = owner.endsWith(name) && (owner.length() == name.length() || owner.charAt(owner.length() - name.length() - 1) == '.')
+                && !isReturnTypePresent(start, paren - 1);
+        String path = owner + "#" + name + "(" + parameters + ")";
+        addMember(path, constructor ? "constructor" : "method", signature(start, bodyStart), hash(start, bodyStart), bodyHash);
+    }
+
+    private boolean isReturnTypePresent(int start, int nameIndex) {
+        for (int i = start; i < nameIndex; i++) {
+            String token = tokens.get(i);
+            if (!MODIFIERS.contains(token) && !token.equals("<") && !token.equals(">")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Extracts the parameter types between the parentheses, dropping annotations, modifiers and names.
+     */
+    private List<String> parameterTypes(int from, int to) {
+        List<String> types = new ArrayList<>();
+        List<String> current = new ArrayList<>();
+        int depth = 0;
+        for (int i = from; i < to; i++) {
+            String token = tokens.get(i);
+            if (token.equals("@")) {
+                // Skip the annotation name and its arguments
+                i++;
+                while (i + 2 < to && tokens.get(i + 1).equals(".")) {
+                    i += 2;
+                }
+                if (i + 1 < to && tokens.get(i + 1).equals("(")) {
+                    i = matching(i + 1);
+                }
+                continue;
+            }
+            if (token.equals("<") || token.equals("(") || token.equals("[")) {
+                depth++;
+            } else if (token.equals(">") || token.equals(")") || token.equals("]")) {
+                depth--;
+            }
+            if (token.equals(",") && depth == 0) {
+                types.add(parameterType(current));
+                current.clear();
+            } else if (!token.equals("final")) {
+                current.add(token);
+            }
+        }
+        if (!current.isEmpty()) {
+            types.add(parameterType(current));
+        }
+        return types;
+    }
+
+    private static String parameterType(List<String> parameter) {
+        // The last identifier is the parameter name (or "this" for receiver parameters)
+        int end = parameter.size();
+        if (end > 1) {
+            end--;
+        }
+        StringBuilder type = new StringBuilder();
+        for (int i = 0; i < end; i++) {
+            type.append(parameter.get(i));
+        }
+        return type.toString();
+    }
+
+    private void addMember(String path, String kind, String signature, long headerHash, long bodyHash) {
+        int count = pathCounts.merge(path, 1, Integer::sum);
+        String uniquePath = count == 1 ? path : path + "[" + count + "]";
+        members.add(new Member(uniquePath, kind, signature, headerHash, bodyHash));
+    }
+
+    private void skipAnnotation() {
+        pos++; // '@'
+        if (pos < tokens.size()) {
+            pos++; // name
+        }
+        while (pos + 1 < tokens.size() && tokens.get(pos).equals(".")) {
+            pos += 2;
+        }
+        if (pos < tokens.size() && tokens.get(pos).equals("(")) {
+            skipBalanced();
+        }
+    }
+
+    private void skipGenerics() {
+        int depth = 0;
+        while (pos < tokens.size()) {
+            String token = tokens.get(pos++);
+            if (token.equals("<")) {
+                depth++;
+            } else if (token.equals(">")) {
+                if (--depth == 0) {
+                    return;
+                }
+            } else if (token.equals("{") || token.equals(";")) {
+                pos--;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Skips from an opening bracket at {@code pos} to just after its matching closing bracket.
+     */
+    private void skipBalanced() {
+        pos = matching(pos) + 1;
+    }
+
+    private int matching(int open) {
+        String opening = tokens.get(open);
+        String closing = opening.equals("(") ? ")" : opening.equals("[") ? "]" : "}";
+        int depth = 0;
+        for (int i = open; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if (token.equals(opening)) {
+                depth++;
+            } else if (token.equals(closing) && --depth == 0) {
+                return i;
+            }
+        }
+        return tokens.size() - 1;
+    }
+
+    private long hash(int from, int to) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = from; i < to && i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            for (int c = 0; c < token.length(); c++) {
+                hash = (hash ^ token.charAt(c)) * 0x100000001b3L;
+            }
+            hash = (hash ^ 0x1F) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private String signature(int from, int to) {
+        String signature = join(from, to);
+        return signature.length() > 200 ? signature.substring(0, 200) + "..." : signature;
+    }
+
+    private String join(int from, int to) {
+        StringBuilder text = new StringBuilder();
+        String previous = null;
+        for (int i = from; i < to && i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if (previous != null && isWordLike(previous) && isWordLike(token)) {
+                text.append(' ');
+            }
+            text.append(token);
+            previous = token;
+        }
+        return text.toString();
+    }
+
+    private static boolean isWordLike(String token) {
+        char c = token.charAt(0);
+        return Character.isJavaIdentifierPart(c) || c == '"' || c == '\'';
+    }
+
+    private static boolean isIdentifier(String token) {
+        return !token.isEmpty() && Character.isJavaIdentifierStart(token.charAt(0));
+    }
+
+    /**
+     * Splits source into identifier, literal and single-character punctuation tokens, dropping whitespace and comments.
+     */
+    static List<String> tokenize(String source) {
+        List<String> tokens = new ArrayList<>(source.length() / 4);
+        int length = source.length();
+        int i = 0;
+        while (i < length) {
+            char c = source.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '/' && i + 1 < length && source.charAt(i + 1) == '/') {
+                while (i < length && source.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < length && source.charAt(i + 1) == '*') {
+                int end = source.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+            } else if (c == '"' && source.startsWith("\"\"\"", i)) {
+                int end = source.indexOf("\"\"\"", i + 3);
+                int stop = end < 0 ? length : end + 3;
+                tokens.add(source.substring(i, stop));
+                i = stop;
+            } else if (c == '"' || c == '\'') {
+                int j = i + 1;
+                while (j < length && source.charAt(j) != c && source.charAt(j) != '\n') {
+                    j += source.charAt(j) == '\\' ? 2 : 1;
+                }
+                int stop = Math.min(j + 1, length);
+                tokens.add(source.substring(i, stop));
+                i = stop;
+            } else if (Character.isJavaIdentifierPart(c)) {
+                int j = i + 1;
+                while (j < length && (Character.isJavaIdentifierPart(source.charAt(j))
+                        || (Character.isDigit(c) && source.charAt(j) == '.'))) {
+                    j++;
+                }
+                String word = source.substring(i, j);
+                // "non-sealed" is the only hyphenated keyword
+                if (word.equals("non") && source.startsWith("-sealed", j)) {
+                    word = "non-sealed";
+                    j += 7;
+                }
+                tokens.add(word);
+                i = j;
+            } else {
+                tokens.add(String.valueOf(c));
+                i++;
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,79 @@
+package one.dastec.jcompare.service;
+
+/**
+ * Maps 64-bit line hashes ({@link TreeManifest#lineHash}) to dense int ids, so that every distinct line of a
+ * comparison gets one small id and both sides can be diffed as {@code int[]} sequences. One interner is used per
+ * comparison; ids from different interners are unrelated.
+ */
+final class LineInterner {
+
+    private long[] keys = new long[64];
+    private int[] ids = new int[64];
+    private boolean[] used = new boolean[64];
+    private int size;
+
+    /**
+     * @return the ids of the given line hashes, in order
+     */
+    int[] intern(long[] hashes) {
+        int[] result = new int[hashes.length];
+        for (int i = 0; i < hashes.length; i++) {
+            result[i] = intern(hashes[i]);
+        }
+        return result;
+    }
+
+    int intern(long hash) {
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        int mask = keys.length - 1;
+        int slot = mix(hash) & mask;
+        while (used[slot]) {
+            if (keys[slot] == hash) {
+                return ids[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        used[slot] = true;
+        keys[slot] = hash;
+        ids[slot] = size;
+        return size++;
+    }
+
+    /**
+     * @return the number of distinct lines seen so far
+     */
+    int size() {
+        return size;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldIds = ids;
+        boolean[] oldUsed = used;
+        keys = new long[oldKeys.length * 2];
+        ids = new int[oldKeys.length * 2];
+        used = new boolean[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int slot = mix(oldKeys[i]) & mask;
+                while (used[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                used[slot] = true;
+                keys[slot] = oldKeys[i];
+                ids[slot] = oldIds[i];
+            }
+        }
+    }
+
+    /**
+     * Spreads the hash over the table index bits; the low bits of FNV-1a are weak for short lines.
+     */
+    private static int mix(long hash) {
+        long h = hash * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,227 @@
+package one.dastec.jcompare.service;
+
+import one.dastec.jcompare.model.CompareOptions;
+import one.dastec.jcompare.model.DiffNode;
+import one.dastec.jcompare.model.DiffTree;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * Compares two trees when either side (or both) is a {@link TreeManifest}. Both sides are enumerated in name
+ * order, so each directory level is a merge-join of two sorted child lists; the manifest side is read straight
+ * from its mapped entry table and never re-read, and unchanged manifest subtrees are skipped by their subtree end.
+ * Files are equal when their content hashes match. Line statistics for modified files come from the captured line
+ * hashes; without them a modified file is reported as 100% different with unknown line counts.
+ */
+class ManifestComparator {
+
+    @FunctionalInterface
+    interface LineSource {
+        /**
+         * @return the hashes of the normalized lines of a live file, as used for the line diff
+         */
+        long[] lineHashes(Path file, CompareOptions options) throws IOException;
+    }
+
+    private final ContentHasher contentHasher;
+    private final LineSource lineSource;
+
+    ManifestComparator(ContentHasher contentHasher, LineSource lineSource) {
+        this.contentHasher = contentHasher;
+        this.lineSource = lineSource;
+    }
+
+    /**
+     * One side of a tree node: either a live path or an entry of a manifest.
+     */
+    private record Node(String name, boolean directory, Path path, TreeManifest manifest, int entry) {
+        static Node live(Path path) {
+            return new Node(path.getFileName().toString(), Files.isDirectory(path), path, null, -1);
+        }
+
+        static Node of(TreeManifest manifest, int entry) {
+            return new Node(manifest.name(entry), manifest.isDirectory(entry), null, manifest, entry);
+        }
+    }
+
+    /**
+     * Content is compared with the options the manifest was captured with, whatever options were selected, as that is
+     * how its hashes were computed.
+     *
+     * @throws IllegalArgumentException if both sides are manifests captured with different options, whose hashes
+     *                                  cannot be compared
+     */
+    DiffNode compare(Path left, Path right, IgnoreProfiles.Scope ignoreScope) throws IOException {
+        Node leftRoot = root(left);
+        Node rightRoot = root(right);
+        CompareOptions captureOptions = captureOptions(leftRoot != null ? leftRoot.manifest() : null,
+                rightRoot != null ? rightRoot.manifest() : null);
+        String rootName = rightRoot != null ? rightRoot.name() : leftRoot != null ? leftRoot.name() : "root";
+        DiffTree tree = new DiffTree(rootName, true);
+        compare(tree, 0, leftRoot, rightRoot, "", captureOptions, ignoreScope);
+        return tree.root();
+    }
+
+    /**
+     * @return the options the manifest on either side was captured with, or null if neither side is a manifest
+     * @throws IllegalArgumentException if both sides are manifests captured with different options
+     */
+    static CompareOptions captureOptions(Path left, Path right) throws IOException {
+        return captureOptions(TreeManifest.isManifest(left) ? TreeManifest.open(left) : null,
+                TreeManifest.isManifest(right) ? TreeManifest.open(right) : null);
+    }
+
+    private static CompareOptions captureOptions(TreeManifest left, TreeManifest right) {
+        if (left != null && right != null && !left.captureOptions().equals(right.captureOptions())) {
+            throw new IllegalArgumentException("The snapshots were captured with different options ("
+                    + left.captureOptions().describeContent() + " and " + right.captureOptions().describeContent()
+                    + "), so their content hashes cannot be compared");
+        }
+        return left != null ? left.captureOptions() : right != null ? right.captureOptions() : null;
+    }
+
+    private static Node root(Path path) throws IOException {
+        if (path == null) {
+            return null;
+        }
+        if (TreeManifest.isManifest(path)) {
+            return Node.of(TreeManifest.open(path), 0);
+        }
+        return Files.exists(path) ? Node.live(path) : null;
+    }
+
+    private void compare(DiffTree tree, int node, Node left, Node right, String relativePath, CompareOptions options,
+                         IgnoreProfiles.Scope ignoreScope) throws IOException {
+        boolean isDir = (left != null && left.directory()) || (right != null && right.directory());
+        tree.setDirectory(node, isDir);
+        if (!isDir) {
+            compareFiles(tree, node, left, right, options);
+            return;
+        }
+
+        DiffNode.DiffStatus status = left == null ? DiffNode.DiffStatus.ADDED
+                : right == null ? DiffNode.DiffStatus.REMOVED : DiffNode.DiffStatus.IDENTICAL;
+        IgnoreProfiles.Scope childScope = ignoreScope.descend(relativePath, livePath(left), livePath(right));
+        List<Node> leftChildren = children(left);
+        List<Node> rightChildren = children(right);
+
+        int i = 0;
+        int j = 0;
+        while (i < leftChildren.size() || j < rightChildren.size()) {
+            int order = i == leftChildren.size() ? 1 : j == rightChildren.size() ? -1
+                    : leftChildren.get(i).name().compareTo(rightChildren.get(j).name());
+            Node childLeft = order <= 0 ? leftChildren.get(i++) : null;
+            Node childRight = order >= 0 ? rightChildren.get(j++) : null;
+            String childName = childLeft != null ? childLeft.name() : childRight.name();
+            String childRelPath = relativePath.isEmpty() ? childName : relativePath + "/" + childName;
+            boolean childIsDir = (childLeft != null && childLeft.directory()) || (childRight != null && childRight.directory());
+            if (childScope.isIgnored(childRelPath, livePath(childLeft), livePath(childRight), childIsDir)) {
+                continue;
+            }
+            int child = tree.add(node, childName, childIsDir);
+            compare(tree, child, childLeft, childRight, childRelPath, options, childScope);
+            if (tree.status(child) != DiffNode.DiffStatus.IDENTICAL) {
+                status = DiffNode.DiffStatus.MODIFIED;
+            }
+        }
+        if (left == null) {
+            status = DiffNode.DiffStatus.ADDED;
+        } else if (right == null) {
+            status = DiffNode.DiffStatus.REMOVED;
+        }
+        tree.setStatus(node, status);
+    }
+
+    private void compareFiles(DiffTree tree, int node, Node left, Node right, CompareOptions options) throws IOException {
+        DiffNode.DiffStatus status;
+        if (left == null) {
+            status = DiffNode.DiffStatus.ADDED;
+        } else if (right == null) {
+            status = DiffNode.DiffStatus.REMOVED;
+        } else if (options.isExact() && size(left) != size(right)) {
+            // Settled without hashing the live side
+            status = DiffNode.DiffStatus.MODIFIED;
+        } else if (contentHash(left, options).equals(contentHash(right, options))) {
+            status = DiffNode.DiffStatus.IDENTICAL;
+        } else {
+            status = DiffNode.DiffStatus.MODIFIED;
+        }
+        tree.setStatus(node, status);
+        if (status == DiffNode.DiffStatus.IDENTICAL) {
+            return;
+        }
+
+        long[] leftLines = left != null ? lineHashes(left, options) : new long[0];
+        long[] rightLines = right != null ? lineHashes(right, options) : new long[0];
+        if (leftLines == null || rightLines == null) {
+            // Line hashes were not captured; only the content hash is known
+            tree.setStatistics(node, 0, 0, 0, 100.0);
+            return;
+        }
+        int added = 0;
+        int removed = 0;
+        int modified = 0;
+        int maxSize = Math.max(leftLines.length, rightLines.length);
+        for (int k = 0; k < maxSize; k++) {
+            if (k >= leftLines.length) {
+                added++;
+            } else if (k >= rightLines.length) {
+                removed++;
+            } else if (leftLines[k] != rightLines[k]) {
+                modified++;
+            }
+        }
+        double percentage = maxSize == 0 ? 0 : (double) (added + removed + modified) / maxSize * 100;
+        tree.setStatistics(node, added, removed, modified, percentage);
+    }
+
+    private static long size(Node node) throws IOException {
+        return node.manifest() != null ? node.manifest().size(node.entry()) : Files.size(node.path());
+    }
+
+    private String contentHash(Node node, CompareOptions options) throws IOException {
+        return node.manifest() != null ? node.manifest().contentHash(node.entry()) : contentHasher.hash(node.path(), options);
+    }
+
+    private long[] lineHashes(Node node, CompareOptions options) throws IOException {
+        if (node.manifest() != null) {
+            return node.manifest().lineHashes(node.entry());
+        }
+        if (BinaryDelta.isBinary(node.path())) {
+            return null;
+        }
+        return lineSource.lineHashes(node.path(), options);
+    }
+
+    private static Path livePath(Node node) {
+        return node != null ? node.path() : null;
+    }
+
+    private static List<Node> children(Node node) throws IOException {
+        if (node == null || !node.directory()) {
+            return List.of();
+        }
+        List<Node> children = new ArrayList<>();
+        if (node.manifest() != null) {
+            TreeManifest manifest = node.manifest();
+            for (int child = node.entry() + 1; child < manifest.subtreeEnd(node.entry()); child = manifest.subtreeEnd(child)) {
+                children.add(Node.of(manifest, child));
+            }
+        } else {
+            TreeSet<String> names = new TreeSet<>();
+            try (Stream<Path> list = Files.list(node.path())) {
+                list.map(p -> p.getFileName().toString()).forEach(names::add);
+            }
+            for (String name : names) {
+                children.add(Node.live(node.path().resolve(name)));
+            }
+        }
+        return children;
+    }
+}
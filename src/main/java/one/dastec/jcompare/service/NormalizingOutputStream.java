@@ -0,0 +1,321 @@
+package one.dastec.jcompare.service;
+
+import one.dastec.jcompare.model.CompareOptions;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Streaming byte filter that normalizes content according to {@link CompareOptions} before
+ * passing it on (usually into a digest). Bytes flow through four stages:
+ * end-of-line folding, comment stripping, whitespace collapsing and blank line removal.
+ * Only a handful of state bytes are kept, so whole files are never materialized.
+ */
+public class NormalizingOutputStream extends OutputStream {
+
+    public enum CommentStyle {
+        NONE, JAVA, XML;
+
+        public static CommentStyle forFileName(String fileName) {
+            if (fileName == null) {
+                return NONE;
+            }
+            String name = fileName.toLowerCase();
+            if (name.endsWith(".java") || name.endsWith(".groovy") || name.endsWith(".kt") || name.endsWith(".js") || name.endsWith(".ts")) {
+                return JAVA;
+            }
+            if (name.endsWith(".xml") || name.endsWith(".xsd") || name.endsWith(".xsl") || name.endsWith(".html") || name.endsWith(".jsp")) {
+                return XML;
+            }
+            return NONE;
+        }
+    }
+
+    private static final byte[] XML_COMMENT_OPEN = {'<', '!', '-', '-'};
+
+    // Comment stage states
+    private static final int CODE = 0;
+    private static final int SLASH = 1;
+    private static final int LINE_COMMENT = 2;
+    private static final int BLOCK_COMMENT = 3;
+    private static final int BLOCK_COMMENT_STAR = 4;
+    private static final int STRING = 5;
+    private static final int STRING_ESCAPE = 6;
+    private static final int CHAR = 7;
+    private static final int CHAR_ESCAPE = 8;
+    private static final int XML_COMMENT = 9;
+
+    private final OutputStream out;
+    private final CompareOptions options;
+    private final CommentStyle commentStyle;
+    private final boolean dropEmptyLines;
+
+    private final byte[] buffer = new byte[8192];
+    private int count;
+
+    private boolean afterCr;
+    private int lastInput = -1;
+
+    private int commentState = CODE;
+    private int xmlMatched;
+    private int xmlDashes;
+
+    private boolean pendingSpace;
+
+    private boolean lineHasContent;
+    private boolean lineHadComment;
+    private byte[] leading = new byte[64];
+    private int leadingCount;
+
+    public NormalizingOutputStream(OutputStream out, CompareOptions options, CommentStyle commentStyle) {
+        this.out = out;
+        this.options = options;
+        this.commentStyle = options.ignoreComments() ? commentStyle : CommentStyle.NONE;
+        this.dropEmptyLines = options.ignoreBlankLines() || this.commentStyle != CommentStyle.NONE;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        b &= 0xFF;
+        if (options.ignoreEol()) {
+            if (afterCr) {
+                afterCr = false;
+                if (b == '\n') {
+                    return;
+                }
+            }
+            if (b == '\r') {
+                afterCr = true;
+                b = '\n';
+            }
+        }
+        lastInput = b;
+        comments(b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            write(bytes[i]);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+        out.flush();
+    }
+
+    /**
+     * Flushes pending lookahead state. Must be called once all content has been written.
+     */
+    public void finish() throws IOException {
+        if (commentState == SLASH) {
+            commentState = CODE;
+            whitespace('/');
+        } else if (xmlMatched > 0) {
+            int matched = xmlMatched;
+            xmlMatched = 0;
+            for (int i = 0; i < matched; i++) {
+                whitespace(XML_COMMENT_OPEN[i]);
+            }
+        }
+        // A missing newline at the end of the file is an end-of-line style difference
+        if (options.ignoreEol() && lastInput != -1 && lastInput != '\n') {
+            lastInput = '\n';
+            comments('\n');
+        }
+        if (leadingCount > 0 && !options.ignoreBlankLines()) {
+            flushLeading();
+        }
+        flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        out.close();
+    }
+
+    private void comments(int b) throws IOException {
+        switch (commentStyle) {
+            case NONE -> whitespace(b);
+            case JAVA -> javaComments(b);
+            case XML -> xmlComments(b);
+        }
+    }
+
+    private void javaComments(int b) throws IOException {
+        switch (commentState) {
+            case CODE -> {
+                if (b == '/') {
+                    commentState = SLASH;
+                    return;
+                }
+                if (b == '"') {
+                    commentState = STRING;
+                } else if (b == '\'') {
+                    commentState = CHAR;
+                }
+                whitespace(b);
+            }
+            case SLASH -> {
+                if (b == '/') {
+                    commentState = LINE_COMMENT;
+                    lineHadComment = true;
+                } else if (b == '*') {
+                    commentState = BLOCK_COMMENT;
+                    lineHadComment = true;
+                } else {
+                    commentState = CODE;
+                    whitespace('/');
+                    javaComments(b);
+                }
+            }
+            case LINE_COMMENT -> {
+                if (b == '\n') {
+                    commentState = CODE;
+                    whitespace(b);
+                }
+            }
+            case BLOCK_COMMENT, BLOCK_COMMENT_STAR -> {
+                if (b == '/' && commentState == BLOCK_COMMENT_STAR) {
+                    commentState = CODE;
+                } else {
+                    commentState = b == '*' ? BLOCK_COMMENT_STAR : BLOCK_COMMENT;
+                    if (b == '\n') {
+                        whitespace(b);
+                        lineHadComment = true;
+                    }
+                }
+            }
+            case STRING, CHAR -> {
+                if (b == '\\') {
+                    commentState = commentState == STRING ? STRING_ESCAPE : CHAR_ESCAPE;
+                } else if (b == '\n' || (b == '"' && commentState == STRING) || (b == '\'' && commentState == CHAR)) {
+                    commentState = CODE;
+                }
+                whitespace(b);
+            }
+            case STRING_ESCAPE -> {
+                commentState = STRING;
+                whitespace(b);
+            }
+            case CHAR_ESCAPE -> {
+                commentState = CHAR;
+                whitespace(b);
+            }
+            default -> whitespace(b);
+        }
+    }
+
+    private void xmlComments(int b) throws IOException {
+        if (commentState == XML_COMMENT) {
+            if (b == '-') {
+                xmlDashes++;
+                return;
+            }
+            if (b == '>' && xmlDashes >= 2) {
+                commentState = CODE;
+            } else if (b == '\n') {
+                whitespace(b);
+                lineHadComment = true;
+            }
+            xmlDashes = 0;
+            return;
+        }
+        if (b == XML_COMMENT_OPEN[xmlMatched]) {
+            xmlMatched++;
+            if (xmlMatched == XML_COMMENT_OPEN.length) {
+                xmlMatched = 0;
+                xmlDashes = 0;
+                commentState = XML_COMMENT;
+                lineHadComment = true;
+            }
+            return;
+        }
+        if (xmlMatched > 0) {
+            int matched = xmlMatched;
+            xmlMatched = 0;
+            for (int i = 0; i < matched; i++) {
+                whitespace(XML_COMMENT_OPEN[i]);
+            }
+            xmlComments(b);
+            return;
+        }
+        whitespace(b);
+    }
+
+    private void whitespace(int b) throws IOException {
+        if (!options.ignoreWhitespace()) {
+            blankLines(b);
+            return;
+        }
+        if (isWhitespace(b)) {
+            pendingSpace = true;
+            return;
+        }
+        if (b == '\n') {
+            pendingSpace = false;
+            blankLines(b);
+            return;
+        }
+        if (pendingSpace) {
+            pendingSpace = false;
+            if (lineHasContent) {
+                blankLines(' ');
+            }
+        }
+        blankLines(b);
+    }
+
+    private void blankLines(int b) throws IOException {
+        if (b == '\n') {
+            if (!dropEmptyLines || lineHasContent || (!options.ignoreBlankLines() && !lineHadComment)) {
+                flushLeading();
+                emit(b);
+            }
+            leadingCount = 0;
+            lineHasContent = false;
+            lineHadComment = false;
+            return;
+        }
+        if (!lineHasContent && isWhitespace(b)) {
+            if (!dropEmptyLines) {
+                emit(b);
+                return;
+            }
+            if (leadingCount == leading.length) {
+                leading = Arrays.copyOf(leading, leading.length * 2);
+            }
+            leading[leadingCount++] = (byte) b;
+            return;
+        }
+        flushLeading();
+        lineHasContent = true;
+        emit(b);
+    }
+
+    private void flushLeading() throws IOException {
+        for (int i = 0; i < leadingCount; i++) {
+            emit(leading[i]);
+        }
+        leadingCount = 0;
+    }
+
+    private void emit(int b) throws IOException {
+        buffer[count++] = (byte) b;
+        if (count == buffer.length) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    private static boolean isWhitespace(int b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == 0x0B || b == '\f';
+    }
+}
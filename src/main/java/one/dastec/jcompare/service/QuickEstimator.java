@@ -0,0 +1,286 @@
+package one.dastec.jcompare.service;
+
+import one.dastec.jcompare.model.CompareOptions;
+import one.dastec.jcompare.model.DiffEstimate;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Estimates how different two trees are without reading most of their content. Both trees are walked in full,
+ * but only their directory entries and file sizes are read, which gives exact added and removed counts. Files
+ * present on both sides are reservoir-sampled into strata while walking: with exact options a size difference
+ * already means modified, so only same-size files are sampled; with normalizing or structure-aware options
+ * same-size and different-size files are sampled separately. The sample is content-checked in random order until
+ * it is exhausted or the time budget runs out, and the share of modified files in each stratum is extrapolated
+ * with a Wilson score interval (with finite population correction).
+ */
+class QuickEstimator {
+
+    /**
+     * z for a two-sided 95% interval.
+     */
+    private static final double Z = 1.959964;
+    private static final double CONFIDENCE = 0.95;
+
+    @FunctionalInterface
+    interface ContentCheck {
+        boolean isEquivalent(Path left, Path right) throws IOException;
+    }
+
+    private record Pair(Path left, Path right) {
+    }
+
+    /**
+     * Common files of one kind: how many were seen, and a uniform random sample of at most {@code capacity}.
+     */
+    private static final class Stratum {
+        private final List<Pair> sample = new ArrayList<>();
+        private final int capacity;
+        private final Random random;
+        private long population;
+        private int checked;
+        private int modified;
+
+        Stratum(int capacity, Random random) {
+            this.capacity = capacity;
+            this.random = random;
+        }
+
+        void offer(Pair pair) {
+            population++;
+            if (sample.size() < capacity) {
+                sample.add(pair);
+            } else {
+                long slot = random.nextLong(population);
+                if (slot < capacity) {
+                    sample.set((int) slot, pair);
+                }
+            }
+        }
+    }
+
+    private final ContentCheck contentCheck;
+    private final ExecutorService executor;
+    private final IgnoreProfiles.Scope ignoreScope;
+    private final boolean sizeDecides;
+    private final Random random;
+    private final Stratum sameSize;
+    private final Stratum sizeChanged;
+    private long directories;
+    private long added;
+    private long removed;
+
+    /**
+     * @param executor runs the content checks; shared with other comparisons, so concurrent estimates do not each
+     *                 start threads of their own
+     */
+    QuickEstimator(ContentCheck contentCheck, ExecutorService executor, IgnoreProfiles.Scope ignoreScope, CompareOptions options,
+                   int sampleSize, long seed) {
+        this.contentCheck = contentCheck;
+        this.executor = executor;
+        this.ignoreScope = ignoreScope;
+        this.sizeDecides = options.isExact() && !options.semanticJava() && !options.semanticConfig();
+        this.random = new Random(seed);
+        this.sameSize = new Stratum(sampleSize, random);
+        this.sizeChanged = new Stratum(sizeDecides ? 0 : sampleSize, random);
+    }
+
+    DiffEstimate estimate(Path left, Path right, Duration budget) throws IOException {
+        long start = System.nanoTime();
+        walk(left, right, "", ignoreScope);
+        check(start + budget.toNanos());
+
+        DiffEstimate.Range sameSizeModified = wilson(sameSize);
+        DiffEstimate.Range sizeChangedModified = sizeDecides
+                ? new DiffEstimate.Range(sizeChanged.population, sizeChanged.population, sizeChanged.population)
+                : wilson(sizeChanged);
+        DiffEstimate.Range modified = new DiffEstimate.Range(sameSizeModified.estimate() + sizeChangedModified.estimate(),
+                sameSizeModified.lower() + sizeChangedModified.lower(), sameSizeModified.upper() + sizeChangedModified.upper());
+        return new DiffEstimate(directories, added, removed, sameSize.population + sizeChanged.population, sizeChanged.population,
+                sameSize.checked + sizeChanged.checked, sameSize.modified + sizeChanged.modified, modified, CONFIDENCE,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private void walk(Path left, Path right, String relativePath, IgnoreProfiles.Scope scope) throws IOException {
+        directories++;
+        IgnoreProfiles.Scope childScope = scope.descend(relativePath, left, right);
+        Map<String, BasicFileAttributes> leftEntries = list(left);
+        Map<String, BasicFileAttributes> rightEntries = list(right);
+        TreeSet<String> names = new TreeSet<>(leftEntries.keySet());
+        names.addAll(rightEntries.keySet());
+
+        for (String name : names) {
+            BasicFileAttributes leftAttributes = leftEntries.get(name);
+            BasicFileAttributes rightAttributes = rightEntries.get(name);
+            Path childLeft = leftAttributes != null ? left.resolve(name) : null;
+            Path childRight = rightAttributes != null ? right.resolve(name) : null;
+            String childRelPath = relativePath.isEmpty() ? name : relativePath + "/" + name;
+            boolean childIsDir = (rightAttributes != null ? rightAttributes : leftAttributes).isDirectory();
+            if (childScope.isIgnored(childRelPath, childLeft, childRight, childIsDir)) {
+                continue;
+            }
+            if (leftAttributes != null && rightAttributes != null && leftAttributes.isDirectory() != rightAttributes.isDirectory()) {
+                // A file replaced by a directory or the other way around
+                count(childLeft, leftAttributes, childRelPath, childScope, false);
+                count(childRight, rightAttributes, childRelPath, childScope, true);
+            } else if (leftAttributes == null) {
+                count(childRight, rightAttributes, childRelPath, childScope, true);
+            } else if (rightAttributes == null) {
+                count(childLeft, leftAttributes, childRelPath, childScope, false);
+            } else if (childIsDir) {
+                walk(childLeft, childRight, childRelPath, childScope);
+            } else if (leftAttributes.size() == rightAttributes.size()) {
+                sameSize.offer(new Pair(childLeft, childRight));
+            } else {
+                sizeChanged.offer(new Pair(childLeft, childRight));
+            }
+        }
+    }
+
+    /**
+     * Counts a file, or the files below a directory, that exist on one side only.
+     */
+    private void count(Path path, BasicFileAttributes attributes, String relativePath, IgnoreProfiles.Scope scope,
+                       boolean rightSide) throws IOException {
+        if (!attributes.isDirectory()) {
+            if (rightSide) {
+                added++;
+            } else {
+                removed++;
+            }
+            return;
+        }
+        directories++;
+        IgnoreProfiles.Scope childScope = rightSide ? scope.descend(relativePath, null, path) : scope.descend(relativePath, path, null);
+        for (Map.Entry<String, BasicFileAttributes> entry : list(path).entrySet()) {
+            Path child = path.resolve(entry.getKey());
+            String childRelPath = relativePath + "/" + entry.getKey();
+            if (!childScope.isIgnored(childRelPath, rightSide ? null : child, rightSide ? child : null, entry.getValue().isDirectory())) {
+                count(child, entry.getValue(), childRelPath, childScope, rightSide);
+            }
+        }
+    }
+
+    private static Map<String, BasicFileAttributes> list(Path directory) throws IOException {
+        Map<String, BasicFileAttributes> entries = new TreeMap<>();
+        if (directory == null) {
+            return entries;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path entry : stream) {
+                try {
+                    entries.put(entry.getFileName().toString(), Files.readAttributes(entry, BasicFileAttributes.class));
+                } catch (NoSuchFileException e) {
+                    // Deleted while listing, or a dangling link
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Content-checks both samples in random order, alternating between them, until they are done or the deadline
+     * passes. Only the leading run of finished checks of each sample counts, so what was checked in time is itself
+     * a uniform random sample, not one biased towards small files. Checks left at the deadline are cancelled, which
+     * interrupts the running ones, so they give up their threads and I/O slots.
+     */
+    private void check(long deadline) throws IOException {
+        Collections.shuffle(sameSize.sample, random);
+        Collections.shuffle(sizeChanged.sample, random);
+        if (sameSize.sample.isEmpty() && sizeChanged.sample.isEmpty()) {
+            return;
+        }
+        List<Future<Boolean>> sameSizeChecks = new ArrayList<>();
+        List<Future<Boolean>> sizeChangedChecks = new ArrayList<>();
+        try {
+            for (int i = 0; i < Math.max(sameSize.sample.size(), sizeChanged.sample.size()); i++) {
+                submit(sameSize, i, sameSizeChecks);
+                submit(sizeChanged, i, sizeChangedChecks);
+            }
+            collect(sameSize, sameSizeChecks, deadline);
+            collect(sizeChanged, sizeChangedChecks, deadline);
+        } finally {
+            for (Future<Boolean> check : sameSizeChecks) {
+                check.cancel(true);
+            }
+            for (Future<Boolean> check : sizeChangedChecks) {
+                check.cancel(true);
+            }
+        }
+    }
+
+    private void submit(Stratum stratum, int i, List<Future<Boolean>> checks) {
+        if (i < stratum.sample.size()) {
+            Pair pair = stratum.sample.get(i);
+            checks.add(executor.submit(() -> contentCheck.isEquivalent(pair.left(), pair.right())));
+        }
+    }
+
+    private static void collect(Stratum stratum, List<Future<Boolean>> checks, long deadline) throws IOException {
+        for (Future<Boolean> check : checks) {
+            try {
+                boolean equivalent = check.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                stratum.checked++;
+                if (!equivalent) {
+                    stratum.modified++;
+                }
+            } catch (TimeoutException e) {
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new java.io.InterruptedIOException("Interrupted while estimating");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException ioException) {
+                    throw ioException;
+                }
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Extrapolates the modified share of the checked files to the whole stratum. The bounds never go below the
+     * modified files already found or above what remains once the identical ones found are taken out.
+     */
+    private static DiffEstimate.Range wilson(Stratum stratum) {
+        long population = stratum.population;
+        int n = stratum.checked;
+        int k = stratum.modified;
+        if (n >= population) {
+            return new DiffEstimate.Range(k, k, k);
+        }
+        if (n == 0) {
+            return new DiffEstimate.Range(Math.round(population / 2.0), 0, population);
+        }
+        double p = (double) k / n;
+        // Sampling without replacement: the variance shrinks by (N - n) / (N - 1), which amounts to a smaller z
+        double z2 = Z * Z * (population - n) / (population - 1);
+        double denominator = 1 + z2 / n;
+        double center = (p + z2 / (2.0 * n)) / denominator;
+        double halfWidth = Math.sqrt(z2) / denominator * Math.sqrt(p * (1 - p) / n + z2 / (4.0 * n * n));
+        long lower = Math.max(k, (long) Math.floor(population * (center - halfWidth)));
+        long upper = Math.max(lower, Math.min(population - (n - k), (long) Math.ceil(population * (center + halfWidth))));
+        return new DiffEstimate.Range(Math.clamp(Math.round(population * p), lower, upper), lower, upper);
+    }
+}
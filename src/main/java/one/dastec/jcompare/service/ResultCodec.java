@@ -0,0 +1,262 @@
+package one.dastec.jcompare.service;
+
+import one.dastec.jcompare.model.DiffNode;
+import one.dastec.jcompare.model.DiffTree;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Binary encoding of comparison results, shared by stored results and checkpoints. Nodes are written in pre-order
+ * with their subtree size, so a reader can skip a subtree without decoding it; all numbers are unsigned varints and
+ * names are ids into a string table.
+ *
+ * <pre>
+ * node   varint name id, byte status &lt;&lt; 1 | directory, varint subtree size (nodes, including itself),
+ *        varint added, removed, modified, 8 bytes percentage, varint source path id + 1 (0 = none)
+ * </pre>
+ */
+final class ResultCodec {
+
+    private static final DiffNode.DiffStatus[] STATUSES = DiffNode.DiffStatus.values();
+
+    private ResultCodec() {
+    }
+
+    /**
+     * Nodes of a subtree in pre-order, with their subtree sizes and the string table they need.
+     */
+    static final class Layout {
+        final DiffTree tree;
+        final int[] order;
+        final int[] subtreeSize;
+        final Map<String, Integer> strings = new LinkedHashMap<>();
+
+        Layout(DiffTree tree, int root) {
+            this.tree = tree;
+            List<Integer> nodes = new ArrayList<>();
+            int[] stack = new int[16];
+            int top = 0;
+            stack[top++] = root;
+            while (top > 0) {
+                int node = stack[--top];
+                nodes.add(node);
+                intern(tree.name(node));
+                if (tree.sourcePath(node) != null) {
+                    intern(tree.sourcePath(node));
+                }
+                // Push children in reverse so they are visited in order
+                int childCount = 0;
+                for (int child = tree.firstChild(node); child >= 0; child = tree.nextSibling(child)) {
+                    childCount++;
+                }
+                if (top + childCount > stack.length) {
+                    stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + childCount));
+                }
+                int position = top + childCount;
+                for (int child = tree.firstChild(node); child >= 0; child = tree.nextSibling(child)) {
+                    stack[--position] = child;
+                }
+                top += childCount;
+            }
+            order = nodes.stream().mapToInt(Integer::intValue).toArray();
+            // Children come after their parent, so one backwards pass adds every subtree to its parent's
+            subtreeSize = new int[order.length];
+            int[] positions = new int[tree.size()];
+            for (int i = 0; i < order.length; i++) {
+                positions[order[i]] = i;
+            }
+            for (int i = order.length - 1; i >= 0; i--) {
+                subtreeSize[i]++;
+                if (i > 0) {
+                    subtreeSize[positions[tree.parent(order[i])]] += subtreeSize[i];
+                }
+            }
+        }
+
+        private void intern(String value) {
+            strings.putIfAbsent(value, strings.size());
+        }
+
+        void writeStrings(DataOutput out) throws IOException {
+            writeVarint(out, strings.size());
+            for (String value : strings.keySet()) {
+                writeString(out, value);
+            }
+        }
+
+        void writeNode(DataOutput out, int position) throws IOException {
+            int node = order[position];
+            writeVarint(out, strings.get(tree.name(node)));
+            out.writeByte(tree.status(node).ordinal() << 1 | (tree.isDirectory(node) ? 1 : 0));
+            writeVarint(out, subtreeSize[position]);
+            writeVarint(out, tree.added(node));
+            writeVarint(out, tree.removed(node));
+            writeVarint(out, tree.modified(node));
+            out.writeDouble(tree.percentage(node));
+            String sourcePath = tree.sourcePath(node);
+            writeVarint(out, sourcePath == null ? 0 : strings.get(sourcePath) + 1);
+        }
+    }
+
+    /**
+     * Decoded node records, as read from a block or a checkpoint.
+     */
+    static final class Nodes {
+        final int[] name;
+        final byte[] flags;
+        final int[] subtreeSize;
+        final int[] added;
+        final int[] removed;
+        final int[] modified;
+        final double[] percentage;
+        final int[] source;
+
+        Nodes(int count) {
+            name = new int[count];
+            flags = new byte[count];
+            subtreeSize = new int[count];
+            added = new int[count];
+            removed = new int[count];
+            modified = new int[count];
+            percentage = new double[count];
+            source = new int[count];
+        }
+
+        void read(DataInput in, int i) throws IOException {
+            name[i] = (int) readVarint(in);
+            flags[i] = in.readByte();
+            subtreeSize[i] = (int) readVarint(in);
+            added[i] = (int) readVarint(in);
+            removed[i] = (int) readVarint(in);
+            modified[i] = (int) readVarint(in);
+            percentage[i] = in.readDouble();
+            source[i] = (int) readVarint(in) - 1;
+        }
+
+        boolean isDirectory(int i) {
+            return (flags[i] & 1) != 0;
+        }
+
+        DiffNode.DiffStatus status(int i) {
+            return STATUSES[flags[i] >> 1];
+        }
+    }
+
+    /**
+     * @return a self-contained, compressed encoding of the subtree of {@code node}
+     */
+    static byte[] encodeSubtree(DiffTree tree, int node) throws IOException {
+        Layout layout = new Layout(tree, node);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, new Deflater(Deflater.BEST_SPEED), 8192))) {
+            layout.writeStrings(out);
+            writeVarint(out, layout.order.length);
+            for (int i = 0; i < layout.order.length; i++) {
+                layout.writeNode(out, i);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param rootPath relative path of the subtree's root in the original tree
+     */
+    static DiffNode decodeSubtree(byte[] encoded, String rootPath) throws IOException {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(encoded)))) {
+            List<String> strings = readStrings(in);
+            int count = (int) readVarint(in);
+            Nodes nodes = new Nodes(count);
+            for (int i = 0; i < count; i++) {
+                nodes.read(in, i);
+            }
+            DiffTree tree = new DiffTree(strings.get(nodes.name[0]), nodes.isDirectory(0), rootPath);
+            copy(nodes, strings, 0, tree, 0);
+            // Children follow their parent; a stack of open ancestors tracks where each subtree ends
+            int[] parents = new int[64];
+            int[] ends = new int[64];
+            int depth = 0;
+            parents[0] = 0;
+            ends[0] = nodes.subtreeSize[0];
+            for (int i = 1; i < count; i++) {
+                while (i >= ends[depth]) {
+                    depth--;
+                }
+                int node = tree.add(parents[depth], strings.get(nodes.name[i]), nodes.isDirectory(i));
+                copy(nodes, strings, i, tree, node);
+                if (nodes.subtreeSize[i] > 1) {
+                    if (++depth == parents.length) {
+                        parents = Arrays.copyOf(parents, depth * 2);
+                        ends = Arrays.copyOf(ends, depth * 2);
+                    }
+                    parents[depth] = node;
+                    ends[depth] = i + nodes.subtreeSize[i];
+                }
+            }
+            return tree.root();
+        }
+    }
+
+    static void copy(Nodes nodes, List<String> strings, int i, DiffTree tree, int node) {
+        tree.setStatus(node, nodes.status(i));
+        tree.setStatistics(node, nodes.added[i], nodes.removed[i], nodes.modified[i], nodes.percentage[i]);
+        if (nodes.source[i] >= 0) {
+            tree.setSourcePath(node, strings.get(nodes.source[i]));
+        }
+    }
+
+    static List<String> readStrings(DataInput in) throws IOException {
+        int count = (int) readVarint(in);
+        List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            strings.add(readString(in));
+        }
+        return strings;
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[(int) readVarint(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeVarint(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarint(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
@@ -0,0 +1,187 @@
+package one.dastec.jcompare.service;
+
+import one.dastec.jcompare.model.DiffNode;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Rows of one comparison result ({@link CompareService#flatten}) with posting lists per status, per type and per
+ * extension, built once so that every filter of the table view, the export and the API is answered by OR-ing and
+ * AND-ing a few bit sets; only the rows left over are checked against the path, percentage and size conditions.
+ */
+public final class ResultIndex {
+
+    /**
+     * The type categories of the table view, in display order.
+     */
+    public static final List<String> TYPES = List.of("directory", "java", "xml", "json", "yaml", "props", "file");
+
+    private final List<CompareService.DiffEntry> entries;
+    private final String[] lowerPaths;
+    private final BitSet[] byStatus = new BitSet[DiffNode.DiffStatus.values().length];
+    private final Map<String, BitSet> byType = new HashMap<>();
+    private final Map<String, BitSet> byExtension = new HashMap<>();
+
+    private ResultIndex(List<CompareService.DiffEntry> entries) {
+        this.entries = List.copyOf(entries);
+        this.lowerPaths = new String[entries.size()];
+        for (int i = 0; i < byStatus.length; i++) {
+            byStatus[i] = new BitSet();
+        }
+        for (int row = 0; row < this.entries.size(); row++) {
+            CompareService.DiffEntry entry = this.entries.get(row);
+            lowerPaths[row] = entry.relativePath().toLowerCase(Locale.ROOT);
+            byStatus[entry.status().ordinal()].set(row);
+            byType.computeIfAbsent(type(entry), key -> new BitSet()).set(row);
+            if (!entry.isDirectory()) {
+                byExtension.computeIfAbsent(extension(entry.path()), key -> new BitSet()).set(row);
+            }
+        }
+    }
+
+    public static ResultIndex of(List<CompareService.DiffEntry> entries) {
+        return new ResultIndex(entries);
+    }
+
+    /**
+     * @return the table view category of a row: "directory", "java", "xml", "json", "yaml", "props" or "file"
+     */
+    public static String type(CompareService.DiffEntry entry) {
+        if (entry.isDirectory()) {
+            return "directory";
+        }
+        return switch (extension(entry.path())) {
+            case "java" -> "java";
+            case "xml" -> "xml";
+            case "json" -> "json";
+            case "yaml", "yml" -> "yaml";
+            case "properties" -> "props";
+            default -> "file";
+        };
+    }
+
+    /**
+     * @return the lower-case extension of the last path element, without the dot, or "" if it has none
+     */
+    static String extension(String path) {
+        int slash = path.lastIndexOf('/');
+        int dot = path.lastIndexOf('.');
+        return dot > slash + 1 ? path.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+    }
+
+    /**
+     * @return the number of rows, matching or not
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Conditions on the rows of a result; an empty set or a null bound does not constrain anything.
+     *
+     * @param path          a glob (with {@code *}, {@code ?} or {@code [...]}) matched against the relative path, like an
+     *                      unanchored ignore pattern, or else a case-insensitive substring of it
+     * @param types         table view categories, see {@link #TYPES}
+     * @param extensions    file extensions without the dot
+     * @param minPercentage lowest difference percentage of a row
+     * @param minLines      fewest changed (added, removed and modified) lines of a row
+     * @param maxLines      most changed lines of a row
+     */
+    public record Query(String path, Set<DiffNode.DiffStatus> statuses, Set<String> types, Set<String> extensions,
+                        Double minPercentage, Integer minLines, Integer maxLines) {
+
+        public static final Query ALL = new Query(null, Set.of(), Set.of(), Set.of(), null, null, null);
+
+        public Query {
+            path = path == null ? "" : path.trim();
+            statuses = statuses == null ? Set.of() : Set.copyOf(statuses);
+            types = types == null ? Set.of() : Set.copyOf(types);
+            extensions = extensions == null ? Set.of() : Set.copyOf(extensions);
+        }
+
+        public Query withStatuses(Set<DiffNode.DiffStatus> newStatuses) {
+            return new Query(path, newStatuses, types, extensions, minPercentage, minLines, maxLines);
+        }
+
+        public Query withTypes(Set<String> newTypes) {
+            return new Query(path, statuses, newTypes, extensions, minPercentage, minLines, maxLines);
+        }
+    }
+
+    /**
+     * @param total number of matching rows, of which {@code entries} is one page
+     */
+    public record Page(int total, List<CompareService.DiffEntry> entries) {
+    }
+
+    /**
+     * @return all matching rows, in tree order
+     */
+    public List<CompareService.DiffEntry> query(Query query) {
+        return query(query, 0, Integer.MAX_VALUE).entries();
+    }
+
+    /**
+     * @return the matching rows from {@code offset} on, at most {@code limit} of them, and how many match in total
+     */
+    public Page query(Query query, int offset, int limit) {
+        BitSet rows = new BitSet(entries.size());
+        rows.set(0, entries.size());
+        if (!query.statuses().isEmpty()) {
+            BitSet any = new BitSet();
+            query.statuses().forEach(status -> any.or(byStatus[status.ordinal()]));
+            rows.and(any);
+        }
+        if (!query.types().isEmpty()) {
+            rows.and(union(byType, query.types()));
+        }
+        if (!query.extensions().isEmpty()) {
+            rows.and(union(byExtension, query.extensions()));
+        }
+
+        Pattern glob = isGlob(query.path()) ? Pattern.compile("(?:.*/)?" + IgnoreRules.toRegex(query.path())) : null;
+        String substring = query.path().toLowerCase(Locale.ROOT);
+        int total = 0;
+        List<CompareService.DiffEntry> page = new ArrayList<>();
+        for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+            CompareService.DiffEntry entry = entries.get(row);
+            if (glob != null ? !glob.matcher(entry.relativePath()).matches() : !lowerPaths[row].contains(substring)) {
+                continue;
+            }
+            if (query.minPercentage() != null && entry.percentage() < query.minPercentage()) {
+                continue;
+            }
+            int changed = entry.added() + entry.removed() + entry.modified();
+            if ((query.minLines() != null && changed < query.minLines()) || (query.maxLines() != null && changed > query.maxLines())) {
+                continue;
+            }
+            if (total >= offset && page.size() < limit) {
+                page.add(entry);
+            }
+            total++;
+        }
+        return new Page(total, page);
+    }
+
+    private static BitSet union(Map<String, BitSet> postings, Set<String> keys) {
+        BitSet any = new BitSet();
+        for (String key : keys) {
+            BitSet posting = postings.get(key.startsWith(".") ? key.substring(1).toLowerCase(Locale.ROOT) : key.toLowerCase(Locale.ROOT));
+            if (posting != null) {
+                any.or(posting);
+            }
+        }
+        return any;
+    }
+
+    private static boolean isGlob(String path) {
+        return path.indexOf('*') >= 0 || path.indexOf('?') >= 0 || path.indexOf('[') >= 0;
+    }
+}
@@ -0,0 +1,596 @@
+package one.dastec.jcompare.service;
+
+import one.dastec.jcompare.model.CompareOptions;
+import one.dastec.jcompare.model.DiffNode;
+import one.dastec.jcompare.model.DiffTree;
+import one.dastec.jcompare.model.IgnoreProfile;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Keeps comparison results on disk, so they can be reopened by id (and shared as a URL) without comparing again,
+ * and keeps checkpoints of running comparisons, so a comparison interrupted by a crash resumes where it stopped.
+ *
+ * <p>A result file ({@code <id>.jcr}) holds a fixed header, a deflated section with the metadata and string table,
+ * then the nodes ({@link ResultCodec}) in pre-order, cut into independently deflated blocks of
+ * {@value #BLOCK_NODES}, and finally the offsets of those blocks. Opening a result reads the header, strings and
+ * offsets only; node blocks are inflated when a subtree touching them is asked for.
+ *
+ * <p>A checkpoint ({@code <key>.jcp}) is a journal of finished subtrees, keyed by the compared paths and options.
+ * Each record is {@code [length][CRC32][payload]}; a record torn by a crash fails its check and is cut off when
+ * the journal is reopened. Every record carries a fingerprint of the files and directories it was compared from, and
+ * is only restored while they still match. Journals untouched for longer than {@code checkpoint-max-age} are discarded.
+ */
+@Service
+public class ResultStore {
+
+    static final int BLOCK_NODES = 4096;
+    static final int MAX_RESULTS = 100;
+    private static final int MAGIC = 0x4A435231; // "JCR1"
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 24;
+    private static final String RESULT_SUFFIX = ".jcr";
+    private static final String CHECKPOINT_SUFFIX = ".jcp";
+    private static final Pattern ID = Pattern.compile("[0-9a-f]{16}");
+    static final Duration DEFAULT_CHECKPOINT_MAX_AGE = Duration.ofHours(24);
+
+    private final Path directory;
+    private final Duration checkpointMaxAge;
+    private final SecureRandom random = new SecureRandom();
+    private final BoundedCache<String, StoredResult> opened = new BoundedCache<>(16);
+    private final BoundedCache<String, ResultIndex> indexes = new BoundedCache<>(16);
+
+    public ResultStore() {
+        this("");
+    }
+
+    public ResultStore(String directory) {
+        this(directory, DEFAULT_CHECKPOINT_MAX_AGE);
+    }
+
+    /**
+     * @param directory        where results and checkpoints are kept; empty for {@code jcompare-results} in the temp directory
+     * @param checkpointMaxAge how long after its last record a checkpoint can still be resumed from
+     */
+    @Autowired
+    public ResultStore(@Value("${jcompare.results.dir:}") String directory,
+                       @Value("${jcompare.results.checkpoint-max-age:24h}") Duration checkpointMaxAge) {
+        this(directory == null || directory.isBlank()
+                ? Path.of(System.getProperty("java.io.tmpdir"), "jcompare-results")
+                : Path.of(directory), checkpointMaxAge);
+    }
+
+    public ResultStore(Path directory) {
+        this(directory, DEFAULT_CHECKPOINT_MAX_AGE);
+    }
+
+    public ResultStore(Path directory, Duration checkpointMaxAge) {
+        this.directory = directory;
+        this.checkpointMaxAge = checkpointMaxAge;
+    }
+
+    public Path directory() {
+        return directory;
+    }
+
+    /**
+     * What was compared, and when.
+     */
+    public record Metadata(String leftPath, String rightPath, CompareOptions options, Instant created, int nodeCount) {
+    }
+
+    /**
+     * One stored node, without its children.
+     *
+     * @param descendants number of nodes below this one; lazily loading clients fetch children only when non-zero
+     */
+    public record Entry(String name, String relativePath, boolean directory, DiffNode.DiffStatus status,
+                        int added, int removed, int modified, double percentage, String sourcePath, int descendants) {
+    }
+
+    /**
+     * Writes a result, prunes the oldest ones beyond {@value #MAX_RESULTS} and removes expired checkpoints.
+     *
+     * @return the id to reopen it with
+     */
+    public String save(DiffNode root, String leftPath, String rightPath, CompareOptions options) throws IOException {
+        Files.createDirectories(directory);
+        String id = newId();
+        ResultCodec.Layout layout = new ResultCodec.Layout(root.tree(), root.index());
+        int nodeCount = layout.order.length;
+        int blockCount = (nodeCount + BLOCK_NODES - 1) / BLOCK_NODES;
+
+        Path temp = directory.resolve(id + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            channel.position(HEADER_LENGTH);
+            writeSection(channel, out -> {
+                ResultCodec.writeString(out, leftPath == null ? "" : leftPath);
+                ResultCodec.writeString(out, rightPath == null ? "" : rightPath);
+                writeOptions(out, options);
+                out.writeLong(System.currentTimeMillis());
+                layout.writeStrings(out);
+            });
+            long[] offsets = new long[blockCount];
+            for (int block = 0; block < blockCount; block++) {
+                offsets[block] = channel.position();
+                int from = block * BLOCK_NODES;
+                int to = Math.min(nodeCount, from + BLOCK_NODES);
+                writeSection(channel, out -> {
+                    for (int i = from; i < to; i++) {
+                        layout.writeNode(out, i);
+                    }
+                });
+            }
+            long indexOffset = channel.position();
+            ByteBuffer index = ByteBuffer.allocate(blockCount * Long.BYTES);
+            for (long offset : offsets) {
+                index.putLong(offset);
+            }
+            writeFully(channel, index.flip());
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH)
+                    .putInt(MAGIC).putInt(VERSION).putInt(BLOCK_NODES).putInt(nodeCount).putLong(indexOffset);
+            channel.position(0);
+            writeFully(channel, header.flip());
+        }
+        Files.move(temp, directory.resolve(id + RESULT_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+        prune();
+        return id;
+    }
+
+    /**
+     * @throws NoSuchFileException if there is no result with this id
+     */
+    public StoredResult open(String id) throws IOException {
+        if (id == null || !ID.matcher(id).matches()) {
+            throw new NoSuchFileException(String.valueOf(id));
+        }
+        return opened.computeIfAbsent(id, key -> new StoredResult(key, directory.resolve(key + RESULT_SUFFIX)));
+    }
+
+    /**
+     * @param rows loads the rows of the result with the given id, if its index is not cached
+     * @return the query index of a result, built once
+     */
+    public ResultIndex index(String id, BoundedCache.Loader<String, List<CompareService.DiffEntry>> rows) throws IOException {
+        return indexes.computeIfAbsent(id, key -> ResultIndex.of(rows.load(key)));
+    }
+
+    private String newId() {
+        byte[] bytes = new byte[8];
+        random.nextBytes(bytes);
+        return HexFormat.of().formatHex(bytes);
+    }
+
+    private void prune() throws IOException {
+        List<Path> results;
+        List<Path> expiredCheckpoints;
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> all = files.toList();
+            results = all.stream()
+                    .filter(file -> file.getFileName().toString().endsWith(RESULT_SUFFIX))
+                    .sorted(Comparator.comparing(ResultStore::lastModified).reversed())
+                    .toList();
+            expiredCheckpoints = all.stream()
+                    .filter(file -> file.getFileName().toString().endsWith(CHECKPOINT_SUFFIX) && isExpired(file))
+                    .toList();
+        }
+        for (Path file : expiredCheckpoints) {
+            // A running comparison holds the lock on its journal and keeps appending to it, so it never looks expired
+            Files.deleteIfExists(file);
+        }
+        for (Path file : results.subList(Math.min(MAX_RESULTS, results.size()), results.size())) {
+            String name = file.getFileName().toString();
+            String id = name.substring(0, name.length() - RESULT_SUFFIX.length());
+            opened.remove(id);
+            indexes.remove(id);
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void writeOptions(DataOutputStream out, CompareOptions options) throws IOException {
+        IgnoreProfile profile = options.ignoreProfile();
+        out.writeShort((options.ignoreEol() ? 1 : 0) | (options.ignoreWhitespace() ? 2 : 0)
+                | (options.ignoreBlankLines() ? 4 : 0) | (options.ignoreComments() ? 8 : 0)
+                | (options.semanticJava() ? 16 : 0) | (options.semanticConfig() ? 32 : 0)
+                | (profile.globalFile() ? 64 : 0) | (profile.repositoryFiles() ? 128 : 0));
+        ResultCodec.writeString(out, profile.patterns());
+    }
+
+    private static CompareOptions readOptions(DataInputStream in) throws IOException {
+        int flags = in.readShort();
+        IgnoreProfile profile = new IgnoreProfile((flags & 64) != 0, (flags & 128) != 0, ResultCodec.readString(in));
+        return new CompareOptions((flags & 1) != 0, (flags & 2) != 0, (flags & 4) != 0, (flags & 8) != 0,
+                (flags & 16) != 0, (flags & 32) != 0, profile);
+    }
+
+    @FunctionalInterface
+    private interface SectionWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static void writeSection(FileChannel channel, SectionWriter writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, new Deflater(Deflater.BEST_SPEED), 8192))) {
+            writer.write(out);
+        }
+        ByteBuffer section = ByteBuffer.allocate(Integer.BYTES + bytes.size()).putInt(bytes.size()).put(bytes.toByteArray());
+        writeFully(channel, section.flip());
+    }
+
+    private static DataInputStream readSection(FileChannel channel, long offset) throws IOException {
+        ByteBuffer length = readFully(channel, offset, Integer.BYTES);
+        ByteBuffer section = readFully(channel, offset + Integer.BYTES, length.getInt());
+        return new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(section.array())));
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Truncated result file");
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * A result reopened from disk. Node blocks are inflated on first use and a few are kept in memory.
+     */
+    public static final class StoredResult {
+        private final String id;
+        private final Path file;
+        private final Metadata metadata;
+        private final List<String> strings;
+        private final long[] blockOffsets;
+        private final int blockNodes;
+        private final BoundedCache<Integer, ResultCodec.Nodes> blocks = new BoundedCache<>(64);
+
+        private StoredResult(String id, Path file) throws IOException {
+            this.id = id;
+            this.file = file;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer header = readFully(channel, 0, HEADER_LENGTH);
+                if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                    throw new IOException("Not a comparison result: " + file);
+                }
+                blockNodes = header.getInt();
+                int nodeCount = header.getInt();
+                long indexOffset = header.getLong();
+                try (DataInputStream in = readSection(channel, HEADER_LENGTH)) {
+                    String leftPath = ResultCodec.readString(in);
+                    String rightPath = ResultCodec.readString(in);
+                    CompareOptions options = readOptions(in);
+                    Instant created = Instant.ofEpochMilli(in.readLong());
+                    metadata = new Metadata(leftPath, rightPath, options, created, nodeCount);
+                    strings = ResultCodec.readStrings(in);
+                }
+                blockOffsets = new long[(nodeCount + blockNodes - 1) / blockNodes];
+                ByteBuffer index = readFully(channel, indexOffset, blockOffsets.length * Long.BYTES);
+                for (int i = 0; i < blockOffsets.length; i++) {
+                    blockOffsets[i] = index.getLong();
+                }
+            }
+        }
+
+        public String id() {
+            return id;
+        }
+
+        public Metadata metadata() {
+            return metadata;
+        }
+
+        /**
+         * @return the whole result as a tree
+         */
+        public DiffNode tree() throws IOException {
+            return subtree("", Integer.MAX_VALUE);
+        }
+
+        /**
+         * @param depth levels of descendants to load; 0 for the node alone
+         * @return the node at {@code relativePath} as the root of a new tree, or null if there is none
+         */
+        public DiffNode subtree(String relativePath, int depth) throws IOException {
+            int position = find(relativePath);
+            if (position < 0) {
+                return null;
+            }
+            ResultCodec.Nodes nodes = block(position);
+            int i = position % blockNodes;
+            DiffTree tree = new DiffTree(strings.get(nodes.name[i]), nodes.isDirectory(i), relativePath);
+            ResultCodec.copy(nodes, strings, i, tree, 0);
+            addChildren(tree, 0, position, depth);
+            return tree.root();
+        }
+
+        private void addChildren(DiffTree tree, int node, int position, int depth) throws IOException {
+            if (depth <= 0) {
+                return;
+            }
+            int end = position + size(position);
+            for (int child = position + 1; child < end; child += size(child)) {
+                ResultCodec.Nodes nodes = block(child);
+                int i = child % blockNodes;
+                int added = tree.add(node, strings.get(nodes.name[i]), nodes.isDirectory(i));
+                ResultCodec.copy(nodes, strings, i, tree, added);
+                addChildren(tree, added, child, depth - 1);
+            }
+        }
+
+        /**
+         * @return the direct children of the node at {@code relativePath}, or null if there is no such node
+         */
+        public List<Entry> children(String relativePath) throws IOException {
+            int position = find(relativePath);
+            if (position < 0) {
+                return null;
+            }
+            List<Entry> children = new ArrayList<>();
+            int end = position + size(position);
+            for (int child = position + 1; child < end; child += size(child)) {
+                ResultCodec.Nodes nodes = block(child);
+                int i = child % blockNodes;
+                String name = strings.get(nodes.name[i]);
+                children.add(new Entry(name, relativePath.isEmpty() ? name : relativePath + "/" + name,
+                        nodes.isDirectory(i), nodes.status(i), nodes.added[i], nodes.removed[i], nodes.modified[i],
+                        nodes.percentage[i], nodes.source[i] < 0 ? null : strings.get(nodes.source[i]),
+                        nodes.subtreeSize[i] - 1));
+            }
+            return children;
+        }
+
+        /**
+         * Walks down from the root, skipping every sibling subtree by its size.
+         *
+         * @return the pre-order position of the node at {@code relativePath}, or -1
+         */
+        private int find(String relativePath) throws IOException {
+            int position = 0;
+            if (relativePath == null || relativePath.isEmpty()) {
+                return position;
+            }
+            for (String segment : relativePath.split("/")) {
+                int end = position + size(position);
+                int found = -1;
+                for (int child = position + 1; child < end; child += size(child)) {
+                    if (strings.get(block(child).name[child % blockNodes]).equals(segment)) {
+                        found = child;
+                        break;
+                    }
+                }
+                if (found < 0) {
+                    return -1;
+                }
+                position = found;
+            }
+            return position;
+        }
+
+        private int size(int position) throws IOException {
+            return block(position).subtreeSize[position % blockNodes];
+        }
+
+        private ResultCodec.Nodes block(int position) throws IOException {
+            int block = position / blockNodes;
+            return blocks.computeIfAbsent(block, key -> {
+                int count = Math.min(blockNodes, metadata.nodeCount() - key * blockNodes);
+                ResultCodec.Nodes nodes = new ResultCodec.Nodes(count);
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+                     DataInputStream in = readSection(channel, blockOffsets[key])) {
+                    for (int i = 0; i < count; i++) {
+                        nodes.read(in, i);
+                    }
+                }
+                return nodes;
+            });
+        }
+    }
+
+    private boolean isExpired(Path file) {
+        return lastModified(file) < System.currentTimeMillis() - checkpointMaxAge.toMillis();
+    }
+
+    /**
+     * Opens the checkpoint of comparing {@code left} with {@code right}, reloading the subtrees a previous run of
+     * the same comparison finished before it crashed, unless that was longer than {@code checkpoint-max-age} ago.
+     */
+    public Checkpoint checkpoint(Path left, Path right, CompareOptions options) throws IOException {
+        Files.createDirectories(directory);
+        String key = String.valueOf(left == null ? null : left.toAbsolutePath()) + '\0'
+                + (right == null ? null : right.toAbsolutePath()) + '\0' + options;
+        String name = HexFormat.of().formatHex(ContentHasher.newDigest().digest(key.getBytes(StandardCharsets.UTF_8)), 0, 16);
+        FileChannel channel = FileChannel.open(directory.resolve(name + CHECKPOINT_SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // The same comparison may be running for another user; only one of them keeps the journal
+            if (channel.tryLock() == null) {
+                channel.close();
+                return Checkpoint.NONE;
+            }
+        } catch (OverlappingFileLockException e) {
+            channel.close();
+            return Checkpoint.NONE;
+        }
+        if (isExpired(directory.resolve(name + CHECKPOINT_SUFFIX))) {
+            channel.truncate(0);
+        }
+        return new Checkpoint(directory.resolve(name + CHECKPOINT_SUFFIX), channel);
+    }
+
+    /**
+     * Journal of the subtrees one comparison has finished. Closing keeps the journal for a later resume;
+     * {@link #complete()} removes it, which a comparison does whether it finished or failed, so only a crash leaves a
+     * journal behind. Used by one thread at a time.
+     */
+    public static final class Checkpoint implements Closeable {
+
+        /**
+         * Records nothing and restores nothing.
+         */
+        public static final Checkpoint NONE = new Checkpoint();
+
+        private final Path journal;
+        private final Map<String, Record> restored = new HashMap<>();
+
+        private record Record(long fingerprint, byte[] subtree) {
+        }
+
+        /**
+         * Computes the current fingerprint of the files and directories a restored subtree was compared from.
+         */
+        @FunctionalInterface
+        public interface Fingerprint {
+            long of(DiffNode subtree) throws IOException;
+        }
+        private final FileChannel channel;
+
+        private Checkpoint() {
+            this.journal = null;
+            this.channel = null;
+        }
+
+        private Checkpoint(Path journal, FileChannel channel) throws IOException {
+            this.journal = journal;
+            this.channel = channel;
+            ByteBuffer content = readFully(channel, 0, (int) channel.size());
+            long valid = 0;
+            while (content.remaining() >= 2 * Integer.BYTES) {
+                int length = content.getInt();
+                int checksum = content.getInt();
+                if (length < 0 || length > content.remaining()) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                content.get(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+                String relativePath = ResultCodec.readString(in);
+                long fingerprint = in.readLong();
+                restored.put(relativePath, new Record(fingerprint, in.readAllBytes()));
+                valid = content.position();
+            }
+            channel.truncate(valid);
+            channel.position(valid);
+        }
+
+        /**
+         * @return the number of subtrees available for resuming
+         */
+        public int restorable() {
+            return restored.size();
+        }
+
+        /**
+         * @param fingerprint computes the current fingerprint of the recorded subtree; one that differs from the
+         *                    recorded fingerprint was compared from files that have changed since and is dropped
+         * @return the finished subtree at {@code relativePath} from an earlier run, or null
+         */
+        public DiffNode restore(String relativePath, Fingerprint fingerprint) throws IOException {
+            Record record = restored.get(relativePath);
+            if (record == null) {
+                return null;
+            }
+            DiffNode subtree = ResultCodec.decodeSubtree(record.subtree(), relativePath);
+            if (record.fingerprint() != fingerprint.of(subtree)) {
+                restored.remove(relativePath);
+                return null;
+            }
+            return subtree;
+        }
+
+        /**
+         * Appends the finished subtree of {@code node}, compared from files in the state {@code fingerprint}.
+         */
+        public void record(String relativePath, long fingerprint, DiffTree tree, int node) throws IOException {
+            if (channel == null) {
+                return;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            ResultCodec.writeString(out, relativePath);
+            out.writeLong(fingerprint);
+            out.write(ResultCodec.encodeSubtree(tree, node));
+            byte[] payload = bytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            ByteBuffer record = ByteBuffer.allocate(2 * Integer.BYTES + payload.length)
+                    .putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+            writeFully(channel, record.flip());
+        }
+
+        /**
+         * Closes and removes the journal; the comparison it belongs to has finished or failed.
+         */
+        public void complete() throws IOException {
+            if (journal == null) {
+                return;
+            }
+            try {
+                // Removed while still locked, so a comparison starting now does not pick up a finished journal
+                Files.deleteIfExists(journal);
+            } catch (IOException e) {
+                close(); // Open files cannot be removed on some platforms
+                Files.deleteIfExists(journal);
+            }
+            close();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+}
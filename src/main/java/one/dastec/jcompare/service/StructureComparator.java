@@ -0,0 +1,281 @@
+package one.dastec.jcompare.service;
+
+import one.dastec.jcompare.model.CompareOptions;
+import one.dastec.jcompare.model.StructureChange;
+import one.dastec.jcompare.model.StructureDiff;
+
+import java.io.IOException;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Structure-aware comparison of source and configuration files. Java files are compared member by member,
+ * so a method that only moved within its class is reported as reordered rather than as removed and added lines.
+ * XML, JSON, YAML and properties files are compared as canonical {@code path = value} entry sets.
+ * Parsed outlines and canonical hashes are cached per content hash, so repeated tree comparisons parse each file once.
+ * File reads share the content hasher's {@link IoScheduler}: background during tree walks, interactive for the diff view.
+ */
+public class StructureComparator {
+
+    private final ContentHasher contentHasher;
+    private final IoScheduler ioScheduler;
+    private final BoundedCache<String, List<JavaStructureParser.Member>> javaOutlines = new BoundedCache<>(20_000);
+    private final BoundedCache<String, String> canonicalHashes = new BoundedCache<>(100_000);
+
+    public StructureComparator(ContentHasher contentHasher) {
+        this.contentHasher = contentHasher;
+        this.ioScheduler = contentHasher.ioScheduler();
+    }
+
+    public boolean supports(String fileName) {
+        return isJava(fileName) || ConfigStructureParser.Format.forFileName(fileName) != null;
+    }
+
+    public boolean isEnabled(String fileName, CompareOptions options) {
+        return (options.semanticJava() && isJava(fileName))
+                || (options.semanticConfig() && ConfigStructureParser.Format.forFileName(fileName) != null);
+    }
+
+    private static boolean isJava(String fileName) {
+        return fileName != null && fileName.endsWith(".java");
+    }
+
+    /**
+     * Cheap equivalence check used during the tree walk. Configuration files only need one streaming pass
+     * per side to compute an order-independent canonical hash; nothing is materialized.
+     */
+    public boolean isEquivalent(Path left, Path right) throws IOException {
+        ConfigStructureParser.Format format = ConfigStructureParser.Format.forFileName(right.getFileName().toString());
+        if (format == null) {
+            StructureDiff diff = compare(left, right, IoScheduler.Priority.BACKGROUND);
+            return diff != null && diff.isEquivalent();
+        }
+        String leftHash = canonicalHash(left, format);
+        return leftHash != null && leftHash.equals(canonicalHash(right, format));
+    }
+
+    /**
+     * @return the member or key level differences, or null if the file type has no structure-aware comparator
+     * or cannot be parsed
+     */
+    public StructureDiff compare(Path left, Path right) throws IOException {
+        return compare(left, right, IoScheduler.Priority.INTERACTIVE);
+    }
+
+    private StructureDiff compare(Path left, Path right, IoScheduler.Priority priority) throws IOException {
+        Path named = right != null ? right : left;
+        if (named == null || !supports(named.getFileName().toString())) {
+            return null;
+        }
+        ConfigStructureParser.Format format = ConfigStructureParser.Format.forFileName(named.getFileName().toString());
+        if (format != null) {
+            try {
+                return compareEntries(format, entries(left, format, priority), entries(right, format, priority));
+            } catch (IOException e) {
+                // Not well-formed; the regular line diff still applies
+                return null;
+            }
+        }
+        return compareMembers(outline(left, priority), outline(right, priority));
+    }
+
+    private String canonicalHash(Path path, ConfigStructureParser.Format format) throws IOException {
+        String contentHash = format + ":" + contentHasher.hash(path, CompareOptions.DEFAULT, IoScheduler.Priority.BACKGROUND);
+        String cached = canonicalHashes.get(contentHash);
+        if (cached != null) {
+            return cached.isEmpty() ? null : cached;
+        }
+        CanonicalHash hash = new CanonicalHash();
+        String result;
+        try {
+            ioScheduler.read(path, IoScheduler.Priority.BACKGROUND, () -> {
+                ConfigStructureParser.parse(path, format, hash);
+                return null;
+            });
+            result = hash.toString();
+        } catch (IOException e) {
+            result = "";
+        }
+        canonicalHashes.put(contentHash, result);
+        return result.isEmpty() ? null : result;
+    }
+
+    private SortedMap<String, String> entries(Path path, ConfigStructureParser.Format format, IoScheduler.Priority priority) throws IOException {
+        SortedMap<String, String> entries = new TreeMap<>();
+        if (path != null && Files.exists(path)) {
+            ioScheduler.read(path, priority, () -> {
+                ConfigStructureParser.parse(path, format, entries::put);
+                return null;
+            });
+        }
+        return entries;
+    }
+
+    static StructureDiff compareEntries(ConfigStructureParser.Format format, SortedMap<String, String> left, SortedMap<String, String> right) {
+        List<StructureChange> changes = new ArrayList<>();
+        int unchanged = 0;
+        for (Map.Entry<String, String> entry : right.entrySet()) {
+            String previous = left.get(entry.getKey());
+            if (previous == null) {
+                changes.add(new StructureChange(entry.getKey(), "key", StructureChange.ChangeType.ADDED, null, entry.getValue()));
+            } else if (!previous.equals(entry.getValue())) {
+                changes.add(new StructureChange(entry.getKey(), "key", StructureChange.ChangeType.CHANGED, previous, entry.getValue()));
+            } else {
+                unchanged++;
+            }
+        }
+        for (Map.Entry<String, String> entry : left.entrySet()) {
+            if (!right.containsKey(entry.getKey())) {
+                changes.add(new StructureChange(entry.getKey(), "key", StructureChange.ChangeType.REMOVED, entry.getValue(), null));
+            }
+        }
+        return new StructureDiff(format.name().toLowerCase(), changes, unchanged);
+    }
+
+    private List<JavaStructureParser.Member> outline(Path path, IoScheduler.Priority priority) throws IOException {
+        if (path == null || !Files.exists(path)) {
+            return List.of();
+        }
+        String contentHash = contentHasher.hash(path, CompareOptions.DEFAULT, priority);
+        return javaOutlines.computeIfAbsent(contentHash, hash -> JavaStructureParser.parse(ioScheduler.read(path, priority, () -> readString(path))));
+    }
+
+    private static String readString(Path path) throws IOException {
+        try {
+            return Files.readString(path, StandardCharsets.UTF_8);
+        } catch (MalformedInputException e) {
+            return Files.readString(path, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /**
+     * Matches members by path with a hash map and detects reordering with a longest increasing subsequence,
+     * so the whole comparison is O(n log n) in the number of members.
+     */
+    static StructureDiff compareMembers(List<JavaStructureParser.Member> left, List<JavaStructureParser.Member> right) {
+        Map<String, Integer> leftIndex = new HashMap<>(left.size() * 2);
+        for (int i = 0; i < left.size(); i++) {
+            leftIndex.put(left.get(i).path(), i);
+        }
+
+        List<StructureChange> changes = new ArrayList<>();
+        boolean[] matchedLeft = new boolean[left.size()];
+        int[] unchangedRight = new int[right.size()];
+        int[] unchangedLeftOrder = new int[right.size()];
+        int unchangedCount = 0;
+
+        for (int i = 0; i < right.size(); i++) {
+            JavaStructureParser.Member member = right.get(i);
+            Integer leftPosition = leftIndex.get(member.path());
+            if (leftPosition == null) {
+                changes.add(new StructureChange(member.path(), member.kind(), StructureChange.ChangeType.ADDED, null, member.signature()));
+                continue;
+            }
+            matchedLeft[leftPosition] = true;
+            JavaStructureParser.Member previous = left.get(leftPosition);
+            if (previous.headerHash() != member.headerHash() || previous.bodyHash() != member.bodyHash()) {
+                changes.add(new StructureChange(member.path(), member.kind(), StructureChange.ChangeType.CHANGED, previous.signature(), member.signature()));
+            } else {
+                unchangedRight[unchangedCount] = i;
+                unchangedLeftOrder[unchangedCount] = leftPosition;
+                unchangedCount++;
+            }
+        }
+        for (int i = 0; i < left.size(); i++) {
+            if (!matchedLeft[i]) {
+                JavaStructureParser.Member member = left.get(i);
+                changes.add(new StructureChange(member.path(), member.kind(), StructureChange.ChangeType.REMOVED, member.signature(), null));
+            }
+        }
+
+        boolean[] inOrder = longestIncreasingSubsequence(Arrays.copyOf(unchangedLeftOrder, unchangedCount));
+        int reordered = 0;
+        for (int k = 0; k < unchangedCount; k++) {
+            if (!inOrder[k]) {
+                JavaStructureParser.Member member = right.get(unchangedRight[k]);
+                changes.add(new StructureChange(member.path(), member.kind(), StructureChange.ChangeType.REORDERED, member.signature(), member.signature()));
+                reordered++;
+            }
+        }
+        return new StructureDiff("java", changes, unchangedCount - reordered);
+    }
+
+    /**
+     * Order-independent hash of an entry set: the sum of two independent 64-bit hashes per entry plus the
+     * entry count. Computed while streaming, so memory use does not depend on the file size.
+     */
+    private static final class CanonicalHash implements ConfigStructureParser.EntrySink {
+        private long sumFnv;
+        private long sumPolynomial;
+        private long count;
+
+        @Override
+        public void accept(String path, String value) {
+            long fnv = 0xcbf29ce484222325L;
+            long polynomial = 1125899906842597L;
+            for (String part : new String[] {path, "\u0000", value}) {
+                for (int i = 0; i < part.length(); i++) {
+                    char c = part.charAt(i);
+                    fnv = (fnv ^ c) * 0x100000001b3L;
+                    polynomial = 31 * polynomial + c;
+                }
+            }
+            sumFnv += fnv;
+            sumPolynomial += mix(polynomial);
+            count++;
+        }
+
+        private static long mix(long value) {
+            value ^= value >>> 33;
+            value *= 0xff51afd7ed558ccdL;
+            value ^= value >>> 33;
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%016x%016x:%d", sumFnv, sumPolynomial, count);
+        }
+    }
+
+    /**
+     * Patience-sorting LIS; marks the elements that keep their relative order.
+     */
+    static boolean[] longestIncreasingSubsequence(int[] values) {
+        int n = values.length;
+        int[] tails = new int[n];
+        int[] previous = new int[n];
+        int length = 0;
+        for (int i = 0; i < n; i++) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[tails[mid]] < values[i]) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+        boolean[] member = new boolean[n];
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+            member[i] = true;
+        }
+        return member;
+    }
+}
@@ -0,0 +1,315 @@
+package one.dastec.jcompare.service;
+
+import one.dastec.jcompare.model.CompareOptions;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Read-only, memory-mapped snapshot of a directory tree ({@code .jcm} file), so a tree can be compared after the
+ * original files are gone. Entries are fixed-width records in depth-first pre-order with children sorted by name,
+ * which is exactly the order of the comparison walk; every directory records where its subtree ends, so a whole
+ * subtree can be skipped in O(1). Nothing is parsed when a manifest is opened.
+ *
+ * <pre>
+ * header   64 bytes   magic "JCM1", version, flags, entry count, names length, line hash count, created
+ * entries  80 bytes   name offset/length, flags, subtree end, size, mtime, SHA-256, line hash start/count
+ * names    UTF-8      entry names (not full paths)
+ * lines    8 bytes    64-bit hashes of the (normalized) lines of text files, if captured
+ * </pre>
+ * Content and line hashes are computed with the ignore options the manifest was captured with
+ * ({@link #captureOptions()}); a live tree compared against the manifest is hashed with the same options.
+ */
+public final class TreeManifest {
+
+    public static final String EXTENSION = ".jcm";
+
+    private static final int MAGIC = 0x4A434D31; // "JCM1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int ENTRY_SIZE = 80;
+
+    private static final int FLAG_LINE_HASHES = 1;
+    private static final int FLAG_IGNORE_EOL = 2;
+    private static final int FLAG_IGNORE_WHITESPACE = 4;
+    private static final int FLAG_IGNORE_BLANK_LINES = 8;
+    private static final int FLAG_IGNORE_COMMENTS = 16;
+
+    private static final int ENTRY_DIRECTORY = 1;
+    private static final int ENTRY_HAS_LINES = 2;
+
+    private final Path file;
+    private final int flags;
+    private final int entryCount;
+    private final long created;
+    private final ByteBuffer entries;
+    private final ByteBuffer names;
+    private final ByteBuffer lineHashes;
+
+    private TreeManifest(Path file, int flags, int entryCount, long created, ByteBuffer entries, ByteBuffer names, ByteBuffer lineHashes) {
+        this.file = file;
+        this.flags = flags;
+        this.entryCount = entryCount;
+        this.created = created;
+        this.entries = entries;
+        this.names = names;
+        this.lineHashes = lineHashes;
+    }
+
+    public static boolean isManifest(Path path) {
+        return path != null && path.getFileName() != null && path.getFileName().toString().endsWith(EXTENSION) && Files.isRegularFile(path);
+    }
+
+    public static TreeManifest open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Not a manifest: " + file);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("Not a manifest or unsupported version: " + file);
+            }
+            int flags = header.getInt(8);
+            int entryCount = header.getInt(12);
+            long namesLength = header.getLong(16);
+            long lineHashCount = header.getLong(24);
+            long created = header.getLong(32);
+
+            long entriesLength = (long) entryCount * ENTRY_SIZE;
+            long namesStart = HEADER_SIZE + entriesLength;
+            long linesStart = namesStart + namesLength;
+            if (linesStart + lineHashCount * Long.BYTES > channel.size()) {
+                throw new IOException("Truncated manifest: " + file);
+            }
+            return new TreeManifest(file, flags, entryCount, created,
+                    map(channel, HEADER_SIZE, entriesLength), map(channel, namesStart, namesLength),
+                    map(channel, linesStart, lineHashCount * Long.BYTES));
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Manifest section of " + length + " bytes is too large to map");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    public int entryCount() {
+        return entryCount;
+    }
+
+    public long created() {
+        return created;
+    }
+
+    public boolean hasLineHashes() {
+        return (flags & FLAG_LINE_HASHES) != 0;
+    }
+
+    /**
+     * @return the normalization options the content and line hashes were computed with
+     */
+    public CompareOptions captureOptions() {
+        return new CompareOptions((flags & FLAG_IGNORE_EOL) != 0, (flags & FLAG_IGNORE_WHITESPACE) != 0,
+                (flags & FLAG_IGNORE_BLANK_LINES) != 0, (flags & FLAG_IGNORE_COMMENTS) != 0, false, false);
+    }
+
+    // Entry 0 is the captured root directory
+
+    public String name(int entry) {
+        int base = entry * ENTRY_SIZE;
+        byte[] bytes = new byte[entries.getInt(base + 4)];
+        names.get(entries.getInt(base), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public boolean isDirectory(int entry) {
+        return (entries.getInt(entry * ENTRY_SIZE + 8) & ENTRY_DIRECTORY) != 0;
+    }
+
+    /**
+     * @return the index after the last entry of this entry's subtree, i.e. its next sibling
+     */
+    public int subtreeEnd(int entry) {
+        return entries.getInt(entry * ENTRY_SIZE + 12);
+    }
+
+    public long size(int entry) {
+        return entries.getLong(entry * ENTRY_SIZE + 16);
+    }
+
+    public long modified(int entry) {
+        return entries.getLong(entry * ENTRY_SIZE + 24);
+    }
+
+    public String contentHash(int entry) {
+        byte[] hash = new byte[32];
+        entries.get(entry * ENTRY_SIZE + 32, hash);
+        return HexFormat.of().formatHex(hash);
+    }
+
+    /**
+     * @return the line hashes of a text file, or null if they were not captured
+     */
+    public long[] lineHashes(int entry) {
+        int base = entry * ENTRY_SIZE;
+        if ((entries.getInt(base + 8) & ENTRY_HAS_LINES) == 0) {
+            return null;
+        }
+        long start = entries.getLong(base + 64);
+        long[] hashes = new long[entries.getInt(base + 72)];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = lineHashes.getLong((int) ((start + i) * Long.BYTES));
+        }
+        return hashes;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of a (normalized) line, as stored in manifests.
+     */
+    public static long lineHash(String line) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < line.length(); i++) {
+            hash = (hash ^ line.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    public static long[] lineHashes(List<String> lines) {
+        long[] hashes = new long[lines.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = lineHash(lines.get(i));
+        }
+        return hashes;
+    }
+
+    /**
+     * Builds a manifest from a depth-first walk. Directories are opened with {@link #startDirectory} and closed
+     * with {@link #endDirectory}; children must be added in name order. Line hashes are spilled to a temporary file
+     * while walking, so memory use is bounded by the entry table.
+     */
+    public static final class Writer implements Closeable {
+        private final CompareOptions captureOptions;
+        private final boolean withLineHashes;
+        private ByteBuffer entryTable = ByteBuffer.allocate(ENTRY_SIZE * 1024);
+        private final ByteArrayOutputStream nameTable = new ByteArrayOutputStream();
+        private final Deque<Integer> openDirectories = new ArrayDeque<>();
+        private final Path lineSpill;
+        private final DataOutputStream lineOut;
+        private int entryCount;
+        private long lineHashCount;
+
+        public Writer(CompareOptions captureOptions, boolean withLineHashes) throws IOException {
+            this.captureOptions = captureOptions;
+            this.withLineHashes = withLineHashes;
+            this.lineSpill = withLineHashes ? Files.createTempFile("jcompare-manifest", ".lines") : null;
+            this.lineOut = withLineHashes ? new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(lineSpill), 64 * 1024)) : null;
+        }
+
+        public boolean withLineHashes() {
+            return withLineHashes;
+        }
+
+        public void startDirectory(String name, long modified) throws IOException {
+            openDirectories.push(entryCount);
+            entry(name, ENTRY_DIRECTORY, 0, modified, new byte[32], null);
+        }
+
+        public void endDirectory() {
+            // The subtree end was written as a placeholder when the directory was started
+            entryTable.putInt(openDirectories.pop() * ENTRY_SIZE + 12, entryCount);
+        }
+
+        /**
+         * @param contentHash SHA-256 in hex, computed with the capture options
+         * @param lines       line hashes, or null for binary files or when line hashes are not captured
+         */
+        public void addFile(String name, long size, long modified, String contentHash, long[] lines) throws IOException {
+            entry(name, lines != null && withLineHashes ? ENTRY_HAS_LINES : 0, size, modified, HexFormat.of().parseHex(contentHash), lines);
+        }
+
+        private void entry(String name, int entryFlags, long size, long modified, byte[] hash, long[] lines) throws IOException {
+            if (entryTable.remaining() < ENTRY_SIZE) {
+                entryTable = ByteBuffer.allocate(entryTable.capacity() * 2).put(entryTable.flip());
+            }
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            boolean hasLines = (entryFlags & ENTRY_HAS_LINES) != 0;
+            entryTable.putInt(nameTable.size())
+                    .putInt(nameBytes.length)
+                    .putInt(entryFlags)
+                    .putInt(entryCount + 1)
+                    .putLong(size)
+                    .putLong(modified)
+                    .put(hash)
+                    .putLong(hasLines ? lineHashCount : 0)
+                    .putInt(hasLines ? lines.length : 0)
+                    .putInt(0);
+            nameTable.write(nameBytes);
+            if (hasLines) {
+                for (long line : lines) {
+                    lineOut.writeLong(line);
+                }
+                lineHashCount += lines.length;
+            }
+            entryCount++;
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            if (!openDirectories.isEmpty()) {
+                throw new IllegalStateException("Unclosed directories in manifest");
+            }
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+            int flags = (withLineHashes ? FLAG_LINE_HASHES : 0)
+                    | (captureOptions.ignoreEol() ? FLAG_IGNORE_EOL : 0)
+                    | (captureOptions.ignoreWhitespace() ? FLAG_IGNORE_WHITESPACE : 0)
+                    | (captureOptions.ignoreBlankLines() ? FLAG_IGNORE_BLANK_LINES : 0)
+                    | (captureOptions.ignoreComments() ? FLAG_IGNORE_COMMENTS : 0);
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeInt(flags);
+            data.writeInt(entryCount);
+            data.writeLong(nameTable.size());
+            data.writeLong(lineHashCount);
+            data.writeLong(System.currentTimeMillis());
+            data.write(new byte[HEADER_SIZE - 40]);
+            data.write(entryTable.array(), 0, entryTable.position());
+            nameTable.writeTo(data);
+            if (lineOut != null) {
+                lineOut.flush();
+                try (InputStream lines = Files.newInputStream(lineSpill)) {
+                    lines.transferTo(data);
+                }
+            }
+            data.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (lineOut != null) {
+                lineOut.close();
+                Files.deleteIfExists(lineSpill);
+            }
+        }
+    }
+}
@@ -1,7 +1,14 @@
 package one.dastec.jcompare.controller;
 
+import one.dastec.jcompare.model.CompareOptions;
+import one.dastec.jcompare.model.DiffEstimate;
 import one.dastec.jcompare.model.DiffNode;
+import one.dastec.jcompare.model.IgnoreProfile;
+import one.dastec.jcompare.service.BinaryDelta;
 import one.dastec.jcompare.service.CompareService;
+import one.dastec.jcompare.service.HunkIndex;
+import one.dastec.jcompare.service.IntraLineDiffer;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -36,6 +43,12 @@ class CompareControllerTest {
     @Autowired
     private WebApplicationContext webApplicationContext;
 
+    @BeforeEach
+    void locateFilesInPlace() throws IOException {
+        when(compareService.locate(any(), any())).thenAnswer(invocation -> invocation.<Path>getArgument(0).resolve(invocation.<String>getArgument(1)));
+        when(compareService.effectiveOptions(any(), any(), any())).thenAnswer(invocation -> invocation.getArgument(2));
+    }
+
     @Test
     void testExport() throws Exception {
         DiffNode diffNode = DiffNode.builder()
@@ -46,7 +59,7 @@ class CompareControllerTest {
                 .isDirectory(false)
                 .build();
 
-        when(compareService.compareDirectories(any(), any())).thenReturn(diffNode);
+        when(compareService.compareDirectories(any(), any(), any())).thenReturn(diffNode);
         when(compareService.flatten(any())).thenReturn(List.of(
                 new CompareService.DiffEntry("root/dest.txt", false, DiffNode.DiffStatus.MOVED, "dest.txt", 0, 0, 0, 0.0, "source.txt")
         ));
@@ -67,7 +80,7 @@ class CompareControllerTest {
     @Test
     void testExportWithFilters() throws Exception {
         DiffNode diffNode = DiffNode.builder().name("root").build();
-        when(compareService.compareDirectories(any(), any())).thenReturn(diffNode);
+        when(compareService.compareDirectories(any(), any(), any())).thenReturn(diffNode);
         when(compareService.flatten(any())).thenReturn(List.of(
                 new CompareService.DiffEntry("file.java", false, DiffNode.DiffStatus.ADDED, "file.java", 10, 0, 0, 100.0, null),
                 new CompareService.DiffEntry("other.txt", false, DiffNode.DiffStatus.REMOVED, "other.txt", 0, 5, 0, 100.0, null)
@@ -96,10 +109,47 @@ class CompareControllerTest {
                 .andExpect(content().string(org.hamcrest.Matchers.not(org.hamcrest.Matchers.containsString("file.java"))));
     }
 
+    @Test
+    void testExportBindsCompareOptions() throws Exception {
+        DiffNode diffNode = DiffNode.builder().name("root").build();
+        when(compareService.compareDirectories(any(), any(), any())).thenReturn(diffNode);
+        when(compareService.flatten(any())).thenReturn(List.of());
+
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        mockMvc.perform(get("/export")
+                        .param("leftPath", "/tmp/a")
+                        .param("rightPath", "/tmp/b")
+                        .param("ignoreEol", "true")
+                        .param("ignoreComments", "true"))
+                .andExpect(status().isOk());
+
+        org.mockito.Mockito.verify(compareService).compareDirectories(any(), any(),
+                org.mockito.ArgumentMatchers.eq(new CompareOptions(true, false, false, true, false, false)));
+    }
+
+    @Test
+    void testExportBindsIgnoreProfile() throws Exception {
+        when(compareService.compareDirectories(any(), any(), any())).thenReturn(DiffNode.builder().name("root").build());
+        when(compareService.flatten(any())).thenReturn(List.of());
+
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        mockMvc.perform(get("/export")
+                        .param("leftPath", "/tmp/a")
+                        .param("rightPath", "/tmp/b")
+                        .param("globalIgnoreFile", "false")
+                        .param("repositoryIgnoreFiles", "true")
+                        .param("ignorePatterns", "*.log, generated/"))
+                .andExpect(status().isOk());
+
+        org.mockito.Mockito.verify(compareService).compareDirectories(any(), any(),
+                org.mockito.ArgumentMatchers.eq(new CompareOptions(false, false, false, false, false, false,
+                        new IgnoreProfile(false, true, "*.log, generated/"))));
+    }
+
     @Test
     void testIndexWithoutParams() throws IOException {
         Model model = new ConcurrentModel();
-        String view = compareController.index(null, null, "tree", model);
+        String view = compareController.index(null, null, "tree", CompareOptions.DEFAULT, model);
         
         assertEquals("index", view);
         assertEquals("", model.getAttribute("leftPath"));
@@ -114,10 +164,10 @@ class CompareControllerTest {
                 .status(DiffNode.DiffStatus.IDENTICAL)
                 .build();
         
-        when(compareService.compareDirectories(any(Path.class), any(Path.class))).thenReturn(diffNode);
+        when(compareService.compareDirectories(any(Path.class), any(Path.class), any(CompareOptions.class))).thenReturn(diffNode);
 
         Model model = new ConcurrentModel();
-        String view = compareController.index("/tmp/a", "/tmp/b", "tree", model);
+        String view = compareController.index("/tmp/a", "/tmp/b", "tree", CompareOptions.DEFAULT, model);
         
         assertEquals("index", view);
         assertEquals("/tmp/a", model.getAttribute("leftPath"));
@@ -125,6 +175,24 @@ class CompareControllerTest {
         assertEquals(diffNode, model.getAttribute("diffResult"));
     }
 
+    @Test
+    void testIndexTellsWhenSnapshotOptionsApply() throws Exception {
+        DiffNode diffNode = DiffNode.builder().name("root").isDirectory(true).status(DiffNode.DiffStatus.IDENTICAL).build();
+        CompareOptions captured = new CompareOptions(true, false, false, false, false, false);
+        when(compareService.compareDirectories(any(Path.class), any(Path.class), any(CompareOptions.class))).thenReturn(diffNode);
+        when(compareService.effectiveOptions(any(), any(), any())).thenReturn(captured);
+
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        mockMvc.perform(get("/").param("leftPath", "/tmp/app.jcm").param("rightPath", "/tmp/b").param("ignoreWhitespace", "true"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(org.hamcrest.Matchers.containsString("captured with, ignoring line endings,")));
+
+        when(compareService.effectiveOptions(any(), any(), any()))
+                .thenThrow(new IllegalArgumentException("The snapshots were captured with different options"));
+        mockMvc.perform(get("/").param("leftPath", "/tmp/a.jcm").param("rightPath", "/tmp/b.jcm"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void testIndexWithTableView() throws IOException {
         DiffNode diffNode = DiffNode.builder()
@@ -132,27 +200,98 @@ class CompareControllerTest {
                 .status(DiffNode.DiffStatus.IDENTICAL)
                 .build();
         
-        when(compareService.compareDirectories(any(Path.class), any(Path.class))).thenReturn(diffNode);
+        when(compareService.compareDirectories(any(Path.class), any(Path.class), any(CompareOptions.class))).thenReturn(diffNode);
 
         Model model = new ConcurrentModel();
-        String view = compareController.index("/tmp/a", "/tmp/b", "table", model);
+        String view = compareController.index("/tmp/a", "/tmp/b", "table", CompareOptions.DEFAULT, model);
         
         assertEquals("index", view);
         assertEquals("table", model.getAttribute("viewType"));
         assertNotNull(model.getAttribute("tableResult"));
     }
 
+    @Test
+    void testSavedResultReopensById() throws Exception {
+        DiffNode diffNode = DiffNode.builder()
+                .name("root")
+                .isDirectory(true)
+                .status(DiffNode.DiffStatus.MODIFIED)
+                .children(List.of(DiffNode.builder().name("changed.txt").status(DiffNode.DiffStatus.MODIFIED).added(3).build()))
+                .build();
+        when(compareService.compareDirectories(any(Path.class), any(Path.class), any(CompareOptions.class))).thenReturn(diffNode);
+
+        Model model = new ConcurrentModel();
+        CompareOptions options = new CompareOptions(true, false, false, false, false, false);
+        compareController.index("/tmp/a", "/tmp/b", "tree", options, model);
+        String resultId = (String) model.getAttribute("resultId");
+        assertNotNull(resultId);
+
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        mockMvc.perform(get("/results/" + resultId))
+                .andExpect(status().isOk())
+                .andExpect(model().attribute("leftPath", "/tmp/a"))
+                .andExpect(model().attribute("compareOptions", options))
+                .andExpect(content().string(org.hamcrest.Matchers.containsString("changed.txt")));
+        mockMvc.perform(get("/api/results/" + resultId + "/children"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].relativePath").value("changed.txt"))
+                .andExpect(jsonPath("$[0].added").value(3));
+        mockMvc.perform(get("/results/0000000000000000"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/results/" + resultId + "/children").param("path", "missing"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void testSavedResultIsFilteredOnTheServer() throws Exception {
+        DiffNode diffNode = DiffNode.builder().name("root").isDirectory(true).status(DiffNode.DiffStatus.MODIFIED).build();
+        when(compareService.compareDirectories(any(Path.class), any(Path.class), any(CompareOptions.class))).thenReturn(diffNode);
+        when(compareService.flatten(any())).thenReturn(List.of(
+                new CompareService.DiffEntry("root/A.java", false, DiffNode.DiffStatus.ADDED, "A.java", 10, 0, 0, 100.0, null),
+                new CompareService.DiffEntry("root/b.txt", false, DiffNode.DiffStatus.MODIFIED, "b.txt", 1, 1, 0, 20.0, null),
+                new CompareService.DiffEntry("root/c.xml", false, DiffNode.DiffStatus.MODIFIED, "c.xml", 0, 0, 2, 60.0, null)));
+        Model model = new ConcurrentModel();
+        compareController.index("/tmp/a", "/tmp/b", "table", CompareOptions.DEFAULT, model);
+        String resultId = (String) model.getAttribute("resultId");
+        assertEquals(3, model.getAttribute("matchingRows"));
+
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        mockMvc.perform(get("/api/results/" + resultId + "/entries").param("status", "modified").param("minPercentage", "50"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.total").value(1))
+                .andExpect(jsonPath("$.entries[0].relativePath").value("c.xml"));
+        mockMvc.perform(get("/results/" + resultId).param("viewType", "table").param("type", "java,xml").param("search", "A"))
+                .andExpect(status().isOk())
+                .andExpect(model().attribute("matchingRows", 1))
+                .andExpect(content().string(org.hamcrest.Matchers.containsString("root/A.java")))
+                .andExpect(content().string(org.hamcrest.Matchers.not(org.hamcrest.Matchers.containsString("root/c.xml"))));
+        mockMvc.perform(get("/export").param("resultId", resultId).param("ext", "txt"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(org.hamcrest.Matchers.containsString("root/b.txt")))
+                .andExpect(content().string(org.hamcrest.Matchers.not(org.hamcrest.Matchers.containsString("root/A.java"))));
+        mockMvc.perform(get("/api/results/" + resultId + "/entries").param("status", "bogus"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testPagesAreRenderedByTheBinaryContentView() {
+        assertInstanceOf(BinaryContentJteViewResolver.class,
+                webApplicationContext.getBean(gg.jte.springframework.boot.autoconfigure.JteViewResolver.class));
+    }
+
     @Test
     void testLs() throws IOException {
-        var items = compareController.ls("");
-        assertNotNull(items);
+        var listing = compareController.ls("", "", null, 200);
+        assertNotNull(listing.items());
+        assertEquals(Path.of(System.getProperty("user.home")).toAbsolutePath().toString(), listing.path());
         // Should contain home directory items
     }
 
     @Test
     void testLsWithNonExistentPath() throws IOException {
-        var items = compareController.ls("/non-existent-path-12345");
-        assertTrue(items.isEmpty());
+        var listing = compareController.ls("/non-existent-path-12345", "", null, 200);
+        assertTrue(listing.items().isEmpty());
+        assertNull(listing.nextCursor());
     }
 
     @Test
@@ -168,23 +307,164 @@ class CompareControllerTest {
             return name.equals("target") || name.equals(".git");
         });
 
-        var items = compareController.ls(tempDir.toString());
+        var items = compareController.ls(tempDir.toString(), "", null, 200).items();
         assertEquals(1, items.size());
         assertEquals("src", items.get(0).name());
     }
 
+    @Test
+    void testLsPagesWithCursorAndPrefix(@TempDir Path tempDir) throws Exception {
+        for (String name : List.of("alpha", "beta", "bravo", "charlie", "delta")) {
+            Files.createDirectories(tempDir.resolve(name));
+        }
+        Files.writeString(tempDir.resolve("banner.txt"), "not a directory");
+
+        var first = compareController.ls(tempDir.toString(), "", null, 2);
+        assertEquals(List.of("alpha", "beta"), first.items().stream().map(CompareController.FileItem::name).toList());
+        assertNotNull(first.nextCursor());
+
+        var second = compareController.ls(tempDir.toString(), "", first.nextCursor(), 2);
+        assertEquals(List.of("bravo", "charlie"), second.items().stream().map(CompareController.FileItem::name).toList());
+
+        var last = compareController.ls(tempDir.toString(), "", second.nextCursor(), 2);
+        assertEquals(List.of("delta"), last.items().stream().map(CompareController.FileItem::name).toList());
+        assertNull(last.nextCursor());
+
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        mockMvc.perform(get("/api/ls").param("path", tempDir.toString()).param("prefix", "B"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(2))
+                .andExpect(jsonPath("$.items[0].name").value("beta"))
+                .andExpect(jsonPath("$.items[1].name").value("bravo"))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+    }
+
+    @Test
+    void testLsListsManifestFiles(@TempDir Path tempDir) throws Exception {
+        Files.createDirectories(tempDir.resolve("project"));
+        Files.writeString(tempDir.resolve("project.jcm"), "snapshot");
+        Files.writeString(tempDir.resolve("readme.txt"), "text");
+
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        mockMvc.perform(get("/api/ls").param("path", tempDir.toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(2))
+                .andExpect(jsonPath("$.items[0].name").value("project"))
+                .andExpect(jsonPath("$.items[0].isDirectory").value(true))
+                .andExpect(jsonPath("$.items[1].name").value("project.jcm"))
+                .andExpect(jsonPath("$.items[1].isDirectory").value(false));
+    }
+
+    @Test
+    void testManifestDownload(@TempDir Path tempDir) throws Exception {
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        mockMvc.perform(get("/manifest").param("path", tempDir.toString()).param("lineHashes", "true"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"" + tempDir.getFileName() + ".jcm\""));
+        org.mockito.Mockito.verify(compareService).writeManifest(org.mockito.ArgumentMatchers.eq(tempDir), any(),
+                org.mockito.ArgumentMatchers.eq(CompareOptions.DEFAULT), org.mockito.ArgumentMatchers.eq(true));
+
+        mockMvc.perform(get("/manifest").param("path", tempDir.resolve("missing").toString()))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testLsSeesNewDirectoriesAfterModification(@TempDir Path tempDir) throws IOException {
+        Files.createDirectories(tempDir.resolve("one"));
+        assertEquals(1, compareController.ls(tempDir.toString(), "", null, 200).items().size());
+
+        Files.createDirectories(tempDir.resolve("two"));
+        Files.setLastModifiedTime(tempDir, java.nio.file.attribute.FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+        assertEquals(2, compareController.ls(tempDir.toString(), "", null, 200).items().size());
+    }
+
     @Test
     void testFileDiff() throws IOException {
-        when(compareService.compareFiles(any(), any())).thenReturn(new CompareService.FileDiff(List.of(), 0, 0, 0, 0.0));
-        
+        when(compareService.hunkIndex(any(), any(), any()))
+                .thenReturn(HunkIndex.build("abc", new CompareService.FileDiff(List.of(), 0, 0, 0, 0.0)));
+
         Model model = new ConcurrentModel();
-        String view = compareController.fileDiff("/tmp/a", "/tmp/b", "file.java", null, model);
+        String view = compareController.fileDiff("/tmp/a", "/tmp/b", "file.java", null, CompareOptions.DEFAULT, model);
         
         assertEquals("fileDiff", view);
         assertEquals("/tmp/a", model.getAttribute("leftPath"));
         assertEquals("/tmp/b", model.getAttribute("rightPath"));
         assertEquals("file.java", model.getAttribute("relativePath"));
         assertEquals("file.java", model.getAttribute("fileName"));
-        assertNotNull(model.getAttribute("fileDiff"));
+        assertNotNull(model.getAttribute("hunkIndex"));
+    }
+
+    @Test
+    void testFileDiffShowsBinaryRanges() throws Exception {
+        BinaryDelta delta = new BinaryDelta(4096, 4100, 512, 8, 7, 516, List.of(new BinaryDelta.Range(0x400, 0x608)), 1);
+        when(compareService.hunkIndex(any(), any(), any()))
+                .thenReturn(HunkIndex.build("bin", new CompareService.FileDiff(List.of(), 0, 0, 0, delta.differencePercentage(), delta)));
+
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        mockMvc.perform(get("/diff").param("leftPath", "/tmp/a").param("rightPath", "/tmp/b").param("relativePath", "data.bin"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(org.hamcrest.Matchers.containsString("516 bytes changed")))
+                .andExpect(content().string(org.hamcrest.Matchers.containsString("0x00000400")))
+                .andExpect(content().string(org.hamcrest.Matchers.containsString("0x00000608")))
+                .andExpect(content().string(org.hamcrest.Matchers.not(org.hamcrest.Matchers.containsString("DIFF_ID"))));
+    }
+
+    @Test
+    void testDiffLinesPage() throws Exception {
+        List<CompareService.FileDiffLine> lines = List.of(
+                new CompareService.FileDiffLine("a", "a", CompareService.LineStatus.IDENTICAL),
+                new CompareService.FileDiffLine("b", "c", CompareService.LineStatus.MODIFIED),
+                new CompareService.FileDiffLine(null, "d", CompareService.LineStatus.ADDED));
+        when(compareService.findHunkIndex("abc"))
+                .thenReturn(HunkIndex.build("abc", new CompareService.FileDiff(lines, 1, 0, 1, 50.0)));
+
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        mockMvc.perform(get("/api/diff/abc/lines").param("from", "1").param("to", "10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].line").value(1))
+                .andExpect(jsonPath("$[0].status").value("MODIFIED"))
+                .andExpect(jsonPath("$[1].right").value("d"));
+
+        mockMvc.perform(get("/api/diff/missing/lines").param("from", "0").param("to", "10"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void testInlineDiff() throws Exception {
+        when(compareService.inlineDiffs(any(), any(), any(), org.mockito.ArgumentMatchers.anyInt(), org.mockito.ArgumentMatchers.anyInt()))
+                .thenReturn(List.of(new IntraLineDiffer.LineDiff(4, List.of(new IntraLineDiffer.Segment("a", true)), List.of(new IntraLineDiffer.Segment("b", true)))));
+
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        mockMvc.perform(get("/api/inline-diff")
+                        .param("leftPath", "/tmp/a")
+                        .param("rightPath", "/tmp/b")
+                        .param("relativePath", "file.java")
+                        .param("from", "4")
+                        .param("to", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].line").value(4))
+                .andExpect(jsonPath("$[0].right[0].text").value("b"))
+                .andExpect(jsonPath("$[0].right[0].changed").value(true));
+    }
+
+    @Test
+    void testQuickEstimate(@TempDir Path tempDir) throws Exception {
+        when(compareService.estimateDirectories(any(), any(), any(), org.mockito.ArgumentMatchers.eq(384), any()))
+                .thenReturn(new DiffEstimate(3, 1, 2, 1000, 40, 384, 57, new DiffEstimate.Range(170, 140, 204), 0.95, 812));
+
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        mockMvc.perform(get("/api/estimate")
+                        .param("leftPath", tempDir.toString())
+                        .param("rightPath", tempDir.toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.common").value(1000))
+                .andExpect(jsonPath("$.modified.estimate").value(170))
+                .andExpect(jsonPath("$.modified.upper").value(204));
+
+        mockMvc.perform(get("/api/estimate")
+                        .param("leftPath", tempDir.resolve("missing").toString())
+                        .param("rightPath", tempDir.toString()))
+                .andExpect(status().isBadRequest());
     }
 }
@@ -0,0 +1,76 @@
+package one.dastec.jcompare.controller;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ComparisonAdmissionTest {
+
+    private static MockHttpServletRequest comparison() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/export");
+        request.setServletPath("/export");
+        return request;
+    }
+
+    @Test
+    void testQueuesThenRejectsWith429() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ComparisonAdmission admission = new ComparisonAdmission(1, 1, Duration.ofSeconds(10), registry);
+
+        MockHttpServletRequest running = comparison();
+        assertTrue(admission.preHandle(running, new MockHttpServletResponse(), null));
+        assertEquals(1, admission.active());
+
+        MockHttpServletRequest waiting = comparison();
+        CompletableFuture<Boolean> admitted = CompletableFuture.supplyAsync(() -> {
+            try {
+                return admission.preHandle(waiting, new MockHttpServletResponse(), null);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        while (admission.queued() == 0) {
+            Thread.onSpinWait();
+        }
+
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        assertFalse(admission.preHandle(comparison(), rejected, null));
+        assertEquals(429, rejected.getStatus());
+        assertEquals("10", rejected.getHeader("Retry-After"));
+
+        admission.afterCompletion(running, new MockHttpServletResponse(), null, null);
+        assertTrue(admitted.get(5, TimeUnit.SECONDS));
+        admission.afterCompletion(waiting, new MockHttpServletResponse(), null, null);
+        assertEquals(0, admission.active());
+        assertEquals(1.0, registry.get("jcompare.admission.rejected").counter().count());
+    }
+
+    @Test
+    void testTimesOutInQueue() throws Exception {
+        ComparisonAdmission admission = new ComparisonAdmission(1, 4, Duration.ofMillis(50), new SimpleMeterRegistry());
+        assertTrue(admission.preHandle(comparison(), new MockHttpServletResponse(), null));
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertFalse(admission.preHandle(comparison(), response, null));
+        assertEquals(429, response.getStatus());
+        assertEquals(0, admission.queued());
+    }
+
+    @Test
+    void testFormIsNotAdmissionControlled() throws Exception {
+        ComparisonAdmission admission = new ComparisonAdmission(1, 0, Duration.ZERO, new SimpleMeterRegistry());
+        assertTrue(admission.preHandle(comparison(), new MockHttpServletResponse(), null));
+
+        MockHttpServletRequest form = new MockHttpServletRequest("GET", "/");
+        form.setServletPath("/");
+        assertTrue(admission.preHandle(form, new MockHttpServletResponse(), null));
+        assertEquals(1, admission.active());
+    }
+}
@@ -0,0 +1,183 @@
+package one.dastec.jcompare.controller;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Starts the application on a random port and lets 1, 4, 16 and 64 simultaneous users hit the comparison page, a
+ * file diff, the Excel export and the directory listing. Prints throughput, median and p99 latency of the admitted
+ * (2xx) requests, and the number and p99 latency of those turned away with 429 by {@link ComparisonAdmission}, for each
+ * endpoint and level, and fails on any server error.
+ * Slow, so it only runs with {@code -Djcompare.loadtest=true}; add {@code -Dspring.threads.virtual.enabled=true} to
+ * measure with virtual request threads.
+ */
+@EnabledIfSystemProperty(named = "jcompare.loadtest", matches = "true")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ConcurrentLoadTest {
+
+    private static final int[] USERS = {1, 4, 16, 64};
+    private static final int REQUESTS_PER_USER = 10;
+    private static final int DIRECTORIES = 20;
+    private static final int FILES_PER_DIRECTORY = 50;
+
+    @TempDir
+    static Path workDirectory;
+
+    private static Path left;
+    private static Path right;
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    ComparisonAdmission admission;
+
+    @DynamicPropertySource
+    static void resultsDirectory(DynamicPropertyRegistry registry) {
+        registry.add("jcompare.results.dir", () -> workDirectory.resolve("results").toString());
+    }
+
+    @BeforeAll
+    static void createTrees() throws IOException {
+        left = workDirectory.resolve("left");
+        right = workDirectory.resolve("right");
+        for (int d = 0; d < DIRECTORIES; d++) {
+            Files.createDirectories(left.resolve("dir" + d));
+            Files.createDirectories(right.resolve("dir" + d));
+            for (int f = 0; f < FILES_PER_DIRECTORY; f++) {
+                StringBuilder content = new StringBuilder();
+                for (int line = 0; line < 200; line++) {
+                    content.append("line ").append(line).append(" of file ").append(f).append('\n');
+                }
+                Files.writeString(left.resolve("dir" + d).resolve("file" + f + ".txt"), content);
+                if (f % 5 == 0) {
+                    content.insert(content.length() / 2, "changed in the right tree\n");
+                }
+                Files.writeString(right.resolve("dir" + d).resolve("file" + f + ".txt"), content);
+            }
+        }
+    }
+
+    private record Endpoint(String name, String pathAndQuery) {
+    }
+
+    private record Level(Endpoint endpoint, int users, long elapsedNanos, long[] admitted, long[] rejected,
+                         int serverErrors) {
+        static long percentile(long[] latencies, double p) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            return latencies[Math.min(latencies.length - 1, (int) Math.ceil(p * latencies.length) - 1)];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-8s %3d users  admitted %4d  %7.1f req/s   p50 %8.1f ms   p99 %8.1f ms   429 %4d  p99 %6.1f ms   5xx %d",
+                    endpoint.name(), users, admitted.length, admitted.length / (elapsedNanos / 1e9),
+                    percentile(admitted, 0.5) / 1e6, percentile(admitted, 0.99) / 1e6,
+                    rejected.length, percentile(rejected, 0.99) / 1e6, serverErrors);
+        }
+    }
+
+    private static String encode(Object value) {
+        return URLEncoder.encode(value.toString(), StandardCharsets.UTF_8);
+    }
+
+    private static List<Endpoint> endpoints() {
+        String paths = "leftPath=" + encode(left) + "&rightPath=" + encode(right);
+        return List.of(
+                new Endpoint("/", "/?" + paths + "&viewType=table"),
+                new Endpoint("/diff", "/diff?" + paths + "&relativePath=" + encode("dir3/file10.txt")),
+                new Endpoint("/export", "/export?" + paths),
+                new Endpoint("/api/ls", "/api/ls?path=" + encode(left)));
+    }
+
+    private Level run(HttpClient client, Endpoint endpoint, int users) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + endpoint.pathAndQuery()))
+                .timeout(Duration.ofMinutes(2)).build();
+        long[] latencies = new long[users * REQUESTS_PER_USER];
+        int[] statuses = new int[latencies.length];
+        long start = System.nanoTime();
+        try (ExecutorService clients = Executors.newFixedThreadPool(users)) {
+            List<Future<?>> running = new ArrayList<>();
+            for (int user = 0; user < users; user++) {
+                int first = user * REQUESTS_PER_USER;
+                running.add(clients.submit(() -> {
+                    for (int i = first; i < first + REQUESTS_PER_USER; i++) {
+                        long sent = System.nanoTime();
+                        statuses[i] = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                        latencies[i] = System.nanoTime() - sent;
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : running) {
+                future.get();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        // A 429 comes back without running the comparison, so mixing its latency in would hide how long admitted ones took
+        long[] admitted = latencies(latencies, statuses, status -> status >= 200 && status < 300);
+        long[] rejected = latencies(latencies, statuses, status -> status == 429);
+        int serverErrors = (int) Arrays.stream(statuses).filter(status -> status >= 500).count();
+        return new Level(endpoint, users, elapsed, admitted, rejected, serverErrors);
+    }
+
+    private static long[] latencies(long[] latencies, int[] statuses, IntPredicate status) {
+        return IntStream.range(0, latencies.length).filter(i -> status.test(statuses[i])).mapToLong(i -> latencies[i]).sorted().toArray();
+    }
+
+    @Test
+    void increasingConcurrency() throws Exception {
+        System.out.println("Virtual threads: " + System.getProperty("spring.threads.virtual.enabled", "false"));
+        List<Level> levels = new ArrayList<>();
+        try (HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build()) {
+            for (Endpoint endpoint : endpoints()) {
+                run(client, endpoint, 1); // Warm up
+                for (int users : USERS) {
+                    Level level = run(client, endpoint, users);
+                    System.out.println(level);
+                    levels.add(level);
+                }
+            }
+        }
+
+        for (Level level : levels) {
+            assertEquals(0, level.serverErrors(), level.toString());
+            assertEquals(level.users() * REQUESTS_PER_USER, level.admitted().length + level.rejected().length, level.toString());
+            if (level.endpoint().name().equals("/api/ls")) {
+                assertEquals(0, level.rejected().length, "Listing directories is never held back");
+            }
+        }
+        assertEquals(0, admission.active());
+        assertEquals(0, admission.queued());
+    }
+}
@@ -0,0 +1,269 @@
+package one.dastec.jcompare.controller;
+
+import gg.jte.ContentType;
+import gg.jte.TemplateEngine;
+import gg.jte.output.StringOutput;
+import gg.jte.resolve.DirectoryCodeResolver;
+import gg.jte.springframework.boot.autoconfigure.JteView;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import one.dastec.jcompare.model.CompareOptions;
+import one.dastec.jcompare.model.DiffNode;
+import one.dastec.jcompare.model.DiffTree;
+import one.dastec.jcompare.service.ResultIndex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.view.AbstractTemplateView;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Renders the tree view of a 100k-node result through the jte starter's {@code JteView} and through
+ * {@link BinaryContentJteViewResolver.BinaryContentJteView}, with runtime-compiled and precompiled templates, into a
+ * response that buffers 8 KB like the servlet container does. Prints time to first byte, total time, allocation and
+ * peak heap for each. Slow, so it only runs with {@code -Djcompare.loadtest=true}.
+ */
+@EnabledIfSystemProperty(named = "jcompare.loadtest", matches = "true")
+class TemplateRenderingLoadTest {
+
+    private static final int DIRECTORIES = 100;
+    private static final int FILES_PER_DIRECTORY = 1000;
+    private static final int ROUNDS = 5;
+    private static final int RESPONSE_BUFFER_SIZE = 8192;
+
+    @TempDir
+    Path classDirectory;
+
+    private static Map<String, Object> model(DiffNode root) {
+        Map<String, Object> model = new HashMap<>();
+        model.put("leftPath", "/work/left");
+        model.put("rightPath", "/work/right");
+        model.put("viewType", "tree");
+        model.put("compareOptions", CompareOptions.DEFAULT);
+        model.put("diffResult", root);
+        model.put("tableResult", null);
+        model.put("resultId", "0123456789abcdef");
+        model.put("resultQuery", ResultIndex.Query.ALL);
+        model.put("matchingRows", 0);
+        return model;
+    }
+
+    private static DiffNode largeTree() {
+        DiffTree tree = new DiffTree("project", true);
+        DiffNode.DiffStatus[] statuses = DiffNode.DiffStatus.values();
+        for (int d = 0; d < DIRECTORIES; d++) {
+            int directory = tree.add(0, "module-" + d, true);
+            for (int f = 0; f < FILES_PER_DIRECTORY; f++) {
+                int file = tree.add(directory, "Source" + f + ".java", false);
+                tree.setStatus(file, statuses[f % statuses.length]);
+            }
+        }
+        return tree.root();
+    }
+
+    /**
+     * Counts bytes and remembers when the first ones arrived, like a client would see them.
+     */
+    private static final class TimingSink extends OutputStream {
+        private final long start = System.nanoTime();
+        private long firstByte = -1;
+        private long bytes;
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (firstByte < 0) {
+                firstByte = System.nanoTime() - start;
+            }
+            bytes += len;
+        }
+    }
+
+    /**
+     * A response whose writer and output stream share one 8 KB buffer that goes to {@code sink} whenever it fills,
+     * as the servlet container's response buffer does.
+     */
+    private static final class ContainerResponse extends MockHttpServletResponse {
+        private final BufferedOutputStream buffer;
+        private final ServletOutputStream stream;
+        private PrintWriter writer;
+
+        ContainerResponse(OutputStream sink) {
+            this.buffer = new BufferedOutputStream(sink, RESPONSE_BUFFER_SIZE);
+            this.stream = new ServletOutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    buffer.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    buffer.write(b, off, len);
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setWriteListener(WriteListener listener) {
+                }
+            };
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return stream;
+        }
+
+        @Override
+        public PrintWriter getWriter() {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(buffer, StandardCharsets.UTF_8));
+            }
+            return writer;
+        }
+
+        void complete() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            buffer.flush();
+        }
+    }
+
+    private record Measurement(String name, long firstByteNanos, long totalNanos, long allocatedBytes, long peakHeapBytes,
+                               long outputBytes) {
+        @Override
+        public String toString() {
+            return String.format("%-40s first byte %6.1f ms   total %7.1f ms   allocated %7.1f MB   peak heap %6.1f MB   (%d bytes)",
+                    name, firstByteNanos / 1e6, totalNanos / 1e6, allocatedBytes / 1e6, peakHeapBytes / 1e6, outputBytes);
+        }
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream().filter(pool -> pool.getType() == MemoryType.HEAP).toList();
+    }
+
+    /**
+     * Collects garbage and restarts the peak of each heap pool.
+     *
+     * @return the heap in use afterwards
+     */
+    private static long resetHeap() {
+        System.gc();
+        long used = 0;
+        for (MemoryPoolMXBean pool : heapPools()) {
+            pool.resetPeakUsage();
+            used += pool.getUsage().getUsed();
+        }
+        return used;
+    }
+
+    private static long peakHeap() {
+        return heapPools().stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+    }
+
+    private static AbstractTemplateView view(AbstractTemplateView view) {
+        view.setUrl("index.jte");
+        // Nothing in the page uses the macro helpers, which would need a servlet context
+        view.setExposeSpringMacroHelpers(false);
+        return view;
+    }
+
+    private static Measurement render(String name, AbstractTemplateView view, Map<String, Object> model, OutputStream copy) {
+        long heap = resetHeap();
+        long allocated = allocatedBytes();
+        TimingSink sink = new TimingSink();
+        ContainerResponse response = new ContainerResponse(copy != null ? copy : sink);
+        try {
+            view.render(model, new MockHttpServletRequest(), response);
+            response.complete();
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+        return new Measurement(name, sink.firstByte, System.nanoTime() - sink.start, allocatedBytes() - allocated,
+                peakHeap() - heap, sink.bytes);
+    }
+
+    private static Measurement best(String name, AbstractTemplateView view, Map<String, Object> model) {
+        Measurement best = null;
+        for (int i = 0; i < ROUNDS; i++) {
+            Measurement measurement = render(name, view, model, null);
+            if (best == null || measurement.totalNanos() < best.totalNanos()) {
+                best = measurement;
+            }
+        }
+        return best;
+    }
+
+    @Test
+    void renderLargeTree() {
+        Map<String, Object> model = model(largeTree());
+
+        long start = System.nanoTime();
+        TemplateEngine runtime = TemplateEngine.create(new DirectoryCodeResolver(Path.of("src/main/jte")), classDirectory, ContentType.Html);
+        runtime.render("index.jte", model, new StringOutput());
+        long runtimeFirstRender = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        TemplateEngine precompiled = TemplateEngine.createPrecompiled(ContentType.Html);
+        precompiled.render("index.jte", model, new StringOutput());
+        long precompiledFirstRender = System.nanoTime() - start;
+
+        Function<TemplateEngine, AbstractTemplateView> stock = engine -> view(new JteView(engine));
+        Function<TemplateEngine, AbstractTemplateView> binary = engine -> view(new BinaryContentJteViewResolver.BinaryContentJteView(engine));
+        Measurement runtimeStock = best("runtime-compiled, JteView", stock.apply(runtime), model);
+        Measurement runtimeBinary = best("runtime-compiled, BinaryContentJteView", binary.apply(runtime), model);
+        Measurement precompiledStock = best("precompiled, JteView", stock.apply(precompiled), model);
+        Measurement precompiledBinary = best("precompiled, BinaryContentJteView", binary.apply(precompiled), model);
+
+        System.out.printf("First render: runtime-compiled %.1f ms, precompiled %.1f ms%n", runtimeFirstRender / 1e6, precompiledFirstRender / 1e6);
+        System.out.println(runtimeStock);
+        System.out.println(runtimeBinary);
+        System.out.println(precompiledStock);
+        System.out.println(precompiledBinary);
+
+        assertEquals(precompiledStock.outputBytes(), precompiledBinary.outputBytes());
+        assertTrue(precompiledBinary.allocatedBytes() < precompiledStock.allocatedBytes());
+    }
+
+    @Test
+    void binaryContentViewWritesTheSamePage() {
+        Map<String, Object> model = model(largeTree());
+        TemplateEngine precompiled = TemplateEngine.createPrecompiled(ContentType.Html);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        render("JteView", view(new JteView(precompiled)), model, expected);
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        render("BinaryContentJteView", view(new BinaryContentJteViewResolver.BinaryContentJteView(precompiled)), model, actual);
+        assertEquals(expected.toString(StandardCharsets.UTF_8), actual.toString(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,50 @@
+package one.dastec.jcompare.controller;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Utf8TemplateOutputTest {
+
+    @Test
+    void testEncodesUtf8AcrossChunks() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Utf8TemplateOutput output = new Utf8TemplateOutput(bytes, 16);
+        String text = "größe → 𝄞 naïve" + "x".repeat(40) + "\uD800 end";
+        output.writeContent(text);
+        output.writeBinaryContent("<static>".getBytes(StandardCharsets.UTF_8));
+        output.writeBinaryContent("a binary part longer than one chunk".getBytes(StandardCharsets.UTF_8));
+        output.writeContent("abcdef", 2, 4);
+        output.finish();
+
+        assertEquals(text.replace('\uD800', '?') + "<static>a binary part longer than one chunkcd", bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testSendsFullChunksBeforeFinishing() {
+        List<Integer> chunks = new ArrayList<>();
+        OutputStream sink = new OutputStream() {
+            @Override
+            public void write(int b) {
+                chunks.add(1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                chunks.add(len);
+            }
+        };
+        Utf8TemplateOutput output = new Utf8TemplateOutput(sink, 1024);
+        output.writeContent("a".repeat(3000));
+        assertFalse(chunks.isEmpty(), "output starts before rendering ends");
+        output.finish();
+        assertEquals(3000, chunks.stream().mapToInt(Integer::intValue).sum());
+        assertTrue(chunks.stream().allMatch(length -> length <= 1024));
+    }
+}
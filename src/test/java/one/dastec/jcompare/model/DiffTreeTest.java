@@ -0,0 +1,63 @@
+package one.dastec.jcompare.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiffTreeTest {
+
+    @Test
+    void testPathsAreRebuiltFromInternedNames() {
+        DiffTree tree = new DiffTree("root", true);
+        int src = tree.add(0, "src", true);
+        int main = tree.add(src, "main", true);
+        int file = tree.add(main, "App.java", false);
+        int test = tree.add(src, "test", true);
+        int otherMain = tree.add(test, "main", true);
+
+        assertEquals("", tree.relativePath(0));
+        assertEquals("src/main/App.java", tree.relativePath(file));
+        assertEquals("src/test/main", tree.relativePath(otherMain));
+        assertSame(tree.name(main), tree.name(otherMain));
+        assertEquals(List.of(tree.node(main), tree.node(test)), tree.node(src).getChildren());
+    }
+
+    @Test
+    void testViewsWriteThroughAndDetachKeepsThePath() {
+        DiffTree tree = new DiffTree("root", true);
+        int a = tree.add(0, "a.txt", false);
+        int b = tree.add(0, "b.txt", false);
+        int c = tree.add(0, "c.txt", false);
+
+        DiffNode view = tree.node(c);
+        view.setStatus(DiffNode.DiffStatus.MOVED_MODIFIED);
+        view.setSourcePath("b.txt");
+        view.setAdded(3);
+        tree.detach(b);
+        tree.detach(b);
+
+        assertEquals(DiffNode.DiffStatus.MOVED_MODIFIED, tree.status(c));
+        assertEquals(3, tree.node(c).getAdded());
+        assertEquals("b.txt", tree.node(c).getSourcePath());
+        assertEquals(List.of(tree.node(a), tree.node(c)), tree.root().getChildren());
+        assertEquals("b.txt", tree.relativePath(b));
+        tree.detach(c);
+        tree.detach(a);
+        assertTrue(tree.root().getChildren().isEmpty());
+    }
+
+    @Test
+    void testBuilderCopiesChildrenIntoANewTree() {
+        DiffNode child = DiffNode.builder().name("file.txt").status(DiffNode.DiffStatus.ADDED).added(2).percentage(100.0).build();
+        DiffNode root = DiffNode.builder().name("root").isDirectory(true).relativePath("").children(List.of(child)).build();
+
+        DiffNode copy = root.getChildren().get(0);
+        assertNotSame(child.tree(), copy.tree());
+        assertEquals("file.txt", copy.getRelativePath());
+        assertEquals(DiffNode.DiffStatus.ADDED, copy.getStatus());
+        assertEquals(2, copy.getAdded());
+        assertEquals(DiffNode.DiffStatus.IDENTICAL, DiffNode.builder().name("x").build().getStatus());
+    }
+}
@@ -0,0 +1,85 @@
+package one.dastec.jcompare.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryDeltaTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private BinaryDelta delta(byte[] left, byte[] right) throws IOException {
+        Path leftFile = Files.write(tempDir.resolve("left.bin"), left);
+        Path rightFile = Files.write(tempDir.resolve("right.bin"), right);
+        return BinaryDelta.compute(BinaryDelta.signatures(leftFile), rightFile);
+    }
+
+    @Test
+    void testIdenticalFilesReuseEveryBlock() throws IOException {
+        byte[] data = randomBytes(100_000, 1);
+
+        BinaryDelta delta = delta(data, data);
+
+        assertEquals(0, delta.bytesChanged());
+        assertEquals(delta.blockCount(), delta.blocksReused());
+        assertEquals(100.0, delta.reusedPercentage());
+        assertEquals(0.0, delta.differencePercentage());
+        assertTrue(delta.ranges().isEmpty());
+    }
+
+    @Test
+    void testInsertionIsReportedAsOneRangeAndShiftedBlocksAreFound() throws IOException {
+        byte[] left = randomBytes(100_000, 2);
+        byte[] inserted = randomBytes(300, 3);
+        byte[] right = new byte[left.length + inserted.length];
+        System.arraycopy(left, 0, right, 0, 50_000);
+        System.arraycopy(inserted, 0, right, 50_000, inserted.length);
+        System.arraycopy(left, 50_000, right, 50_000 + inserted.length, 50_000);
+
+        BinaryDelta delta = delta(left, right);
+
+        assertEquals(1, delta.rangeCount());
+        BinaryDelta.Range range = delta.ranges().get(0);
+        assertTrue(range.from() <= 50_000 && range.to() >= 50_300, range.toString());
+        assertTrue(range.length() < 300 + 2 * delta.blockSize(), range.toString());
+        assertEquals(range.length(), delta.bytesChanged());
+        assertTrue(delta.reusedPercentage() > 95, String.valueOf(delta.reusedPercentage()));
+    }
+
+    @Test
+    void testChangedTailAndMissingLeft() throws IOException {
+        byte[] left = randomBytes(10_000, 4);
+        byte[] right = Arrays.copyOf(left, 10_000);
+        right[9_999] ^= 1;
+
+        BinaryDelta delta = delta(left, right);
+        assertEquals(List.of(new BinaryDelta.Range(delta.blockSize() * (long) (delta.blockCount() - 1), 10_000)), delta.ranges());
+
+        Path rightFile = tempDir.resolve("right.bin");
+        BinaryDelta added = BinaryDelta.compute(BinaryDelta.signatures(null), rightFile);
+        assertEquals(List.of(new BinaryDelta.Range(0, 10_000)), added.ranges());
+        assertEquals(100.0, added.differencePercentage());
+    }
+
+    @Test
+    void testBinaryDetection() throws IOException {
+        assertTrue(BinaryDelta.isBinary(Files.write(tempDir.resolve("a.bin"), new byte[]{1, 0, 2})));
+        assertFalse(BinaryDelta.isBinary(Files.writeString(tempDir.resolve("a.txt"), "text")));
+        assertFalse(BinaryDelta.isBinary(tempDir.resolve("missing")));
+    }
+}
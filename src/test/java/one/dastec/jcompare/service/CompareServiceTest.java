@@ -1,15 +1,32 @@
 package one.dastec.jcompare.service;
 
+import one.dastec.jcompare.model.CompareOptions;
+import one.dastec.jcompare.model.DiffEstimate;
 import one.dastec.jcompare.model.DiffNode;
+import one.dastec.jcompare.model.DiffTree;
+import one.dastec.jcompare.model.IgnoreProfile;
+import one.dastec.jcompare.model.StructureChange;
+import one.dastec.jcompare.model.StructureDiff;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 class CompareServiceTest {
 
@@ -364,6 +381,25 @@ class CompareServiceTest {
         assertTrue(entries.stream().anyMatch(e -> e.status() == DiffNode.DiffStatus.ADDED && e.relativePath().equals("com/fisglobal/bean/Application.java")));
     }
 
+    @Test
+    void testJavaPackageReadPastCommentsThatLookLikeDeclarations() throws IOException {
+        Path left = tempDir.resolve("left_header");
+        Path right = tempDir.resolve("right_header");
+        Files.createDirectories(left.resolve("a"));
+        Files.createDirectories(right.resolve("b"));
+        String header = "/*\n * Licence\n   class loading is described below\n */\n// record of changes\n/** interface notes; */\n";
+        Files.writeString(left.resolve("a/Application.java"), header + "package com.a;\npublic class Application {}");
+        Files.writeString(right.resolve("b/Application.java"), header + "package com.b;\npublic class Application {}");
+
+        List<CompareService.DiffEntry> entries = compareService.flatten(compareService.compareDirectories(left, right));
+
+        assertFalse(entries.stream().anyMatch(e -> e.status() == DiffNode.DiffStatus.MOVED), "Different packages behind a header");
+        assertEquals("com.a", CompareService.packageName(new java.io.StringReader(header + "package com . a ;")));
+        assertEquals("com.a", CompareService.packageName(new java.io.StringReader("@Deprecated\npackage com.a;")));
+        assertEquals("", CompareService.packageName(new java.io.StringReader(header + "import java.util.List;")));
+        assertEquals("", CompareService.packageName(new java.io.StringReader("public class Application {}")));
+    }
+
     @Test
     void testJavaMoveWithSamePackage() throws IOException {
         Path left = tempDir.resolve("left_same_pkg");
@@ -380,4 +416,557 @@ class CompareServiceTest {
         // They SHOULD be matched as MOVED because the package is the same
         assertTrue(entries.stream().anyMatch(e -> e.status() == DiffNode.DiffStatus.MOVED && e.relativePath().equals("src/main/com/fisglobal/base/Application.java")), "Should be matched as MOVED");
     }
+
+    @Test
+    void testMovePairingIsDeterministicAndEachSourceIsUsedOnce() throws IOException {
+        Path left = tempDir.resolve("left");
+        Path right = tempDir.resolve("right");
+        Files.createDirectories(left.resolve("a"));
+        Files.createDirectories(left.resolve("b"));
+        Files.createDirectories(right.resolve("c"));
+        Files.createDirectories(right.resolve("d"));
+        Files.createDirectories(right.resolve("e"));
+        Files.writeString(left.resolve("a/Util.java"), "/* header */\npackage x;\n\nclass Util {}\n");
+        Files.writeString(left.resolve("b/Util.java"), "package y;\nclass Util {}\n");
+        Files.writeString(right.resolve("c/Util.java"), "package y;\nclass Util {}\n");
+        Files.writeString(right.resolve("d/Util.java"), "package x;\n\nclass Util { int i; }\n");
+        Files.writeString(right.resolve("e/Util.java"), "package x;\nclass Util {}\n");
+        for (int i = 0; i < 20; i++) {
+            Files.createDirectories(left.resolve("old" + i));
+            Files.createDirectories(right.resolve("new" + i));
+            Files.writeString(left.resolve("old" + i + "/data" + i + ".txt"), "1\n2\n3\n");
+            Files.writeString(right.resolve("new" + i + "/data" + i + ".txt"), i % 2 == 0 ? "1\n2\n3\n" : "1\nX\n3\n4\n");
+        }
+
+        Map<String, CompareService.DiffEntry> entries = compareService.flatten(compareService.compareDirectories(left, right)).stream()
+                .filter(e -> !e.isDirectory())
+                .collect(Collectors.toMap(CompareService.DiffEntry::relativePath, e -> e));
+
+        assertEquals(DiffNode.DiffStatus.MOVED, entries.get("c/Util.java").status());
+        assertEquals("b/Util.java", entries.get("c/Util.java").sourcePath());
+        assertEquals(DiffNode.DiffStatus.MOVED_MODIFIED, entries.get("d/Util.java").status());
+        assertEquals("a/Util.java", entries.get("d/Util.java").sourcePath());
+        assertEquals(DiffNode.DiffStatus.ADDED, entries.get("e/Util.java").status());
+        for (int i = 0; i < 20; i++) {
+            CompareService.DiffEntry entry = entries.get("new" + i + "/data" + i + ".txt");
+            assertEquals("old" + i + "/data" + i + ".txt", entry.sourcePath());
+            if (i % 2 == 0) {
+                assertEquals(DiffNode.DiffStatus.MOVED, entry.status());
+            } else {
+                assertEquals(DiffNode.DiffStatus.MOVED_MODIFIED, entry.status());
+                assertEquals(1, entry.added());
+                assertEquals(1, entry.modified());
+            }
+        }
+        assertTrue(entries.values().stream().noneMatch(e -> e.status() == DiffNode.DiffStatus.REMOVED));
+    }
+
+    @Test
+    void testIgnoreEolTreatsCrLfAsIdentical() throws IOException {
+        Path left = tempDir.resolve("left_eol");
+        Path right = tempDir.resolve("right_eol");
+        Files.createDirectories(left);
+        Files.createDirectories(right);
+        Files.writeString(left.resolve("file.txt"), "line1\r\nline2\r\n");
+        Files.writeString(right.resolve("file.txt"), "line1\nline2");
+
+        assertEquals(DiffNode.DiffStatus.MODIFIED, compareService.compareDirectories(left, right).getStatus());
+
+        DiffNode result = compareService.compareDirectories(left, right, new CompareOptions(true, false, false, false, false, false));
+        assertEquals(DiffNode.DiffStatus.IDENTICAL, result.getStatus());
+    }
+
+    @Test
+    void testIgnoreWhitespaceAndBlankLines() throws IOException {
+        Path left = tempDir.resolve("left_ws");
+        Path right = tempDir.resolve("right_ws");
+        Files.createDirectories(left);
+        Files.createDirectories(right);
+        Files.writeString(left.resolve("App.java"), "class App {\n    int a  = 1;   \n}\n");
+        Files.writeString(right.resolve("App.java"), "class App {\n\n\tint a = 1;\n\n}\n");
+
+        assertEquals(DiffNode.DiffStatus.MODIFIED,
+                compareService.compareDirectories(left, right, new CompareOptions(false, true, false, false, false, false)).getStatus());
+        assertEquals(DiffNode.DiffStatus.IDENTICAL,
+                compareService.compareDirectories(left, right, new CompareOptions(false, true, true, false, false, false)).getStatus());
+    }
+
+    @Test
+    void testIgnoreComments() throws IOException {
+        Path left = tempDir.resolve("left_comments");
+        Path right = tempDir.resolve("right_comments");
+        Files.createDirectories(left);
+        Files.createDirectories(right);
+        Files.writeString(left.resolve("App.java"), "class App {\n    String s = \"// kept\";\n}\n");
+        Files.writeString(right.resolve("App.java"), "/**\n * Javadoc\n */\nclass App { // trailing\n    String s = \"// kept\";\n}\n");
+        Files.writeString(left.resolve("pom.xml"), "<project>\n</project>\n");
+        Files.writeString(right.resolve("pom.xml"), "<!-- header -->\n<project>\n</project>\n");
+
+        DiffNode result = compareService.compareDirectories(left, right, new CompareOptions(false, true, false, true, false, false));
+        assertEquals(DiffNode.DiffStatus.IDENTICAL, result.getStatus());
+    }
+
+    @Test
+    void testCompareFilesWithOptions() throws IOException {
+        Path left = tempDir.resolve("opts1.txt");
+        Path right = tempDir.resolve("opts2.txt");
+        Files.writeString(left, "a\n\nb  c\nd");
+        Files.writeString(right, "a\nb c\nx");
+
+        CompareService.FileDiff diff = compareService.compareFiles(left, right, new CompareOptions(false, true, true, false, false, false));
+
+        assertEquals(3, diff.lines().size());
+        assertEquals(CompareService.LineStatus.IDENTICAL, diff.lines().get(1).status());
+        assertEquals("b  c", diff.lines().get(1).left());
+        assertEquals(CompareService.LineStatus.MODIFIED, diff.lines().get(2).status());
+        assertEquals(1, diff.modified());
+    }
+
+    @Test
+    void testSemanticJavaTreatsMovedMethodAsIdentical() throws IOException {
+        Path left = tempDir.resolve("left_semantic");
+        Path right = tempDir.resolve("right_semantic");
+        Files.createDirectories(left);
+        Files.createDirectories(right);
+        Files.writeString(left.resolve("App.java"), "class App {\n  void a() {}\n  void b() {}\n}\n");
+        Files.writeString(right.resolve("App.java"), "class App {\n  void b() {}\n  void a() {}\n}\n");
+
+        assertEquals(DiffNode.DiffStatus.MODIFIED, compareService.compareDirectories(left, right).getStatus());
+        DiffNode result = compareService.compareDirectories(left, right, new CompareOptions(false, false, false, false, true, false));
+        assertEquals(DiffNode.DiffStatus.IDENTICAL, result.getStatus());
+        assertNotNull(compareService.compareStructure(left.resolve("App.java"), right.resolve("App.java"),
+                new CompareOptions(false, false, false, false, true, false)));
+        assertNull(compareService.compareStructure(left.resolve("App.java"), right.resolve("App.java"), CompareOptions.DEFAULT));
+    }
+
+    @Test
+    void testSemanticConfigIgnoresKeyOrderAndFormatting() throws IOException {
+        Path left = tempDir.resolve("left_config");
+        Path right = tempDir.resolve("right_config");
+        Files.createDirectories(left);
+        Files.createDirectories(right);
+        Files.writeString(left.resolve("app.json"), "{\"a\": 1, \"b\": {\"c\": \"x\"}}");
+        Files.writeString(right.resolve("app.json"), "{\n  \"b\": { \"c\": \"x\" },\n  \"a\": 1\n}\n");
+        Files.writeString(left.resolve("application.yml"), "spring:\n  datasource:\n    url: a\n");
+        Files.writeString(right.resolve("application.yml"), "spring:\n  datasource:\n    url: b\n");
+
+        CompareOptions options = new CompareOptions(false, false, false, false, false, true);
+        DiffNode result = compareService.compareDirectories(left, right, options);
+
+        DiffNode json = result.getChildren().stream().filter(n -> n.getName().equals("app.json")).findFirst().orElseThrow();
+        DiffNode yaml = result.getChildren().stream().filter(n -> n.getName().equals("application.yml")).findFirst().orElseThrow();
+        assertEquals(DiffNode.DiffStatus.IDENTICAL, json.getStatus());
+        assertEquals(DiffNode.DiffStatus.MODIFIED, yaml.getStatus());
+
+        StructureDiff diff = compareService.compareStructure(left.resolve("application.yml"), right.resolve("application.yml"), options);
+        assertEquals(List.of(new StructureChange("spring.datasource.url", "key", StructureChange.ChangeType.CHANGED, "a", "b")), diff.changes());
+    }
+
+    @Test
+    void testInlineDiffsOnlyForRequestedModifiedLines() throws IOException {
+        Path left = tempDir.resolve("inline1.txt");
+        Path right = tempDir.resolve("inline2.txt");
+        Files.writeString(left, "same\nvalue = 1\nsame\nother = a\n");
+        Files.writeString(right, "same\nvalue = 2\nsame\nother = b\n");
+
+        List<IntraLineDiffer.LineDiff> diffs = compareService.inlineDiffs(left, right, CompareOptions.DEFAULT, 0, 3);
+
+        assertEquals(1, diffs.size());
+        assertEquals(1, diffs.get(0).line());
+        assertTrue(diffs.get(0).right().contains(new IntraLineDiffer.Segment("2", true)));
+        assertTrue(compareService.inlineDiffs(left, null, CompareOptions.DEFAULT, 0, 3).isEmpty());
+    }
+
+    @Test
+    void testHunkIndexSplitsRunsAndIsCachedById() throws IOException {
+        Path left = tempDir.resolve("hunks1.txt");
+        Path right = tempDir.resolve("hunks2.txt");
+        Files.writeString(left, "a\nb\nc\nd\ne\n");
+        Files.writeString(right, "a\nB\nC\nd\ne\n");
+
+        HunkIndex index = compareService.hunkIndex(left, right, CompareOptions.DEFAULT);
+
+        assertEquals(List.of(new HunkIndex.Hunk(0, 1, false), new HunkIndex.Hunk(1, 3, true), new HunkIndex.Hunk(3, 5, false)), index.hunks());
+        assertEquals(5, index.lineCount());
+        assertEquals(List.of(new HunkIndex.LineRow(4, "e", "e", CompareService.LineStatus.IDENTICAL)), index.lines(4, 100));
+        assertSame(index, compareService.findHunkIndex(index.id()));
+        assertSame(index, compareService.hunkIndex(left, right, CompareOptions.DEFAULT));
+        assertNotEquals(index.id(), compareService.hunkIndex(left, right, new CompareOptions(false, true, false, false, false, false)).id());
+        assertNull(compareService.findHunkIndex("unknown"));
+    }
+
+    @Test
+    void testTreeStatisticsMatchFileDiffAndLineHashesAreSharedByContent() throws IOException {
+        Path left = tempDir.resolve("left");
+        Path right = tempDir.resolve("right");
+        Files.createDirectories(left);
+        Files.createDirectories(right.resolve("moved"));
+        String original = "a\n\nb\nc\nd\n";
+        String changed = "a\nB\n\n  c\nd\ne\n";
+        Files.writeString(left.resolve("file.txt"), original);
+        Files.writeString(right.resolve("file.txt"), changed);
+        Path copy = tempDir.resolve("copy.txt");
+        Files.writeString(copy, changed);
+        CompareOptions options = new CompareOptions(false, true, true, false, false, false);
+
+        DiffNode node = compareService.compareDirectories(left, right, options).getChildren().get(0);
+        CompareService.FileDiff fileDiff = compareService.compareFiles(left.resolve("file.txt"), right.resolve("file.txt"), options);
+
+        assertEquals(DiffNode.DiffStatus.MODIFIED, node.getStatus());
+        assertEquals(fileDiff.added(), node.getAdded());
+        assertEquals(fileDiff.removed(), node.getRemoved());
+        assertEquals(fileDiff.modified(), node.getModified());
+        assertEquals(fileDiff.percentage(), node.getPercentage());
+        assertEquals(List.of("a", "B", "  c", "d", "e"), fileDiff.lines().stream().map(CompareService.FileDiffLine::right).toList());
+        assertEquals(1, fileDiff.added());
+        assertEquals(1, fileDiff.modified());
+        assertSame(compareService.lineHashes(right.resolve("file.txt"), options), compareService.lineHashes(copy, options));
+    }
+
+    @Test
+    void testBinaryFilesGetBlockDeltaInsteadOfLineStatistics() throws IOException {
+        Path left = tempDir.resolve("left");
+        Path right = tempDir.resolve("right");
+        Files.createDirectories(left);
+        Files.createDirectories(right);
+        byte[] data = new byte[20_000];
+        new java.util.Random(7).nextBytes(data);
+        data[0] = 0;
+        Files.write(left.resolve("image.bin"), data);
+        data[10_000] ^= 1;
+        Files.write(right.resolve("image.bin"), data);
+
+        DiffNode node = compareService.compareDirectories(left, right).getChildren().get(0);
+        CompareService.FileDiff fileDiff = compareService.compareFiles(left.resolve("image.bin"), right.resolve("image.bin"));
+
+        assertEquals(DiffNode.DiffStatus.MODIFIED, node.getStatus());
+        assertEquals(0, node.getAdded() + node.getRemoved() + node.getModified());
+        assertTrue(node.getPercentage() > 0 && node.getPercentage() < 10, String.valueOf(node.getPercentage()));
+        assertTrue(fileDiff.lines().isEmpty());
+        assertNotNull(fileDiff.binary());
+        assertEquals(1, fileDiff.binary().rangeCount());
+        assertEquals(node.getPercentage(), fileDiff.percentage());
+    }
+
+    @Test
+    void testRepositoryIgnoreFilesAreAppliedHierarchically() throws IOException {
+        Path left = tempDir.resolve("repoLeft");
+        Path right = tempDir.resolve("repoRight");
+        for (Path root : List.of(left, right)) {
+            Files.createDirectories(root.resolve("module/out"));
+            Files.writeString(root.resolve(".gitignore"), "*.log\n");
+            Files.writeString(root.resolve("module/.gitignore"), "out/\n!keep.log\n");
+            Files.writeString(root.resolve("module/App.java"), "class App {}");
+        }
+        Files.writeString(left.resolve("debug.log"), "left");
+        Files.writeString(right.resolve("module/out/Generated.java"), "class Generated {}");
+        Files.writeString(right.resolve("module/keep.log"), "kept");
+
+        CompareOptions useRepositoryFiles = new CompareOptions(false, false, false, false, false, false,
+                new IgnoreProfile(true, true, ""));
+        List<CompareService.DiffEntry> entries = compareService.flatten(compareService.compareDirectories(left, right, useRepositoryFiles));
+        List<String> paths = entries.stream().map(CompareService.DiffEntry::path).toList();
+
+        assertFalse(paths.stream().anyMatch(path -> path.endsWith("debug.log")));
+        assertFalse(paths.stream().anyMatch(path -> path.contains("out")));
+        assertTrue(paths.stream().anyMatch(path -> path.endsWith("module/keep.log")));
+
+        List<String> withoutProfile = compareService.flatten(compareService.compareDirectories(left, right)).stream()
+                .map(CompareService.DiffEntry::path).toList();
+        assertTrue(withoutProfile.stream().anyMatch(path -> path.endsWith("debug.log")));
+    }
+
+    @Test
+    void testAdHocPatternsAndGlobalFileToggle() throws IOException {
+        Path left = tempDir.resolve("adHocLeft");
+        Path right = tempDir.resolve("adHocRight");
+        Files.createDirectories(left.resolve("target"));
+        Files.createDirectories(right.resolve("target"));
+        Files.writeString(left.resolve("notes.tmp"), "a");
+        Files.writeString(right.resolve("target/out.txt"), "b");
+
+        CompareOptions adHoc = new CompareOptions(false, false, false, false, false, false,
+                new IgnoreProfile(true, false, "*.tmp"));
+        DiffNode result = compareService.compareDirectories(left, right, adHoc);
+        assertEquals(DiffNode.DiffStatus.IDENTICAL, result.getStatus());
+        assertTrue(result.getChildren().isEmpty());
+
+        CompareOptions noGlobal = new CompareOptions(false, false, false, false, false, false,
+                new IgnoreProfile(false, false, "*.tmp"));
+        result = compareService.compareDirectories(left, right, noGlobal);
+        assertEquals(List.of("target"), result.getChildren().stream().map(DiffNode::getName).toList());
+    }
+
+    @Test
+    void testCompareLiveTreeAgainstManifest() throws IOException {
+        Path tree = tempDir.resolve("snapshot/app");
+        Files.createDirectories(tree.resolve("src/empty"));
+        Files.writeString(tree.resolve("src/Same.java"), "class Same {}\n");
+        Files.writeString(tree.resolve("src/Changed.java"), "line1\nline2\nline3\n");
+        Files.writeString(tree.resolve("gone.txt"), "bye\n");
+        Files.write(tree.resolve("data.bin"), new byte[] {1, 0, 2});
+
+        Path manifestFile = tempDir.resolve("app" + TreeManifest.EXTENSION);
+        try (var out = Files.newOutputStream(manifestFile)) {
+            compareService.writeManifest(tree, out, CompareOptions.DEFAULT, true);
+        }
+        TreeManifest manifest = TreeManifest.open(manifestFile);
+        assertEquals(7, manifest.entryCount());
+        assertEquals("app", manifest.name(0));
+        assertEquals(manifest.entryCount(), manifest.subtreeEnd(0));
+
+        // Change the live tree after the snapshot was taken
+        Files.writeString(tree.resolve("src/Changed.java"), "line1\nLINE2\nline3\nline4\n");
+        Files.delete(tree.resolve("gone.txt"));
+        Files.writeString(tree.resolve("new.txt"), "hello\n");
+
+        DiffNode result = compareService.compareDirectories(manifestFile, tree, CompareOptions.DEFAULT);
+        Map<String, CompareService.DiffEntry> byPath = compareService.flatten(result).stream()
+                .collect(Collectors.toMap(CompareService.DiffEntry::relativePath, entry -> entry));
+
+        assertEquals("app", result.getName());
+        assertEquals(DiffNode.DiffStatus.MODIFIED, result.getStatus());
+        assertEquals(DiffNode.DiffStatus.IDENTICAL, byPath.get("src/Same.java").status());
+        assertEquals(DiffNode.DiffStatus.IDENTICAL, byPath.get("src/empty").status());
+        assertEquals(DiffNode.DiffStatus.IDENTICAL, byPath.get("data.bin").status());
+        assertEquals(DiffNode.DiffStatus.REMOVED, byPath.get("gone.txt").status());
+        assertEquals(DiffNode.DiffStatus.ADDED, byPath.get("new.txt").status());
+        CompareService.DiffEntry changed = byPath.get("src/Changed.java");
+        assertEquals(DiffNode.DiffStatus.MODIFIED, changed.status());
+        assertEquals(1, changed.added());
+        assertEquals(1, changed.modified());
+        assertEquals(1, byPath.get("gone.txt").removed());
+
+        // The manifest can be either side
+        DiffNode reversed = compareService.compareDirectories(tree, manifestFile, CompareOptions.DEFAULT);
+        assertEquals(DiffNode.DiffStatus.ADDED, compareService.flatten(reversed).stream()
+                .filter(entry -> entry.relativePath().equals("gone.txt")).findFirst().orElseThrow().status());
+    }
+
+    @Test
+    void testManifestWithoutLineHashesReportsModifiedFilesOnly() throws IOException {
+        Path tree = tempDir.resolve("nolines");
+        Files.createDirectories(tree);
+        Files.writeString(tree.resolve("a.txt"), "one\n");
+
+        Path manifestFile = tempDir.resolve("nolines" + TreeManifest.EXTENSION);
+        try (var out = Files.newOutputStream(manifestFile)) {
+            compareService.writeManifest(tree, out, CompareOptions.DEFAULT, false);
+        }
+        assertNull(TreeManifest.open(manifestFile).lineHashes(1));
+
+        Files.writeString(tree.resolve("a.txt"), "two\n");
+        DiffNode file = compareService.compareDirectories(manifestFile, tree, CompareOptions.DEFAULT).getChildren().get(0);
+        assertEquals(DiffNode.DiffStatus.MODIFIED, file.getStatus());
+        assertEquals(100.0, file.getPercentage());
+    }
+
+    @Test
+    void testManifestCaptureOptionsOverrideSelectedOptions() throws IOException {
+        Path tree = tempDir.resolve("captured");
+        Files.createDirectories(tree);
+        Files.writeString(tree.resolve("a.txt"), "a b\n");
+        Path exact = tempDir.resolve("exact" + TreeManifest.EXTENSION);
+        Path normalized = tempDir.resolve("normalized" + TreeManifest.EXTENSION);
+        try (var out = Files.newOutputStream(exact)) {
+            compareService.writeManifest(tree, out, CompareOptions.DEFAULT, false);
+        }
+        try (var out = Files.newOutputStream(normalized)) {
+            compareService.writeManifest(tree, out, new CompareOptions(false, true, false, false, false, false), false);
+        }
+
+        IgnoreProfile profile = new IgnoreProfile(false, false, "*.log");
+        CompareOptions selected = new CompareOptions(false, true, false, false, true, false, profile);
+        assertEquals(new CompareOptions(false, false, false, false, false, false, profile), compareService.effectiveOptions(exact, tree, selected));
+        assertEquals(selected, compareService.effectiveOptions(tree, tree, selected));
+
+        // Selected whitespace-insensitivity does not apply against the exact snapshot
+        Files.writeString(tree.resolve("a.txt"), "a  b\n");
+        assertEquals(DiffNode.DiffStatus.MODIFIED, compareService.compareDirectories(exact, tree, selected).getStatus());
+        assertEquals(DiffNode.DiffStatus.IDENTICAL, compareService.compareDirectories(normalized, tree, CompareOptions.DEFAULT).getStatus());
+
+        IllegalArgumentException mismatch = assertThrows(IllegalArgumentException.class,
+                () -> compareService.compareDirectories(exact, normalized, CompareOptions.DEFAULT));
+        assertTrue(mismatch.getMessage().contains("exact content and ignoring whitespace"), mismatch.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> compareService.effectiveOptions(exact, normalized, CompareOptions.DEFAULT));
+    }
+
+    @Test
+    void testComparisonResumesFromCheckpoint() throws IOException {
+        Path left = tempDir.resolve("left");
+        Path right = tempDir.resolve("right");
+        Files.createDirectories(left.resolve("done"));
+        Files.createDirectories(right.resolve("done"));
+        Files.createDirectories(left.resolve("todo"));
+        Files.createDirectories(right.resolve("todo"));
+        Files.writeString(left.resolve("done/a.txt"), "same");
+        Files.writeString(right.resolve("done/a.txt"), "same");
+        Files.writeString(left.resolve("todo/b.txt"), "old");
+        Files.writeString(right.resolve("todo/b.txt"), "new");
+
+        // An earlier run finished "done" before it was interrupted; its recorded result wins over the disk
+        ResultStore store = new ResultStore(tempDir.resolve("results"));
+        DiffTree finished = new DiffTree("done", true, "done");
+        int marker = finished.add(0, "recorded.txt", false);
+        finished.setStatus(marker, DiffNode.DiffStatus.ADDED);
+        finished.setStatus(0, DiffNode.DiffStatus.MODIFIED);
+        try (ResultStore.Checkpoint checkpoint = store.checkpoint(left, right, CompareOptions.DEFAULT)) {
+            checkpoint.record("done", CompareService.subtreeFingerprint(finished.root(), left.resolve("done"), right.resolve("done"), "done"),
+                    finished, 0);
+        }
+
+        DiffNode result = new CompareService(new IoScheduler(), store).compareDirectories(left, right, CompareOptions.DEFAULT);
+
+        Map<String, DiffNode.DiffStatus> statuses = compareService.flatten(result).stream()
+                .collect(Collectors.toMap(CompareService.DiffEntry::relativePath, CompareService.DiffEntry::status));
+        assertEquals(DiffNode.DiffStatus.ADDED, statuses.get("done/recorded.txt"));
+        assertFalse(statuses.containsKey("done/a.txt"));
+        assertEquals(DiffNode.DiffStatus.MODIFIED, statuses.get("todo/b.txt"));
+        try (ResultStore.Checkpoint checkpoint = store.checkpoint(left, right, CompareOptions.DEFAULT)) {
+            assertEquals(0, checkpoint.restorable(), "a finished comparison removes its checkpoint");
+        }
+    }
+
+    @Test
+    void testCheckpointIsNotResumedAfterAFileBelowChanged() throws IOException {
+        Path left = tempDir.resolve("left");
+        Path right = tempDir.resolve("right");
+        Files.createDirectories(left.resolve("done/deep/deeper"));
+        Files.createDirectories(right.resolve("done/deep/deeper"));
+        Files.writeString(left.resolve("done/deep/deeper/a.txt"), "same");
+        Files.writeString(right.resolve("done/deep/deeper/a.txt"), "same");
+
+        // Recorded with a status the disk does not have, to tell whether it was resumed from
+        DiffTree stale = new DiffTree("done", true, "done");
+        int deep = stale.add(0, "deep", true);
+        int deeper = stale.add(deep, "deeper", true);
+        stale.setStatus(stale.add(deeper, "a.txt", false), DiffNode.DiffStatus.ADDED);
+        stale.setStatus(deeper, DiffNode.DiffStatus.MODIFIED);
+        stale.setStatus(deep, DiffNode.DiffStatus.MODIFIED);
+        stale.setStatus(0, DiffNode.DiffStatus.MODIFIED);
+        long fingerprint = CompareService.subtreeFingerprint(stale.root(), left.resolve("done"), right.resolve("done"), "done");
+        assertEquals(fingerprint, CompareService.subtreeFingerprint(stale.root(), left.resolve("done"), right.resolve("done"), "done"));
+
+        ResultStore store = new ResultStore(tempDir.resolve("results"));
+        try (ResultStore.Checkpoint checkpoint = store.checkpoint(left, right, CompareOptions.DEFAULT)) {
+            checkpoint.record("done", fingerprint, stale, 0);
+        }
+        // Edited in place three levels down: no directory above it changes
+        FileTime directoryTime = Files.getLastModifiedTime(right.resolve("done/deep/deeper"));
+        Files.writeString(right.resolve("done/deep/deeper/a.txt"), "edit");
+        Files.setLastModifiedTime(right.resolve("done/deep/deeper/a.txt"), FileTime.fromMillis(1_000_000));
+        assertEquals(directoryTime, Files.getLastModifiedTime(right.resolve("done/deep/deeper")));
+        assertNotEquals(fingerprint, CompareService.subtreeFingerprint(stale.root(), left.resolve("done"), right.resolve("done"), "done"));
+
+        DiffNode result = new CompareService(new IoScheduler(), store).compareDirectories(left, right, CompareOptions.DEFAULT);
+
+        Map<String, DiffNode.DiffStatus> statuses = compareService.flatten(result).stream()
+                .collect(Collectors.toMap(CompareService.DiffEntry::relativePath, CompareService.DiffEntry::status));
+        assertEquals(DiffNode.DiffStatus.MODIFIED, statuses.get("done/deep/deeper/a.txt"));
+    }
+
+    @Test
+    void testFingerprintRecordedWhileComparingIsTheOneARestoreComputes() throws IOException {
+        Path left = tempDir.resolve("left");
+        Path right = tempDir.resolve("right");
+        Files.createDirectories(left.resolve("done/deep/deeper"));
+        Files.createDirectories(right.resolve("done/deep"));
+        Files.writeString(left.resolve("done/deep/deeper/a.txt"), "left");
+        Files.writeString(left.resolve("done/b.txt"), "same");
+        Files.writeString(right.resolve("done/b.txt"), "same");
+        Files.writeString(right.resolve("done/deep/c.txt"), "right");
+
+        ResultStore store = mock(ResultStore.class);
+        ResultStore.Checkpoint checkpoint = mock(ResultStore.Checkpoint.class);
+        when(store.checkpoint(any(), any(), any())).thenReturn(checkpoint);
+        Map<String, Long> recorded = new java.util.HashMap<>();
+        doAnswer(invocation -> {
+            String relativePath = invocation.getArgument(0);
+            DiffTree tree = invocation.getArgument(2);
+            DiffNode subtree = tree.node(invocation.<Integer>getArgument(3));
+            assertEquals(CompareService.subtreeFingerprint(subtree, left.resolve(relativePath), right.resolve(relativePath), relativePath),
+                    invocation.<Long>getArgument(1), relativePath);
+            recorded.put(relativePath, invocation.getArgument(1));
+            return null;
+        }).when(checkpoint).record(anyString(), anyLong(), any(), anyInt());
+
+        new CompareService(new IoScheduler(), store).compareDirectories(left, right, CompareOptions.DEFAULT);
+
+        assertEquals(java.util.Set.of("done", "done/deep"), recorded.keySet());
+    }
+
+    @Test
+    void testFailedComparisonLeavesNoCheckpoint() throws IOException {
+        Path left = tempDir.resolve("left");
+        Path right = tempDir.resolve("right");
+        Files.createDirectories(left.resolve("done"));
+        Files.createDirectories(right.resolve("done"));
+        Files.writeString(left.resolve("done/a.txt"), "same");
+        Files.writeString(right.resolve("done/a.txt"), "same");
+        Files.writeString(left.resolve("z.txt"), "left");
+        Files.writeString(right.resolve("z.txt"), "LEFT");
+
+        ResultStore store = new ResultStore(tempDir.resolve("results"));
+        IoScheduler failing = new IoScheduler() {
+            @Override
+            public <T> T read(Path path, Priority priority, IoTask<T> task) throws IOException {
+                if (path.getFileName().toString().equals("z.txt")) {
+                    throw new IOException("Device gone");
+                }
+                return super.read(path, priority, task);
+            }
+        };
+        assertThrows(IOException.class, () -> new CompareService(failing, store).compareDirectories(left, right, CompareOptions.DEFAULT));
+
+        try (ResultStore.Checkpoint checkpoint = store.checkpoint(left, right, CompareOptions.DEFAULT)) {
+            assertEquals(0, checkpoint.restorable(), "only a crash leaves a checkpoint to resume from");
+        }
+    }
+
+    @Test
+    void testEstimateIsExactWhenTheSampleCoversAllFiles() throws IOException {
+        Path left = tempDir.resolve("left");
+        Path right = tempDir.resolve("right");
+        Files.createDirectories(left.resolve("src"));
+        Files.createDirectories(right.resolve("src/added"));
+        Files.createDirectories(right.resolve("target"));
+        Files.writeString(left.resolve("src/same.txt"), "same");
+        Files.writeString(right.resolve("src/same.txt"), "same");
+        Files.writeString(left.resolve("src/edited.txt"), "hello");
+        Files.writeString(right.resolve("src/edited.txt"), "world");
+        Files.writeString(left.resolve("src/grown.txt"), "short");
+        Files.writeString(right.resolve("src/grown.txt"), "a lot longer");
+        Files.writeString(left.resolve("removed.txt"), "gone");
+        Files.writeString(right.resolve("src/added/one.txt"), "1");
+        Files.writeString(right.resolve("src/added/two.txt"), "2");
+        Files.writeString(right.resolve("target/ignored.class"), "x");
+
+        DiffEstimate estimate = compareService.estimateDirectories(left, right, CompareOptions.DEFAULT, 100, Duration.ofSeconds(10));
+
+        assertEquals(2, estimate.added());
+        assertEquals(1, estimate.removed());
+        assertEquals(3, estimate.common());
+        assertEquals(1, estimate.sizeChanged());
+        assertEquals(2, estimate.sampled(), "Files of different size need no content check");
+        assertEquals(1, estimate.sampledModified());
+        assertEquals(new DiffEstimate.Range(2, 2, 2), estimate.modified());
+        assertTrue(estimate.isExact());
+    }
+
+    @Test
+    void testEstimateChecksFilesOfDifferentSizeWhenContentIsNormalized() throws IOException {
+        Path left = tempDir.resolve("left");
+        Path right = tempDir.resolve("right");
+        Files.createDirectories(left);
+        Files.createDirectories(right);
+        Files.writeString(left.resolve("spaced.txt"), "a b c\n");
+        Files.writeString(right.resolve("spaced.txt"), "a   b   c\n");
+
+        CompareOptions options = new CompareOptions(false, true, false, false, false, false);
+        DiffEstimate estimate = compareService.estimateDirectories(left, right, options, 100, Duration.ofSeconds(10));
+
+        assertEquals(1, estimate.sizeChanged());
+        assertEquals(1, estimate.sampled());
+        assertEquals(new DiffEstimate.Range(0, 0, 0), estimate.modified());
+    }
 }
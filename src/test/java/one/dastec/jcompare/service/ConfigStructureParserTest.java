@@ -0,0 +1,96 @@
+package one.dastec.jcompare.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfigStructureParserTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Map<String, String> parse(String fileName, String content) throws IOException {
+        Path file = tempDir.resolve(fileName);
+        Files.writeString(file, content);
+        Map<String, String> entries = new TreeMap<>();
+        ConfigStructureParser.parse(file, ConfigStructureParser.Format.forFileName(fileName), entries::put);
+        return entries;
+    }
+
+    @Test
+    void testXml() throws IOException {
+        Map<String, String> entries = parse("pom.xml", """
+                <?xml version="1.0"?>
+                <!-- comment -->
+                <project version="4">
+                    <dependencies>
+                        <dependency><artifactId>a</artifactId></dependency>
+                        <dependency><artifactId>b</artifactId><optional/></dependency>
+                    </dependencies>
+                </project>
+                """);
+
+        assertEquals(Map.of(
+                "project@version", "4",
+                "project.dependencies.dependency.artifactId", "a",
+                "project.dependencies.dependency[1].artifactId", "b",
+                "project.dependencies.dependency[1].optional", ""), entries);
+    }
+
+    @Test
+    void testJson() throws IOException {
+        Map<String, String> entries = parse("app.json", "{\"spring\": {\"datasource\": {\"url\": \"jdbc:h2\"}}, \"list\": [1, {\"a\": null}], \"empty\": {}}");
+
+        assertEquals(Map.of(
+                "spring.datasource.url", "jdbc:h2",
+                "list[0]", "1",
+                "list[1].a", "null",
+                "empty", "{}"), entries);
+    }
+
+    @Test
+    void testYaml() throws IOException {
+        Map<String, String> entries = parse("application.yml", """
+                spring:
+                  datasource:
+                    url: jdbc:h2
+                  profiles: [dev, prod]
+                ---
+                other: true
+                """);
+
+        assertEquals(Map.of(
+                "spring.datasource.url", "jdbc:h2",
+                "spring.profiles[0]", "dev",
+                "spring.profiles[1]", "prod",
+                "[1].other", "true"), entries);
+    }
+
+    @Test
+    void testProperties() throws IOException {
+        Map<String, String> entries = parse("app.properties", "# comment\nspring.datasource.url = jdbc:h2\nname=x\n");
+        assertEquals(Map.of("spring.datasource.url", "jdbc:h2", "name", "x"), entries);
+    }
+
+    @Test
+    void testMalformedInput() throws IOException {
+        Path file = tempDir.resolve("broken.json");
+        Files.writeString(file, "{\"a\": ");
+        assertThrows(IOException.class, () -> ConfigStructureParser.parse(file, ConfigStructureParser.Format.JSON, (path, value) -> { }));
+    }
+
+    @Test
+    void testFormatForFileName() {
+        assertEquals(ConfigStructureParser.Format.YAML, ConfigStructureParser.Format.forFileName("a.yaml"));
+        assertEquals(ConfigStructureParser.Format.PROPERTIES, ConfigStructureParser.Format.forFileName("a.properties"));
+        assertNull(ConfigStructureParser.Format.forFileName("a.java"));
+        assertNull(ConfigStructureParser.Format.forFileName(null));
+    }
+}
@@ -0,0 +1,113 @@
+package one.dastec.jcompare.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GitBlobStoreTest {
+
+    private static final String ID = "0123456789abcdef0123456789abcdef01234567";
+
+    @TempDir
+    Path tempDir;
+
+    private static String id(int n) {
+        return String.format("%040x", n);
+    }
+
+    @Test
+    void testCreatesThePrivateDirectoryAndReusesExtractedBlobs() throws IOException {
+        GitBlobStore store = new GitBlobStore(tempDir.resolve("blobs"), GitBlobStore.DEFAULT_MAX_SIZE);
+
+        Path file = store.file(ID, "a.txt", out -> out.write("content\n".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(tempDir.resolve("blobs/01/23456789abcdef0123456789abcdef01234567/a.txt"), file);
+        assertEquals("content\n", Files.readString(file));
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(store.directory())));
+        assertEquals(file, store.file(ID, "a.txt", out -> fail("extracted twice")));
+    }
+
+    @Test
+    void testClearsADirectoryOthersCouldWriteTo() throws IOException {
+        Path directory = tempDir.resolve("blobs");
+        Path planted = directory.resolve("01/23456789abcdef0123456789abcdef01234567/a.txt");
+        Files.createDirectories(planted.getParent());
+        Files.writeString(planted, "planted\n");
+        Files.setPosixFilePermissions(directory, PosixFilePermissions.fromString("rwxrwxrwx"));
+        GitBlobStore store = new GitBlobStore(directory, GitBlobStore.DEFAULT_MAX_SIZE);
+
+        Path file = store.file(ID, "a.txt", out -> out.write("content\n".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals("content\n", Files.readString(file));
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(directory)));
+    }
+
+    @Test
+    void testRefusesALink() throws IOException {
+        Path target = Files.createDirectory(tempDir.resolve("elsewhere"));
+        Path link = Files.createSymbolicLink(tempDir.resolve("blobs"), target);
+        GitBlobStore store = new GitBlobStore(link, GitBlobStore.DEFAULT_MAX_SIZE);
+
+        assertThrows(IOException.class, () -> store.file(ID, "a.txt", out -> out.write(1)));
+    }
+
+    private static Path path(GitBlobStore store, String id, String name) {
+        return store.directory().resolve(id.substring(0, 2)).resolve(id.substring(2)).resolve(name);
+    }
+
+    @Test
+    void testPrunesTheLeastRecentlyUsedBlobs() throws IOException {
+        GitBlobStore store = new GitBlobStore(tempDir.resolve("blobs"), 4000, Duration.ZERO);
+        byte[] content = new byte[1000];
+        for (int i = 0; i < 4; i++) {
+            store.file(id(i), "f.bin", out -> out.write(content));
+        }
+        FileTime written = Files.getLastModifiedTime(path(store, id(0), "f.bin"));
+        // Using the first one again keeps it, without touching the file
+        store.file(id(0), "f.bin", out -> fail("extracted twice"));
+        assertEquals(written, Files.getLastModifiedTime(path(store, id(0), "f.bin")));
+
+        store.file(id(4), "f.bin", out -> out.write(content));
+
+        assertTrue(Files.exists(path(store, id(0), "f.bin")));
+        assertFalse(Files.exists(path(store, id(1), "f.bin")));
+        assertFalse(Files.exists(path(store, id(2), "f.bin")));
+        assertTrue(Files.exists(path(store, id(3), "f.bin")));
+        assertTrue(Files.exists(path(store, id(4), "f.bin")));
+    }
+
+    @Test
+    void testKeepsABlobLargerThanTheStore() throws IOException {
+        GitBlobStore store = new GitBlobStore(tempDir.resolve("blobs"), 1000, Duration.ZERO);
+        store.file(id(0), "small.bin", out -> out.write(new byte[100]));
+
+        Path large = store.file(id(1), "large.bin", out -> out.write(new byte[5000]));
+
+        assertEquals(5000, Files.size(large));
+        assertFalse(Files.exists(path(store, id(0), "small.bin")));
+    }
+
+    @Test
+    void testKeepsBlobsThatMayStillBeRead() throws IOException {
+        GitBlobStore store = new GitBlobStore(tempDir.resolve("blobs"), 2000);
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            files.add(store.file(id(i), "f.bin", out -> out.write(new byte[1000])));
+        }
+
+        for (Path file : files) {
+            assertEquals(1000, Files.size(file));
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package one.dastec.jcompare.service;
+
+import one.dastec.jcompare.model.CompareOptions;
+import one.dastec.jcompare.model.DiffNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GitRepositoryTest {
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Writes git objects and refs the way git does, so the tests need no git installation.
+     */
+    private static final class Fixture {
+        private final Path gitDirectory;
+
+        Fixture(Path workTree) throws IOException {
+            this.gitDirectory = workTree.resolve(".git");
+            Files.createDirectories(gitDirectory.resolve("objects/pack"));
+            Files.createDirectories(gitDirectory.resolve("refs/heads"));
+            Files.writeString(gitDirectory.resolve("HEAD"), "ref: refs/heads/main\n");
+        }
+
+        static byte[] id(String type, byte[] data) {
+            try {
+                MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+                sha1.update((type + " " + data.length + "\0").getBytes(StandardCharsets.US_ASCII));
+                return sha1.digest(data);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        String loose(String type, byte[] data) throws IOException {
+            String id = HEX.formatHex(id(type, data));
+            ByteArrayOutputStream object = new ByteArrayOutputStream();
+            object.writeBytes((type + " " + data.length + "\0").getBytes(StandardCharsets.US_ASCII));
+            object.writeBytes(data);
+            Path file = gitDirectory.resolve("objects").resolve(id.substring(0, 2)).resolve(id.substring(2));
+            Files.createDirectories(file.getParent());
+            Files.write(file, deflate(object.toByteArray()));
+            return id;
+        }
+
+        /**
+         * @param entries file name to content ({@code String}) or subdirectory ({@code Map})
+         */
+        @SuppressWarnings("unchecked")
+        String tree(Map<String, Object> entries) throws IOException {
+            // Git orders directories as if their names ended with '/'
+            TreeMap<String, byte[]> sorted = new TreeMap<>();
+            for (Map.Entry<String, Object> entry : entries.entrySet()) {
+                boolean directory = entry.getValue() instanceof Map;
+                String id = directory ? tree((Map<String, Object>) entry.getValue())
+                        : loose("blob", ((String) entry.getValue()).getBytes(StandardCharsets.UTF_8));
+                ByteArrayOutputStream line = new ByteArrayOutputStream();
+                line.writeBytes(((directory ? "40000 " : "100644 ") + entry.getKey() + "\0").getBytes(StandardCharsets.UTF_8));
+                line.writeBytes(HEX.parseHex(id));
+                sorted.put(entry.getKey() + (directory ? "/" : ""), line.toByteArray());
+            }
+            ByteArrayOutputStream tree = new ByteArrayOutputStream();
+            sorted.values().forEach(tree::writeBytes);
+            return loose("tree", tree.toByteArray());
+        }
+
+        String commit(String tree, String... parents) throws IOException {
+            StringBuilder commit = new StringBuilder("tree ").append(tree).append('\n');
+            for (String parent : parents) {
+                commit.append("parent ").append(parent).append('\n');
+            }
+            commit.append("author A <a@example.com> 1700000000 +0000\ncommitter A <a@example.com> 1700000000 +0000\n\nmessage\n");
+            return loose("commit", commit.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        void ref(String name, String id) throws IOException {
+            Files.createDirectories(gitDirectory.resolve(name).getParent());
+            Files.writeString(gitDirectory.resolve(name), id + "\n");
+        }
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    private static void varint(ByteArrayOutputStream out, int value) {
+        while (value >= 0x80) {
+            out.write(value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static void packHeader(ByteArrayOutputStream out, int type, int size) {
+        int c = type << 4 | size & 0x0f;
+        size >>>= 4;
+        while (size != 0) {
+            out.write(c | 0x80);
+            c = size & 0x7f;
+            size >>>= 7;
+        }
+        out.write(c);
+    }
+
+    /**
+     * A delta that copies {@code copyLength} bytes from the start of the base and appends {@code insert}.
+     */
+    private static byte[] delta(byte[] base, int copyLength, String insert) {
+        byte[] inserted = insert.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream delta = new ByteArrayOutputStream();
+        varint(delta, base.length);
+        varint(delta, copyLength + inserted.length);
+        delta.write(0x80 | 0x10 | 0x20); // Copy from offset 0, two length bytes
+        delta.write(copyLength & 0xff);
+        delta.write(copyLength >> 8 & 0xff);
+        delta.write(inserted.length);
+        delta.writeBytes(inserted);
+        return delta.toByteArray();
+    }
+
+    @Test
+    void testResolvesRevisionsFromLooseObjects() throws IOException {
+        Fixture fixture = new Fixture(tempDir);
+        String first = fixture.commit(fixture.tree(Map.of("a.txt", "one\n")));
+        String second = fixture.commit(fixture.tree(Map.of("a.txt", "two\n")), first);
+        fixture.ref("refs/heads/main", second);
+        String tag = fixture.loose("tag", ("object " + first + "\ntype commit\ntag v1\ntagger A <a@example.com> 1700000000 +0000\n\nfirst\n")
+                .getBytes(StandardCharsets.UTF_8));
+        Files.writeString(tempDir.resolve(".git/packed-refs"), "# pack-refs with: peeled\n" + tag + " refs/tags/v1\n^" + first + "\n");
+
+        GitRepository repository = GitRepository.open(tempDir, new GitBlobStore(tempDir.resolve("blobs"), GitBlobStore.DEFAULT_MAX_SIZE));
+
+        assertEquals(repository.revision("main~1").tree(), repository.revision("v1").tree());
+        assertEquals(repository.revision("HEAD").tree(), repository.revision(second.substring(0, 7)).tree());
+        assertEquals(repository.revision("HEAD^").tree(), repository.revision(first).tree());
+        assertEquals("two\n", Files.readString(repository.revision("main").locate("a.txt")));
+        assertEquals("one\n", Files.readString(repository.revision("v1^0").locate("a.txt")));
+        assertNull(repository.revision("main").locate("missing.txt"));
+        assertThrows(NoSuchFileException.class, () -> repository.revision("nope"));
+        assertThrows(NoSuchFileException.class, () -> repository.revision("main~2"));
+        assertFalse(GitRepository.isRepository(tempDir.resolve("blobs")));
+    }
+
+    @Test
+    void testRetiredRepositoryClosesWhenItsLastUserReleasesIt() throws IOException {
+        Fixture fixture = new Fixture(tempDir);
+        fixture.ref("refs/heads/main", fixture.commit(fixture.tree(Map.of("a.txt", "one\n"))));
+        GitRepository repository = GitRepository.open(tempDir, new GitBlobStore(tempDir.resolve("blobs"), GitBlobStore.DEFAULT_MAX_SIZE));
+
+        assertTrue(repository.acquire());
+        assertTrue(repository.acquire());
+        repository.retire();
+        repository.release();
+        assertEquals("one\n", Files.readString(repository.revision("main").locate("a.txt")));
+        repository.release();
+
+        assertFalse(repository.acquire(), "closed with its last user");
+        GitRepository unused = GitRepository.open(tempDir, new GitBlobStore(tempDir.resolve("blobs"), GitBlobStore.DEFAULT_MAX_SIZE));
+        unused.retire();
+        assertFalse(unused.acquire(), "closed right away without users");
+    }
+
+    @Test
+    void testReadsDeltifiedObjectsFromPacks() throws IOException {
+        Fixture fixture = new Fixture(tempDir);
+        byte[] base = "shared first line\nshared second line\n".repeat(200).getBytes(StandardCharsets.UTF_8);
+        byte[] offsetDelta = delta(base, 1000, "appended by an OFS_DELTA\n");
+        byte[] referenceDelta = delta(base, 500, "appended by a REF_DELTA\n");
+        byte[] offsetResult = GitRepository.applyDelta(base, offsetDelta);
+        byte[] referenceResult = GitRepository.applyDelta(base, referenceDelta);
+        byte[][] ids = {Fixture.id("blob", base), Fixture.id("blob", offsetResult), Fixture.id("blob", referenceResult)};
+
+        ByteArrayOutputStream pack = new ByteArrayOutputStream();
+        pack.writeBytes("PACK".getBytes(StandardCharsets.US_ASCII));
+        pack.writeBytes(new byte[]{0, 0, 0, 2, 0, 0, 0, 3});
+        long[] offsets = new long[3];
+        offsets[0] = pack.size();
+        packHeader(pack, 3, base.length);
+        pack.writeBytes(deflate(base));
+        offsets[1] = pack.size();
+        packHeader(pack, 6, offsetDelta.length);
+        long distance = offsets[1] - offsets[0];
+        // Offset encoding: big-endian base-128 with an implicit +1 per continuation byte
+        List<Integer> encoded = new ArrayList<>();
+        encoded.addFirst((int) (distance & 0x7f));
+        while ((distance >>= 7) != 0) {
+            distance--;
+            encoded.addFirst((int) (0x80 | distance & 0x7f));
+        }
+        encoded.forEach(pack::write);
+        pack.writeBytes(deflate(offsetDelta));
+        offsets[2] = pack.size();
+        packHeader(pack, 7, referenceDelta.length);
+        pack.writeBytes(ids[0]);
+        pack.writeBytes(deflate(referenceDelta));
+        pack.writeBytes(new byte[20]);
+
+        // Version 2 index: fan-out, sorted ids, CRCs (unused here), offsets
+        List<Integer> order = new ArrayList<>(List.of(0, 1, 2));
+        order.sort((a, b) -> java.util.Arrays.compareUnsigned(ids[a], ids[b]));
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        index.writeBytes(new byte[]{(byte) 0xff, 't', 'O', 'c', 0, 0, 0, 2});
+        for (int i = 0; i < 256; i++) {
+            int bucket = i;
+            int count = (int) order.stream().filter(o -> (ids[o][0] & 0xff) <= bucket).count();
+            index.writeBytes(new byte[]{0, 0, 0, (byte) count});
+        }
+        order.forEach(o -> index.writeBytes(ids[o]));
+        order.forEach(o -> index.writeBytes(new byte[4]));
+        order.forEach(o -> index.writeBytes(new byte[]{0, 0, (byte) (offsets[o] >> 8), (byte) offsets[o]}));
+        index.writeBytes(new byte[40]);
+        Files.write(tempDir.resolve(".git/objects/pack/pack-test.pack"), pack.toByteArray());
+        Files.write(tempDir.resolve(".git/objects/pack/pack-test.idx"), index.toByteArray());
+
+        GitRepository repository = GitRepository.open(tempDir, new GitBlobStore(tempDir.resolve("blobs"), GitBlobStore.DEFAULT_MAX_SIZE));
+
+        assertArrayEquals(base, repository.read(HEX.formatHex(ids[0])).data());
+        assertArrayEquals(offsetResult, repository.read(HEX.formatHex(ids[1])).data());
+        assertArrayEquals(referenceResult, repository.read(HEX.formatHex(ids[2])).data());
+        assertTrue(new String(offsetResult, StandardCharsets.UTF_8).endsWith("appended by an OFS_DELTA\n"));
+        assertEquals(524, referenceResult.length);
+        assertThrows(NoSuchFileException.class, () -> repository.read("0123456789012345678901234567890123456789"));
+        assertArrayEquals(base, Files.readAllBytes(repository.materialize(new GitRepository.TreeEntry("a.txt", 0100644, HEX.formatHex(ids[0])))));
+        assertArrayEquals(offsetResult, Files.readAllBytes(repository.materialize(new GitRepository.TreeEntry("b.txt", 0100644, HEX.formatHex(ids[1])))));
+
+        // A repack replaces the pack; the rescan for a missing object drops the old one and picks up the new one
+        Files.move(tempDir.resolve(".git/objects/pack/pack-test.pack"), tempDir.resolve(".git/objects/pack/pack-repacked.pack"));
+        Files.move(tempDir.resolve(".git/objects/pack/pack-test.idx"), tempDir.resolve(".git/objects/pack/pack-repacked.idx"));
+        assertThrows(NoSuchFileException.class, () -> repository.read("0123456789012345678901234567890123456789"));
+        assertArrayEquals(referenceResult, repository.read(HEX.formatHex(ids[2])).data());
+
+        repository.close();
+        assertThrows(IOException.class, () -> repository.read(HEX.formatHex(ids[0])));
+    }
+
+    private static List<String> describe(DiffNode node) {
+        List<String> lines = new ArrayList<>();
+        lines.add(node.getRelativePath() + " " + node.isDirectory() + " " + node.getStatus() + " " + node.getAdded() + " "
+                + node.getRemoved() + " " + node.getModified() + " " + node.getPercentage() + " " + node.getSourcePath());
+        for (DiffNode child : node.getChildren()) {
+            lines.addAll(describe(child));
+        }
+        return lines;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void checkout(Path directory, Map<String, Object> entries) throws IOException {
+        Files.createDirectories(directory);
+        for (Map.Entry<String, Object> entry : entries.entrySet()) {
+            if (entry.getValue() instanceof Map) {
+                checkout(directory.resolve(entry.getKey()), (Map<String, Object>) entry.getValue());
+            } else {
+                Files.writeString(directory.resolve(entry.getKey()), (String) entry.getValue());
+            }
+        }
+    }
+
+    @Test
+    void testRevisionsCompareLikeTheirCheckouts() throws IOException {
+        Map<String, Object> library = Map.of("Util.java", "package lib;\nclass Util {}\n", "README", "unchanged\n");
+        Map<String, Object> before = Map.of(
+                "lib", library,
+                "app", Map.of("Main.java", "package app;\nclass Main {\n  int a;\n}\n", "Old.txt", "old\n"),
+                "docs", Map.of("guide.txt", "moved\n"),
+                "target", Map.of("App.class", "binary"));
+        Map<String, Object> after = Map.of(
+                "lib", library,
+                "app", Map.of("Main.java", "package app;\nclass Main {\n  int b;\n}\n", "New.txt", "new\n"),
+                "manual", Map.of("guide.txt", "moved\n"),
+                "target", Map.of("App.class", "rebuilt"));
+        Path repository = tempDir.resolve("repo");
+        Fixture fixture = new Fixture(repository);
+        String first = fixture.commit(fixture.tree(before));
+        fixture.ref("refs/heads/main", fixture.commit(fixture.tree(after), first));
+        checkout(tempDir.resolve("before"), before);
+        checkout(tempDir.resolve("after"), after);
+
+        CompareService compareService = new CompareService();
+        for (CompareOptions options : List.of(CompareOptions.DEFAULT, new CompareOptions(true, true, true, true, true, true))) {
+            DiffNode fromGit = compareService.compareDirectories(Path.of(repository + "@main~1"), Path.of(repository + "@main"), options);
+            DiffNode fromCheckouts = compareService.compareDirectories(tempDir.resolve("before"), tempDir.resolve("after"), options);
+
+            List<String> expected = describe(fromCheckouts);
+            List<String> actual = describe(fromGit);
+            assertEquals(expected.subList(1, expected.size()), actual.subList(1, actual.size()));
+            assertTrue(actual.contains("manual/guide.txt false MOVED 1 0 0 100.0 docs/guide.txt"), String.join("\n", actual));
+        }
+        assertEquals("package app;\nclass Main {\n  int b;\n}\n",
+                Files.readString(compareService.locate(Path.of(repository + "@main"), "app/Main.java")));
+        assertFalse(Files.exists(compareService.locate(Path.of(repository + "@main"), "app/Old.txt")));
+        assertThrows(NoSuchFileException.class,
+                () -> compareService.compareDirectories(Path.of(repository + "@main"), tempDir.resolve("after"), CompareOptions.DEFAULT));
+    }
+}
@@ -0,0 +1,47 @@
+package one.dastec.jcompare.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IgnoreRulesTest {
+
+    @Test
+    void testUnanchoredPatternMatchesAtAnyDepth() {
+        IgnoreRules rules = IgnoreRules.compile("# build output\n*.log\n", false);
+
+        assertEquals(Boolean.TRUE, rules.match("app.log", false));
+        assertEquals(Boolean.TRUE, rules.match("logs/2024/app.log", false));
+        assertNull(rules.match("app.log.txt", false));
+    }
+
+    @Test
+    void testAnchoredAndDirectoryOnlyPatterns() {
+        IgnoreRules rules = IgnoreRules.compile("/dist\ngenerated/\ndocs/**/*.html\n", false);
+
+        assertEquals(Boolean.TRUE, rules.match("dist", true));
+        assertNull(rules.match("web/dist", true));
+        assertEquals(Boolean.TRUE, rules.match("src/generated", true));
+        assertNull(rules.match("src/generated", false));
+        assertEquals(Boolean.TRUE, rules.match("docs/index.html", false));
+        assertEquals(Boolean.TRUE, rules.match("docs/api/v1/index.html", false));
+    }
+
+    @Test
+    void testLastMatchingRuleWinsAndNegationReincludes() {
+        IgnoreRules rules = IgnoreRules.compile("*.properties\n!application.properties\n", false);
+
+        assertEquals(Boolean.TRUE, rules.match("local.properties", false));
+        assertEquals(Boolean.FALSE, rules.match("config/application.properties", false));
+    }
+
+    @Test
+    void testCommaSeparatedAdHocPatternsAndCharacterClasses() {
+        IgnoreRules rules = IgnoreRules.compile(" *.tmp , file[0-9].txt,\\#notes ", true);
+
+        assertEquals(Boolean.TRUE, rules.match("a/b.tmp", false));
+        assertEquals(Boolean.TRUE, rules.match("file7.txt", false));
+        assertNull(rules.match("fileX.txt", false));
+        assertEquals(Boolean.TRUE, rules.match("#notes", false));
+    }
+}
@@ -0,0 +1,45 @@
+package one.dastec.jcompare.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntraLineDifferTest {
+
+    @Test
+    void testSingleCharacterChange() {
+        IntraLineDiffer.LineDiff diff = IntraLineDiffer.diff(3, "int value = 10;", "int value = 19;");
+
+        assertEquals(3, diff.line());
+        assertEquals(List.of(new IntraLineDiffer.Segment("int value = 1", false), new IntraLineDiffer.Segment("0", true),
+                new IntraLineDiffer.Segment(";", false)), diff.left());
+        assertEquals(List.of(new IntraLineDiffer.Segment("int value = 1", false), new IntraLineDiffer.Segment("9", true),
+                new IntraLineDiffer.Segment(";", false)), diff.right());
+    }
+
+    @Test
+    void testWordInsertion() {
+        IntraLineDiffer.LineDiff diff = IntraLineDiffer.diff(0, "public void run()", "public static void run()");
+
+        assertEquals(List.of(new IntraLineDiffer.Segment("public void run()", false)), diff.left());
+        assertEquals(List.of(new IntraLineDiffer.Segment("public ", false), new IntraLineDiffer.Segment("static ", true),
+                new IntraLineDiffer.Segment("void run()", false)), diff.right());
+    }
+
+    @Test
+    void testSegmentsReassembleOriginalText() {
+        String left = "a.b(c, d) + \"text\" // old";
+        String right = "a.c(d, e) - \"text!\" // new";
+        IntraLineDiffer.LineDiff diff = IntraLineDiffer.diff(0, left, right);
+
+        assertEquals(left, String.join("", diff.left().stream().map(IntraLineDiffer.Segment::text).toList()));
+        assertEquals(right, String.join("", diff.right().stream().map(IntraLineDiffer.Segment::text).toList()));
+    }
+
+    @Test
+    void testTokenize() {
+        assertEquals(List.of("foo_1", "  ", "(", "bar", ")"), IntraLineDiffer.tokenize("foo_1  (bar)"));
+    }
+}
@@ -0,0 +1,163 @@
+package one.dastec.jcompare.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class IoSchedulerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testConcurrentReadsPerDeviceAreCapped() throws Exception {
+        IoScheduler scheduler = new IoScheduler(2, new SimpleMeterRegistry());
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Path file = tempDir.resolve("file" + i);
+            threads.add(Thread.ofPlatform().start(() -> {
+                try {
+                    scheduler.read(file, IoScheduler.Priority.BACKGROUND, () -> {
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        sleep(20);
+                        running.decrementAndGet();
+                        return null;
+                    });
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(maxRunning.get() <= 2, "at most two reads may run at once, saw " + maxRunning.get());
+        assertEquals(0, scheduler.queueDepth(tempDir.resolve("file0")));
+    }
+
+    @Test
+    void testInteractiveReadsFirstThenBackgroundInElevatorOrder() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        IoScheduler scheduler = new IoScheduler(1, registry);
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch releaseHolder = new CountDownLatch(1);
+        List<String> served = new CopyOnWriteArrayList<>();
+
+        Thread holder = Thread.ofPlatform().start(() -> read(scheduler, tempDir.resolve("m"), IoScheduler.Priority.BACKGROUND, () -> {
+            holding.countDown();
+            releaseHolder.await();
+        }));
+        holding.await();
+
+        List<Thread> waiters = new ArrayList<>();
+        int queued = 0;
+        for (String name : List.of("z", "b", "p", "x")) {
+            IoScheduler.Priority priority = name.equals("x") ? IoScheduler.Priority.INTERACTIVE : IoScheduler.Priority.BACKGROUND;
+            Path file = tempDir.resolve(name);
+            waiters.add(Thread.ofPlatform().start(() -> read(scheduler, file, priority, () -> served.add(name))));
+            queued++;
+            while (scheduler.queueDepth(file) < queued) {
+                Thread.sleep(1);
+            }
+        }
+        assertEquals(4.0, registry.get("jcompare.io.queue.depth").gauge().value());
+        assertEquals(1.0, registry.get("jcompare.io.in.flight").gauge().value());
+
+        releaseHolder.countDown();
+        holder.join();
+        for (Thread waiter : waiters) {
+            waiter.join();
+        }
+
+        // The interactive read jumps the queue; background reads continue upwards from the last path, then wrap
+        assertEquals(List.of("x", "z", "b", "p"), served);
+        assertEquals(0.0, registry.get("jcompare.io.queue.depth").gauge().value());
+        assertEquals(4, registry.get("jcompare.io.wait").tag("priority", "background").timer().count());
+        assertEquals(1, registry.get("jcompare.io.wait").tag("priority", "interactive").timer().count());
+    }
+
+    @Test
+    void testDevicesAreToldApartByDeviceNumberNotByName() throws Exception {
+        Path sub = Files.createDirectory(tempDir.resolve("sub"));
+        assertEquals(Files.getAttribute(tempDir, "unix:dev"), IoScheduler.deviceIdentity(tempDir));
+        assertEquals(IoScheduler.deviceIdentity(tempDir), IoScheduler.deviceIdentity(sub));
+
+        // Mounts of the same kind (two tmpfs, say) have the same file store name but are different devices
+        Path mounts = Path.of("/proc/self/mounts");
+        assumeTrue(Files.isReadable(mounts));
+        Map<String, Path> mountByName = new HashMap<>();
+        Path[] sameName = null;
+        for (String line : Files.readAllLines(mounts)) {
+            Path mountPoint = Path.of(line.split(" ")[1]);
+            if (!Files.isDirectory(mountPoint)) {
+                continue;
+            }
+            Path other = mountByName.putIfAbsent(Files.getFileStore(mountPoint).name(), mountPoint);
+            if (other != null && !Files.getAttribute(other, "unix:dev").equals(Files.getAttribute(mountPoint, "unix:dev"))) {
+                sameName = new Path[] {other, mountPoint};
+                break;
+            }
+        }
+        assumeTrue(sameName != null, "no two devices with the same file store name are mounted");
+        assertNotEquals(IoScheduler.deviceIdentity(sameName[0]), IoScheduler.deviceIdentity(sameName[1]));
+        Path otherDevice = sameName[IoScheduler.deviceIdentity(sameName[0]).equals(IoScheduler.deviceIdentity(tempDir)) ? 1 : 0];
+
+        IoScheduler scheduler = new IoScheduler(1, new SimpleMeterRegistry());
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch releaseHolder = new CountDownLatch(1);
+        Thread holder = Thread.ofPlatform().start(() -> read(scheduler, tempDir.resolve("a"), IoScheduler.Priority.BACKGROUND, () -> {
+            holding.countDown();
+            releaseHolder.await();
+        }));
+        holding.await();
+        // Another device is not held up by the busy one
+        assertEquals("read", scheduler.read(otherDevice.resolve("x"), IoScheduler.Priority.BACKGROUND, () -> "read"));
+        releaseHolder.countDown();
+        holder.join();
+    }
+
+    @FunctionalInterface
+    private interface Body {
+        void run() throws Exception;
+    }
+
+    private static void read(IoScheduler scheduler, Path file, IoScheduler.Priority priority, Body body) {
+        try {
+            scheduler.read(file, priority, () -> {
+                try {
+                    body.run();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
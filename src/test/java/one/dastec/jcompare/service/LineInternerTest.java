@@ -0,0 +1,35 @@
+package one.dastec.jcompare.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LineInternerTest {
+
+    @Test
+    void testIdenticalLinesShareIdsAcrossSides() {
+        LineInterner interner = new LineInterner();
+        int[] left = interner.intern(TreeManifest.lineHashes(List.of("a", "b", "a")));
+        int[] right = interner.intern(TreeManifest.lineHashes(List.of("b", "c", "a")));
+
+        assertArrayEquals(new int[]{0, 1, 0}, left);
+        assertArrayEquals(new int[]{1, 2, 0}, right);
+        assertEquals(3, interner.size());
+    }
+
+    @Test
+    void testIdsStayStableWhileTheTableGrows() {
+        LineInterner interner = new LineInterner();
+        List<String> lines = IntStream.range(0, 10_000).mapToObj(i -> "line " + i).toList();
+
+        int[] first = interner.intern(TreeManifest.lineHashes(lines));
+        int[] second = interner.intern(TreeManifest.lineHashes(lines));
+
+        assertArrayEquals(IntStream.range(0, 10_000).toArray(), first);
+        assertArrayEquals(first, second);
+        assertEquals(10_000, interner.size());
+    }
+}
@@ -0,0 +1,68 @@
+package one.dastec.jcompare.service;
+
+import one.dastec.jcompare.model.CompareOptions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NormalizingOutputStreamTest {
+
+    private String normalize(String text, CompareOptions options, NormalizingOutputStream.CommentStyle style) throws IOException {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        NormalizingOutputStream normalizer = new NormalizingOutputStream(sink, options, style);
+        normalizer.write(text.getBytes(StandardCharsets.UTF_8));
+        normalizer.finish();
+        return sink.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testExactOptionsPassThrough() throws IOException {
+        String text = "a\r\n  b \n\n// c";
+        assertEquals(text, normalize(text, CompareOptions.DEFAULT, NormalizingOutputStream.CommentStyle.JAVA));
+    }
+
+    @Test
+    void testIgnoreEol() throws IOException {
+        CompareOptions options = new CompareOptions(true, false, false, false, false, false);
+        assertEquals("a\nb\nc\n", normalize("a\r\nb\rc", options, NormalizingOutputStream.CommentStyle.NONE));
+    }
+
+    @Test
+    void testIgnoreWhitespace() throws IOException {
+        CompareOptions options = new CompareOptions(false, true, false, false, false, false);
+        assertEquals("a b\nc\n", normalize("  a \t b  \n\tc\t\n", options, NormalizingOutputStream.CommentStyle.NONE));
+    }
+
+    @Test
+    void testIgnoreBlankLines() throws IOException {
+        CompareOptions options = new CompareOptions(false, false, true, false, false, false);
+        assertEquals("a\n  b\n", normalize("a\n\n   \n  b\n\n", options, NormalizingOutputStream.CommentStyle.NONE));
+    }
+
+    @Test
+    void testJavaComments() throws IOException {
+        CompareOptions options = new CompareOptions(false, false, false, true, false, false);
+        String text = "/* header\n * more\n */\nint a = 1; // note\nString s = \"/* not a comment */\";\nchar c = '/';\nint b = 4 / 2;\n";
+        assertEquals("int a = 1; \nString s = \"/* not a comment */\";\nchar c = '/';\nint b = 4 / 2;\n",
+                normalize(text, options, NormalizingOutputStream.CommentStyle.JAVA));
+    }
+
+    @Test
+    void testXmlComments() throws IOException {
+        CompareOptions options = new CompareOptions(false, false, false, true, false, false);
+        String text = "<!-- a\n -- b -->\n<a><!-- c --></a>\n<b>x < y</b>\n";
+        assertEquals("<a></a>\n<b>x < y</b>\n", normalize(text, options, NormalizingOutputStream.CommentStyle.XML));
+    }
+
+    @Test
+    void testCommentStyleForFileName() {
+        assertEquals(NormalizingOutputStream.CommentStyle.JAVA, NormalizingOutputStream.CommentStyle.forFileName("App.java"));
+        assertEquals(NormalizingOutputStream.CommentStyle.XML, NormalizingOutputStream.CommentStyle.forFileName("pom.xml"));
+        assertEquals(NormalizingOutputStream.CommentStyle.NONE, NormalizingOutputStream.CommentStyle.forFileName("notes.txt"));
+        assertEquals(NormalizingOutputStream.CommentStyle.NONE, NormalizingOutputStream.CommentStyle.forFileName(null));
+    }
+}
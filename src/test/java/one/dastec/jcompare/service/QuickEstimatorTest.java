@@ -0,0 +1,123 @@
+package one.dastec.jcompare.service;
+
+import one.dastec.jcompare.model.CompareOptions;
+import one.dastec.jcompare.model.DiffEstimate;
+import one.dastec.jcompare.model.IgnoreProfile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuickEstimatorTest {
+
+    private static final QuickEstimator.ContentCheck BYTES_EQUAL = (left, right) -> Files.mismatch(left, right) == -1;
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(4, Thread.ofPlatform().daemon().factory());
+
+    @TempDir
+    Path tempDir;
+
+    private final IgnoreProfiles ignoreProfiles = new IgnoreProfiles(new ContentHasher(), path -> false);
+
+    /**
+     * 1000 files of equal size on both sides, every fifth of them modified.
+     */
+    private void createTrees(Path left, Path right) throws IOException {
+        Files.createDirectories(left);
+        Files.createDirectories(right);
+        for (int i = 0; i < 1000; i++) {
+            Files.writeString(left.resolve("file" + i + ".txt"), "content " + i);
+            Files.writeString(right.resolve("file" + i + ".txt"), (i % 5 == 0 ? "CONTENT " : "content ") + i);
+        }
+    }
+
+    private DiffEstimate estimate(Path left, Path right, int sampleSize, long seed, QuickEstimator.ContentCheck check, Duration budget)
+            throws IOException {
+        return new QuickEstimator(check, EXECUTOR, ignoreProfiles.root(IgnoreProfile.DEFAULT), CompareOptions.DEFAULT, sampleSize, seed)
+                .estimate(left, right, budget);
+    }
+
+    @Test
+    void testIntervalsCoverTheModifiedCount() throws IOException {
+        Path left = tempDir.resolve("left");
+        Path right = tempDir.resolve("right");
+        createTrees(left, right);
+
+        int covered = 0;
+        for (long seed = 0; seed < 40; seed++) {
+            DiffEstimate estimate = estimate(left, right, 100, seed, BYTES_EQUAL, Duration.ofSeconds(30));
+            DiffEstimate.Range modified = estimate.modified();
+            assertEquals(1000, estimate.common());
+            assertEquals(100, estimate.sampled());
+            assertEquals(Math.round(estimate.sampledModified() * 10.0), modified.estimate());
+            assertTrue(modified.lower() <= modified.estimate() && modified.estimate() <= modified.upper(), modified.toString());
+            assertTrue(modified.upper() - modified.lower() < 300, modified.toString());
+            if (modified.lower() <= 200 && 200 <= modified.upper()) {
+                covered++;
+            }
+        }
+        // 95% intervals: missing more than 8 of 40 happens with a probability below 1 in 10,000
+        assertTrue(covered >= 32, covered + " of 40 intervals cover the true count");
+    }
+
+    @Test
+    void testSameSeedGivesSameEstimate() throws IOException {
+        Path left = tempDir.resolve("left");
+        Path right = tempDir.resolve("right");
+        createTrees(left, right);
+
+        assertEquals(estimate(left, right, 50, 7, BYTES_EQUAL, Duration.ofSeconds(30)).modified(),
+                estimate(left, right, 50, 7, BYTES_EQUAL, Duration.ofSeconds(30)).modified());
+    }
+
+    @Test
+    void testBudgetLimitsTheChecks() throws IOException {
+        Path left = tempDir.resolve("left");
+        Path right = tempDir.resolve("right");
+        createTrees(left, right);
+        AtomicInteger started = new AtomicInteger();
+        AtomicInteger running = new AtomicInteger();
+        QuickEstimator.ContentCheck slow = (leftFile, rightFile) -> {
+            started.incrementAndGet();
+            running.incrementAndGet();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new java.io.InterruptedIOException();
+            } finally {
+                running.decrementAndGet();
+            }
+            return BYTES_EQUAL.isEquivalent(leftFile, rightFile);
+        };
+
+        DiffEstimate estimate = estimate(left, right, 1000, 1, slow, Duration.ofMillis(300));
+
+        // The checks left at the deadline are cancelled: the running ones are interrupted, the queued ones never start
+        long waitUntil = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (running.get() > 0 && System.nanoTime() < waitUntil) {
+            Thread.onSpinWait();
+        }
+        assertEquals(0, running.get());
+        int startedByThen = started.get();
+        try {
+            Thread.sleep(200);
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+        assertEquals(startedByThen, started.get());
+
+        assertTrue(estimate.sampled() < 1000, "Checked " + estimate.sampled());
+        assertFalse(estimate.isExact());
+        assertTrue(estimate.elapsedMillis() < 5000);
+        assertTrue(estimate.modified().lower() >= estimate.sampledModified());
+        assertTrue(estimate.modified().upper() <= 1000 - (estimate.sampled() - estimate.sampledModified()));
+    }
+}
@@ -0,0 +1,60 @@
+package one.dastec.jcompare.service;
+
+import one.dastec.jcompare.model.DiffNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultIndexTest {
+
+    private static CompareService.DiffEntry row(String relativePath, boolean directory, DiffNode.DiffStatus status,
+                                                int added, double percentage) {
+        return new CompareService.DiffEntry("root/" + relativePath, directory, status, relativePath, added, 0, 0, percentage, null);
+    }
+
+    private final ResultIndex index = ResultIndex.of(List.of(
+            row("src", true, DiffNode.DiffStatus.MODIFIED, 0, 0),
+            row("src/Main.java", false, DiffNode.DiffStatus.MODIFIED, 12, 40.0),
+            row("src/Util.java", false, DiffNode.DiffStatus.IDENTICAL, 0, 0),
+            row("src/app.yml", false, DiffNode.DiffStatus.ADDED, 3, 100.0),
+            row("docs/README.MD", false, DiffNode.DiffStatus.REMOVED, 0, 100.0),
+            row("Makefile", false, DiffNode.DiffStatus.MODIFIED, 1, 5.0)));
+
+    private static List<String> paths(List<CompareService.DiffEntry> entries) {
+        return entries.stream().map(CompareService.DiffEntry::relativePath).toList();
+    }
+
+    @Test
+    void testPostingListsCombine() {
+        assertEquals(6, index.query(ResultIndex.Query.ALL).size());
+        assertEquals(List.of("src/Main.java", "Makefile"), paths(index.query(ResultIndex.Query.ALL
+                .withStatuses(Set.of(DiffNode.DiffStatus.MODIFIED)).withTypes(Set.of("java", "file")))));
+        assertEquals(List.of("src/app.yml"), paths(index.query(ResultIndex.Query.ALL.withTypes(Set.of("yaml")))));
+        assertEquals(List.of("docs/README.MD"), paths(index.query(
+                new ResultIndex.Query(null, null, null, Set.of(".md"), null, null, null))));
+        assertEquals(List.of(), paths(index.query(ResultIndex.Query.ALL.withTypes(Set.of("unknown")))));
+    }
+
+    @Test
+    void testPathAndRangeConditions() {
+        assertEquals(List.of("src/Main.java", "src/Util.java"), paths(index.query(
+                new ResultIndex.Query("*.java", null, null, null, null, null, null))));
+        assertEquals(List.of("docs/README.MD"), paths(index.query(
+                new ResultIndex.Query("readme", null, null, null, null, null, null))));
+        assertEquals(List.of("src/Main.java", "src/app.yml", "docs/README.MD"), paths(index.query(
+                new ResultIndex.Query(null, null, null, null, 40.0, null, null))));
+        assertEquals(List.of("src/app.yml", "Makefile"), paths(index.query(
+                new ResultIndex.Query(null, null, null, null, null, 1, 10))));
+    }
+
+    @Test
+    void testPagesCountAllMatches() {
+        ResultIndex.Page page = index.query(ResultIndex.Query.ALL.withTypes(Set.of("java", "yaml", "file")), 1, 2);
+        assertEquals(5, page.total());
+        assertEquals(List.of("src/Util.java", "src/app.yml"), paths(page.entries()));
+        assertEquals("props", ResultIndex.type(row("a.properties", false, DiffNode.DiffStatus.ADDED, 0, 0)));
+    }
+}
@@ -0,0 +1,177 @@
+package one.dastec.jcompare.service;
+
+import one.dastec.jcompare.model.CompareOptions;
+import one.dastec.jcompare.model.DiffNode;
+import one.dastec.jcompare.model.DiffTree;
+import one.dastec.jcompare.model.IgnoreProfile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Enough files to span several node blocks.
+     */
+    private static DiffTree sampleTree() {
+        DiffTree tree = new DiffTree("root", true);
+        tree.setStatus(0, DiffNode.DiffStatus.MODIFIED);
+        for (int d = 0; d < 10; d++) {
+            int dir = tree.add(0, "dir" + d, true);
+            for (int f = 0; f < 500; f++) {
+                int file = tree.add(dir, "file" + f + ".txt", false);
+                if (f % 7 == 0) {
+                    tree.setStatus(file, DiffNode.DiffStatus.MODIFIED);
+                    tree.setStatistics(file, f, d, 1, f / 3.0);
+                }
+            }
+        }
+        int moved = tree.add(tree.firstChild(0), "moved.txt", false);
+        tree.setStatus(moved, DiffNode.DiffStatus.MOVED);
+        tree.setSourcePath(moved, "old/moved.txt");
+        return tree;
+    }
+
+    private static List<String> describe(DiffNode node) {
+        List<String> lines = new ArrayList<>();
+        lines.add(node.getRelativePath() + " " + node.isDirectory() + " " + node.getStatus() + " " + node.getAdded() + " "
+                + node.getRemoved() + " " + node.getModified() + " " + node.getPercentage() + " " + node.getSourcePath());
+        for (DiffNode child : node.getChildren()) {
+            lines.addAll(describe(child));
+        }
+        return lines;
+    }
+
+    @Test
+    void testResultRoundTrip() throws IOException {
+        DiffTree tree = sampleTree();
+        CompareOptions options = new CompareOptions(true, false, true, false, true, false, new IgnoreProfile(false, true, "*.log"));
+        String id = new ResultStore(tempDir).save(tree.root(), "/a", "/b", options);
+
+        ResultStore.StoredResult result = new ResultStore(tempDir).open(id);
+
+        assertEquals("/a", result.metadata().leftPath());
+        assertEquals("/b", result.metadata().rightPath());
+        assertEquals(options, result.metadata().options());
+        assertEquals(5012, result.metadata().nodeCount());
+        assertEquals(describe(tree.root()), describe(result.tree()));
+    }
+
+    @Test
+    void testSubtreesLoadLazily() throws IOException {
+        ResultStore store = new ResultStore(tempDir);
+        String id = store.save(sampleTree().root(), "/a", "/b", CompareOptions.DEFAULT);
+        ResultStore.StoredResult result = store.open(id);
+
+        List<ResultStore.Entry> top = result.children("");
+        assertEquals(10, top.size());
+        assertEquals("dir0", top.get(0).relativePath());
+        assertEquals(501, top.get(0).descendants());
+
+        DiffNode dir = result.subtree("dir9", 0);
+        assertEquals("dir9", dir.getRelativePath());
+        assertTrue(dir.getChildren().isEmpty());
+
+        DiffNode file = result.subtree("dir9/file497.txt", 1);
+        assertEquals(DiffNode.DiffStatus.MODIFIED, file.getStatus());
+        assertEquals(497, file.getAdded());
+        assertEquals("old/moved.txt", result.children("dir0").get(500).sourcePath());
+
+        assertNull(result.subtree("dir9/missing.txt", 1));
+        assertNull(result.children("nope"));
+        assertThrows(NoSuchFileException.class, () -> store.open("0123456789abcdef"));
+        assertThrows(NoSuchFileException.class, () -> store.open("../etc/passwd"));
+    }
+
+    @Test
+    void testCheckpointSurvivesTornRecord() throws IOException {
+        ResultStore store = new ResultStore(tempDir);
+        Path left = tempDir.resolve("left");
+        Path right = tempDir.resolve("right");
+        DiffTree tree = sampleTree();
+
+        try (ResultStore.Checkpoint checkpoint = store.checkpoint(left, right, CompareOptions.DEFAULT)) {
+            assertEquals(0, checkpoint.restorable());
+            checkpoint.record("dir0", 1, tree, tree.firstChild(0));
+            checkpoint.record("dir1", 2, tree, tree.nextSibling(tree.firstChild(0)));
+        }
+        Path journal;
+        try (var files = Files.list(tempDir)) {
+            journal = files.filter(file -> file.toString().endsWith(".jcp")).findFirst().orElseThrow();
+        }
+        long intact = Files.size(journal);
+        // A crash in the middle of writing the next record
+        Files.write(journal, new byte[]{0, 0, 1, 0, 7, 7, 7, 7, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        try (ResultStore.Checkpoint checkpoint = store.checkpoint(left, right, CompareOptions.DEFAULT)) {
+            assertEquals(2, checkpoint.restorable());
+            assertEquals(intact, Files.size(journal));
+            DiffNode restored = checkpoint.restore("dir1", subtree -> 2);
+            assertEquals(describe(tree.node(tree.nextSibling(tree.firstChild(0)))), describe(restored));
+            assertNull(checkpoint.restore("dir2", subtree -> 3));
+            // Recorded from directories that have changed since
+            assertNull(checkpoint.restore("dir0", subtree -> 7));
+            assertNull(checkpoint.restore("dir0", subtree -> 1));
+            checkpoint.complete();
+        }
+        assertFalse(Files.exists(journal));
+
+        try (ResultStore.Checkpoint checkpoint = store.checkpoint(left, right, new CompareOptions(true, false, false, false, false, false))) {
+            assertEquals(0, checkpoint.restorable());
+        }
+    }
+
+    @Test
+    void testConcurrentRunsShareNoJournal() throws IOException {
+        ResultStore store = new ResultStore(tempDir);
+        DiffTree tree = sampleTree();
+        try (ResultStore.Checkpoint first = store.checkpoint(tempDir, tempDir, CompareOptions.DEFAULT);
+             ResultStore.Checkpoint second = store.checkpoint(tempDir, tempDir, CompareOptions.DEFAULT)) {
+            assertSame(ResultStore.Checkpoint.NONE, second);
+            first.record("dir0", 1, tree, tree.firstChild(0));
+            second.record("dir1", 2, tree, tree.nextSibling(tree.firstChild(0)));
+        }
+        try (ResultStore.Checkpoint checkpoint = store.checkpoint(tempDir, tempDir, CompareOptions.DEFAULT)) {
+            assertEquals(1, checkpoint.restorable());
+            assertNotNull(checkpoint.restore("dir0", subtree -> 1));
+        }
+    }
+
+    @Test
+    void testExpiredCheckpointIsNotResumed() throws IOException {
+        ResultStore store = new ResultStore(tempDir, Duration.ofHours(1));
+        DiffTree tree = sampleTree();
+        try (ResultStore.Checkpoint checkpoint = store.checkpoint(tempDir, tempDir, CompareOptions.DEFAULT)) {
+            checkpoint.record("dir0", 1, tree, tree.firstChild(0));
+        }
+        Path journal;
+        try (var files = Files.list(tempDir)) {
+            journal = files.filter(file -> file.toString().endsWith(".jcp")).findFirst().orElseThrow();
+        }
+        Files.setLastModifiedTime(journal, FileTime.from(Instant.now().minus(Duration.ofHours(2))));
+
+        try (ResultStore.Checkpoint checkpoint = store.checkpoint(tempDir, tempDir, CompareOptions.DEFAULT)) {
+            assertEquals(0, checkpoint.restorable());
+        }
+
+        // Saving a result sweeps checkpoints nobody came back for
+        Files.setLastModifiedTime(journal, FileTime.from(Instant.now().minus(Duration.ofHours(2))));
+        store.save(tree.root(), "left", "right", CompareOptions.DEFAULT);
+        assertFalse(Files.exists(journal));
+    }
+}
@@ -0,0 +1,113 @@
+package one.dastec.jcompare.service;
+
+import one.dastec.jcompare.model.StructureChange;
+import one.dastec.jcompare.model.StructureDiff;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StructureComparatorTest {
+
+    private final StructureComparator comparator = new StructureComparator(new ContentHasher());
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testParseOutline() {
+        String source = """
+                package com.example;
+
+                import java.util.List;
+
+                /** Docs */
+                @Deprecated
+                public class App<T> extends Base implements Runnable {
+                    private static final String NAME = "app"; // comment
+                    private final List<String> items = new java.util.ArrayList<>() {{ add("x"); }};
+
+                    static { assert NAME != null; }
+
+                    public App(String name) { super(name); }
+
+                    @Override
+                    public void run() { items.forEach(i -> { }); }
+
+                    public <R> R map(java.util.function.Function<T, R> fn, final int... values) { return null; }
+
+                    enum Color { RED, GREEN("g") { }, BLUE; void paint() {} }
+
+                    record Point(int x, int y) {}
+
+                    interface Shape { double area(); }
+                }
+                """;
+        List<String> paths = JavaStructureParser.parse(source).stream().map(JavaStructureParser.Member::path).toList();
+
+        assertEquals(List.of("package", "import java.util.List", "App", "App#NAME", "App#items", "App#{init}",
+                "App#App(String)", "App#run()", "App#map(java.util.function.Function<T,R>,int...)",
+                "App.Color", "App.Color#RED", "App.Color#GREEN", "App.Color#BLUE", "App.Color#paint()",
+                "App.Point", "App.Shape", "App.Shape#area()"), paths);
+    }
+
+    @Test
+    void testReorderedMethodsAreEquivalent() throws IOException {
+        Path left = tempDir.resolve("left.java");
+        Path right = tempDir.resolve("right.java");
+        Files.writeString(left, "class A {\n  void a() { x(); }\n  void b() { y(); }\n  int f;\n}\n");
+        Files.writeString(right, "class A {\n  int f;\n\n  // moved\n  void b() {\n    y();\n  }\n  void a() { x(); }\n}\n");
+
+        StructureDiff diff = comparator.compare(left, right);
+
+        assertTrue(diff.isEquivalent());
+        assertEquals(2, diff.count(StructureChange.ChangeType.REORDERED));
+        assertEquals(2, diff.unchanged());
+    }
+
+    @Test
+    void testAddedRemovedAndChangedMembers() throws IOException {
+        Path left = tempDir.resolve("Left.java");
+        Path right = tempDir.resolve("Right.java");
+        Files.writeString(left, "class A {\n  void keep() {}\n  void change(int a) { a++; }\n  void gone() {}\n}\n");
+        Files.writeString(right, "class A {\n  void keep() {}\n  void change(int a) { a--; }\n  void added(String s) {}\n}\n");
+
+        StructureDiff diff = comparator.compare(left, right);
+
+        assertFalse(diff.isEquivalent());
+        assertTrue(diff.changes().contains(new StructureChange("A#added(String)", "method", StructureChange.ChangeType.ADDED, null, "void added(String s)")));
+        assertTrue(diff.changes().stream().anyMatch(c -> c.path().equals("A#gone()") && c.type() == StructureChange.ChangeType.REMOVED));
+        assertTrue(diff.changes().stream().anyMatch(c -> c.path().equals("A#change(int)") && c.type() == StructureChange.ChangeType.CHANGED));
+    }
+
+    @Test
+    void testUnsupportedFileType() throws IOException {
+        Path file = tempDir.resolve("notes.txt");
+        Files.writeString(file, "text");
+        assertNull(comparator.compare(file, file));
+    }
+
+    @Test
+    void testLargeGeneratedClass() {
+        StringBuilder source = new StringBuilder("class Generated {\n");
+        for (int i = 0; i < 5_000; i++) {
+            source.append("  int field").append(i).append(" = ").append(i).append(";\n");
+            source.append("  int get").append(i).append("() { return field").append(i).append("; }\n");
+        }
+        source.append("}\n");
+
+        List<JavaStructureParser.Member> members = JavaStructureParser.parse(source.toString());
+        assertEquals(10_001, members.size());
+
+        List<JavaStructureParser.Member> reversed = new java.util.ArrayList<>(members);
+        java.util.Collections.reverse(reversed);
+        StructureDiff diff = StructureComparator.compareMembers(members, reversed);
+        assertTrue(diff.isEquivalent());
+        assertEquals(1, diff.unchanged());
+    }
+}